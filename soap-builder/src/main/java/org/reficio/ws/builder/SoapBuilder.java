@@ -19,10 +19,17 @@
 package org.reficio.ws.builder;
 
 import org.reficio.ws.SoapContext;
+import org.reficio.ws.builder.core.MessageTemplate;
+import org.reficio.ws.builder.core.MtomMessage;
 
 import javax.wsdl.Binding;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Tom Bujok
@@ -46,6 +53,70 @@ public interface SoapBuilder {
 
     String buildOutputMessage(SoapOperation operation, SoapContext context);
 
+    /**
+     * Writes the UTF-8 encoded input message to the output stream as it is generated, so the message is never held
+     * in memory. The stream is not closed.
+     */
+    void buildInputMessage(SoapOperation operation, SoapContext context, OutputStream outputStream);
+
+    /**
+     * Writes the input message to the writer as it is generated, the writer is not closed
+     */
+    void buildInputMessage(SoapOperation operation, SoapContext context, Writer writer);
+
+    /**
+     * Writes the input message to the XML stream writer as it is generated, the writer is flushed but not closed
+     */
+    void buildInputMessage(SoapOperation operation, SoapContext context, XMLStreamWriter writer);
+
+    /**
+     * Writes the UTF-8 encoded output message to the output stream as it is generated, so the message is never held
+     * in memory. The stream is not closed.
+     */
+    void buildOutputMessage(SoapOperation operation, SoapContext context, OutputStream outputStream);
+
+    /**
+     * Writes the output message to the writer as it is generated, the writer is not closed
+     */
+    void buildOutputMessage(SoapOperation operation, SoapContext context, Writer writer);
+
+    /**
+     * Writes the output message to the XML stream writer as it is generated, the writer is flushed but not closed
+     */
+    void buildOutputMessage(SoapOperation operation, SoapContext context, XMLStreamWriter writer);
+
+    /**
+     * Builds the input message as a MTOM/XOP package - the base64Binary content of the elements named by the attachments
+     * is replaced by xop:Include elements and the attachments are written from their streams as binary MIME parts
+     * (see MessageTemplate.renderMtom)
+     */
+    MtomMessage buildInputMessage(SoapOperation operation, SoapContext context, Map<QName, InputStream> attachments);
+
+    /**
+     * Builds the output message as a MTOM/XOP package - the base64Binary content of the elements named by the
+     * attachments is replaced by xop:Include elements and the attachments are written from their streams as binary
+     * MIME parts (see MessageTemplate.renderMtom)
+     */
+    MtomMessage buildOutputMessage(SoapOperation operation, SoapContext context, Map<QName, InputStream> attachments);
+
+    /**
+     * Compiles the input message of the operation into a template that renders the message with the given values,
+     * without generating it again. The slots of the template are untyped and keyed only by the QName of the element
+     * (attribute) - the values are not validated against the schema and all the slots of the same name get the same
+     * values, wherever they occur in the message.
+     */
+    MessageTemplate compileInputMessage(SoapOperation operation);
+
+    MessageTemplate compileInputMessage(SoapOperation operation, SoapContext context);
+
+    /**
+     * Compiles the output message of the operation into a template that renders the message with the given values,
+     * without generating it again
+     */
+    MessageTemplate compileOutputMessage(SoapOperation operation);
+
+    MessageTemplate compileOutputMessage(SoapOperation operation, SoapContext context);
+
     String buildFault(String code, String message);
 
     String buildFault(String code, String message, SoapContext context);
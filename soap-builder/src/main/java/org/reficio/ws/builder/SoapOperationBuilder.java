@@ -19,6 +19,15 @@
 package org.reficio.ws.builder;
 
 import org.reficio.ws.SoapContext;
+import org.reficio.ws.builder.core.MessageTemplate;
+import org.reficio.ws.builder.core.MtomMessage;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
 
 /**
  * @author Tom Bujok
@@ -38,6 +47,30 @@ public interface SoapOperationBuilder extends SoapOperation {
 
     String buildOutputMessage(SoapContext context);
 
+    void buildInputMessage(OutputStream outputStream);
+
+    void buildInputMessage(Writer writer);
+
+    void buildInputMessage(XMLStreamWriter writer);
+
+    void buildOutputMessage(OutputStream outputStream);
+
+    void buildOutputMessage(Writer writer);
+
+    void buildOutputMessage(XMLStreamWriter writer);
+
+    MtomMessage buildInputMessage(Map<QName, InputStream> attachments);
+
+    MtomMessage buildOutputMessage(Map<QName, InputStream> attachments);
+
+    MessageTemplate compileInputMessage();
+
+    MessageTemplate compileInputMessage(SoapContext context);
+
+    MessageTemplate compileOutputMessage();
+
+    MessageTemplate compileOutputMessage(SoapContext context);
+
     String buildFault(String code, String message);
 
     String buildFault(String code, String message, SoapContext context);
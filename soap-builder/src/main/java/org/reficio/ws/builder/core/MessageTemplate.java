@@ -0,0 +1,419 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.builder.core;
+
+import org.reficio.ws.SoapBuilderException;
+import org.reficio.ws.SoapMultiValuesProvider;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Message compiled into a reusable template - a flat list of static segments and value slots.
+ * Every leaf element of the payload (and every attribute) is a slot named after the element (attribute), the rest of
+ * the message (the envelope, the markup, the namespace declarations, the comments and the whitespace) is static.
+ * A message is rendered by appending the static segments and the values of the slots, so the schema is not walked
+ * again and no XML tree is built. The values are taken from a SoapMultiValuesProvider and rendered as the generator
+ * renders them (see SampleXmlUtil) - the values of an element are joined with "s", the values of an attribute with ",",
+ * and a slot with an empty set of values is rendered empty. A slot for which the provider returns null keeps the
+ * sample value it has been compiled with, as do all the slots if there is no provider.
+ * The values are escaped when they are rendered. The elements of the SOAP envelope namespaces are never slots.
+ * A template is immutable, so it may be rendered concurrently.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class MessageTemplate {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // separators of the multi-values, the same as in SampleXmlUtil
+    private static final String ELEMENT_VALUE_SEPARATOR = "s";
+    private static final String ATTRIBUTE_VALUE_SEPARATOR = ",";
+    private static final List<String> ENVELOPE_NAMESPACES = Arrays.asList(
+            "http://schemas.xmlsoap.org/soap/envelope/", "http://www.w3.org/2003/05/soap-envelope");
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final String[] segments;
+    private final byte[][] encodedSegments;
+    private final Slot[] slots;
+    private final int estimatedSize;
+
+    private MessageTemplate(List<String> segments, List<Slot> slots) {
+        this.segments = segments.toArray(new String[segments.size()]);
+        this.slots = slots.toArray(new Slot[slots.size()]);
+        this.encodedSegments = new byte[this.segments.length][];
+        int size = 0;
+        for (int i = 0; i < this.segments.length; i++) {
+            encodedSegments[i] = this.segments[i].getBytes(UTF_8);
+            size += encodedSegments[i].length;
+        }
+        for (Slot slot : this.slots) {
+            size += slot.defaultValue.length();
+        }
+        this.estimatedSize = size;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * @param message message to compile, e.g. a message generated by the SoapBuilder
+     * @return template rendering the message
+     * @throws SoapBuilderException if the message is not well-formed
+     */
+    public static MessageTemplate compile(String message) {
+        checkNotNull(message);
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(message));
+            return new Compiler().compile(reader);
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException("Cannot compile the message template", ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ex) {
+                // ignore
+            }
+        }
+    }
+
+    public List<Slot> getSlots() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+
+    /**
+     * @param values provider of the values of the slots, null to render the sample values
+     * @return rendered message
+     */
+    public String render(SoapMultiValuesProvider values) {
+        StringBuilder builder = new StringBuilder(estimatedSize);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(segments[i]);
+            builder.append(slots[i].getValue(values));
+        }
+        return builder.append(segments[slots.length]).toString();
+    }
+
+    /**
+     * Renders the message UTF-8 encoded to the output stream
+     *
+     * @param values provider of the values of the slots, null to render the sample values
+     */
+    public void render(SoapMultiValuesProvider values, OutputStream outputStream) throws IOException {
+        checkNotNull(outputStream);
+        for (int i = 0; i < slots.length; i++) {
+            outputStream.write(encodedSegments[i]);
+            outputStream.write(slots[i].getValue(values).getBytes(UTF_8));
+        }
+        outputStream.write(encodedSegments[slots.length]);
+    }
+
+    /**
+     * @param values provider of the values of the slots, null to render the sample values
+     * @return UTF-8 encoded rendered message
+     */
+    public byte[] renderBytes(SoapMultiValuesProvider values) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(estimatedSize);
+        try {
+            render(values, buffer);
+        } catch (IOException ex) {
+            throw new SoapBuilderException(ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Renders the message as a MTOM/XOP package. The binary content of the elements named by the attachments (rendered
+     * by the generator as a cid: reference, e.g. of an xsd:base64Binary element) is replaced by an xop:Include element
+     * referring to the attachment, which is written from its stream as a binary MIME part when the package is written.
+     *
+     * @param values          provider of the values of the other slots, null to render the sample values
+     * @param attachments     content of the binary elements keyed by the name of the element, every element has to
+     *                        occur once in the message
+     * @param soapContentType content type of the SOAP version of the message
+     * @return MTOM/XOP package
+     * @throws SoapBuilderException if an element does not occur in the message once or if its content is not binary
+     */
+    public MtomMessage renderMtom(SoapMultiValuesProvider values, Map<QName, InputStream> attachments, String soapContentType) {
+        checkNotNull(attachments);
+        checkNotNull(soapContentType);
+        MtomMessage.Builder message = MtomMessage.builder().soapContentType(soapContentType);
+        Set<QName> included = new HashSet<QName>();
+        StringBuilder builder = new StringBuilder(estimatedSize);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(segments[i]);
+            Slot slot = slots[i];
+            InputStream content = slot.attribute ? null : attachments.get(slot.name);
+            if (content == null) {
+                builder.append(slot.getValue(values));
+                continue;
+            }
+            if (!slot.isBinary()) {
+                throw new SoapBuilderException(String.format("Content of the element [%s] is not binary", slot.name));
+            }
+            if (!included.add(slot.name)) {
+                throw new SoapBuilderException(String.format("Element [%s] occurs more than once in the message", slot.name));
+            }
+            String contentId = UUID.randomUUID().toString() + "@reficio.org";
+            builder.append(MtomMessage.include(contentId));
+            message.attachment(contentId, MtomMessage.BINARY_CONTENT_TYPE, content);
+        }
+        builder.append(segments[slots.length]);
+        for (QName name : attachments.keySet()) {
+            if (!included.contains(name)) {
+                throw new SoapBuilderException(String.format("Element [%s] does not occur in the message", name));
+            }
+        }
+        return message.envelope(builder.toString()).build();
+    }
+
+    @Override
+    public String toString() {
+        return render(null);
+    }
+
+    /**
+     * Value slot of the template - the content of a leaf element or the value of an attribute
+     */
+    public static final class Slot {
+        private final QName name;
+        private final boolean attribute;
+        private final String defaultValue;
+
+        private Slot(QName name, boolean attribute, String defaultValue) {
+            this.name = name;
+            this.attribute = attribute;
+            this.defaultValue = defaultValue;
+        }
+
+        public QName getName() {
+            return name;
+        }
+
+        public boolean isAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return escaped sample value the template has been compiled with
+         */
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+
+        /**
+         * @return true if the slot holds binary content - the generator renders it as a cid: reference
+         */
+        boolean isBinary() {
+            return !attribute && defaultValue.startsWith("cid:");
+        }
+
+        private String getValue(SoapMultiValuesProvider provider) {
+            if (provider == null) {
+                return defaultValue;
+            }
+            Collection<String> values = provider.getMultiValues(name);
+            if (values == null) {
+                return defaultValue;
+            }
+            StringBuilder builder = new StringBuilder();
+            for (Iterator<String> it = values.iterator(); it.hasNext(); ) {
+                escape(builder, it.next(), attribute);
+                if (it.hasNext()) {
+                    builder.append(attribute ? ATTRIBUTE_VALUE_SEPARATOR : ELEMENT_VALUE_SEPARATOR);
+                }
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return (attribute ? "@" : "") + name;
+        }
+    }
+
+    private static void escape(StringBuilder builder, String value, boolean attribute) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append(attribute ? "&quot;" : "\"");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Single-pass compiler - the text of an element is held back until it is known whether the element is a leaf
+     */
+    private static final class Compiler {
+        private final List<String> segments = new ArrayList<String>();
+        private final List<Slot> slots = new ArrayList<Slot>();
+        private final StringBuilder segment = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private boolean leaf;
+
+        private MessageTemplate compile(XMLStreamReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        flushText();
+                        startElement(reader);
+                        leaf = true;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement(reader);
+                        leaf = false;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        escape(text, reader.getText(), false);
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        flushText();
+                        segment.append("<!--").append(reader.getText()).append("-->");
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        flushText();
+                        segment.append("<?").append(reader.getPITarget());
+                        if (reader.getPIData() != null) {
+                            segment.append(' ').append(reader.getPIData());
+                        }
+                        segment.append("?>");
+                        break;
+                    default:
+                        break;
+                }
+            }
+            flushText();
+            segments.add(segment.toString());
+            return new MessageTemplate(segments, slots);
+        }
+
+        private void startElement(XMLStreamReader reader) {
+            segment.append('<');
+            appendName(reader.getPrefix(), reader.getLocalName());
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                segment.append(prefix == null || prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix);
+                segment.append("=\"");
+                escape(segment, reader.getNamespaceURI(i), true);
+                segment.append('"');
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                segment.append(' ');
+                appendName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                segment.append("=\"");
+                QName name = reader.getAttributeName(i);
+                if (isValueAttribute(name)) {
+                    StringBuilder value = new StringBuilder();
+                    escape(value, reader.getAttributeValue(i), true);
+                    addSlot(new Slot(name, true, value.toString()));
+                } else {
+                    escape(segment, reader.getAttributeValue(i), true);
+                }
+                segment.append('"');
+            }
+            segment.append('>');
+        }
+
+        private void endElement(XMLStreamReader reader) {
+            if (leaf && !ENVELOPE_NAMESPACES.contains(reader.getNamespaceURI())) {
+                addSlot(new Slot(reader.getName(), false, text.toString()));
+                text.setLength(0);
+            } else {
+                flushText();
+            }
+            segment.append("</");
+            appendName(reader.getPrefix(), reader.getLocalName());
+            segment.append('>');
+        }
+
+        private static boolean isValueAttribute(QName name) {
+            String namespace = name.getNamespaceURI();
+            return !"http://www.w3.org/2001/XMLSchema-instance".equals(namespace)
+                    && !ENVELOPE_NAMESPACES.contains(namespace);
+        }
+
+        private void appendName(String prefix, String localName) {
+            if (prefix != null && !prefix.isEmpty()) {
+                segment.append(prefix).append(':');
+            }
+            segment.append(localName);
+        }
+
+        private void addSlot(Slot slot) {
+            segments.add(segment.toString());
+            segment.setLength(0);
+            slots.add(slot);
+        }
+
+        private void flushText() {
+            segment.append(text);
+            text.setLength(0);
+        }
+    }
+
+}
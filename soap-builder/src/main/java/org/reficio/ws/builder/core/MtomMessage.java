@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.builder.core;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * MTOM/XOP message - a multipart/related package composed of the SOAP envelope and its binary attachments.
+ * The envelope refers to the attachments using xop:Include elements (see the include method) in place of the
+ * base64 content. The attachments are written from their streams as raw binary MIME parts, so they are neither
+ * expanded by the base64 encoding nor loaded in memory.
+ * A message may be written only once, as the streams of the attachments are consumed (and closed) while it is written.
+ * The SoapBuilder builds the message of an operation from the streams of its binary elements.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class MtomMessage {
+
+    public static final String XOP_NAMESPACE = "http://www.w3.org/2004/08/xop/include";
+    public static final String XOP_CONTENT_TYPE = "application/xop+xml";
+    public static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final String CRLF = "\r\n";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String envelope;
+    private final String soapContentType;
+    private final String boundary;
+    private final String rootContentId;
+    private final List<Attachment> attachments;
+
+    private MtomMessage(final Builder builder) {
+        this.envelope = builder.envelope;
+        this.soapContentType = builder.soapContentType;
+        this.boundary = "MIMEBoundary_" + UUID.randomUUID().toString().replace("-", "");
+        this.rootContentId = "root." + UUID.randomUUID().toString() + "@reficio.org";
+        this.attachments = Collections.unmodifiableList(new ArrayList<Attachment>(builder.attachments));
+    }
+
+    /**
+     * @param contentId Content-ID of the attachment (without the angle brackets)
+     * @return xop:Include element referring to the attachment, to be placed in the envelope instead of the base64 content
+     */
+    public static String include(final String contentId) {
+        Preconditions.checkNotNull(contentId, "contentId cannot be null");
+        return "<xop:Include xmlns:xop=\"" + XOP_NAMESPACE + "\" href=\"cid:" + encode(contentId) + "\"/>";
+    }
+
+    private static String encode(final String contentId) {
+        try {
+            // RFC 2392 - the cid URL is url-encoded, the @ is kept
+            return URLEncoder.encode(contentId, "UTF-8").replace("+", "%20").replace("%40", "@");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return value of the Content-Type header of the message
+     */
+    public String getContentType() {
+        return String.format("multipart/related; type=\"%s\"; start=\"<%s>\"; start-info=\"%s\"; boundary=\"%s\"",
+                XOP_CONTENT_TYPE, rootContentId, soapContentType, boundary);
+    }
+
+    public String getEnvelope() {
+        return envelope;
+    }
+
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * Writes the whole package to the output stream, the streams of the attachments are copied as is and closed
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        writeAscii(outputStream, "--" + boundary + CRLF);
+        writeAscii(outputStream, "Content-Type: " + XOP_CONTENT_TYPE + "; charset=UTF-8; type=\"" + soapContentType + "\"" + CRLF);
+        writeAscii(outputStream, "Content-Transfer-Encoding: binary" + CRLF);
+        writeAscii(outputStream, "Content-ID: <" + rootContentId + ">" + CRLF + CRLF);
+        outputStream.write(envelope.getBytes(UTF_8));
+        for (final Attachment attachment : attachments) {
+            writeAscii(outputStream, CRLF + "--" + boundary + CRLF);
+            writeAscii(outputStream, "Content-Type: " + attachment.getContentType() + CRLF);
+            writeAscii(outputStream, "Content-Transfer-Encoding: binary" + CRLF);
+            writeAscii(outputStream, "Content-ID: <" + attachment.getContentId() + ">" + CRLF + CRLF);
+            attachment.writeTo(outputStream);
+        }
+        writeAscii(outputStream, CRLF + "--" + boundary + "--" + CRLF);
+        outputStream.flush();
+    }
+
+    private static void writeAscii(final OutputStream outputStream, final String value) throws IOException {
+        outputStream.write(value.getBytes(US_ASCII));
+    }
+
+    /**
+     * Binary part of the message
+     */
+    public static final class Attachment {
+        private final String contentId;
+        private final String contentType;
+        private final InputStream content;
+
+        private Attachment(final String contentId, final String contentType, final InputStream content) {
+            this.contentId = contentId;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        public String getContentId() {
+            return contentId;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        private void writeTo(final OutputStream outputStream) throws IOException {
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = content.read(buffer); read != -1; read = content.read(buffer)) {
+                    outputStream.write(buffer, 0, read);
+                }
+            } finally {
+                content.close();
+            }
+        }
+    }
+
+    /**
+     * @return a new instance of a MtomMessage Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder to construct a properly populated MtomMessage
+     */
+    public static final class Builder {
+        private String envelope;
+        private String soapContentType = "text/xml";
+        private final List<Attachment> attachments = new ArrayList<Attachment>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param value SOAP envelope, the binary content is referred to by xop:Include elements
+         * @return builder
+         */
+        public Builder envelope(final String value) {
+            this.envelope = Preconditions.checkNotNull(value, "envelope cannot be null");
+            return this;
+        }
+
+        /**
+         * @param value content type of the SOAP version of the envelope - text/xml (SOAP 1.1, default)
+         *              or application/soap+xml (SOAP 1.2)
+         * @return builder
+         */
+        public Builder soapContentType(final String value) {
+            this.soapContentType = Preconditions.checkNotNull(value, "soapContentType cannot be null");
+            return this;
+        }
+
+        /**
+         * @param contentId   Content-ID of the attachment (without the angle brackets), referred to by the envelope
+         * @param contentType content type of the attachment
+         * @param content     content of the attachment, it is read when the message is written
+         * @return builder
+         */
+        public Builder attachment(final String contentId, final String contentType, final InputStream content) {
+            Preconditions.checkNotNull(contentId, "contentId cannot be null");
+            Preconditions.checkNotNull(contentType, "contentType cannot be null");
+            Preconditions.checkNotNull(content, "content cannot be null");
+            attachments.add(new Attachment(contentId, contentType, content));
+            return this;
+        }
+
+        public MtomMessage build() {
+            Preconditions.checkState(envelope != null, "envelope has to be set");
+            return new MtomMessage(this);
+        }
+    }
+
+}
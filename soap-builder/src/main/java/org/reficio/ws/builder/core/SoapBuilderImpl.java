@@ -25,6 +25,7 @@ import org.reficio.ws.builder.SoapBuilder;
 import org.reficio.ws.builder.SoapOperation;
 import org.reficio.ws.builder.SoapOperationBuilder;
 import org.reficio.ws.builder.SoapOperationFinder;
+import org.reficio.ws.legacy.OperationPlan;
 import org.reficio.ws.legacy.SoapLegacyFacade;
 
 import javax.wsdl.Binding;
@@ -32,9 +33,16 @@ import javax.wsdl.BindingOperation;
 import javax.wsdl.Port;
 import javax.wsdl.Service;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Tom Bujok
@@ -42,6 +50,8 @@ import java.util.List;
  */
 class SoapBuilderImpl implements SoapBuilder {
 
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
     private final SoapLegacyFacade soapFacade;
     private final Binding binding;
     private final SoapContext context;
@@ -68,6 +78,10 @@ class SoapBuilderImpl implements SoapBuilder {
     }
 
     public BindingOperation getBindingOperation(SoapOperation op) {
+        return getOperationPlan(op).getBindingOperation();
+    }
+
+    private BindingOperation findBindingOperation(SoapOperation op) {
         BindingOperation operation = binding.getBindingOperation(op.getOperationName(),
                 op.getOperationInputName(), op.getOperationOutputName());
         if (operation == null) {
@@ -76,6 +90,17 @@ class SoapBuilderImpl implements SoapBuilder {
         return operation;
     }
 
+    OperationPlan getOperationPlan(SoapOperation op) {
+        if (op instanceof SoapOperationImpl && ((SoapOperationImpl) op).getBuilder() == this) {
+            return ((SoapOperationImpl) op).getPlan();
+        }
+        return soapFacade.getOperationPlan(binding, findBindingOperation(op));
+    }
+
+    OperationPlan createOperationPlan(BindingOperation operation) {
+        return soapFacade.getOperationPlan(binding, operation);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public List<SoapOperation> getOperations() {
@@ -93,7 +118,7 @@ class SoapBuilderImpl implements SoapBuilder {
 
     @Override
     public SoapOperationBuilder getOperationBuilder(SoapOperation operation) {
-        BindingOperation bindingOperation = getBindingOperation(operation);
+        BindingOperation bindingOperation = findBindingOperation(operation);
         return SoapOperationImpl.create(this, binding, bindingOperation);
     }
 
@@ -110,7 +135,7 @@ class SoapBuilderImpl implements SoapBuilder {
     @Override
     public String buildInputMessage(SoapOperation operation, SoapContext context) {
         try {
-            return soapFacade.buildSoapMessageFromInput(binding, getBindingOperation(operation), context);
+            return soapFacade.buildSoapMessageFromInput(getOperationPlan(operation), context);
         } catch (Exception e) {
             throw new SoapBuilderException(e);
         }
@@ -124,12 +149,105 @@ class SoapBuilderImpl implements SoapBuilder {
     @Override
     public String buildOutputMessage(SoapOperation operation, SoapContext context) {
         try {
-            return soapFacade.buildSoapMessageFromOutput(binding, getBindingOperation(operation), context);
+            return soapFacade.buildSoapMessageFromOutput(getOperationPlan(operation), context);
         } catch (Exception e) {
             throw new SoapBuilderException(e);
         }
     }
 
+    @Override
+    public void buildInputMessage(SoapOperation operation, SoapContext context, OutputStream outputStream) {
+        XMLStreamWriter writer = createWriter(outputStream);
+        buildInputMessage(operation, context, writer);
+        close(writer);
+    }
+
+    @Override
+    public void buildInputMessage(SoapOperation operation, SoapContext context, Writer writer) {
+        XMLStreamWriter xmlWriter = createWriter(writer);
+        buildInputMessage(operation, context, xmlWriter);
+        close(xmlWriter);
+    }
+
+    @Override
+    public void buildInputMessage(SoapOperation operation, SoapContext context, XMLStreamWriter writer) {
+        soapFacade.buildSoapMessageFromInput(getOperationPlan(operation), context, writer);
+    }
+
+    @Override
+    public void buildOutputMessage(SoapOperation operation, SoapContext context, OutputStream outputStream) {
+        XMLStreamWriter writer = createWriter(outputStream);
+        buildOutputMessage(operation, context, writer);
+        close(writer);
+    }
+
+    @Override
+    public void buildOutputMessage(SoapOperation operation, SoapContext context, Writer writer) {
+        XMLStreamWriter xmlWriter = createWriter(writer);
+        buildOutputMessage(operation, context, xmlWriter);
+        close(xmlWriter);
+    }
+
+    @Override
+    public void buildOutputMessage(SoapOperation operation, SoapContext context, XMLStreamWriter writer) {
+        soapFacade.buildSoapMessageFromOutput(getOperationPlan(operation), context, writer);
+    }
+
+    private static XMLStreamWriter createWriter(OutputStream outputStream) {
+        try {
+            return OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new SoapBuilderException(e);
+        }
+    }
+
+    private static XMLStreamWriter createWriter(Writer writer) {
+        try {
+            return OUTPUT_FACTORY.createXMLStreamWriter(writer);
+        } catch (XMLStreamException e) {
+            throw new SoapBuilderException(e);
+        }
+    }
+
+    private static void close(XMLStreamWriter writer) {
+        // does not close the underlying stream
+        try {
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new SoapBuilderException(e);
+        }
+    }
+
+    @Override
+    public MtomMessage buildInputMessage(SoapOperation operation, SoapContext context, Map<QName, InputStream> attachments) {
+        return compileInputMessage(operation, context).renderMtom(null, attachments, SoapLegacyFacade.getSoapContentType(binding));
+    }
+
+    @Override
+    public MtomMessage buildOutputMessage(SoapOperation operation, SoapContext context, Map<QName, InputStream> attachments) {
+        return compileOutputMessage(operation, context).renderMtom(null, attachments, SoapLegacyFacade.getSoapContentType(binding));
+    }
+
+    @Override
+    public MessageTemplate compileInputMessage(SoapOperation operation) {
+        return compileInputMessage(operation, context);
+    }
+
+    @Override
+    public MessageTemplate compileInputMessage(SoapOperation operation, SoapContext context) {
+        return MessageTemplate.compile(buildInputMessage(operation, context));
+    }
+
+    @Override
+    public MessageTemplate compileOutputMessage(SoapOperation operation) {
+        return compileOutputMessage(operation, context);
+    }
+
+    @Override
+    public MessageTemplate compileOutputMessage(SoapOperation operation, SoapContext context) {
+        return MessageTemplate.compile(buildOutputMessage(operation, context));
+    }
+
     @Override
     public String buildFault(String code, String message) {
         return soapFacade.buildFault(code, message, binding, context);
@@ -177,26 +295,22 @@ class SoapBuilderImpl implements SoapBuilder {
 
     @Override
     public void validateInputMessage(SoapOperation operation, String message) {
-        BindingOperation bindingOperation = getBindingOperation(operation);
-        soapFacade.validateSoapRequestMessage(binding, bindingOperation, message, false);
+        soapFacade.validateSoapRequestMessage(getOperationPlan(operation), message, false);
     }
 
     @Override
     public void validateInputMessage(SoapOperation operation, String message, boolean strict) {
-        BindingOperation bindingOperation = getBindingOperation(operation);
-        soapFacade.validateSoapRequestMessage(binding, bindingOperation, message, strict);
+        soapFacade.validateSoapRequestMessage(getOperationPlan(operation), message, strict);
     }
 
     @Override
     public void validateOutputMessage(SoapOperation operation, String message) {
-        BindingOperation bindingOperation = getBindingOperation(operation);
-        soapFacade.validateSoapResponseMessage(binding, bindingOperation, message, false);
+        soapFacade.validateSoapResponseMessage(getOperationPlan(operation), message, false);
     }
 
     @Override
     public void validateOutputMessage(SoapOperation operation, String message, boolean strict) {
-        BindingOperation bindingOperation = getBindingOperation(operation);
-        soapFacade.validateSoapResponseMessage(binding, bindingOperation, message, strict);
+        soapFacade.validateSoapResponseMessage(getOperationPlan(operation), message, strict);
     }
 
     @Override
@@ -206,12 +320,12 @@ class SoapBuilderImpl implements SoapBuilder {
 
     @Override
     public boolean isInputSoapEncoded(SoapOperation operation) {
-        return soapFacade.isInputSoapEncoded(getBindingOperation(operation));
+        return getOperationPlan(operation).isInputSoapEncoded();
     }
 
     @Override
     public boolean isOutputSoapEncoded(SoapOperation operation) {
-        return soapFacade.isOutputSoapEncoded(getBindingOperation(operation));
+        return getOperationPlan(operation).isOutputSoapEncoded();
     }
 
 }
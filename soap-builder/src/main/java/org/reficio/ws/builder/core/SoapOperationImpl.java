@@ -22,10 +22,16 @@ import org.reficio.ws.SoapContext;
 import org.reficio.ws.builder.SoapBuilder;
 import org.reficio.ws.builder.SoapOperation;
 import org.reficio.ws.builder.SoapOperationBuilder;
+import org.reficio.ws.legacy.OperationPlan;
 
 import javax.wsdl.Binding;
 import javax.wsdl.BindingOperation;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
 
 /**
  * @author Tom Bujok
@@ -39,12 +45,15 @@ class SoapOperationImpl implements SoapOperation, SoapOperationBuilder {
     private final String operationOutputName;
     private final String soapAction;
     private final SoapBuilder builder;
+    private final BindingOperation bindingOperation;
+    private volatile OperationPlan plan;
     private SoapContext context;
 
-    SoapOperationImpl(SoapBuilder builder, QName bindingName, String operationName, String operationInputName,
-                      String operationOutputName, String soapAction) {
+    SoapOperationImpl(SoapBuilder builder, BindingOperation bindingOperation, QName bindingName, String operationName,
+                      String operationInputName, String operationOutputName, String soapAction) {
 
         this.builder = builder;
+        this.bindingOperation = bindingOperation;
         this.bindingName = bindingName;
         this.operationName = operationName;
         this.operationInputName = operationInputName;
@@ -96,8 +105,25 @@ class SoapOperationImpl implements SoapOperation, SoapOperationBuilder {
     static SoapOperationBuilder create(SoapBuilder builder, Binding binding, BindingOperation operation, String soapAction) {
         String bindingInputName = operation.getBindingInput() != null ? operation.getBindingInput().getName() : null;
         String bindingOutputName = operation.getBindingOutput() != null ? operation.getBindingOutput().getName() : null;
-        return new SoapOperationImpl(builder, binding.getQName(), operation.getName(), bindingInputName, bindingOutputName,
-                SoapUtils.normalizeSoapAction(soapAction));
+        return new SoapOperationImpl(builder, operation, binding.getQName(), operation.getName(), bindingInputName,
+                bindingOutputName, SoapUtils.normalizeSoapAction(soapAction));
+    }
+
+    SoapBuilder getBuilder() {
+        return builder;
+    }
+
+    /**
+     * Resolves the operation plan on first use, so that repeated generation and validation through this handle
+     * do not traverse the WSDL again.
+     */
+    OperationPlan getPlan() {
+        OperationPlan result = plan;
+        if (result == null) {
+            result = ((SoapBuilderImpl) builder).createOperationPlan(bindingOperation);
+            plan = result;
+        }
+        return result;
     }
 
     public String toString() {
@@ -135,6 +161,66 @@ class SoapOperationImpl implements SoapOperation, SoapOperationBuilder {
         return builder.buildOutputMessage(this, context);
     }
 
+    @Override
+    public void buildInputMessage(OutputStream outputStream) {
+        builder.buildInputMessage(this, context, outputStream);
+    }
+
+    @Override
+    public void buildInputMessage(Writer writer) {
+        builder.buildInputMessage(this, context, writer);
+    }
+
+    @Override
+    public void buildInputMessage(XMLStreamWriter writer) {
+        builder.buildInputMessage(this, context, writer);
+    }
+
+    @Override
+    public void buildOutputMessage(OutputStream outputStream) {
+        builder.buildOutputMessage(this, context, outputStream);
+    }
+
+    @Override
+    public void buildOutputMessage(Writer writer) {
+        builder.buildOutputMessage(this, context, writer);
+    }
+
+    @Override
+    public void buildOutputMessage(XMLStreamWriter writer) {
+        builder.buildOutputMessage(this, context, writer);
+    }
+
+    @Override
+    public MtomMessage buildInputMessage(Map<QName, InputStream> attachments) {
+        return builder.buildInputMessage(this, context, attachments);
+    }
+
+    @Override
+    public MtomMessage buildOutputMessage(Map<QName, InputStream> attachments) {
+        return builder.buildOutputMessage(this, context, attachments);
+    }
+
+    @Override
+    public MessageTemplate compileInputMessage() {
+        return builder.compileInputMessage(this, context);
+    }
+
+    @Override
+    public MessageTemplate compileInputMessage(SoapContext context) {
+        return builder.compileInputMessage(this, context);
+    }
+
+    @Override
+    public MessageTemplate compileOutputMessage() {
+        return builder.compileOutputMessage(this, context);
+    }
+
+    @Override
+    public MessageTemplate compileOutputMessage(SoapContext context) {
+        return builder.compileOutputMessage(this, context);
+    }
+
     @Override
     public String buildFault(String code, String message) {
         return builder.buildFault(code, message, context);
@@ -33,6 +33,7 @@ import org.reficio.ws.SoapBuilderException;
 import org.reficio.ws.SoapContext;
 import org.reficio.ws.builder.SoapBuilder;
 import org.reficio.ws.builder.SoapBuilderFinder;
+import org.reficio.ws.legacy.SchemaTypeSystemCache;
 import org.reficio.ws.legacy.SoapLegacyFacade;
 
 /**
@@ -53,11 +54,30 @@ public final class Wsdl {
         }
     }
 
+    private Wsdl(final URL wsdlUrl, final SchemaTypeSystemCache schemaCache) {
+        try {
+            this.wsdlUrl = wsdlUrl;
+            this.soapFacade = new SoapLegacyFacade(wsdlUrl, schemaCache);
+        } catch (final WSDLException e) {
+            throw new SoapBuilderException(e);
+        }
+    }
+
     public static Wsdl parse(final URL wsdlUrl) {
         Preconditions.checkNotNull(wsdlUrl, "URL of the WSDL cannot be null");
         return new Wsdl(wsdlUrl);
     }
 
+    /**
+     * Parses the WSDL loading its compiled schema types from the given cache, the schemas are compiled and stored
+     * in the cache only if it does not hold them yet.
+     */
+    public static Wsdl parse(final URL wsdlUrl, final SchemaTypeSystemCache schemaCache) {
+        Preconditions.checkNotNull(wsdlUrl, "URL of the WSDL cannot be null");
+        Preconditions.checkNotNull(schemaCache, "Schema cache cannot be null");
+        return new Wsdl(wsdlUrl, schemaCache);
+    }
+
     public static Wsdl parse(final String wsdlUrl) {
         Preconditions.checkNotNull(wsdlUrl, "URL of the WSDL cannot be null");
         try {
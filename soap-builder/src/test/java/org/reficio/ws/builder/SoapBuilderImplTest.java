@@ -18,14 +18,32 @@
  */
 package org.reficio.ws.builder;
 
+import org.custommonkey.xmlunit.Diff;
 import org.junit.Test;
+import org.reficio.ws.SoapBuilderException;
+import org.reficio.ws.SoapContext;
+import org.reficio.ws.SoapMultiValuesProvider;
+import org.reficio.ws.builder.core.MessageTemplate;
+import org.reficio.ws.builder.core.MtomMessage;
 import org.reficio.ws.builder.core.Wsdl;
 import org.reficio.ws.common.ResourceUtils;
 
 import javax.wsdl.WSDLException;
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
 
 public class SoapBuilderImplTest {
 
@@ -38,4 +56,99 @@ public class SoapBuilderImplTest {
         }
     }
 
+    @Test
+    public void rendersCompiledMessageTemplate() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(1);
+        SoapBuilder builder = Wsdl.parse(wsdlUrl).binding().localPart("TestServiceSoap").find();
+        SoapOperation operation = builder.operation().name("GetPage").find();
+        String message = builder.buildOutputMessage(operation);
+        MessageTemplate template = builder.compileOutputMessage(operation);
+        assertTrue(template.getSlots().size() > 2);
+        assertTrue(new Diff(message, template.render(null)).identical());
+
+        SoapMultiValuesProvider values = new SoapMultiValuesProvider() {
+            @Override
+            public Set<String> getMultiValues(QName name) {
+                return "SID".equals(name.getLocalPart()) ? Collections.singleton("S-1-5 <admin>") : null;
+            }
+        };
+        String rendered = template.render(values);
+        assertTrue(rendered.contains("<v1:SID>S-1-5 &lt;admin&gt;</v1:SID>"));
+        assertFalse(new Diff(message, rendered).similar());
+        assertEquals(rendered, new String(template.renderBytes(values), "UTF-8"));
+
+        // multi-values are joined and an empty set is rendered empty, as by the generator
+        SoapMultiValuesProvider multiValues = new SoapMultiValuesProvider() {
+            @Override
+            public Set<String> getMultiValues(QName name) {
+                if ("SID".equals(name.getLocalPart())) {
+                    return new LinkedHashSet<String>(Arrays.asList("1", "2"));
+                }
+                return "Access".equals(name.getLocalPart()) ? Collections.<String>emptySet() : null;
+            }
+        };
+        rendered = template.render(multiValues);
+        assertTrue(rendered.contains("<v1:SID>1s2</v1:SID>"));
+        assertTrue(rendered.contains("<v1:Access></v1:Access>"));
+    }
+
+    @Test
+    public void streamsGeneratedMessages() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(1);
+        SoapBuilder builder = Wsdl.parse(wsdlUrl).binding().localPart("TestServiceSoap").find();
+        SoapOperation operation = builder.operation().name("GetPage").find();
+        SoapContext context = SoapContext.builder().exampleContent(false).build();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        builder.buildOutputMessage(operation, context, output);
+        assertTrue(new Diff(builder.buildOutputMessage(operation, context), output.toString("UTF-8")).similar());
+
+        StringWriter input = new StringWriter();
+        builder.buildInputMessage(operation, context, input);
+        assertTrue(new Diff(builder.buildInputMessage(operation, context), input.toString()).similar());
+    }
+
+    @Test
+    public void generatesSameBodyWithAndWithoutHeaders() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(1);
+        SoapBuilder builder = Wsdl.parse(wsdlUrl).binding().localPart("TestServiceSoap").find();
+        SoapOperation operation = builder.operation().name("GetPage").find();
+
+        String withHeaders = builder.buildInputMessage(operation, SoapContext.builder().build());
+        String withoutHeaders = builder.buildInputMessage(operation, SoapContext.builder().alwaysBuildHeaders(false).build());
+        assertTrue(withHeaders.contains("SignatureHeader"));
+        assertFalse(withoutHeaders.contains("SignatureHeader"));
+        // the header is generated after the body, the seeded sample values of the body do not depend on it
+        assertEquals(withoutHeaders.substring(withoutHeaders.indexOf(":Body>")), withHeaders.substring(withHeaders.indexOf(":Body>")));
+    }
+
+    @Test
+    public void buildsMtomMessageOfOperation() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(13);
+        SoapBuilder builder = Wsdl.parse(wsdlUrl).binding().localPart("PersonaServiceSOAPBinding").find();
+        SoapOperation operation = builder.operation().name("storePersona").find();
+        byte[] picture = new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xff};
+
+        MtomMessage message = builder.getOperationBuilder(operation).buildInputMessage(
+                Collections.<QName, InputStream>singletonMap(new QName("picture"), new ByteArrayInputStream(picture)));
+        assertEquals(1, message.getAttachments().size());
+        MtomMessage.Attachment attachment = message.getAttachments().get(0);
+        assertTrue(message.getEnvelope().contains("<picture>" + MtomMessage.include(attachment.getContentId()) + "</picture>"));
+        assertTrue(message.getContentType().contains("start-info=\"text/xml\""));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        message.writeTo(output);
+        String written = new String(output.toByteArray(), "ISO-8859-1");
+        assertTrue(written.contains("Content-ID: <" + attachment.getContentId() + ">\r\n\r\n" + new String(picture, "ISO-8859-1")));
+    }
+
+    @Test(expected = SoapBuilderException.class)
+    public void rejectsMtomAttachmentOfNonBinaryElement() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(13);
+        SoapBuilder builder = Wsdl.parse(wsdlUrl).binding().localPart("PersonaServiceSOAPBinding").find();
+        SoapOperation operation = builder.operation().name("storePersona").find();
+        builder.buildInputMessage(operation, builder.getContext(),
+                Collections.<QName, InputStream>singletonMap(new QName("email"), new ByteArrayInputStream(new byte[1])));
+    }
+
 }
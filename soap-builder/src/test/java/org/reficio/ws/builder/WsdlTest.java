@@ -24,13 +24,16 @@ import org.reficio.ws.SoapBuilderException;
 import org.reficio.ws.SoapContext;
 import org.reficio.ws.builder.core.Wsdl;
 import org.reficio.ws.common.ResourceUtils;
+import org.reficio.ws.legacy.SchemaTypeSystemCache;
 
 import javax.xml.namespace.QName;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 
 public class WsdlTest {
@@ -83,4 +86,30 @@ public class WsdlTest {
         assertEquals(context, builder.getContext());
     }
 
+    @Test
+    public void testParseWithSchemaCache() throws Exception {
+        URL wsdlUrl = ResourceUtils.getResourceWithAbsolutePackagePath("wsdl", "TestService.wsdl");
+        File directory = File.createTempFile("schema-cache", "");
+        assertTrue(directory.delete());
+        SchemaTypeSystemCache cache = new SchemaTypeSystemCache(directory);
+        SoapContext context = SoapContext.builder().exampleContent(false).build();
+        try {
+            SoapBuilder compiled = Wsdl.parse(wsdlUrl, cache).binding().localPart("TestServiceSoap").find();
+            assertEquals(1, directory.listFiles().length);
+
+            SoapBuilder cached = Wsdl.parse(wsdlUrl, cache).binding().localPart("TestServiceSoap").find();
+            SoapOperation operation = cached.operation().name("GetPage").find();
+            assertEquals(compiled.buildInputMessage(operation, context), cached.buildInputMessage(operation, context));
+            cached.validateInputMessage(operation, cached.buildInputMessage(operation));
+
+            cache.invalidate();
+            assertEquals(0, directory.listFiles().length);
+            // the loaded type system does not depend on the removed entry
+            assertEquals(compiled.buildOutputMessage(operation, context), cached.buildOutputMessage(operation, context));
+        } finally {
+            cache.invalidate();
+            assertTrue(directory.delete());
+        }
+    }
+
 }
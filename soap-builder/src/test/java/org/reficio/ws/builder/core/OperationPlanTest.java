@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.builder.core;
+
+import org.custommonkey.xmlunit.Diff;
+import org.junit.Test;
+import org.reficio.ws.SoapContext;
+import org.reficio.ws.builder.ServiceComplianceTest;
+import org.reficio.ws.builder.SoapOperation;
+import org.reficio.ws.builder.SoapOperationBuilder;
+import org.reficio.ws.legacy.OperationPlan;
+
+import java.net.URL;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class OperationPlanTest {
+
+    @Test
+    public void reusesOperationPlanAcrossHandles() throws Exception {
+        URL wsdlUrl = ServiceComplianceTest.getDefinitionUrl(1);
+        Wsdl wsdl = Wsdl.parse(wsdlUrl);
+        SoapBuilderImpl builder = (SoapBuilderImpl) wsdl.binding().localPart("TestServiceSoap").find();
+        SoapOperation operation = builder.operation().name("GetPage").find();
+        SoapOperationBuilder operationBuilder = builder.getOperationBuilder(operation);
+        SoapContext context = SoapContext.builder().exampleContent(false).build();
+
+        String request = builder.buildInputMessage(operation, context);
+        assertTrue(new Diff(request, operationBuilder.buildInputMessage(context)).similar());
+        assertTrue(new Diff(request, builder.buildInputMessage(operation, context)).similar());
+        assertFalse(operation.isInputSoapEncoded());
+
+        String sample = builder.buildInputMessage(operation);
+        builder.validateInputMessage(operation, sample);
+        operationBuilder.validateInputMessage(sample);
+
+        OperationPlan plan = builder.getOperationPlan(operation);
+        assertSame(plan, builder.getOperationPlan(operation));
+        assertSame(plan, builder.getOperationPlan(operationBuilder));
+        assertSame(plan, builder.getOperationPlan(builder.operation().name("GetPage").find()));
+        // the plans are kept by the facade, shared by all the builders of the wsdl
+        SoapBuilderImpl other = (SoapBuilderImpl) wsdl.binding().localPart("TestServiceSoap").find();
+        assertSame(plan, other.getOperationPlan(operation));
+        assertSame(plan, other.getOperationPlan(other.operation().name("GetPage").find()));
+    }
+
+}
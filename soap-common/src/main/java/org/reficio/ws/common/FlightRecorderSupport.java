@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.common;
+
+/**
+ * Checks whether the JDK Flight Recorder API (jdk.jfr) is present in the running JVM.<br/>
+ * Flight recorder events may be created only if it is available - classes extending jdk.jfr.Event cannot be loaded
+ * otherwise. The API is present in Java 8 since 8u262 and in every later version.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class FlightRecorderSupport {
+
+    private static final String EVENT_CLASS_NAME = "jdk.jfr.Event";
+    private static final boolean AVAILABLE = detect();
+
+    private FlightRecorderSupport() {
+    }
+
+    private static boolean detect() {
+        try {
+            Class.forName(EVENT_CLASS_NAME, false, FlightRecorderSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if flight recorder events may be created in the running JVM
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+}
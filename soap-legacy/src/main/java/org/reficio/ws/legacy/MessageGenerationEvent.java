@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.wsdl.BindingOperation;
+
+/**
+ * Flight recorder event emitted when a SOAP message of an operation is generated.<br/>
+ * It may be created only if the flight recorder is available, see FlightRecorderSupport.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+@Name("org.reficio.ws.MessageGeneration")
+@Label("SOAP Message Generation")
+@Category({"SOAP", "Builder"})
+@Description("Generation of a sample SOAP message of an operation")
+final class MessageGenerationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Message")
+    @Description("Message of the operation that is generated: input or output")
+    String message;
+
+    @Label("Payload Length")
+    @Description("Number of characters of the generated message, -1 if it has not been generated or has been streamed")
+    long payloadLength;
+
+    /**
+     * @return started event, null if the event is not enabled in any recording
+     */
+    static MessageGenerationEvent start(BindingOperation operation, String message) {
+        MessageGenerationEvent event = new MessageGenerationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation != null ? operation.getName() : null;
+        event.message = message;
+        event.begin();
+        return event;
+    }
+
+    void finish(String generatedMessage) {
+        finish(generatedMessage != null ? generatedMessage.length() : -1);
+    }
+
+    void finish(long generatedLength) {
+        end();
+        if (shouldCommit()) {
+            payloadLength = generatedLength;
+            commit();
+        }
+    }
+
+}
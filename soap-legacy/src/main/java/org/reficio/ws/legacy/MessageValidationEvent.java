@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.wsdl.BindingOperation;
+
+/**
+ * Flight recorder event emitted when a SOAP message of an operation is validated against the WSDL and the schema.<br/>
+ * It may be created only if the flight recorder is available, see FlightRecorderSupport.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+@Name("org.reficio.ws.MessageValidation")
+@Label("SOAP Message Validation")
+@Category({"SOAP", "Builder"})
+@Description("Validation of a SOAP message of an operation")
+final class MessageValidationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Message")
+    @Description("Message of the operation that is validated: input or output")
+    String message;
+
+    @Label("Payload Length")
+    @Description("Number of characters of the validated message")
+    long payloadLength;
+
+    @Label("Errors")
+    @Description("Number of validation errors")
+    int errors;
+
+    /**
+     * @return started event, null if the event is not enabled in any recording
+     */
+    static MessageValidationEvent start(BindingOperation operation, String message, String validatedMessage) {
+        MessageValidationEvent event = new MessageValidationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation != null ? operation.getName() : null;
+        event.message = message;
+        event.payloadLength = validatedMessage != null ? validatedMessage.length() : -1;
+        event.begin();
+        return event;
+    }
+
+    void finish(int errorCount) {
+        end();
+        if (shouldCommit()) {
+            errors = errorCount;
+            commit();
+        }
+    }
+
+}
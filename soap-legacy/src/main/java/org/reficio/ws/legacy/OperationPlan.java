@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import org.apache.log4j.Logger;
+import org.apache.xmlbeans.SchemaGlobalElement;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.SchemaTypeLoader;
+
+import javax.wsdl.Binding;
+import javax.wsdl.BindingInput;
+import javax.wsdl.BindingOperation;
+import javax.wsdl.BindingOutput;
+import javax.wsdl.Definition;
+import javax.wsdl.Message;
+import javax.wsdl.OperationType;
+import javax.wsdl.Part;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Operation with all its WSDL and schema metadata resolved upfront - the binding operation, the SOAP version, the
+ * style and the encoding, the body and the header parts of the messages and their schema types.
+ * The generation and the validation of the messages of a planned operation do not traverse the WSDL model nor look
+ * up the schema types again. A plan is immutable, so it may be shared by any number of threads.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class OperationPlan {
+
+    private final static Logger log = Logger.getLogger(OperationPlan.class);
+
+    private final Binding binding;
+    private final BindingOperation bindingOperation;
+    private final SoapVersion soapVersion;
+    private final boolean rpc;
+    private final boolean inputSoapEncoded;
+    private final boolean outputSoapEncoded;
+    private final boolean oneWay;
+    private final boolean schemaTypes;
+    private final MessagePlan input;
+    private final MessagePlan output;
+
+    OperationPlan(SoapMessageBuilder builder, Binding binding, BindingOperation bindingOperation) {
+        Definition definition = builder.getDefinition();
+        SchemaDefinitionWrapper definitionWrapper = builder.getSchemaDefinitionWrapper();
+        this.binding = binding;
+        this.bindingOperation = bindingOperation;
+        this.soapVersion = SoapMessageBuilder.getSoapVersion(binding);
+        this.rpc = WsdlUtils.isRpc(definition, bindingOperation);
+        this.inputSoapEncoded = WsdlUtils.isInputSoapEncoded(bindingOperation);
+        this.outputSoapEncoded = WsdlUtils.isOutputSoapEncoded(bindingOperation);
+        this.oneWay = bindingOperation.getOperation() != null
+                && OperationType.ONE_WAY.equals(bindingOperation.getOperation().getStyle());
+        this.schemaTypes = definitionWrapper.hasSchemaTypes();
+        SchemaTypeLoader loader = schemaTypes ? definitionWrapper.getSchemaTypeLoader() : null;
+
+        BindingInput bindingInput = bindingOperation.getBindingInput();
+        Part[] inputParts = WsdlUtils.getInputParts(bindingOperation);
+        boolean[] inputAttachments = new boolean[inputParts.length];
+        for (int i = 0; i < inputParts.length; i++) {
+            inputAttachments[i] = inputParts[i] != null && WsdlUtils.isAttachmentInputPart(inputParts[i], bindingOperation);
+        }
+        this.input = new MessagePlan(definition, loader, inputParts, inputAttachments,
+                bindingInput != null ? bindingInput.getExtensibilityElements() : null);
+
+        BindingOutput bindingOutput = bindingOperation.getBindingOutput();
+        Part[] outputParts = WsdlUtils.getOutputParts(bindingOperation);
+        boolean[] outputAttachments = new boolean[outputParts.length];
+        for (int i = 0; i < outputParts.length; i++) {
+            outputAttachments[i] = outputParts[i] != null && WsdlUtils.isAttachmentOutputPart(outputParts[i], bindingOperation);
+        }
+        this.output = new MessagePlan(definition, loader, outputParts, outputAttachments,
+                bindingOutput != null ? bindingOutput.getExtensibilityElements() : null);
+    }
+
+    public Binding getBinding() {
+        return binding;
+    }
+
+    public BindingOperation getBindingOperation() {
+        return bindingOperation;
+    }
+
+    public SoapVersion getSoapVersion() {
+        return soapVersion;
+    }
+
+    public boolean isRpc() {
+        return rpc;
+    }
+
+    public boolean isInputSoapEncoded() {
+        return inputSoapEncoded;
+    }
+
+    public boolean isOutputSoapEncoded() {
+        return outputSoapEncoded;
+    }
+
+    public boolean isOneWay() {
+        return oneWay;
+    }
+
+    public boolean hasSchemaTypes() {
+        return schemaTypes;
+    }
+
+    public MessagePlan getInput() {
+        return input;
+    }
+
+    public MessagePlan getOutput() {
+        return output;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OperationPlan[%s, %s, rpc=%s]", bindingOperation.getName(), soapVersion, rpc);
+    }
+
+    /**
+     * Resolved input or output message of the operation
+     */
+    public static final class MessagePlan {
+        private final List<PartPlan> parts;
+        private final List<PartPlan> headers;
+        private final boolean bound;
+        private final String bodyNamespace;
+
+        private MessagePlan(Definition definition, SchemaTypeLoader loader, Part[] parts, boolean[] attachments,
+                            List<?> extensibilityElements) {
+            List<PartPlan> partPlans = new ArrayList<PartPlan>(parts.length);
+            for (int i = 0; i < parts.length; i++) {
+                partPlans.add(new PartPlan(loader, parts[i], attachments[i]));
+            }
+            this.parts = Collections.unmodifiableList(partPlans);
+            this.bound = extensibilityElements != null;
+            List<PartPlan> headerPlans = new ArrayList<PartPlan>();
+            if (extensibilityElements != null) {
+                for (WsdlUtils.SoapHeader header : WsdlUtils.getSoapHeaders(extensibilityElements)) {
+                    Message message = definition.getMessage(header.getMessage());
+                    if (message == null) {
+                        log.error("Missing message for header: " + header.getMessage());
+                        continue;
+                    }
+                    Part part = message.getPart(header.getPart());
+                    if (part != null)
+                        headerPlans.add(new PartPlan(loader, part, false));
+                    else
+                        log.error("Missing part for header; " + header.getPart());
+                }
+            }
+            this.headers = Collections.unmodifiableList(headerPlans);
+            this.bodyNamespace = extensibilityElements != null ? WsdlUtils.getSoapBodyNamespace(extensibilityElements) : null;
+        }
+
+        /**
+         * @return parts of the SOAP body (and the attachment parts), some of them may be null if the binding refers to
+         *         parts missing in the message
+         */
+        public List<PartPlan> getParts() {
+            return parts;
+        }
+
+        /**
+         * @return resolved parts of the SOAP headers, the headers referring to missing messages or parts are skipped
+         */
+        public List<PartPlan> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return true if the binding operation contains the binding of the message
+         */
+        public boolean isBound() {
+            return bound;
+        }
+
+        /**
+         * @return namespace declared by the soap:body binding, null if it is not declared
+         */
+        public String getBodyNamespace() {
+            return bodyNamespace;
+        }
+    }
+
+    /**
+     * Part of a message with its schema global element and its schema type resolved
+     */
+    public static final class PartPlan {
+        private final Part part;
+        private final boolean attachment;
+        private final SchemaGlobalElement element;
+        private final SchemaType type;
+
+        private PartPlan(SchemaTypeLoader loader, Part part, boolean attachment) {
+            this.part = part;
+            this.attachment = attachment;
+            this.element = loader != null && part != null && part.getElementName() != null
+                    ? loader.findElement(part.getElementName()) : null;
+            this.type = loader != null && part != null && part.getTypeName() != null
+                    ? loader.findType(part.getTypeName()) : null;
+        }
+
+        /**
+         * @return the part, null if the binding refers to a part missing in the message
+         */
+        public Part getPart() {
+            return part;
+        }
+
+        public boolean isAttachment() {
+            return attachment;
+        }
+
+        /**
+         * @return global element of the part, null if the part is not an element part or it has not been found
+         */
+        public SchemaGlobalElement getElement() {
+            return element;
+        }
+
+        /**
+         * @return schema type of the part, null if the part is not a type part or it has not been found
+         */
+        public SchemaType getType() {
+            return type;
+        }
+    }
+
+}
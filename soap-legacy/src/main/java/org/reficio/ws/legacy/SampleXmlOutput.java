@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Output the sample messages are generated to. The generators write the message in the document order,
+ * so the output may be either an XmlBeans store (XmlCursorOutput) or a stream (XmlStreamOutput). Only the SOAP Header
+ * is inserted into the store after the Body, as it always has been, so that the seeded sample values do not change.
+ * The attributes and the namespaces of an element have to be written before its content.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+interface SampleXmlOutput {
+
+    /**
+     * @param name name of the element, an unqualified element if the namespace is empty
+     */
+    void startElement(QName name);
+
+    void endElement();
+
+    void namespace(String prefix, String namespaceUri);
+
+    void attribute(QName name, String value);
+
+    void characters(String text);
+
+    void comment(String text);
+
+    /**
+     * @return prefix bound to the namespace in the scope of the current element, the namespace is declared if needed
+     */
+    String prefixForNamespace(String namespaceUri);
+
+}
@@ -100,7 +100,7 @@ class SampleXmlUtil {
         cursor.toNextToken();
         // Using the type and the cursor, call the utility method to get a
         // sample XML payload for that Schema element
-        createSampleForType(sType, cursor);
+        createSampleForType(sType, new XmlCursorOutput(cursor));
         // Cursor now contains the sample payload
         // Pretty print the result. Note that the cursor is positioned at the
         // end of the doc so we use the original xml object that the cursor was
@@ -123,14 +123,18 @@ class SampleXmlUtil {
      * Cursor position Before: <theElement>^</theElement> After:
      * <theElement><lots of stuff/>^</theElement>
      */
-    public void createSampleForType(SchemaType stype, XmlCursor xmlc) {
+    /**
+     * Writes the sample of the type to the output, the output is positioned inside of the element of the type
+     * (its attributes may still be written)
+     */
+    void createSampleForType(SchemaType stype, SampleXmlOutput xmlc) {
         QName nm = stype.getName();
         if (nm == null && stype.getContainerField() != null)
             nm = stype.getContainerField().getName();
 
         if (nm != null && excludedTypes.contains(nm)) {
             if (!skipComments)
-                xmlc.insertComment("Ignoring type [" + nm + "]");
+                xmlc.comment("Ignoring type [" + nm + "]");
             return;
         }
 
@@ -160,11 +164,11 @@ class SampleXmlUtil {
                 }
                 break;
                 case SchemaType.MIXED_CONTENT:
-                    xmlc.insertChars(pick(WORDS) + " ");
+                    xmlc.characters(pick(WORDS) + " ");
                     if (stype.getContentModel() != null) {
                         processParticle(stype.getContentModel(), xmlc, true);
                     }
-                    xmlc.insertChars(pick(WORDS));
+                    xmlc.characters(pick(WORDS));
                     break;
                 case SchemaType.ELEMENT_CONTENT:
                     if (stype.getContentModel() != null) {
@@ -177,16 +181,16 @@ class SampleXmlUtil {
         }
     }
 
-    private void processSimpleType(SchemaType stype, XmlCursor xmlc) {
+    private void processSimpleType(SchemaType stype, SampleXmlOutput xmlc) {
         if (soapEnc) {
             QName typeName = stype.getName();
             if (typeName != null) {
-                xmlc.insertAttributeWithValue(XSI_TYPE, formatQName(xmlc, typeName));
+                xmlc.attribute(XSI_TYPE, formatQName(xmlc, typeName));
             }
         }
 
         String sample = sampleDataForSimpleType(stype);
-        xmlc.insertChars(sample);
+        xmlc.characters(sample);
     }
 
     private String sampleDataForSimpleType(SchemaType sType) {
@@ -899,7 +903,7 @@ class SampleXmlUtil {
      * Cursor position: Before this call: <outer><foo/>^</outer> (cursor at the
      * ^) After this call: <<outer><foo/><bar/>som text<etc/>^</outer>
      */
-    private void processParticle(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processParticle(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         int loop = determineMinMaxForSample(sp, xmlc);
 
         while (loop-- > 0) {
@@ -926,7 +930,7 @@ class SampleXmlUtil {
         }
     }
 
-    private int determineMinMaxForSample(SchemaParticle sp, XmlCursor xmlc) {
+    private int determineMinMaxForSample(SchemaParticle sp, SampleXmlOutput xmlc) {
         int minOccurs = sp.getIntMinOccurs();
         int maxOccurs = sp.getIntMaxOccurs();
 
@@ -952,13 +956,13 @@ class SampleXmlUtil {
                 // may
                 // be repeated " + minOccurs + " or more times");
                 if (minOccurs == 0)
-                    xmlc.insertComment("Zero or more repetitions:");
+                    xmlc.comment("Zero or more repetitions:");
                 else
-                    xmlc.insertComment(minOccurs + " or more repetitions:");
+                    xmlc.comment(minOccurs + " or more repetitions:");
             } else if (sp.getIntMaxOccurs() > 1) {
-                xmlc.insertComment(minOccurs + " to " + String.valueOf(sp.getMaxOccurs()) + " repetitions:");
+                xmlc.comment(minOccurs + " to " + String.valueOf(sp.getMaxOccurs()) + " repetitions:");
             } else {
-                xmlc.insertComment("Optional:");
+                xmlc.comment("Optional:");
             }
         }
 
@@ -970,7 +974,7 @@ class SampleXmlUtil {
       * for minoccurs, max occurs
       */
     @SuppressWarnings("unused")
-    private String getItemNameOrType(SchemaParticle sp, XmlCursor xmlc) {
+    private String getItemNameOrType(SchemaParticle sp, SampleXmlOutput xmlc) {
         String elementOrTypeName = null;
         if (sp.getParticleType() == SchemaParticle.ELEMENT) {
             elementOrTypeName = "Element (" + sp.getName().getLocalPart() + ")";
@@ -980,38 +984,36 @@ class SampleXmlUtil {
         return elementOrTypeName;
     }
 
-    private void processElement(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processElement(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         // cast as schema local element
         SchemaLocalElement element = (SchemaLocalElement) sp;
 
         // Add comment about type
         addElementTypeAndRestricionsComment(element, xmlc);
 
-        // / ^ -> <elemenname></elem>^
+        // / ^ -> <elem>^</elem>
         if (soapEnc)
-            xmlc.insertElement(element.getName().getLocalPart()); // test
+            xmlc.startElement(new QName(element.getName().getLocalPart())); // test
             // encoded?
             // drop
             // namespaces.
         else
-            xmlc.insertElement(element.getName().getLocalPart(), element.getName().getNamespaceURI());
-        // / -> <elem>^</elem>
+            xmlc.startElement(element.getName());
         // processAttributes( sp.getType(), xmlc );
 
-        xmlc.toPrevToken();
         // -> <elem>stuff^</elem>
 
         String[] values = null;
         if (multiValuesProvider != null)
             values = multiValuesProvider.getMultiValues(element.getName()).toArray(new String[]{});
         if (values != null)
-            xmlc.insertChars(StringUtils.join(values, "s"));
+            xmlc.characters(StringUtils.join(values, "s"));
         else if (sp.isDefault())
-            xmlc.insertChars(sp.getDefaultText());
+            xmlc.characters(sp.getDefaultText());
         else
             createSampleForType(element.getType(), xmlc);
         // -> <elem>stuff</elem>^
-        xmlc.toNextToken();
+        xmlc.endElement();
     }
 
     @SuppressWarnings("unused")
@@ -1025,11 +1027,8 @@ class SampleXmlUtil {
         }
     }
 
-    private static final String formatQName(XmlCursor xmlc, QName qName) {
-        XmlCursor parent = xmlc.newCursor();
-        parent.toParent();
-        String prefix = parent.prefixForNamespace(qName.getNamespaceURI());
-        parent.dispose();
+    private static final String formatQName(SampleXmlOutput xmlc, QName qName) {
+        String prefix = xmlc.prefixForNamespace(qName.getNamespaceURI());
         String name;
         if (prefix == null || prefix.length() == 0)
             name = qName.getLocalPart();
@@ -1047,11 +1046,11 @@ class SampleXmlUtil {
     public static final Set<QName> SKIPPED_SOAP_ATTRS = new HashSet<QName>(Arrays.asList(new QName[]{HREF, ID,
             ENC_OFFSET}));
 
-    private void processAttributes(SchemaType stype, XmlCursor xmlc) {
+    private void processAttributes(SchemaType stype, SampleXmlOutput xmlc) {
         if (soapEnc) {
             QName typeName = stype.getName();
             if (typeName != null) {
-                xmlc.insertAttributeWithValue(XSI_TYPE, formatQName(xmlc, typeName));
+                xmlc.attribute(XSI_TYPE, formatQName(xmlc, typeName));
             }
         }
 
@@ -1062,7 +1061,7 @@ class SampleXmlUtil {
                 continue;
 
             if (attr.getName().equals(new QName("http://www.w3.org/2005/05/xmlmime", "contentType"))) {
-                xmlc.insertAttributeWithValue(attr.getName(), "application/?");
+                xmlc.attribute(attr.getName(), "application/?");
                 continue;
             }
 
@@ -1073,7 +1072,7 @@ class SampleXmlUtil {
                     SOAPArrayType arrayType = ((SchemaWSDLArrayType) stype.getAttributeModel().getAttribute(
                             attr.getName())).getWSDLArrayType();
                     if (arrayType != null)
-                        xmlc.insertAttributeWithValue(attr.getName(),
+                        xmlc.attribute(attr.getName(),
                                 formatQName(xmlc, arrayType.getQName()) + arrayType.soap11DimensionString());
                     continue;
                 }
@@ -1090,46 +1089,46 @@ class SampleXmlUtil {
             if (value == null)
                 value = sampleDataForSimpleType(attr.getType());
 
-            xmlc.insertAttributeWithValue(attr.getName(), value);
+            xmlc.attribute(attr.getName(), value);
         }
     }
 
-    private void processSequence(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processSequence(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         SchemaParticle[] spc = sp.getParticleChildren();
         for (int i = 0; i < spc.length; i++) {
             // / <parent>maybestuff^</parent>
             processParticle(spc[i], xmlc, mixed);
             // <parent>maybestuff...morestuff^</parent>
             if (mixed && i < spc.length - 1)
-                xmlc.insertChars(pick(WORDS));
+                xmlc.characters(pick(WORDS));
         }
     }
 
-    private void processChoice(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processChoice(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         SchemaParticle[] spc = sp.getParticleChildren();
         if (!skipComments)
-            xmlc.insertComment("You have a CHOICE of the next " + String.valueOf(spc.length) + " items at this level");
+            xmlc.comment("You have a CHOICE of the next " + String.valueOf(spc.length) + " items at this level");
 
         for (int i = 0; i < spc.length; i++) {
             processParticle(spc[i], xmlc, mixed);
         }
     }
 
-    private void processAll(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processAll(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         SchemaParticle[] spc = sp.getParticleChildren();
         if (!skipComments)
-            xmlc.insertComment("You may enter the following " + String.valueOf(spc.length) + " items in any order");
+            xmlc.comment("You may enter the following " + String.valueOf(spc.length) + " items in any order");
 
         for (int i = 0; i < spc.length; i++) {
             processParticle(spc[i], xmlc, mixed);
             if (mixed && i < spc.length - 1)
-                xmlc.insertChars(pick(WORDS));
+                xmlc.characters(pick(WORDS));
         }
     }
 
-    private void processWildCard(SchemaParticle sp, XmlCursor xmlc, boolean mixed) {
+    private void processWildCard(SchemaParticle sp, SampleXmlOutput xmlc, boolean mixed) {
         if (!skipComments)
-            xmlc.insertComment("You may enter ANY elements at this point");
+            xmlc.comment("You may enter ANY elements at this point");
         // xmlc.insertElement("AnyElement");
     }
 
@@ -1174,7 +1173,7 @@ class SampleXmlUtil {
     }
 
 
-    private void addElementTypeAndRestricionsComment(SchemaLocalElement element, XmlCursor xmlc) {
+    private void addElementTypeAndRestricionsComment(SchemaLocalElement element, SampleXmlOutput xmlc) {
 
         SchemaType type = element.getType();
         if (typeComment && (type != null && type.isSimpleType())) {
@@ -1194,9 +1193,9 @@ class SampleXmlUtil {
             }
 
             if (type.isAnonymousType())
-                xmlc.insertComment("anonymous type" + info);
+                xmlc.comment("anonymous type" + info);
             else
-                xmlc.insertComment("type: " + type.getName().getLocalPart() + info);
+                xmlc.comment("type: " + type.getName().getLocalPart() + info);
         }
     }
 
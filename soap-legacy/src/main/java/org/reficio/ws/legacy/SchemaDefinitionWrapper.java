@@ -56,8 +56,12 @@ class SchemaDefinitionWrapper {
     private Definition definition;
 
     public SchemaDefinitionWrapper(Definition definition, String schemaURL) {
+        this(definition, schemaURL, null);
+    }
+
+    public SchemaDefinitionWrapper(Definition definition, String schemaURL, SchemaTypeSystemCache cache) {
         this.definition = definition;
-        loadSchemaTypes(new UrlSchemaLoader(schemaURL));
+        loadSchemaTypes(new UrlSchemaLoader(schemaURL), cache);
     }
 
     public SchemaTypeLoader getSchemaTypeLoader() {
@@ -94,7 +98,11 @@ class SchemaDefinitionWrapper {
     }
 
     public void loadSchemaTypes(DefinitionLoader loader) {
-        schemaTypes = SchemaUtils.loadSchemaTypes(loader.getBaseURI(), loader);
+        loadSchemaTypes(loader, null);
+    }
+
+    public void loadSchemaTypes(DefinitionLoader loader, SchemaTypeSystemCache cache) {
+        schemaTypes = SchemaUtils.loadSchemaTypes(loader.getBaseURI(), loader, cache);
         schemaTypeLoader = XmlBeans.typeLoaderUnion(new SchemaTypeLoader[]{schemaTypes,
                 XmlBeans.getBuiltinTypeSystem()});
     }
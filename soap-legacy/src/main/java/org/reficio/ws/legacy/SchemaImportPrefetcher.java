@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import org.apache.log4j.Logger;
+import org.apache.xmlbeans.SimpleValue;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.reficio.ws.SoapBuilderException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the documents of the import graph of a WSDL or of a schema - wsdl:import, xsd:import, xsd:include and
+ * the WADL grammar includes - concurrently, and serves them to the sequential resolution in SchemaUtils.getSchemas.
+ * <br/>
+ * Every url, normalized, is fetched once by a bounded pool of workers. A fetch running longer than the url timeout
+ * is abandoned and the loading of its url is aborted; the whole prefetch fails if it does not finish within the overall timeout, if the loader is aborted
+ * or if the calling thread is interrupted, aborting the urls that are still being loaded. A failed fetch is not
+ * reported upfront - its error is thrown only if the resolution actually needs the document - so the result is the
+ * one of loading the documents one by one, whatever the order in which the fetches complete.
+ * <br/>
+ * Configured by the system properties named after {@link WsdlSettings#SCHEMA_LOADING_THREADS} (8 by default, 0 to
+ * load the documents one by one), {@link WsdlSettings#SCHEMA_LOADING_URL_TIMEOUT} (1 minute by default) and
+ * {@link WsdlSettings#SCHEMA_LOADING_TIMEOUT} (10 minutes by default); timeouts are in milliseconds, 0 for none.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class SchemaImportPrefetcher implements SchemaLoader {
+
+    private final static Logger log = Logger.getLogger(SchemaImportPrefetcher.class);
+
+    static final int DEFAULT_THREADS = 8;
+    static final long DEFAULT_URL_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final SchemaLoader loader;
+    private final int threads;
+    private final long urlTimeoutMillis;
+    private final long timeoutMillis;
+    // normalized url -> fetch, accessed by the calling thread only
+    private final Map<String, Fetch> fetches = new HashMap<String, Fetch>();
+
+    SchemaImportPrefetcher(SchemaLoader loader, int threads, long urlTimeoutMillis, long timeoutMillis) {
+        if (threads <= 0) {
+            throw new SoapBuilderException("Number of threads has to be positive");
+        }
+        this.loader = loader;
+        this.threads = threads;
+        this.urlTimeoutMillis = urlTimeoutMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return loader serving the prefetched import graph of the url, or the given loader if the prefetch is disabled
+     */
+    static SchemaLoader prefetch(String url, SchemaLoader loader) {
+        int threads = Integer.getInteger(WsdlSettings.SCHEMA_LOADING_THREADS, DEFAULT_THREADS);
+        if (threads <= 0) {
+            return loader;
+        }
+        long timeout = Long.getLong(WsdlSettings.SCHEMA_LOADING_TIMEOUT, DEFAULT_TIMEOUT);
+        SchemaImportPrefetcher prefetcher = new SchemaImportPrefetcher(loader, threads, urlTimeoutFromSettings(), timeout);
+        prefetcher.prefetch(url);
+        return prefetcher;
+    }
+
+    static long urlTimeoutFromSettings() {
+        return Long.getLong(WsdlSettings.SCHEMA_LOADING_URL_TIMEOUT, DEFAULT_URL_TIMEOUT);
+    }
+
+    void prefetch(String rootUrl) {
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "soap-ws-schema-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<Fetch> completion = new ExecutorCompletionService<Fetch>(executor);
+        Map<Future<Fetch>, Fetch> running = new HashMap<Future<Fetch>, Fetch>();
+        try {
+            submit(rootUrl, completion, running);
+            while (!running.isEmpty()) {
+                checkAborted(rootUrl);
+                long now = System.nanoTime();
+                if (timeoutMillis > 0 && now - started >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                    throw new SoapBuilderException("Loading of the schemas of [" + rootUrl + "] did not finish within "
+                            + timeoutMillis + " ms");
+                }
+                Future<Fetch> done = completion.poll(nextWakeUp(started, running.values(), now), TimeUnit.NANOSECONDS);
+                if (done != null) {
+                    Fetch fetch = running.remove(done);
+                    // fetches abandoned after their timeout are not followed any more
+                    if (fetch != null) {
+                        for (String location : fetch.getImports()) {
+                            submit(location, completion, running);
+                        }
+                    }
+                }
+                abandonExpired(running);
+            }
+            log.debug("Fetched " + fetches.size() + " documents of [" + rootUrl + "] in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoapBuilderException("Loading of the schemas of [" + rootUrl + "] has been interrupted", e);
+        } finally {
+            if (!running.isEmpty() && loader instanceof DefinitionLoader) {
+                ((DefinitionLoader) loader).abort();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    public XmlObject loadXmlObject(String wsdlUrl, XmlOptions options) throws Exception {
+        Fetch fetch = fetches.get(normalize(wsdlUrl));
+        if (fetch == null) {
+            return loader.loadXmlObject(wsdlUrl, options);
+        }
+        return fetch.getDocument();
+    }
+
+    public String getBaseURI() {
+        return loader.getBaseURI();
+    }
+
+    private void submit(String url, CompletionService<Fetch> completion, Map<Future<Fetch>, Fetch> running) {
+        String key = normalize(url);
+        if (fetches.containsKey(key)) {
+            return;
+        }
+        final Fetch fetch = new Fetch(url);
+        fetches.put(key, fetch);
+        Future<Fetch> future = completion.submit(new Callable<Fetch>() {
+            @Override
+            public Fetch call() {
+                fetch.start();
+                try {
+                    XmlObject document = loader.loadXmlObject(fetch.url,
+                            SchemaUtils.createSchemaLoadOptions(new ArrayList<Object>()));
+                    fetch.complete(document, document != null ? findImports(fetch.url, document) : new ArrayList<String>());
+                } catch (Exception e) {
+                    fetch.fail(e);
+                }
+                return fetch;
+            }
+        });
+        running.put(future, fetch);
+    }
+
+    private long nextWakeUp(long started, Collection<Fetch> running, long now) {
+        long wakeUp = Long.MAX_VALUE;
+        if (timeoutMillis > 0) {
+            wakeUp = started + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - now;
+        }
+        if (urlTimeoutMillis > 0) {
+            long urlTimeout = TimeUnit.MILLISECONDS.toNanos(urlTimeoutMillis);
+            for (Fetch fetch : running) {
+                long fetchStarted = fetch.getStarted();
+                // fetches still waiting for a worker are checked again after a full url timeout at the latest
+                wakeUp = Math.min(wakeUp, fetchStarted != 0 ? fetchStarted + urlTimeout - now : urlTimeout);
+            }
+        }
+        return Math.max(wakeUp, 0);
+    }
+
+    private void abandonExpired(Map<Future<Fetch>, Fetch> running) {
+        if (urlTimeoutMillis <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<Future<Fetch>> expired = new ArrayList<Future<Fetch>>();
+        for (Map.Entry<Future<Fetch>, Fetch> entry : running.entrySet()) {
+            long fetchStarted = entry.getValue().getStarted();
+            if (fetchStarted != 0 && now - fetchStarted >= TimeUnit.MILLISECONDS.toNanos(urlTimeoutMillis)) {
+                expired.add(entry.getKey());
+            }
+        }
+        for (Future<Fetch> future : expired) {
+            Fetch fetch = running.remove(future);
+            fetch.fail(new SoapBuilderException("Loading of [" + fetch.url + "] did not finish within "
+                    + urlTimeoutMillis + " ms"));
+            future.cancel(true);
+            // the interrupt does not unblock a read of the url connection
+            if (loader instanceof UrlSchemaLoader) {
+                ((UrlSchemaLoader) loader).abort(fetch.url);
+            }
+            log.warn("Abandoned loading of [" + fetch.url + "] after " + urlTimeoutMillis + " ms");
+        }
+    }
+
+    private void checkAborted(String rootUrl) {
+        if (loader instanceof DefinitionLoader && ((DefinitionLoader) loader).isAborted()) {
+            throw new SoapBuilderException("Loading of the schemas of [" + rootUrl + "] has been aborted");
+        }
+    }
+
+    // follows the same imports as SchemaUtils.getSchemas does
+    private static List<String> findImports(String url, XmlObject document) {
+        List<String> imports = new ArrayList<String>();
+        Node root = ((Document) document.getDomNode()).getDocumentElement();
+        if (!("schema".equals(root.getLocalName()) && Constants.XSD_NS.equals(root.getNamespaceURI()))) {
+            addLocations(url, document.selectPath("declare namespace s='" + Constants.WSDL11_NS
+                    + "' .//s:import/@location"), imports);
+            addLocations(url, document.selectPath("declare namespace s='" + Constants.WADL10_NS
+                    + "' .//s:grammars/s:include/@href"), imports);
+            addLocations(url, document.selectPath("declare namespace s='" + Constants.WADL11_NS
+                    + "' .//s:grammars/s:include/@href"), imports);
+        }
+        List<XmlObject> schemaImports = new ArrayList<XmlObject>();
+        for (XmlObject schemaImport : document.selectPath("declare namespace s='" + Constants.XSD_NS
+                + "' .//s:import/@schemaLocation")) {
+            String namespace = ((Attr) schemaImport.getDomNode()).getOwnerElement().getAttribute("namespace");
+            if (!SchemaUtils.isDefaultSchemaNamespace(namespace)) {
+                schemaImports.add(schemaImport);
+            }
+        }
+        addLocations(url, schemaImports.toArray(new XmlObject[schemaImports.size()]), imports);
+        addLocations(url, document.selectPath("declare namespace s='" + Constants.XSD_NS
+                + "' .//s:include/@schemaLocation"), imports);
+        return imports;
+    }
+
+    private static void addLocations(String url, XmlObject[] attributes, List<String> imports) {
+        for (XmlObject attribute : attributes) {
+            String location = ((SimpleValue) attribute).getStringValue();
+            if (location != null) {
+                imports.add(SchemaUtils.resolveLocation(url, location));
+            }
+        }
+    }
+
+    private static String normalize(String url) {
+        try {
+            return new URI(url).normalize().toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Outcome of loading of a single url, completed by a worker or failed by the calling thread on timeout
+     */
+    private static final class Fetch {
+        private final String url;
+        private volatile long started;
+        private XmlObject document;
+        private List<String> imports = new ArrayList<String>();
+        private Exception error;
+        private boolean done;
+
+        private Fetch(String url) {
+            this.url = url;
+        }
+
+        private void start() {
+            started = System.nanoTime();
+        }
+
+        private long getStarted() {
+            return started;
+        }
+
+        private synchronized void complete(XmlObject document, List<String> imports) {
+            if (!done) {
+                this.document = document;
+                this.imports = imports;
+                this.done = true;
+            }
+        }
+
+        private synchronized void fail(Exception error) {
+            if (!done) {
+                this.error = error;
+                this.done = true;
+            }
+        }
+
+        private synchronized List<String> getImports() {
+            return imports;
+        }
+
+        // the resolution modifies the documents it loads, so every caller gets its own copy
+        private synchronized XmlObject getDocument() throws Exception {
+            if (error != null) {
+                throw error;
+            }
+            if (document == null) {
+                return null;
+            }
+            XmlObject copy = document.copy();
+            copy.documentProperties().setSourceName(document.documentProperties().getSourceName());
+            return copy;
+        }
+    }
+
+}
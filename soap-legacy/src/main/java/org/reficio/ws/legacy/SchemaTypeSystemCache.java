@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.apache.xmlbeans.Filer;
+import org.apache.xmlbeans.ResourceLoader;
+import org.apache.xmlbeans.SchemaTypeSystem;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.impl.schema.SchemaTypeSystemImpl;
+import org.reficio.ws.SoapBuilderException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Persistent cache of compiled XmlBeans schema type systems.
+ * <br/>
+ * Every entry is a single archive named after the content hash of the schema documents the type system was compiled
+ * from (including the bundled default schemas), the compile options and the XmlBeans version. It holds the .xsb
+ * files of the type system and a descriptor with its name. Entries are written to a temporary file first and
+ * published by an atomic rename, so concurrent writers - in the same or in different processes - never expose a
+ * partial entry to readers. An entry is read into memory when it is loaded and the archive is closed right away - the
+ * components of the type system are still resolved lazily, from the in-memory copy - so no archive is ever kept open
+ * and removing an entry does not affect the type systems already loaded from it, whatever the platform. Entries that
+ * cannot be read are discarded and the schemas are compiled again.
+ * <br/>
+ * The cache used by default is configured by the system properties named after {@link WsdlSettings#CACHE_WSDLS}
+ * ("true" to enable it) and {@link WsdlSettings#SCHEMA_DIRECTORY} (the cache directory, by default a
+ * soap-ws-schema-cache folder in java.io.tmpdir).
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class SchemaTypeSystemCache {
+
+    private final static Logger log = Logger.getLogger(SchemaTypeSystemCache.class);
+
+    // bump whenever the compile options in SchemaUtils.buildSchemaTypes or the layout of the entries change
+    private static final String FORMAT = "1;noValidation;noPvr;noUpa;downloadUrls;laxAsSkip;mdef="
+            + !SchemaUtils.STRICT_SCHEMA_TYPES;
+    private static final String DESCRIPTOR = "typesystem.properties";
+    private static final String NAME = "name";
+    private static final String KEY = "key";
+    private static final String ENTRY_SUFFIX = ".zip";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    public SchemaTypeSystemCache(File directory) {
+        if (directory == null) {
+            throw new SoapBuilderException("Schema cache directory cannot be null");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * @return cache configured by the system properties, null if caching is not enabled
+     */
+    static SchemaTypeSystemCache fromSettings() {
+        if (!Boolean.parseBoolean(System.getProperty(WsdlSettings.CACHE_WSDLS))) {
+            return null;
+        }
+        String path = System.getProperty(WsdlSettings.SCHEMA_DIRECTORY);
+        File directory = StringUtils.isNotBlank(path) ? new File(path)
+                : new File(System.getProperty("java.io.tmpdir"), "soap-ws-schema-cache");
+        return new SchemaTypeSystemCache(directory);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Computes the key of the type system compiled from the given schemas and the default schemas.
+     * Must be called before the schemas are modified by the compilation.
+     */
+    static String key(Collection<XmlObject> schemas, Collection<XmlObject> defaultSchemas) {
+        List<String> digests = new ArrayList<String>();
+        for (XmlObject schema : schemas) {
+            if (schema != null) {
+                digests.add(digest(schema.xmlText()));
+            }
+        }
+        for (XmlObject schema : defaultSchemas) {
+            digests.add(digest(schema.xmlText()));
+        }
+        // the compiled type system does not depend on the order in which the schemas were collected
+        Collections.sort(digests);
+        StringBuilder content = new StringBuilder(FORMAT).append(';').append(XmlBeans.getVersion());
+        for (String digest : digests) {
+            content.append(';').append(digest);
+        }
+        return digest(content.toString());
+    }
+
+    /**
+     * @return type system stored under the given key, null if there is no usable entry
+     */
+    SchemaTypeSystem load(String key) {
+        File entry = new File(directory, key + ENTRY_SUFFIX);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            ResourceLoader resources = MemoryResourceLoader.read(entry);
+            Properties descriptor = readDescriptor(resources);
+            String name = descriptor.getProperty(NAME);
+            if (name == null || !key.equals(descriptor.getProperty(KEY))) {
+                throw new IOException("Invalid descriptor " + descriptor);
+            }
+            // the components of the type system are loaded on first use
+            SchemaTypeSystem schemaTypes = new SchemaTypeSystemImpl(resources, name, XmlBeans.getBuiltinTypeSystem());
+            log.debug("Loaded schema types [" + name + "] from [" + entry + "]");
+            return schemaTypes;
+        } catch (Exception e) {
+            log.warn("Discarding unreadable schema cache entry [" + entry + "]", e);
+            FileUtils.deleteQuietly(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the type system under the given key unless it is already there. Failures are logged, they never fail
+     * the caller.
+     */
+    void store(String key, SchemaTypeSystem schemaTypes) {
+        File entry = new File(directory, key + ENTRY_SUFFIX);
+        if (entry.isFile()) {
+            return;
+        }
+        File temp = new File(directory, key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(directory.toPath());
+            ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())));
+            try {
+                out.setLevel(Deflater.BEST_SPEED);
+                Properties descriptor = new Properties();
+                descriptor.setProperty(NAME, schemaTypes.getName());
+                descriptor.setProperty(KEY, key);
+                out.putNextEntry(new ZipEntry(DESCRIPTOR));
+                descriptor.store(out, null);
+                out.closeEntry();
+                schemaTypes.save(new ZipFiler(out));
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Stored schema types [" + schemaTypes.getName() + "] in [" + entry + "]");
+        } catch (Exception e) {
+            log.warn("Failed to store schema types in [" + entry + "]", e);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Removes all the entries of the cache. Type systems that have already been loaded are not affected.
+     */
+    public void invalidate() {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.getName().endsWith(ENTRY_SUFFIX)) {
+                FileUtils.deleteQuietly(entry);
+            }
+        }
+    }
+
+    private static Properties readDescriptor(ResourceLoader resources) throws IOException {
+        InputStream in = resources.getResourceAsStream(DESCRIPTOR);
+        if (in == null) {
+            throw new IOException("Missing " + DESCRIPTOR);
+        }
+        Properties descriptor = new Properties();
+        try {
+            descriptor.load(in);
+        } finally {
+            in.close();
+        }
+        return descriptor;
+    }
+
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(UTF_8));
+            StringBuilder result = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new SoapBuilderException(e);
+        }
+    }
+
+    /**
+     * Serves the files of an archive read into memory, so that the archive does not stay open
+     */
+    private static final class MemoryResourceLoader implements ResourceLoader {
+        private final Map<String, byte[]> resources;
+
+        private MemoryResourceLoader(Map<String, byte[]> resources) {
+            this.resources = resources;
+        }
+
+        private static MemoryResourceLoader read(File archive) throws IOException {
+            Map<String, byte[]> resources = new HashMap<String, byte[]>();
+            ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive.toPath())));
+            try {
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    if (!entry.isDirectory()) {
+                        resources.put(entry.getName(), IOUtils.toByteArray(in));
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            return new MemoryResourceLoader(resources);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            byte[] resource = resources.get(name);
+            return resource != null ? new ByteArrayInputStream(resource) : null;
+        }
+
+        @Override
+        public void close() {
+            // nothing is kept open
+        }
+    }
+
+    /**
+     * Writes every binary file of the type system as an entry of the archive
+     */
+    private static final class ZipFiler implements Filer {
+        private final ZipOutputStream out;
+
+        private ZipFiler(ZipOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public OutputStream createBinaryFile(String name) throws IOException {
+            out.putNextEntry(new ZipEntry(name));
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    ((ZipOutputStream) out).closeEntry();
+                }
+            };
+        }
+
+        @Override
+        public Writer createSourceFile(String name) throws IOException {
+            throw new IOException("Source files are not stored [" + name + "]");
+        }
+    }
+
+}
@@ -107,10 +107,28 @@ class SchemaUtils {
     }
 
     public static SchemaTypeSystem loadSchemaTypes(String wsdlUrl, SchemaLoader loader) {
+        return loadSchemaTypes(wsdlUrl, loader, null);
+    }
+
+    /**
+     * Loads the schema types of the wsdl; if a cache is given the type system is compiled only if the cache does not
+     * hold one compiled from the same schemas yet.
+     */
+    public static SchemaTypeSystem loadSchemaTypes(String wsdlUrl, SchemaLoader loader, SchemaTypeSystemCache cache) {
         try {
             log.debug("Loading schema types from [" + wsdlUrl + "]");
             ArrayList<XmlObject> schemas = new ArrayList<XmlObject>(getSchemas(wsdlUrl, loader).values());
-            return buildSchemaTypes(schemas);
+            if (cache == null) {
+                return buildSchemaTypes(schemas);
+            }
+            // the key has to be computed before the compilation removes the imports from the schemas
+            String key = SchemaTypeSystemCache.key(schemas, defaultSchemas.values());
+            SchemaTypeSystem schemaTypes = cache.load(key);
+            if (schemaTypes == null) {
+                schemaTypes = buildSchemaTypes(schemas);
+                cache.store(key, schemaTypes);
+            }
+            return schemaTypes;
         } catch (Exception e) {
             throw new SoapBuilderException(e);
         }
@@ -213,12 +231,41 @@ class SchemaUtils {
         return ((Document) s.getDomNode()).getDocumentElement().getAttribute("targetNamespace");
     }
 
+    /**
+     * Returns a map mapping urls to corresponding XmlSchema XmlObjects for the
+     * specified wsdlUrl. The documents of the import graph are fetched concurrently
+     * upfront, as configured by SchemaImportPrefetcher, and then resolved in the
+     * same order as if they were loaded one by one, so the result does not depend
+     * on the order in which the fetches complete.
+     */
     public static Map<String, XmlObject> getSchemas(String wsdlUrl, SchemaLoader loader) {
         Map<String, XmlObject> result = new HashMap<String, XmlObject>();
-        getSchemas(wsdlUrl, result, loader, null /* , false */);
+        getSchemas(wsdlUrl, result, SchemaImportPrefetcher.prefetch(wsdlUrl, loader), null /* , false */);
         return result;
     }
 
+    static XmlOptions createSchemaLoadOptions(List<?> errorList) {
+        XmlOptions options = new XmlOptions();
+        options.setCompileNoValidation();
+        options.setSaveUseOpenFrag();
+        options.setErrorListener(errorList);
+        options.setSaveSyntheticDocumentElement(new QName(Constants.XSD_NS, "schema"));
+        return options;
+    }
+
+    static boolean isDefaultSchemaNamespace(String namespace) {
+        return defaultSchemas.containsKey(namespace);
+    }
+
+    /**
+     * Resolves the location of an import against the url of the importing document
+     */
+    static String resolveLocation(String baseUrl, String location) {
+        if (!location.startsWith("file:") && location.indexOf("://") == -1)
+            return joinRelativeUrl(baseUrl, location);
+        return location;
+    }
+
     /**
      * Returns a map mapping urls to corresponding XmlSchema XmlObjects for the
      * specified wsdlUrl
@@ -237,11 +284,7 @@ class SchemaUtils {
         boolean common = false;
 
         try {
-            XmlOptions options = new XmlOptions();
-            options.setCompileNoValidation();
-            options.setSaveUseOpenFrag();
-            options.setErrorListener(errorList);
-            options.setSaveSyntheticDocumentElement(new QName(Constants.XSD_NS, "schema"));
+            XmlOptions options = createSchemaLoadOptions(errorList);
 
             XmlObject xmlObject = loader.loadXmlObject(wsdlUrl, options);
             if (xmlObject == null)
@@ -21,17 +21,25 @@ package org.reficio.ws.legacy;
 import org.reficio.ws.SoapBuilderException;
 import org.reficio.ws.SoapContext;
 import org.reficio.ws.SoapValidationException;
+import org.reficio.ws.common.FlightRecorderSupport;
 
 import javax.wsdl.*;
 import javax.wsdl.extensions.soap.SOAPBinding;
 import javax.wsdl.extensions.soap12.SOAP12Binding;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * The WSDL and schema metadata of the operations are resolved once into OperationPlans, kept by the facade.
+ * The compiled schema types of the WSDL may be kept across runs in a SchemaTypeSystemCache.
+ * If the flight recorder is available the generation and the validation of messages emit flight recorder events.
+ *
  * @author Tom Bujok
  * @since 1.0.0
  */
@@ -40,45 +48,163 @@ public class SoapLegacyFacade {
     public static enum Soap {SOAP_1_1, SOAP_1_2}
 
     private static final String RPC = "rpc";
+    private static final String INPUT = "input";
+    private static final String OUTPUT = "output";
 
     private SoapMessageBuilder messageBuilder;
+    private final ConcurrentMap<BindingOperation, OperationPlan> plans = new ConcurrentHashMap<BindingOperation, OperationPlan>();
 
     public SoapLegacyFacade(URL wsdlUrl) throws WSDLException {
         this.messageBuilder = new SoapMessageBuilder(wsdlUrl);
     }
 
+    /**
+     * @param schemaCache cache of the compiled schema types of the wsdl, null to always compile them
+     */
+    public SoapLegacyFacade(URL wsdlUrl, SchemaTypeSystemCache schemaCache) throws WSDLException {
+        this.messageBuilder = new SoapMessageBuilder(wsdlUrl, schemaCache);
+    }
+
+    /**
+     * @return plan of the operation with its WSDL and schema metadata resolved, computed on the first call and kept
+     *         afterwards
+     */
+    public OperationPlan getOperationPlan(Binding binding, BindingOperation bindingOperation) {
+        OperationPlan plan = plans.get(bindingOperation);
+        if (plan == null || plan.getBinding() != binding) {
+            plan = messageBuilder.createOperationPlan(binding, bindingOperation);
+            plans.put(bindingOperation, plan);
+        }
+        return plan;
+    }
+
     public String buildSoapMessageFromInput(Binding binding, BindingOperation bindingOperation, SoapContext context) {
+        return buildSoapMessageFromInput(getOperationPlan(binding, bindingOperation), context);
+    }
+
+    public String buildSoapMessageFromInput(OperationPlan plan, SoapContext context) {
+        MessageGenerationEvent event = startGeneration(plan.getBindingOperation(), INPUT);
+        String message = null;
         try {
-            return messageBuilder.buildSoapMessageFromInput(binding, bindingOperation, context);
+            message = messageBuilder.buildSoapMessageFromInput(plan, context);
+            return message;
         } catch (Exception e) {
             throw new SoapBuilderException(e);
+        } finally {
+            if (event != null) {
+                event.finish(message);
+            }
         }
     }
 
     public String buildSoapMessageFromOutput(Binding binding, BindingOperation bindingOperation, SoapContext context) {
+        return buildSoapMessageFromOutput(getOperationPlan(binding, bindingOperation), context);
+    }
+
+    public String buildSoapMessageFromOutput(OperationPlan plan, SoapContext context) {
+        MessageGenerationEvent event = startGeneration(plan.getBindingOperation(), OUTPUT);
+        String message = null;
+        try {
+            message = messageBuilder.buildSoapMessageFromOutput(plan, context);
+            return message;
+        } catch (Exception e) {
+            throw new SoapBuilderException(e);
+        } finally {
+            if (event != null) {
+                event.finish(message);
+            }
+        }
+    }
+
+    /**
+     * Writes the input message to the writer as it is generated, the writer is flushed but not closed
+     */
+    public void buildSoapMessageFromInput(Binding binding, BindingOperation bindingOperation, SoapContext context,
+                                          XMLStreamWriter writer) {
+        buildSoapMessageFromInput(getOperationPlan(binding, bindingOperation), context, writer);
+    }
+
+    /**
+     * Writes the input message to the writer as it is generated, the writer is flushed but not closed
+     */
+    public void buildSoapMessageFromInput(OperationPlan plan, SoapContext context, XMLStreamWriter writer) {
+        MessageGenerationEvent event = startGeneration(plan.getBindingOperation(), INPUT);
+        try {
+            messageBuilder.buildSoapMessageFromInput(plan, context, writer);
+        } catch (Exception e) {
+            throw new SoapBuilderException(e);
+        } finally {
+            if (event != null) {
+                event.finish(-1);
+            }
+        }
+    }
+
+    /**
+     * Writes the output message to the writer as it is generated, the writer is flushed but not closed
+     */
+    public void buildSoapMessageFromOutput(Binding binding, BindingOperation bindingOperation, SoapContext context,
+                                           XMLStreamWriter writer) {
+        buildSoapMessageFromOutput(getOperationPlan(binding, bindingOperation), context, writer);
+    }
+
+    /**
+     * Writes the output message to the writer as it is generated, the writer is flushed but not closed
+     */
+    public void buildSoapMessageFromOutput(OperationPlan plan, SoapContext context, XMLStreamWriter writer) {
+        MessageGenerationEvent event = startGeneration(plan.getBindingOperation(), OUTPUT);
         try {
-            return messageBuilder.buildSoapMessageFromOutput(binding, bindingOperation, context);
+            messageBuilder.buildSoapMessageFromOutput(plan, context, writer);
         } catch (Exception e) {
             throw new SoapBuilderException(e);
+        } finally {
+            if (event != null) {
+                event.finish(-1);
+            }
         }
     }
 
     public void validateSoapRequestMessage(Binding binding, BindingOperation operation, String message, boolean strict) {
-        WsdlValidator validator = new WsdlValidator(messageBuilder, binding);
-        List<AssertionError> result = validator.assertRequest(operation, message, strict);
+        validateSoapRequestMessage(getOperationPlan(binding, operation), message, strict);
+    }
+
+    public void validateSoapRequestMessage(OperationPlan plan, String message, boolean strict) {
+        MessageValidationEvent event = startValidation(plan.getBindingOperation(), INPUT, message);
+        WsdlValidator validator = new WsdlValidator(messageBuilder, plan);
+        List<AssertionError> result = validator.assertRequest(message, strict);
+        if (event != null) {
+            event.finish(result.size());
+        }
         if (!result.isEmpty()) {
             throw new SoapValidationException(result);
         }
     }
 
     public void validateSoapResponseMessage(Binding binding, BindingOperation operation, String message, boolean strict) {
-        WsdlValidator validator = new WsdlValidator(messageBuilder, binding);
-        List<AssertionError> result = validator.assertResponse(operation, message, strict);
+        validateSoapResponseMessage(getOperationPlan(binding, operation), message, strict);
+    }
+
+    public void validateSoapResponseMessage(OperationPlan plan, String message, boolean strict) {
+        MessageValidationEvent event = startValidation(plan.getBindingOperation(), OUTPUT, message);
+        WsdlValidator validator = new WsdlValidator(messageBuilder, plan);
+        List<AssertionError> result = validator.assertResponse(message, strict);
+        if (event != null) {
+            event.finish(result.size());
+        }
         if (!result.isEmpty()) {
             throw new SoapValidationException(result);
         }
     }
 
+    // the event classes may be loaded only if the flight recorder is available
+    private static MessageGenerationEvent startGeneration(BindingOperation operation, String message) {
+        return FlightRecorderSupport.isAvailable() ? MessageGenerationEvent.start(operation, message) : null;
+    }
+
+    private static MessageValidationEvent startValidation(BindingOperation operation, String message, String validatedMessage) {
+        return FlightRecorderSupport.isAvailable() ? MessageValidationEvent.start(operation, message, validatedMessage) : null;
+    }
+
     public String buildFault(String code, String message, Binding binding, SoapContext context) {
         return messageBuilder.buildFault(code, message, binding, context);
     }
@@ -159,6 +285,13 @@ public class SoapLegacyFacade {
         return false;
     }
 
+    /**
+     * @return content type of the SOAP version of the binding - text/xml (SOAP 1.1) or application/soap+xml (SOAP 1.2)
+     */
+    public static String getSoapContentType(Binding binding) {
+        return SoapMessageBuilder.getSoapVersion(binding).getContentType();
+    }
+
     public static String getSoapEndpoint(Port port) {
         return WsdlUtils.getSoapEndpoint(port);
     }
@@ -26,17 +26,15 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import javax.wsdl.Binding;
-import javax.wsdl.BindingInput;
 import javax.wsdl.BindingOperation;
-import javax.wsdl.BindingOutput;
 import javax.wsdl.Definition;
-import javax.wsdl.Message;
 import javax.wsdl.Part;
 import javax.wsdl.WSDLException;
 import javax.wsdl.extensions.soap.SOAPBinding;
 import javax.wsdl.extensions.soap12.SOAP12Binding;
 import javax.wsdl.xml.WSDLReader;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
 import org.apache.log4j.Logger;
 import org.apache.xmlbeans.SchemaGlobalElement;
 import org.apache.xmlbeans.SchemaType;
@@ -98,10 +96,19 @@ class SoapMessageBuilder {
      * @throws WSDLException thrown in case of import errors
      */
     public SoapMessageBuilder(final URL wsdlUrl) throws WSDLException {
+        this(wsdlUrl, SchemaTypeSystemCache.fromSettings());
+    }
+
+    /**
+     * @param wsdlUrl     url of the wsdl to import
+     * @param schemaCache cache of the compiled schema types, null to always compile them
+     * @throws WSDLException thrown in case of import errors
+     */
+    public SoapMessageBuilder(final URL wsdlUrl, final SchemaTypeSystemCache schemaCache) throws WSDLException {
         final WSDLReader reader = new WSDLReaderImpl();
         reader.setFeature("javax.wsdl.verbose", false);
         this.definition = reader.readWSDL(wsdlUrl.toString());
-        this.definitionWrapper = new SchemaDefinitionWrapper(this.definition, wsdlUrl.toString());
+        this.definitionWrapper = new SchemaDefinitionWrapper(this.definition, wsdlUrl.toString(), schemaCache);
     }
 
     /**
@@ -233,44 +240,11 @@ class SoapMessageBuilder {
     // ----------------------------------------------------------
     // INPUT MESSAGE GENERATORS
     // ----------------------------------------------------------
-    public String buildSoapMessageFromInput(final Binding binding, final BindingOperation bindingOperation, final SoapContext context)
-            throws Exception {
-        final SoapVersion soapVersion = getSoapVersion(binding);
-        final boolean inputSoapEncoded = WsdlUtils.isInputSoapEncoded(bindingOperation);
-        final SampleXmlUtil xmlGenerator = new SampleXmlUtil(inputSoapEncoded, context);
-
+    public String buildSoapMessageFromInput(final OperationPlan plan, final SoapContext context) throws Exception {
         final XmlObject object = XmlObject.Factory.newInstance();
         final XmlCursor cursor = object.newCursor();
         cursor.toNextToken();
-        if (context.isAlwaysBuildEnvelope()) {
-            cursor.beginElement(soapVersion.getEnvelopeQName());
-        }
-
-        if (inputSoapEncoded) {
-            cursor.insertNamespace("xsi", Constants.XSI_NS);
-            cursor.insertNamespace("xsd", Constants.XSD_NS);
-        }
-
-        cursor.toFirstChild();
-        if (context.isAlwaysBuildBody()) {
-            cursor.beginElement(soapVersion.getBodyQName());
-        }
-        cursor.toFirstChild();
-
-        if (WsdlUtils.isRpc(this.definition, bindingOperation)) {
-            buildRpcRequest(bindingOperation, soapVersion, cursor, xmlGenerator, context);
-        } else {
-            buildDocumentRequest(bindingOperation, cursor, xmlGenerator);
-        }
-
-        if (context.isAlwaysBuildHeaders()) {
-            final BindingInput bindingInput = bindingOperation.getBindingInput();
-            if (bindingInput != null) {
-                final List<?> extensibilityElements = bindingInput.getExtensibilityElements();
-                final List<WsdlUtils.SoapHeader> soapHeaders = WsdlUtils.getSoapHeaders(extensibilityElements);
-                addHeaders(soapHeaders, soapVersion, cursor, xmlGenerator);
-            }
-        }
+        buildSoapMessage(plan, context, true, new XmlCursorOutput(cursor));
         cursor.dispose();
 
         try {
@@ -283,64 +257,107 @@ class SoapMessageBuilder {
         }
     }
 
+    /**
+     * Writes the input message to the writer as it is generated, the message is never held in memory.
+     * The namespaces are declared on the first element that uses them, the writer is flushed but not closed.
+     */
+    public void buildSoapMessageFromInput(final OperationPlan plan, final SoapContext context, final XMLStreamWriter writer)
+            throws Exception {
+        buildSoapMessage(plan, context, true, new XmlStreamOutput(writer));
+        writer.flush();
+    }
+
     // ----------------------------------------------------------
     // OUTPUT MESSAGE GENERATORS
     // ----------------------------------------------------------
-    public String buildSoapMessageFromOutput(final Binding binding, final BindingOperation bindingOperation, final SoapContext context)
-            throws Exception {
-        final boolean inputSoapEncoded = WsdlUtils.isInputSoapEncoded(bindingOperation);
-        final SampleXmlUtil xmlGenerator = new SampleXmlUtil(inputSoapEncoded, context);
-        final SoapVersion soapVersion = getSoapVersion(binding);
-
+    public String buildSoapMessageFromOutput(final OperationPlan plan, final SoapContext context) throws Exception {
         final XmlObject object = XmlObject.Factory.newInstance();
         final XmlCursor cursor = object.newCursor();
         cursor.toNextToken();
+        buildSoapMessage(plan, context, false, new XmlCursorOutput(cursor));
+        cursor.dispose();
+
+        try {
+            final StringWriter writer = new StringWriter();
+            XmlUtils.serializePretty(object, writer);
+            return writer.toString();
+        } catch (final Exception e) {
+            log.warn("Exception during message generation", e);
+            return object.xmlText();
+        }
+    }
+
+    /**
+     * Writes the output message to the writer as it is generated, the message is never held in memory.
+     * The namespaces are declared on the first element that uses them, the writer is flushed but not closed.
+     */
+    public void buildSoapMessageFromOutput(final OperationPlan plan, final SoapContext context, final XMLStreamWriter writer)
+            throws Exception {
+        buildSoapMessage(plan, context, false, new XmlStreamOutput(writer));
+        writer.flush();
+    }
+
+    private void buildSoapMessage(final OperationPlan plan, final SoapContext context, final boolean input,
+                                  final SampleXmlOutput output) throws Exception {
+        final SoapVersion soapVersion = plan.getSoapVersion();
+        final boolean inputSoapEncoded = plan.isInputSoapEncoded();
+        final SampleXmlUtil xmlGenerator = new SampleXmlUtil(inputSoapEncoded, context);
+        final OperationPlan.MessagePlan message = input ? plan.getInput() : plan.getOutput();
+
         if (context.isAlwaysBuildEnvelope()) {
-            cursor.beginElement(soapVersion.getEnvelopeQName());
+            output.startElement(soapVersion.getEnvelopeQName());
         }
 
         if (inputSoapEncoded) {
-            cursor.insertNamespace("xsi", Constants.XSI_NS);
-            cursor.insertNamespace("xsd", Constants.XSD_NS);
+            output.namespace("xsi", Constants.XSI_NS);
+            output.namespace("xsd", Constants.XSD_NS);
+        }
+
+        // bindingOutput will be null for one way operations,
+        // but then we shouldn't be here in the first place???
+        final boolean buildHeaders = context.isAlwaysBuildHeaders() && message.isBound();
+        // a stream is written in the document order, the store is filled as it always has been - the body first
+        // and the header inserted before it afterwards - so that the seeded sample values of a String message
+        // do not change
+        final boolean headersFirst = !(output instanceof XmlCursorOutput);
+        if (buildHeaders && headersFirst) {
+            addHeaders(plan, message, soapVersion, output, xmlGenerator);
         }
 
-        cursor.toFirstChild();
         if (context.isAlwaysBuildBody()) {
-            cursor.beginElement(soapVersion.getBodyQName());
+            output.startElement(soapVersion.getBodyQName());
         }
-        cursor.toFirstChild();
 
-        if (WsdlUtils.isRpc(this.definition, bindingOperation)) {
-            buildRpcResponse(bindingOperation, soapVersion, cursor, xmlGenerator, context);
+        if (plan.isRpc()) {
+            buildRpcMessage(plan, message, input, soapVersion, output, xmlGenerator, context);
         } else {
-            buildDocumentResponse(bindingOperation, cursor, xmlGenerator);
+            buildDocumentMessage(plan, message, output, xmlGenerator);
         }
 
-        if (context.isAlwaysBuildHeaders()) {
-            // bindingOutput will be null for one way operations,
-            // but then we shouldn't be here in the first place???
-            final BindingOutput bindingOutput = bindingOperation.getBindingOutput();
-            if (bindingOutput != null) {
-                final List<?> extensibilityElements = bindingOutput.getExtensibilityElements();
-                final List<WsdlUtils.SoapHeader> soapHeaders = WsdlUtils.getSoapHeaders(extensibilityElements);
-                addHeaders(soapHeaders, soapVersion, cursor, xmlGenerator);
-            }
+        if (context.isAlwaysBuildBody()) {
+            output.endElement();
+        }
+        if (context.isAlwaysBuildEnvelope()) {
+            output.endElement();
         }
-        cursor.dispose();
 
-        try {
-            final StringWriter writer = new StringWriter();
-            XmlUtils.serializePretty(object, writer);
-            return writer.toString();
-        } catch (final Exception e) {
-            log.warn("Exception during message generation", e);
-            return object.xmlText();
+        if (buildHeaders && !headersFirst) {
+            ((XmlCursorOutput) output).toContentStart(soapVersion.getEnvelopeQName());
+            addHeaders(plan, message, soapVersion, output, xmlGenerator);
         }
     }
 
     // ----------------------------------------------------------
     // UTILS
     // ----------------------------------------------------------
+    /**
+     * Resolves the WSDL and schema metadata of the operation once, so the messages of the operation may be
+     * generated and validated without traversing the WSDL model again
+     */
+    public OperationPlan createOperationPlan(final Binding binding, final BindingOperation bindingOperation) {
+        return new OperationPlan(this, binding, bindingOperation);
+    }
+
     public Definition getDefinition() {
         return this.definition;
     }
@@ -400,236 +417,127 @@ class SoapMessageBuilder {
     // Internal methods - END OF PUBLIC API
     // --------------------------------------------------------------------------
     private void addHeaders(
-            final List<WsdlUtils.SoapHeader> headers, final SoapVersion soapVersion, final XmlCursor cursor,
-            final SampleXmlUtil xmlGenerator) throws Exception {
-        // reposition
-        cursor.toStartDoc();
-        cursor.toChild(soapVersion.getEnvelopeQName());
-        cursor.toFirstChild();
-
-        cursor.beginElement(soapVersion.getHeaderQName());
-        cursor.toFirstChild();
-
-        for (int i = 0; i < headers.size(); i++) {
-            final WsdlUtils.SoapHeader header = headers.get(i);
-
-            final Message message = this.definition.getMessage(header.getMessage());
-            if (message == null) {
-                log.error("Missing message for header: " + header.getMessage());
-                continue;
-            }
+            final OperationPlan plan, final OperationPlan.MessagePlan message, final SoapVersion soapVersion,
+            final SampleXmlOutput output, final SampleXmlUtil xmlGenerator) throws Exception {
+        output.startElement(soapVersion.getHeaderQName());
 
-            final Part part = message.getPart(header.getPart());
-
-            if (part != null)
-                createElementForPart(part, cursor, xmlGenerator);
-            else
-                log.error("Missing part for header; " + header.getPart());
+        // the headers referring to missing messages or parts have been reported and skipped by the plan
+        for (final OperationPlan.PartPlan header : message.getHeaders()) {
+            createElementForPart(plan, header, output, xmlGenerator);
         }
-    }
-
-    private void buildDocumentResponse(final BindingOperation bindingOperation, final XmlCursor cursor, final SampleXmlUtil xmlGenerator)
-            throws Exception {
-        final Part[] parts = WsdlUtils.getOutputParts(bindingOperation);
 
-        for (int i = 0; i < parts.length; i++) {
-            final Part part = parts[i];
-
-            if (!WsdlUtils.isAttachmentOutputPart(part, bindingOperation)
-                    && (part.getElementName() != null || part.getTypeName() != null)) {
-                final XmlCursor c = cursor.newCursor();
-                c.toLastChild();
-                createElementForPart(part, c, xmlGenerator);
-                c.dispose();
-            }
-        }
+        output.endElement();
     }
 
-    private void buildDocumentRequest(final BindingOperation bindingOperation, final XmlCursor cursor, final SampleXmlUtil xmlGenerator)
-            throws Exception {
-        final Part[] parts = WsdlUtils.getInputParts(bindingOperation);
-
-        for (int i = 0; i < parts.length; i++) {
-            final Part part = parts[i];
-            if (!WsdlUtils.isAttachmentInputPart(part, bindingOperation)
-                    && (part.getElementName() != null || part.getTypeName() != null)) {
-                final XmlCursor c = cursor.newCursor();
-                c.toLastChild();
-                createElementForPart(part, c, xmlGenerator);
-                c.dispose();
+    private void buildDocumentMessage(final OperationPlan plan, final OperationPlan.MessagePlan message,
+                                      final SampleXmlOutput output, final SampleXmlUtil xmlGenerator) throws Exception {
+        for (final OperationPlan.PartPlan partPlan : message.getParts()) {
+            final Part part = partPlan.getPart();
+            if (!partPlan.isAttachment() && (part.getElementName() != null || part.getTypeName() != null)) {
+                createElementForPart(plan, partPlan, output, xmlGenerator);
             }
         }
     }
 
-    private void createElementForPart(final Part part, final XmlCursor cursor, final SampleXmlUtil xmlGenerator) throws Exception {
+    private void createElementForPart(final OperationPlan plan, final OperationPlan.PartPlan partPlan,
+                                      final SampleXmlOutput output, final SampleXmlUtil xmlGenerator) throws Exception {
+        final Part part = partPlan.getPart();
         final QName elementName = part.getElementName();
         final QName typeName = part.getTypeName();
 
         if (elementName != null) {
-            cursor.beginElement(elementName);
+            output.startElement(elementName);
 
-            if (this.definitionWrapper.hasSchemaTypes()) {
-                final SchemaGlobalElement elm = this.definitionWrapper.getSchemaTypeLoader().findElement(elementName);
+            if (plan.hasSchemaTypes()) {
+                final SchemaGlobalElement elm = partPlan.getElement();
                 if (elm != null) {
-                    cursor.toFirstChild();
-                    xmlGenerator.createSampleForType(elm.getType(), cursor);
+                    xmlGenerator.createSampleForType(elm.getType(), output);
                 } else
                     log.error("Could not find element [" + elementName + "] specified in part [" + part.getName() + "]");
             }
 
-            cursor.toParent();
+            output.endElement();
         } else {
-            // cursor.beginElement( new QName(
+            // output.startElement( new QName(
             // wsdlContext.getWsdlDefinition().getTargetNamespace(), part.getName()
             // ));
-            cursor.beginElement(part.getName());
-            if (typeName != null && this.definitionWrapper.hasSchemaTypes()) {
-                final SchemaType type = this.definitionWrapper.getSchemaTypeLoader().findType(typeName);
+            output.startElement(new QName(part.getName()));
+            if (typeName != null && plan.hasSchemaTypes()) {
+                final SchemaType type = partPlan.getType();
 
                 if (type != null) {
-                    cursor.toFirstChild();
-                    xmlGenerator.createSampleForType(type, cursor);
+                    xmlGenerator.createSampleForType(type, output);
                 } else
                     log.error("Could not find type [" + typeName + "] specified in part [" + part.getName() + "]");
             }
 
-            cursor.toParent();
+            output.endElement();
         }
     }
 
-    private void buildRpcRequest(
-            final BindingOperation bindingOperation, final SoapVersion soapVersion, final XmlCursor cursor,
-            final SampleXmlUtil xmlGenerator, final SoapContext context)
-            throws Exception {
-        // rpc requests use the operation name as root element
-        String ns = WsdlUtils.getSoapBodyNamespace(bindingOperation.getBindingInput().getExtensibilityElements());
+    private void buildRpcMessage(
+            final OperationPlan plan, final OperationPlan.MessagePlan message, final boolean input,
+            final SoapVersion soapVersion, final SampleXmlOutput output, final SampleXmlUtil xmlGenerator,
+            final SoapContext context) throws Exception {
+        // rpc messages use the operation name as root element
+        final BindingOperation bindingOperation = plan.getBindingOperation();
+        String ns = message.getBodyNamespace();
         if (ns == null) {
             ns = WsdlUtils.getTargetNamespace(this.definition);
-            log.warn("missing namespace on soapbind:body for RPC request, using targetNamespace instead (BP violation)");
+            log.warn("missing namespace on soapbind:body for RPC " + (input ? "request" : "response")
+                    + ", using targetNamespace instead (BP violation)");
         }
-        
+
         if (context.isBindingOperation()) {
-            cursor.beginElement(new QName(ns, bindingOperation.getName()));
+            output.startElement(new QName(ns, bindingOperation.getName() + (input ? "" : "Response")));
         }
         // TODO
         if (xmlGenerator.isSoapEnc())
-            cursor.insertAttributeWithValue(new QName(soapVersion.getEnvelopeNamespace(),
+            output.attribute(new QName(soapVersion.getEnvelopeNamespace(),
                     "encodingStyle"), soapVersion.getEncodingNamespace());
 
-        final Part[] inputParts = WsdlUtils.getInputParts(bindingOperation);
-        for (int i = 0; i < inputParts.length; i++) {
-            final Part part = inputParts[i];
+        for (final OperationPlan.PartPlan partPlan : message.getParts()) {
+            final Part part = partPlan.getPart();
 
-            if (WsdlUtils.isAttachmentInputPart(part, bindingOperation)) {
+            if (partPlan.isAttachment()) {
                 // TODO - generation of attachment flag could be externalized
                 // if (iface.getSettings().getBoolean(WsdlSettings.ATTACHMENT_PARTS)) {
-                final XmlCursor c = cursor.newCursor();
-                c.toLastChild();
-                c.beginElement(part.getName());
-                c.insertAttributeWithValue("href", part.getName() + "Attachment");
-                c.dispose();
+                createAttachmentPart(part, output);
                 // }
             } else {
-                if (this.definitionWrapper.hasSchemaTypes()) {
+                if (plan.hasSchemaTypes()) {
                     final QName typeName = part.getTypeName();
                     if (typeName != null) {
-                        // TODO - Don't know whether will work
-                        // SchemaType type = wsdlContext.getInterfaceDefinition().findType(typeName);
-                        final SchemaType type = this.definitionWrapper.findType(typeName);
+                        final SchemaType type = partPlan.getType();
 
                         if (type != null) {
-                            final XmlCursor c = cursor.newCursor();
-                            c.toLastChild();
-                            c.insertElement(part.getName());
-                            c.toPrevToken();
-
-                            xmlGenerator.createSampleForType(type, c);
-                            c.dispose();
+                            output.startElement(new QName(part.getName()));
+                            xmlGenerator.createSampleForType(type, output);
+                            output.endElement();
                         } else
                             log.warn("Failed to find type [" + typeName + "]");
                     } else {
-                        final SchemaGlobalElement element = this.definitionWrapper.getSchemaTypeLoader().findElement(part.getElementName());
+                        final SchemaGlobalElement element = partPlan.getElement();
                         if (element != null) {
-                            final XmlCursor c = cursor.newCursor();
-                            c.toLastChild();
-                            c.insertElement(element.getName());
-                            c.toPrevToken();
-
-                            xmlGenerator.createSampleForType(element.getType(), c);
-                            c.dispose();
+                            output.startElement(element.getName());
+                            xmlGenerator.createSampleForType(element.getType(), output);
+                            output.endElement();
                         } else
                             log.warn("Failed to find element [" + part.getElementName() + "]");
                     }
                 }
             }
         }
-    }
-
-    private void buildRpcResponse(
-            final BindingOperation bindingOperation, final SoapVersion soapVersion, final XmlCursor cursor,
-            final SampleXmlUtil xmlGenerator, final SoapContext context)
-            throws Exception {
-        // rpc requests use the operation name as root element
-        final BindingOutput bindingOutput = bindingOperation.getBindingOutput();
-        String ns = bindingOutput == null ? null : WsdlUtils.getSoapBodyNamespace(bindingOutput
-                .getExtensibilityElements());
-
-        if (ns == null) {
-            ns = WsdlUtils.getTargetNamespace(this.definition);
-            log.warn("missing namespace on soapbind:body for RPC response, using targetNamespace instead (BP violation)");
-        }
 
         if (context.isBindingOperation()) {
-            cursor.beginElement(new QName(ns, bindingOperation.getName() + "Response"));
+            output.endElement();
         }
-        if (xmlGenerator.isSoapEnc())
-            cursor.insertAttributeWithValue(new QName(soapVersion.getEnvelopeNamespace(),
-                    "encodingStyle"), soapVersion.getEncodingNamespace());
-
-        final Part[] inputParts = WsdlUtils.getOutputParts(bindingOperation);
-        for (int i = 0; i < inputParts.length; i++) {
-            final Part part = inputParts[i];
-            if (WsdlUtils.isAttachmentOutputPart(part, bindingOperation)) {
-                // if( iface.getSettings().getBoolean( WsdlSettings.ATTACHMENT_PARTS ) )
-                {
-                    final XmlCursor c = cursor.newCursor();
-                    c.toLastChild();
-                    c.beginElement(part.getName());
-                    c.insertAttributeWithValue("href", part.getName() + "Attachment");
-                    c.dispose();
-                }
-            } else {
-                if (this.definitionWrapper.hasSchemaTypes()) {
-                    final QName typeName = part.getTypeName();
-                    if (typeName != null) {
-                        final SchemaType type = this.definitionWrapper.findType(typeName);
-
-                        if (type != null) {
-                            final XmlCursor c = cursor.newCursor();
-                            c.toLastChild();
-                            c.insertElement(part.getName());
-                            c.toPrevToken();
-
-                            xmlGenerator.createSampleForType(type, c);
-                            c.dispose();
-                        } else
-                            log.warn("Failed to find type [" + typeName + "]");
-                    } else {
-                        final SchemaGlobalElement element = this.definitionWrapper.getSchemaTypeLoader().findElement(part.getElementName());
-                        if (element != null) {
-                            final XmlCursor c = cursor.newCursor();
-                            c.toLastChild();
-                            c.insertElement(element.getName());
-                            c.toPrevToken();
+    }
 
-                            xmlGenerator.createSampleForType(element.getType(), c);
-                            c.dispose();
-                        } else
-                            log.warn("Failed to find element [" + part.getElementName() + "]");
-                    }
-                }
-            }
-        }
+    private static void createAttachmentPart(final Part part, final SampleXmlOutput output) {
+        output.startElement(new QName(part.getName()));
+        output.attribute(new QName("href"), part.getName() + "Attachment");
+        output.endElement();
     }
 
     private static String buildEmptyFault(final SampleXmlUtil generator, final SoapVersion soapVersion, final SoapContext context) {
@@ -18,11 +18,19 @@
  */
 package org.reficio.ws.legacy;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ClosedInputStream;
 import org.apache.xmlbeans.XmlObject;
 import org.apache.xmlbeans.XmlOptions;
 import org.reficio.ws.SoapBuilderException;
 
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class was extracted from the soapUI code base by centeractive ag in October 2011.
@@ -43,16 +51,71 @@ import java.net.URL;
  * - changing location in the package structure
  * - removal of dependencies and code parts that are out of scope of SOAP message generation
  * - minor fixes to make the class compile out of soapUI's code base
+ * - connect and read timeouts, implementation of the abort, safe to be used by many threads at once
+ * - abort of the loading of a single url
  */
 class UrlSchemaLoader implements SchemaLoader, DefinitionLoader {
-    private String baseURI;
+    private static final int MAX_REDIRECTS = 5;
+
+    private final String baseURI;
+    private final int timeoutMillis;
+    private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+    private final Set<String> abortedUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean aborted;
 
     public UrlSchemaLoader(String baseURI) {
+        this(baseURI, SchemaImportPrefetcher.urlTimeoutFromSettings());
+    }
+
+    /**
+     * @param timeoutMillis connect and read timeout of every url, 0 for no timeout
+     */
+    public UrlSchemaLoader(String baseURI, long timeoutMillis) {
         this.baseURI = baseURI;
+        this.timeoutMillis = (int) Math.min(Math.max(timeoutMillis, 0), Integer.MAX_VALUE);
     }
 
     public XmlObject loadXmlObject(String wsdlUrl, XmlOptions options) throws Exception {
-        return XmlUtils.createXmlObject(new URL(wsdlUrl), options);
+        XmlOptions loadOptions = options != null ? new XmlOptions(options) : new XmlOptions();
+        if (!loadOptions.hasOption(XmlOptions.DOCUMENT_SOURCE_NAME)) {
+            loadOptions.setDocumentSourceName(wsdlUrl);
+        }
+        URL url = new URL(wsdlUrl);
+        // redirects across protocols are not followed by HttpURLConnection itself
+        for (int redirects = 0; ; redirects++) {
+            checkAborted(wsdlUrl);
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            Connection open = new Connection(wsdlUrl, connection);
+            connections.add(open);
+            try {
+                // an abort may have missed the connection registered just now
+                checkAborted(wsdlUrl);
+                if (connection instanceof HttpURLConnection && redirects < MAX_REDIRECTS) {
+                    HttpURLConnection http = (HttpURLConnection) connection;
+                    int code = http.getResponseCode();
+                    String location = http.getHeaderField("Location");
+                    if (code >= 300 && code < 400 && location != null) {
+                        url = new URL(url, location);
+                        http.disconnect();
+                        continue;
+                    }
+                }
+                InputStream in = connection.getInputStream();
+                open.setInputStream(in);
+                try {
+                    return XmlObject.Factory.parse(in, loadOptions);
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            } catch (Exception e) {
+                checkAborted(wsdlUrl);
+                throw e;
+            } finally {
+                connections.remove(open);
+            }
+        }
     }
 
     public String getBaseURI() {
@@ -64,13 +127,38 @@ class UrlSchemaLoader implements SchemaLoader, DefinitionLoader {
     }
 
     public boolean isAborted() {
-        throw new SoapBuilderException("Not Implemented");
+        return aborted;
     }
 
+    /**
+     * Aborts the loading, the urls being loaded are disconnected and no further url may be loaded
+     */
     public boolean abort() {
-        throw new SoapBuilderException("Not Implemented");
+        aborted = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        return true;
+    }
+
+    /**
+     * Aborts the loading of the url only, its connection is disconnected so that a read blocked on it fails
+     * and the url may not be loaded any more
+     */
+    void abort(String wsdlUrl) {
+        abortedUrls.add(wsdlUrl);
+        for (Connection connection : connections) {
+            if (connection.url.equals(wsdlUrl)) {
+                connection.close();
+            }
+        }
     }
 
+    private void checkAborted(String wsdlUrl) {
+        if (aborted || abortedUrls.contains(wsdlUrl)) {
+            throw new SoapBuilderException("Loading of [" + wsdlUrl + "] has been aborted");
+        }
+    }
     public void setNewBaseURI(String uri) {
         throw new SoapBuilderException("Not Implemented");
     }
@@ -78,4 +166,30 @@ class UrlSchemaLoader implements SchemaLoader, DefinitionLoader {
     public String getFirstNewURI() {
         throw new SoapBuilderException("Not Implemented");
     }
+
+    /**
+     * Connection opened to load a url (or a url it has been redirected to)
+     */
+    private static final class Connection {
+        private final String url;
+        private final URLConnection connection;
+        private volatile InputStream in = ClosedInputStream.CLOSED_INPUT_STREAM;
+
+        private Connection(String url, URLConnection connection) {
+            this.url = url;
+            this.connection = connection;
+        }
+
+        private void setInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        private void close() {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            } else {
+                IOUtils.closeQuietly(in);
+            }
+        }
+    }
 }
@@ -20,7 +20,6 @@ package org.reficio.ws.legacy;
 
 import org.apache.xmlbeans.SchemaTypeLoader;
 
-import javax.wsdl.Binding;
 import javax.wsdl.Definition;
 
 /**
@@ -32,11 +31,11 @@ import javax.wsdl.Definition;
 class WsdlContext {
 
     private final SoapMessageBuilder builder;
-    private final Binding binding;
+    private final SoapVersion soapVersion;
 
-    WsdlContext(SoapMessageBuilder builder, Binding binding) {
+    WsdlContext(SoapMessageBuilder builder, SoapVersion soapVersion) {
         this.builder = builder;
-        this.binding = binding;
+        this.soapVersion = soapVersion;
     }
 
     Definition getDefinition() {
@@ -44,7 +43,7 @@ class WsdlContext {
     }
 
     SoapVersion getSoapVersion() {
-        return SoapMessageBuilder.getSoapVersion(binding);
+        return soapVersion;
     }
 
     boolean hasSchemaTypes() {
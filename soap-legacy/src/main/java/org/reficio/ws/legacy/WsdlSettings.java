@@ -85,4 +85,13 @@ interface WsdlSettings {
     public final static String TRIM_WSDL = WsdlSettings.class.getSimpleName() + "@"
             + "trim-wsdl";
 
+    public final static String SCHEMA_LOADING_THREADS = WsdlSettings.class.getSimpleName() + "@"
+            + "schema-loading-threads";
+
+    public final static String SCHEMA_LOADING_URL_TIMEOUT = WsdlSettings.class.getSimpleName() + "@"
+            + "schema-loading-url-timeout";
+
+    public final static String SCHEMA_LOADING_TIMEOUT = WsdlSettings.class.getSimpleName() + "@"
+            + "schema-loading-timeout";
+
 }
@@ -24,7 +24,6 @@ import org.apache.xmlbeans.*;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
-import javax.wsdl.Binding;
 import javax.wsdl.BindingFault;
 import javax.wsdl.BindingOperation;
 import javax.wsdl.Part;
@@ -43,12 +42,15 @@ class WsdlValidator {
     private final static Logger log = Logger.getLogger(WsdlValidator.class);
 
     private final WsdlContext wsdlContext;
+    private final OperationPlan plan;
 
-    WsdlValidator(SoapMessageBuilder builder, Binding binding) {
-        this.wsdlContext = new WsdlContext(builder, binding);
+    WsdlValidator(SoapMessageBuilder builder, OperationPlan plan) {
+        this.wsdlContext = new WsdlContext(builder, plan.getSoapVersion());
+        this.plan = plan;
     }
 
-    List<AssertionError> assertRequest(BindingOperation bindingOperation, String message, boolean strict) {
+    List<AssertionError> assertRequest(String message, boolean strict) {
+        BindingOperation bindingOperation = plan.getBindingOperation();
         List<XmlError> errors = new ArrayList<XmlError>();
         try {
             validateXml(message, errors);
@@ -59,8 +61,7 @@ class WsdlValidator {
                     errors.add(XmlError.forMessage("Missing operation [" + bindingOperation.getName()
                             + "] in wsdl definition"));
                 } else {
-                    Part[] inputParts = WsdlUtils.getInputParts(bindingOperation);
-                    validateMessage(message, bindingOperation, inputParts, errors, false, strict);
+                    validateMessage(message, bindingOperation, plan.getInput(), errors, false, strict);
 
                     // ATTACHMENTS ARE SKIPPED FOR NOW
                     // validateInputAttachments(request, errors, bindingOperation,
@@ -73,12 +74,13 @@ class WsdlValidator {
         return convertErrors(errors);
     }
 
-    List<AssertionError> assertResponse(BindingOperation bindingOperation, String message, boolean strict) {
+    List<AssertionError> assertResponse(String message, boolean strict) {
+        BindingOperation bindingOperation = plan.getBindingOperation();
         List<XmlError> errors = new ArrayList<XmlError>();
         try {
             validateXml(message, errors);
             if (StringUtils.isBlank(message)) {
-                if (!WsdlUtils.isOneWay(bindingOperation)) {
+                if (!plan.isOneWay()) {
                     errors.add(XmlError.forMessage("Response is missing or empty"));
                 }
             } else {
@@ -89,8 +91,7 @@ class WsdlValidator {
                         errors.add(XmlError.forMessage("Missing operation [" + bindingOperation.getName()
                                 + "] in wsdl definition"));
                     } else {
-                        Part[] outputParts = WsdlUtils.getOutputParts(bindingOperation);
-                        validateMessage(message, bindingOperation, outputParts, errors, true, strict);
+                        validateMessage(message, bindingOperation, plan.getOutput(), errors, true, strict);
                     }
                 }
             }
@@ -155,12 +156,12 @@ class WsdlValidator {
 
     @SuppressWarnings("unchecked")
     private void validateMessage(String message, BindingOperation bindingOperation,
-                                 Part[] parts, List<XmlError> errors, boolean isResponse, boolean strict) {
+                                 OperationPlan.MessagePlan parts, List<XmlError> errors, boolean isResponse, boolean strict) {
         try {
             if (!wsdlContext.hasSchemaTypes()) {
                 errors.add(XmlError.forMessage("Missing schema types for message"));
             } else {
-                if (!WsdlUtils.isOutputSoapEncoded(bindingOperation)) {
+                if (!plan.isOutputSoapEncoded()) {
                     XmlOptions xmlOptions = new XmlOptions();
                     xmlOptions.setLoadLineNumbers();
                     xmlOptions.setLoadLineNumbers(XmlOptions.LOAD_LINE_NUMBERS_END_ELEMENT);
@@ -172,7 +173,7 @@ class WsdlValidator {
 
                     if (paths.length > 0) {
                         validateSoapFault(bindingOperation, paths[0], errors);
-                    } else if (WsdlUtils.isRpc(wsdlContext.getDefinition(), bindingOperation)) {
+                    } else if (plan.isRpc()) {
                         validateRpcLiteral(bindingOperation, parts, xml, errors, isResponse, strict);
                     } else {
                         validateDocLiteral(bindingOperation, parts, xml, errors, isResponse, strict);
@@ -196,26 +197,27 @@ class WsdlValidator {
         }
     }
 
-    private void validateDocLiteral(BindingOperation bindingOperation, Part[] parts, XmlObject msgXml,
+    private void validateDocLiteral(BindingOperation bindingOperation, OperationPlan.MessagePlan parts, XmlObject msgXml,
                                     List<XmlError> errors, boolean isResponse, boolean strict) throws Exception {
 
-        Part part = null;
+        OperationPlan.PartPlan partPlan = null;
         // start by finding body part
-        for (int c = 0; c < parts.length; c++) {
+        for (OperationPlan.PartPlan candidate : parts.getParts()) {
             // content part?
-            if ((isResponse && !WsdlUtils.isAttachmentOutputPart(parts[c], bindingOperation))
-                    || (!isResponse && !WsdlUtils.isAttachmentInputPart(parts[c], bindingOperation))) {
+            if (!candidate.isAttachment()) {
                 // already found?
-                if (part != null) {
+                if (partPlan != null) {
                     if (strict) {
                         errors.add(XmlError.forMessage("DocLiteral message must contain 1 body part definition"));
                     }
                     return;
                 }
-                part = parts[c];
+                partPlan = candidate;
             }
         }
 
+        Part part = partPlan.getPart();
+
         QName elementName = part.getElementName();
         if (elementName != null) {
             // just check for correct message element, other elements are avoided
@@ -225,7 +227,7 @@ class WsdlValidator {
                     + elementName.getNamespaceURI() + "';" + "$this/env:Envelope/env:Body/ns:" + elementName.getLocalPart());
 
             if (paths.length == 1) {
-                SchemaGlobalElement elm = wsdlContext.getSchemaTypeLoader().findElement(elementName);
+                SchemaGlobalElement elm = partPlan.getElement();
                 if (elm != null) {
                     validateMessageBody(errors, elm.getType(), paths[0]);
 
@@ -255,7 +257,7 @@ class WsdlValidator {
                     + typeName.getNamespaceURI() + "';" + "$this/env:Envelope/env:Body/ns:" + part.getName());
 
             if (paths.length == 1) {
-                SchemaType type = wsdlContext.getSchemaTypeLoader().findType(typeName);
+                SchemaType type = partPlan.getType();
                 if (type != null) {
                     validateMessageBody(errors, type, paths[0]);
                     // XmlObject obj = paths[0].copy().changeType( type );
@@ -358,12 +360,12 @@ class WsdlValidator {
         return -1;
     }
 
-    private void validateRpcLiteral(BindingOperation bindingOperation, Part[] parts, XmlObject msgXml,
+    private void validateRpcLiteral(BindingOperation bindingOperation, OperationPlan.MessagePlan parts, XmlObject msgXml,
                                     List<XmlError> errors, boolean isResponse, boolean strict) throws Exception {
-        if (parts.length == 0)
+        if (parts.getParts().isEmpty())
             return;
 
-        XmlObject[] bodyParts = getRpcBodyPart(bindingOperation, msgXml, isResponse);
+        XmlObject[] bodyParts = getRpcBodyPart(bindingOperation, parts, msgXml, isResponse);
 
         if (bodyParts.length != 1) {
             errors.add(XmlError.forMessage("Missing message wrapper element ["
@@ -372,17 +374,12 @@ class WsdlValidator {
         } else {
             XmlObject wrapper = bodyParts[0];
 
-            for (int i = 0; i < parts.length; i++) {
-                Part part = parts[i];
+            for (OperationPlan.PartPlan partPlan : parts.getParts()) {
+                Part part = partPlan.getPart();
 
                 // skip attachment parts
-                if (isResponse) {
-                    if (WsdlUtils.isAttachmentOutputPart(part, bindingOperation))
-                        continue;
-                } else {
-                    if (WsdlUtils.isAttachmentInputPart(part, bindingOperation))
-                        continue;
-                }
+                if (partPlan.isAttachment())
+                    continue;
 
                 // find part in message
                 XmlObject[] children = wrapper.selectChildren(new QName(part.getName()));
@@ -400,7 +397,7 @@ class WsdlValidator {
                                 + elementName.getLocalPart());
 
                         if (bodyParts.length == 1) {
-                            SchemaGlobalElement elm = wsdlContext.getSchemaTypeLoader().findElement(elementName);
+                            SchemaGlobalElement elm = partPlan.getElement();
                             if (elm != null) {
                                 validateMessageBody(errors, elm.getType(), bodyParts[0]);
                             } else
@@ -412,8 +409,7 @@ class WsdlValidator {
                         errors.add(XmlError.forMessage("Missing message part [" + part.getName() + "]"));
                     }
                 } else {
-                    QName typeName = part.getTypeName();
-                    SchemaType type = wsdlContext.getSchemaTypeLoader().findType(typeName);
+                    SchemaType type = partPlan.getType();
                     if (type != null) {
                         validateMessageBody(errors, type, children[0]);
                     } else {
@@ -424,12 +420,11 @@ class WsdlValidator {
         }
     }
 
-    private XmlObject[] getRpcBodyPart(BindingOperation bindingOperation, XmlObject msgXml, boolean isResponse)
-            throws Exception {
+    private XmlObject[] getRpcBodyPart(BindingOperation bindingOperation, OperationPlan.MessagePlan message,
+                                       XmlObject msgXml, boolean isResponse) throws Exception {
         // rpc requests should use the operation name as root element and soapbind
         // namespaceuri attribute as ns
-        String ns = WsdlUtils.getSoapBodyNamespace(isResponse ? bindingOperation.getBindingOutput()
-                .getExtensibilityElements() : bindingOperation.getBindingInput().getExtensibilityElements());
+        String ns = message.getBodyNamespace();
 
         if (ns == null || ns.trim().length() == 0)
             ns = WsdlUtils.getTargetNamespace(wsdlContext.getDefinition());
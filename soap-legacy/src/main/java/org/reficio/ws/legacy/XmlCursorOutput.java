@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import org.apache.xmlbeans.XmlCursor;
+
+import javax.xml.namespace.QName;
+
+/**
+ * SampleXmlOutput inserting the generated message into an XmlBeans store at the position of the cursor.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+class XmlCursorOutput implements SampleXmlOutput {
+
+    private final XmlCursor cursor;
+
+    XmlCursorOutput(XmlCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public void startElement(QName name) {
+        // ^ -> <elem>^</elem>
+        if (name.getNamespaceURI().length() == 0) {
+            cursor.insertElement(name.getLocalPart());
+        } else {
+            cursor.insertElement(name.getLocalPart(), name.getNamespaceURI());
+        }
+        cursor.toPrevToken();
+    }
+
+    @Override
+    public void endElement() {
+        // <elem>stuff^</elem> -> <elem>stuff</elem>^
+        cursor.toNextToken();
+    }
+
+    @Override
+    public void namespace(String prefix, String namespaceUri) {
+        cursor.insertNamespace(prefix, namespaceUri);
+    }
+
+    @Override
+    public void attribute(QName name, String value) {
+        cursor.insertAttributeWithValue(name, value);
+    }
+
+    @Override
+    public void characters(String text) {
+        cursor.insertChars(text);
+    }
+
+    @Override
+    public void comment(String text) {
+        cursor.insertComment(text);
+    }
+
+    /**
+     * Moves the cursor before the content of the root element with the given name (or of the document if there is no
+     * such element), so that the next element is inserted in front of the elements generated so far
+     */
+    void toContentStart(QName root) {
+        cursor.toStartDoc();
+        cursor.toChild(root);
+        if (!cursor.toFirstChild()) {
+            cursor.toEndToken();
+        }
+    }
+
+    @Override
+    public String prefixForNamespace(String namespaceUri) {
+        XmlCursor parent = cursor.newCursor();
+        parent.toParent();
+        String prefix = parent.prefixForNamespace(namespaceUri);
+        parent.dispose();
+        return prefix;
+    }
+
+}
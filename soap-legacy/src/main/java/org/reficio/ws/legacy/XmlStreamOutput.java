@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import org.apache.xmlbeans.impl.common.QNameHelper;
+import org.reficio.ws.SoapBuilderException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * SampleXmlOutput writing the generated message to an XMLStreamWriter as it is generated, so the message is never
+ * held in memory. The message is indented as the messages serialized from an XmlBeans store; the namespaces are
+ * declared on the first element that uses them (the generator does not know all of them upfront).
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+class XmlStreamOutput implements SampleXmlOutput {
+
+    private static final String INDENT = "   ";
+
+    private final XMLStreamWriter writer;
+    private final Deque<boolean[]> hasChildren = new ArrayDeque<boolean[]>();
+    private boolean started;
+    private int generatedPrefixes;
+
+    XmlStreamOutput(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void startElement(QName name) {
+        try {
+            indent();
+            String namespace = name.getNamespaceURI();
+            if (namespace.length() == 0) {
+                writer.writeStartElement(name.getLocalPart());
+            } else {
+                String prefix = writer.getPrefix(namespace);
+                boolean declare = prefix == null;
+                if (declare) {
+                    prefix = newPrefix(namespace);
+                }
+                writer.writeStartElement(prefix, name.getLocalPart(), namespace);
+                if (declare) {
+                    declare(prefix, namespace);
+                }
+            }
+            hasChildren.push(new boolean[1]);
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public void endElement() {
+        try {
+            if (hasChildren.pop()[0]) {
+                newLine(hasChildren.size());
+            }
+            writer.writeEndElement();
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public void namespace(String prefix, String namespaceUri) {
+        try {
+            declare(prefix, namespaceUri);
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public void attribute(QName name, String value) {
+        try {
+            if (name.getNamespaceURI().length() == 0) {
+                writer.writeAttribute(name.getLocalPart(), value);
+            } else {
+                writer.writeAttribute(prefixForNamespace(name.getNamespaceURI()), name.getNamespaceURI(),
+                        name.getLocalPart(), value);
+            }
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public void characters(String text) {
+        try {
+            writer.writeCharacters(text);
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public void comment(String text) {
+        try {
+            indent();
+            writer.writeComment(text);
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    @Override
+    public String prefixForNamespace(String namespaceUri) {
+        try {
+            String prefix = writer.getPrefix(namespaceUri);
+            if (prefix == null || prefix.length() == 0) {
+                prefix = newPrefix(namespaceUri);
+                declare(prefix, namespaceUri);
+            }
+            return prefix;
+        } catch (XMLStreamException ex) {
+            throw new SoapBuilderException(ex);
+        }
+    }
+
+    private void declare(String prefix, String namespaceUri) throws XMLStreamException {
+        writer.setPrefix(prefix, namespaceUri);
+        writer.writeNamespace(prefix, namespaceUri);
+    }
+
+    private String newPrefix(String namespaceUri) {
+        String suggested = QNameHelper.suggestPrefix(namespaceUri);
+        String prefix = suggested;
+        while (isBound(prefix)) {
+            prefix = suggested + (++generatedPrefixes);
+        }
+        return prefix;
+    }
+
+    private boolean isBound(String prefix) {
+        String namespace = writer.getNamespaceContext().getNamespaceURI(prefix);
+        return namespace != null && namespace.length() > 0;
+    }
+
+    private void indent() throws XMLStreamException {
+        if (!hasChildren.isEmpty()) {
+            hasChildren.peek()[0] = true;
+        }
+        if (started) {
+            newLine(hasChildren.size());
+        }
+        started = true;
+    }
+
+    private void newLine(int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters(INDENT);
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.xmlbeans.XmlObject;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the sequential loading of an import graph with the concurrent prefetch, against a local HTTP stand-in
+ * that delays every response. It is not a unit test - run it manually:
+ * java -cp ... org.reficio.ws.legacy.SchemaImportBenchmark [latencyMillis] [threads]
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class SchemaImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : SchemaImportPrefetcher.DEFAULT_THREADS;
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new SchemaImportPrefetcherTest.DelayingHandler(latencyMillis));
+        server.start();
+        try {
+            String wsdlUrl = "http://localhost:" + server.getAddress().getPort() + "/service.wsdl";
+
+            long started = System.currentTimeMillis();
+            Map<String, XmlObject> sequential = new HashMap<String, XmlObject>();
+            SchemaUtils.getSchemas(wsdlUrl, sequential, new UrlSchemaLoader(wsdlUrl, 0), null);
+            long sequentialTime = System.currentTimeMillis() - started;
+
+            started = System.currentTimeMillis();
+            SchemaImportPrefetcher prefetcher = new SchemaImportPrefetcher(new UrlSchemaLoader(wsdlUrl, 0), threads, 0, 0);
+            prefetcher.prefetch(wsdlUrl);
+            Map<String, XmlObject> concurrent = new HashMap<String, XmlObject>();
+            SchemaUtils.getSchemas(wsdlUrl, concurrent, prefetcher, null);
+            long concurrentTime = System.currentTimeMillis() - started;
+
+            System.out.println(String.format("%d documents with %d ms latency: sequential %d ms, concurrent (%d threads) %d ms, same result: %s",
+                    sequential.size(), latencyMillis, sequentialTime, threads, concurrentTime,
+                    SchemaImportPrefetcherTest.toText(sequential).equals(SchemaImportPrefetcherTest.toText(concurrent))));
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.reficio.ws.legacy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reficio.ws.SoapBuilderException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Loads an import graph from a local HTTP stand-in that delays every response
+ */
+public class SchemaImportPrefetcherTest {
+
+    static final int SCHEMAS = 24;
+    private static final long LATENCY = 10;
+
+    private HttpServer server;
+    private DelayingHandler handler;
+    private ExecutorService executor;
+    private String baseUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        handler = new DelayingHandler(LATENCY);
+        server.createContext("/", handler);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        handler.release();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fetchesSameSchemasAsSequentialLoading() throws Exception {
+        String wsdlUrl = baseUrl + "service.wsdl";
+        Map<String, XmlObject> sequential = new HashMap<String, XmlObject>();
+        SchemaUtils.getSchemas(wsdlUrl, sequential, new UrlSchemaLoader(wsdlUrl, 0), null);
+
+        SchemaImportPrefetcher prefetcher = new SchemaImportPrefetcher(new UrlSchemaLoader(wsdlUrl, 0), 8, 0, 0);
+        prefetcher.prefetch(wsdlUrl);
+        Map<String, XmlObject> concurrent = new HashMap<String, XmlObject>();
+        SchemaUtils.getSchemas(wsdlUrl, concurrent, prefetcher, null);
+
+        assertEquals(SCHEMAS + 3, sequential.size());
+        assertEquals(toText(sequential), toText(concurrent));
+    }
+
+    @Test
+    public void abandonsStalledUrl() throws Exception {
+        String wsdlUrl = baseUrl + "stalled.wsdl";
+        try {
+            SchemaImportPrefetcher prefetcher = new SchemaImportPrefetcher(new UrlSchemaLoader(wsdlUrl, 0), 4, 1000, 0);
+            prefetcher.prefetch(wsdlUrl);
+            SchemaUtils.getSchemas(wsdlUrl, new HashMap<String, XmlObject>(), prefetcher, null);
+            fail("Stalled schema loaded");
+        } catch (SoapBuilderException e) {
+            assertTrue(e.getMessage().contains("stalled.xsd"));
+            assertTrue(e.getMessage().contains("did not finish within 1000 ms"));
+        }
+        // the stalled response is never sent, the read of the abandoned url has to be aborted
+        assertTrue(awaitLoaderThreads());
+    }
+
+    @Test
+    public void abortsOnOverallTimeout() {
+        String wsdlUrl = baseUrl + "stalled.wsdl";
+        UrlSchemaLoader loader = new UrlSchemaLoader(wsdlUrl, 0);
+        try {
+            new SchemaImportPrefetcher(loader, 4, 0, 1000).prefetch(wsdlUrl);
+            fail("Stalled schema loaded");
+        } catch (SoapBuilderException e) {
+            assertTrue(e.getMessage().contains("did not finish within 1000 ms"));
+        }
+        assertTrue(loader.isAborted());
+    }
+
+    private static boolean awaitLoaderThreads() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            boolean running = false;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                running |= thread.isAlive() && thread.getName().startsWith("soap-ws-schema-loader-");
+            }
+            if (!running) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    static Map<String, String> toText(Map<String, XmlObject> schemas) {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, XmlObject> schema : schemas.entrySet()) {
+            result.put(schema.getKey(), schema.getValue() != null ? schema.getValue().xmlText() : null);
+        }
+        return result;
+    }
+
+    static String wsdl(String... schemaLocations) {
+        StringBuilder imports = new StringBuilder();
+        for (int i = 0; i < schemaLocations.length; i++) {
+            imports.append("<xs:import namespace='urn:schema").append(i).append("' schemaLocation='")
+                    .append(schemaLocations[i]).append("'/>");
+        }
+        return "<wsdl:definitions xmlns:wsdl='http://schemas.xmlsoap.org/wsdl/' "
+                + "xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:service'>"
+                + "<wsdl:types><xs:schema targetNamespace='urn:service'>" + imports + "</xs:schema></wsdl:types>"
+                + "</wsdl:definitions>";
+    }
+
+    static String schema(int index) {
+        return "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:schema" + index + "'>"
+                + "<xs:import namespace='urn:common' schemaLocation='../shared/./common.xsd'/>"
+                + "<xs:element name='element" + index + "' type='xs:string'/></xs:schema>";
+    }
+
+    /**
+     * Serves the WSDL importing the schemas, the schemas and a stalled schema, every response after the latency
+     */
+    static class DelayingHandler implements HttpHandler {
+        private final long latencyMillis;
+        private final CountDownLatch stalled = new CountDownLatch(1);
+
+        DelayingHandler(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        void release() {
+            stalled.countDown();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String body;
+            try {
+                if (path.equals("/service.wsdl")) {
+                    String[] locations = new String[SCHEMAS];
+                    for (int i = 0; i < SCHEMAS; i++) {
+                        locations[i] = "schemas/schema" + i + ".xsd";
+                    }
+                    body = wsdl(locations);
+                } else if (path.startsWith("/schemas/schema")) {
+                    body = schema(Integer.parseInt(path.replaceAll("\\D", "")));
+                } else if (path.equals("/shared/common.xsd")) {
+                    body = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:common'/>";
+                } else if (path.equals("/stalled.wsdl")) {
+                    body = wsdl("schemas/schema0.xsd", "stalled.xsd");
+                } else if (path.equals("/stalled.xsd")) {
+                    stalled.await();
+                    body = "";
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+
+}
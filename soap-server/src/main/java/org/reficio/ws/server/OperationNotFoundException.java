@@ -18,13 +18,19 @@
  */
 package org.reficio.ws.server;
 
+import org.apache.log4j.Logger;
+
 /**
  * Exception thrown when the invoked binding operation is not found in the WSDL
+ * It is expected for requests that cannot be routed, so its stack trace is captured only if debugging is enabled.
  *
  * @author Tom Bujok
  * @since 1.0.0
  */
 public class OperationNotFoundException extends SoapServerException {
+
+    private final static Logger log = Logger.getLogger(OperationNotFoundException.class);
+
     public OperationNotFoundException(String message) {
         super(message);
     }
@@ -36,4 +42,9 @@ public class OperationNotFoundException extends SoapServerException {
     public OperationNotFoundException(Throwable cause) {
         super(cause);
     }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return log.isDebugEnabled() ? super.fillInStackTrace() : this;
+    }
 }
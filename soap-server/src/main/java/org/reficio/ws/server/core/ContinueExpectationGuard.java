@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.core;
+
+import org.mortbay.io.Buffer;
+import org.mortbay.io.ByteArrayBuffer;
+import org.mortbay.io.Connection;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.HttpHeaders;
+import org.mortbay.jetty.HttpParser;
+import org.mortbay.jetty.Parser;
+import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.endpoint.GenericContextDomEndpoint;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+/**
+ * Parser event handler that refuses the expectations (Expect: 100-continue) of requests sent to context paths without
+ * a responder. Jetty answers the continue expectation as soon as the headers are parsed, before any handler is
+ * invoked - the expectation of a request to an unknown context path is therefore replaced by an unsupported one,
+ * so that Jetty answers with 417 (Expectation Failed) and closes the connection, without awaiting the body.
+ * <p/>
+ * Jetty does not provide any extension point for that, the handler is installed reflectively in front of the
+ * handler of the HttpConnection by the Installer the connectors of the server delegate to. If the handler of the
+ * HttpParser is not accessible in this version of Jetty the connectors fail to start.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class ContinueExpectationGuard extends HttpParser.EventHandler {
+
+    private static final String REFUSED_EXPECTATION = "refused";
+
+    private static final Field HANDLER_FIELD;
+    private static final Exception HANDLER_FIELD_ERROR;
+
+    static {
+        Field field = null;
+        Exception error = null;
+        try {
+            field = HttpParser.class.getDeclaredField("_handler");
+            field.setAccessible(true);
+        } catch (Exception ex) {
+            field = null;
+            error = ex;
+        }
+        HANDLER_FIELD = field;
+        HANDLER_FIELD_ERROR = error;
+    }
+
+    private final HttpParser.EventHandler delegate;
+    private final GenericContextDomEndpoint endpoint;
+    private String uri;
+
+    private ContinueExpectationGuard(HttpParser.EventHandler delegate, GenericContextDomEndpoint endpoint) {
+        this.delegate = delegate;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Installs the guards on the connections of a connector - the connectors of the server extend different Jetty
+     * connectors, so they delegate to an installer instead of sharing a superclass
+     */
+    static final class Installer {
+
+        private GenericContextDomEndpoint endpoint;
+
+        void setEndpoint(GenericContextDomEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Checks that the guards can be installed, called when the connector starts
+         *
+         * @throws SoapServerException if the handler of the HttpParser is not accessible
+         */
+        void start() {
+            if (endpoint != null && HANDLER_FIELD == null) {
+                throw new SoapServerException("Continue expectations cannot be refused, "
+                        + "the handler of the HttpParser is not accessible", HANDLER_FIELD_ERROR);
+            }
+        }
+
+        /**
+         * Installs the guard in front of the parser handler of the connection
+         *
+         * @return the connection
+         */
+        Connection install(Connection connection) {
+            if (endpoint == null || !(connection instanceof HttpConnection)) {
+                return connection;
+            }
+            Parser parser = ((HttpConnection) connection).getParser();
+            if (parser instanceof HttpParser) {
+                try {
+                    HttpParser.EventHandler handler = (HttpParser.EventHandler) HANDLER_FIELD.get(parser);
+                    HANDLER_FIELD.set(parser, new ContinueExpectationGuard(handler, endpoint));
+                } catch (IllegalAccessException ex) {
+                    // the field has been made accessible before the connector started
+                    throw new SoapServerException(ex);
+                }
+            }
+            return connection;
+        }
+    }
+
+    @Override
+    public void startRequest(Buffer method, Buffer uri, Buffer version) throws IOException {
+        this.uri = uri.toString();
+        delegate.startRequest(method, uri, version);
+    }
+
+    @Override
+    public void parsedHeader(Buffer name, Buffer value) throws IOException {
+        if (HttpHeaders.CACHE.getOrdinal(name) == HttpHeaders.EXPECT_ORDINAL && !endpoint.hasRequestResponder(getPath(uri))) {
+            value = new ByteArrayBuffer(REFUSED_EXPECTATION);
+        }
+        delegate.parsedHeader(name, value);
+    }
+
+    @Override
+    public void headerComplete() throws IOException {
+        delegate.headerComplete();
+    }
+
+    @Override
+    public void content(Buffer ref) throws IOException {
+        delegate.content(ref);
+    }
+
+    @Override
+    public void messageComplete(long contentLength) throws IOException {
+        delegate.messageComplete(contentLength);
+    }
+
+    @Override
+    public void startResponse(Buffer version, int status, Buffer reason) throws IOException {
+        delegate.startResponse(version, status, reason);
+    }
+
+    /**
+     * @return path of the request URI, as returned by HttpServletRequest.getRequestURI()
+     */
+    static String getPath(String uri) {
+        int start = 0;
+        int scheme = uri.indexOf("://");
+        if (scheme > 0 && uri.indexOf('/') > scheme) {
+            start = uri.indexOf('/', scheme + 3);
+            if (start < 0) {
+                return "/";
+            }
+        }
+        int end = uri.indexOf('?', start);
+        return end < 0 ? uri.substring(start) : uri.substring(start, end);
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.core;
+
+import org.mortbay.thread.concurrent.ThreadPool;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that adds threads up to the maximum size before it queues the dispatched tasks.
+ * A ThreadPoolExecutor with an unbounded queue never grows past its core size - the tasks are queued as soon as the
+ * core threads are busy - so the maximum size would have no effect. Here the queue refuses a task while there is no
+ * idle thread to take it and the pool may still grow, so that a new thread is started. Once the pool has reached its
+ * maximum size the tasks are queued, they are never rejected while the pool is running.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class ElasticThreadPool extends ThreadPool {
+
+    private final AtomicInteger submittedTasks = new AtomicInteger();
+
+    ElasticThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, new TaskQueue());
+    }
+
+    private ElasticThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, TaskQueue queue) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, new QueueingPolicy(queue));
+        queue.pool = this;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submittedTasks.incrementAndGet();
+        try {
+            super.execute(command);
+        } catch (RejectedExecutionException ex) {
+            submittedTasks.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable throwable) {
+        submittedTasks.decrementAndGet();
+    }
+
+    /**
+     * Queue accepting a task only if an idle thread may take it or if no thread may be added to the pool
+     */
+    private static final class TaskQueue extends LinkedBlockingQueue<Runnable> {
+
+        private volatile ElasticThreadPool pool;
+
+        @Override
+        public boolean offer(Runnable task) {
+            ElasticThreadPool executor = pool;
+            if (executor == null) {
+                return super.offer(task);
+            }
+            int poolSize = executor.getPoolSize();
+            if (executor.submittedTasks.get() <= poolSize || poolSize >= executor.getMaximumPoolSize()) {
+                return super.offer(task);
+            }
+            // refused - the executor starts a new thread
+            return false;
+        }
+
+        boolean force(Runnable task) {
+            return super.offer(task);
+        }
+    }
+
+    /**
+     * Queues the task if the pool has reached its maximum size after the queue refused it
+     */
+    private static final class QueueingPolicy implements RejectedExecutionHandler {
+
+        private final TaskQueue queue;
+
+        QueueingPolicy(TaskQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown() || !queue.force(task)) {
+                throw new RejectedExecutionException("Thread pool has been shut down");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.core;
+
+import org.mortbay.io.Connection;
+import org.mortbay.io.nio.SelectChannelEndPoint;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.reficio.ws.server.endpoint.GenericContextDomEndpoint;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * Select channel connector that refuses the continue expectations of requests sent to context paths without
+ * a responder, see ContinueExpectationGuard.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class SoapSelectChannelConnector extends SelectChannelConnector {
+
+    private final ContinueExpectationGuard.Installer guard = new ContinueExpectationGuard.Installer();
+
+    public void setEndpoint(GenericContextDomEndpoint endpoint) {
+        guard.setEndpoint(endpoint);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        guard.start();
+        super.doStart();
+    }
+
+    @Override
+    protected Connection newConnection(SocketChannel channel, SelectChannelEndPoint endpoint) {
+        return guard.install(super.newConnection(channel, endpoint));
+    }
+
+}
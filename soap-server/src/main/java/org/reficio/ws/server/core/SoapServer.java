@@ -25,26 +25,36 @@ import org.mortbay.jetty.Server;
 import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.security.SslSelectChannelConnector;
 import org.mortbay.jetty.servlet.Context;
+import org.mortbay.thread.ThreadPool;
 import org.reficio.ws.annotation.ThreadSafe;
 import org.reficio.ws.server.ServiceRegistrationException;
 import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.endpoint.AdmissionControlFilter;
+import org.reficio.ws.server.endpoint.Bulkhead;
 import org.reficio.ws.server.endpoint.GenericContextDomEndpoint;
+import org.reficio.ws.server.metrics.ServerMetrics;
 import org.reficio.ws.server.responder.RequestResponder;
+import org.reficio.ws.server.routing.RoutingTable;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.GenericWebApplicationContext;
 
 import javax.servlet.ServletContext;
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * SOAP server enables the user to handle a SOAP communication on a purely XML level.
@@ -68,6 +78,18 @@ public final class SoapServer {
     private Integer coreThreads = SoapServerConstants.CORE_THREADS_COUNT;
     private Integer maxThreads = SoapServerConstants.MAX_THREADS_COUNT;
     private Integer threadKeepAliveTimeInSeconds = SoapServerConstants.THREAD_KEEP_ALIVE_TIME_IN_SECONDS;
+    private boolean streaming = SoapServerConstants.STREAMING;
+    private Integer asyncTimeoutInSeconds = SoapServerConstants.ASYNC_TIMEOUT_IN_SECONDS;
+    private boolean virtualThreads = SoapServerConstants.VIRTUAL_THREADS;
+    private Integer maxConcurrentRequests = SoapServerConstants.MAX_CONCURRENT_REQUESTS;
+    private Integer maxQueuedRequests = SoapServerConstants.MAX_QUEUED_REQUESTS;
+    private Integer queueTimeoutInMillis = SoapServerConstants.QUEUE_TIMEOUT_IN_MILLIS;
+    private boolean adaptiveConcurrencyLimit = SoapServerConstants.ADAPTIVE_CONCURRENCY_LIMIT;
+    private String metricsContextPath = SoapServerConstants.METRICS_CONTEXT_PATH;
+    private Integer compressionThresholdInBytes = SoapServerConstants.COMPRESSION_THRESHOLD_IN_BYTES;
+    private Integer maxDecompressedSizeInBytes = SoapServerConstants.MAX_DECOMPRESSED_SIZE_IN_BYTES;
+    private Integer attachmentCacheThresholdInBytes = SoapServerConstants.ATTACHMENT_CACHE_THRESHOLD_IN_BYTES;
+    private File attachmentCacheDir;
 
     private URL keyStoreUrl;
     private String keyStoreType = SoapServerConstants.KEYSTORE_TYPE;
@@ -81,6 +103,8 @@ public final class SoapServer {
     private ClassPathXmlApplicationContext context;
     private Server server;
     private GenericContextDomEndpoint endpoint;
+    private AdmissionControlFilter admissionControl;
+    private ServerMetrics metrics;
 
     // ----------------------------------------------------------------
     // PUBLIC API
@@ -146,6 +170,9 @@ public final class SoapServer {
 
     /**
      * Registers responder under specified context path. Only one responder may be registered under one context path.
+     * The context path may be a pattern - the * segment matches any single segment and the trailing ** segment
+     * matches the rest of the path, for example /tenant/&#42;/billing or /static/&#42;&#42;. Literal segments take
+     * precedence over the wildcards, see RoutingTable for details.
      *
      * @param contextPath
      * @param responder
@@ -160,7 +187,28 @@ public final class SoapServer {
     }
 
     /**
-     * Unregisters responder from the specified context path
+     * Registers responder under specified context path, its requests are isolated by the bulkhead - a slow responder
+     * cannot exhaust the threads of the server shared with the other responders. Requests exceeding the bulkhead
+     * are rejected with a SOAP fault and the HTTP 503 status before their body is read. The utilization of the
+     * bulkhead is reported by the server metrics.
+     *
+     * @param contextPath
+     * @param responder
+     * @param bulkhead    bulkhead isolating the requests, it cannot be shared with other context paths
+     * @throws ServiceRegistrationException thrown if a registration error occurs - for example duplicate responder registered
+     */
+    public void registerRequestResponder(String contextPath, RequestResponder responder, Bulkhead bulkhead) throws ServiceRegistrationException {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        checkNotNull(responder, "responder cannot be null");
+        checkNotNull(bulkhead, "bulkhead cannot be null");
+        validateUrl(contextPath);
+        log.info(String.format("Registering responder [%s] isolated by [%s] under the url [%s]", responder, bulkhead, getUrl(contextPath)));
+        endpoint.registerRequestResponder(contextPath, responder, bulkhead);
+        metrics.registerBulkhead(bulkhead);
+    }
+
+    /**
+     * Unregisters responder from the specified context path, the requests in flight are completed by the responder
      *
      * @param contextPath
      * @throws ServiceRegistrationException thrown if an unregistration error occurs - for example no responder registerd
@@ -169,6 +217,50 @@ public final class SoapServer {
         checkNotNull(contextPath, "contextPath cannot be null");
         log.info(String.format("Unregistering responder from the url [%s]", getUrl(contextPath)));
         endpoint.unregisterRequestResponder(contextPath);
+        metrics.unregisterBulkhead(RoutingTable.normalize(contextPath));
+    }
+
+    /**
+     * Unregisters responder from the specified context path, like unregisterRequestResponder, so that its resources may
+     * be released once the requests in flight have been completed by the responder
+     *
+     * @param contextPath
+     * @return future completed with the unregistered responder when all its requests in flight have completed
+     * @throws ServiceRegistrationException thrown if an unregistration error occurs - for example no responder registerd
+     */
+    public CompletableFuture<RequestResponder> drainRequestResponder(String contextPath) throws ServiceRegistrationException {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        log.info(String.format("Unregistering responder from the url [%s]", getUrl(contextPath)));
+        CompletableFuture<RequestResponder> drained = endpoint.drainRequestResponder(contextPath);
+        metrics.unregisterBulkhead(RoutingTable.normalize(contextPath));
+        return drained;
+    }
+
+    /**
+     * Atomically replaces the responder registered under the specified context path, for example to roll out a new
+     * version of the WSDL under load. Every request is processed either by the old or by the new responder - there is
+     * no window in which the context path is not served. The requests in flight are completed by the old responder.
+     *
+     * @param contextPath context path (pattern) of the replaced responder
+     * @param responder   new responder
+     * @return future completed with the old responder when all its requests in flight have completed, afterwards
+     *         the resources of the old responder may be released
+     * @throws ServiceRegistrationException thrown if there is no responder registered under the context path
+     */
+    public CompletableFuture<RequestResponder> replaceRequestResponder(String contextPath, RequestResponder responder) throws ServiceRegistrationException {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        checkNotNull(responder, "responder cannot be null");
+        log.info(String.format("Replacing responder under the url [%s] with [%s]", getUrl(contextPath), responder));
+        return endpoint.replaceRequestResponder(contextPath, responder);
+    }
+
+    /**
+     * @param contextPath context path (pattern) of a registered responder
+     * @return number of requests currently processed by the responder
+     */
+    public long getInFlightRequestCount(String contextPath) {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        return endpoint.getInFlightRequestCount(contextPath);
     }
 
     private String getUrl(String contextPath) {
@@ -186,6 +278,84 @@ public final class SoapServer {
         }
     }
 
+    /**
+     * Limits the number of concurrently processed requests routed to the specified context path (pattern). Requests exceeding the limit
+     * are rejected with a SOAP fault and the HTTP 503 status before their body is read. Queued requests wait at most
+     * queueTimeoutInMillis for a slot.
+     *
+     * @param contextPath           context path to limit
+     * @param maxConcurrentRequests maximum number of concurrently processed requests. Has to be positive.
+     * @param maxQueuedRequests     maximum number of requests waiting for a slot. Has to be not negative.
+     */
+    public void setRequestLimit(String contextPath, int maxConcurrentRequests, int maxQueuedRequests) {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        checkArgument(maxConcurrentRequests > 0);
+        checkArgument(maxQueuedRequests >= 0);
+        admissionControl.setLimit(contextPath, maxConcurrentRequests, maxQueuedRequests);
+    }
+
+    /**
+     * Removes the limit of the requests sent to the specified context path
+     *
+     * @param contextPath
+     */
+    public void removeRequestLimit(String contextPath) {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        admissionControl.removeLimit(contextPath);
+    }
+
+    /**
+     * @param contextPath context path of a registered responder
+     * @return number of requests sent to the context path that have been rejected due to the request limits
+     *         or the bulkhead
+     */
+    public long getRejectedRequestCount(String contextPath) {
+        checkNotNull(contextPath, "contextPath cannot be null");
+        return admissionControl.getRejectedRequestCount(contextPath);
+    }
+
+    /**
+     * @return current value of the adaptive concurrency limit, 0 if it is not enabled
+     */
+    public int getConcurrencyLimit() {
+        return admissionControl.getAdaptiveLimit();
+    }
+
+    /**
+     * Resizes the thread pool processing the requests at runtime. The adaptive concurrency limit (if enabled)
+     * is bounded by the new maximum number of threads. Not supported in the virtual-thread mode.
+     *
+     * @param coreThreads number of threads kept in the pool. Has to be positive.
+     * @param maxThreads  maximum number of threads of the pool. Has to be not lower than coreThreads.
+     */
+    public synchronized void resizeThreadPool(int coreThreads, int maxThreads) {
+        checkArgument(coreThreads > 0);
+        checkArgument(maxThreads >= coreThreads);
+        ThreadPool threadPool = server.getThreadPool();
+        checkState(threadPool instanceof ThreadPoolExecutor, "Thread pool cannot be resized in the virtual-thread mode");
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) threadPool;
+        log.info(String.format("Resizing thread pool from [%d..%d] to [%d..%d] threads", executor.getCorePoolSize(),
+                executor.getMaximumPoolSize(), coreThreads, maxThreads));
+        // the core size may not exceed the maximum size at any time
+        if (maxThreads >= executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxThreads);
+            executor.setCorePoolSize(coreThreads);
+        } else {
+            executor.setCorePoolSize(coreThreads);
+            executor.setMaximumPoolSize(maxThreads);
+        }
+        this.coreThreads = coreThreads;
+        this.maxThreads = maxThreads;
+        admissionControl.setAdaptiveMaxLimit(maxThreads);
+    }
+
+    /**
+     * @return metrics of the requests sent to the registered context paths, they are also exposed over JMX
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * @return a list of registered context paths
      */
@@ -198,6 +368,7 @@ public final class SoapServer {
     // ----------------------------------------------------------------
     private void configure() {
         configureParentContext();
+        configureThreadPool();
         configureConnectors();
         configureWebContext();
     }
@@ -211,6 +382,27 @@ public final class SoapServer {
         context.refresh();
         context.registerShutdownHook();
         server = context.getBean(SoapServerConstants.SERVER_BEAN_NAME, Server.class);
+        admissionControl = context.getBean(SoapServerConstants.ADMISSION_CONTROL_BEAN_NAME, AdmissionControlFilter.class);
+        admissionControl.setGlobalLimit(maxConcurrentRequests, maxQueuedRequests);
+        if (adaptiveConcurrencyLimit) {
+            int maxLimit = getMaxConcurrencyLimit();
+            admissionControl.setAdaptiveLimit(Math.min(SoapServerConstants.INITIAL_CONCURRENCY_LIMIT, maxLimit), maxLimit);
+        }
+        metrics = context.getBean(SoapServerConstants.METRICS_BEAN_NAME, ServerMetrics.class);
+    }
+
+    private int getMaxConcurrencyLimit() {
+        return virtualThreads ? SoapServerConstants.MAX_VIRTUAL_CONCURRENCY_LIMIT : maxThreads;
+    }
+
+    private void configureThreadPool() {
+        if (virtualThreads) {
+            ThreadPool threadPool = server.getThreadPool();
+            server.setThreadPool(new VirtualThreadPool());
+            if (threadPool instanceof ExecutorService) {
+                ((ExecutorService) threadPool).shutdown();
+            }
+        }
     }
 
     private void configureConnectors() {
@@ -276,6 +468,17 @@ public final class SoapServer {
         properties.setProperty(SoapServerConstants.CORE_POOL_SIZE_PROP_KEY, coreThreads.toString());
         properties.setProperty(SoapServerConstants.MAX_POOL_SIZE_PROP_KEY, maxThreads.toString());
         properties.setProperty(SoapServerConstants.KEEP_ALIVE_PROP_KEY, threadKeepAliveTimeInSeconds.toString());
+        properties.setProperty(SoapServerConstants.STREAMING_PROP_KEY, Boolean.toString(streaming));
+        long asyncTimeoutInMillis = (long) asyncTimeoutInSeconds * SoapServerConstants.SECONDS_TO_MILLIS_RATIO;
+        properties.setProperty(SoapServerConstants.ASYNC_TIMEOUT_PROP_KEY, Long.toString(asyncTimeoutInMillis));
+        properties.setProperty(SoapServerConstants.QUEUE_TIMEOUT_PROP_KEY, queueTimeoutInMillis.toString());
+        properties.setProperty(SoapServerConstants.METRICS_JMX_NAME_PROP_KEY, String.format("%s-%d", http ? "http" : "https", http ? httpPort : httpsPort));
+        properties.setProperty(SoapServerConstants.METRICS_CONTEXT_PATH_PROP_KEY, metricsContextPath);
+        properties.setProperty(SoapServerConstants.COMPRESSION_THRESHOLD_PROP_KEY, compressionThresholdInBytes.toString());
+        properties.setProperty(SoapServerConstants.MAX_DECOMPRESSED_SIZE_PROP_KEY, maxDecompressedSizeInBytes.toString());
+        File cacheDir = attachmentCacheDir != null ? attachmentCacheDir : new File(System.getProperty("java.io.tmpdir"));
+        properties.setProperty(SoapServerConstants.ATTACHMENT_CACHE_DIR_PROP_KEY, cacheDir.getAbsolutePath());
+        properties.setProperty(SoapServerConstants.ATTACHMENT_CACHE_THRESHOLD_PROP_KEY, attachmentCacheThresholdInBytes.toString());
         return properties;
     }
 
@@ -402,6 +605,146 @@ public final class SoapServer {
             return this;
         }
 
+        /**
+         * @param value Enables the streaming mode. In the streaming mode SOAP messages are read with StAX (instead of SAAJ),
+         *              SOAP headers are built lazily and the payload may be read as a stream only once
+         *              (see @see org.reficio.ws.server.responder.StreamingResponder). Disabled by default.
+         * @return builder
+         */
+        public Builder streaming(boolean value) {
+            server.streaming = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the maximum time in seconds a request may wait for the response of an AsyncRequestResponder.
+         *              If it elapses a SOAP fault is returned. Has to be positive.
+         * @return builder
+         */
+        public Builder asyncTimeoutInSeconds(int value) {
+            checkArgument(value > 0);
+            server.asyncTimeoutInSeconds = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the maximum number of concurrently processed requests. Requests exceeding the limit (and the queue)
+         *              are rejected with a SOAP fault and the HTTP 503 status before their body is read. Has to be positive.
+         *              Not limited by default.
+         * @return builder
+         */
+        public Builder maxConcurrentRequests(int value) {
+            checkArgument(value > 0);
+            server.maxConcurrentRequests = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the maximum number of requests waiting for a slot if the maxConcurrentRequests limit is reached.
+         *              Has to be not negative. By default no request waits.
+         * @return builder
+         */
+        public Builder maxQueuedRequests(int value) {
+            checkArgument(value >= 0);
+            server.maxQueuedRequests = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the maximum time in milliseconds a queued request waits for a slot of a request limit.
+         *              If it elapses the request is rejected with a SOAP fault and the HTTP 503 status. Has to be
+         *              positive. 1000 by default.
+         * @return builder
+         */
+        public Builder queueTimeoutInMillis(int value) {
+            checkArgument(value > 0);
+            server.queueTimeoutInMillis = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the context path under which a text/plain snapshot of the server metrics is returned
+         *              to GET requests. Has to begin with a slash. Disabled by default.
+         * @return builder
+         */
+        public Builder metricsContextPath(String value) {
+            checkNotNull(value);
+            checkArgument(value.startsWith("/"), "contextPath has to begin with a slash");
+            server.metricsContextPath = value;
+            return this;
+        }
+
+        /**
+         * @param value Enables the virtual-thread mode. In this mode every request is processed on a new virtual thread,
+         *              the coreThreads, maxThreads and threadKeepAliveTimeInSeconds settings are ignored.
+         *              Requires Java 21 or newer. Disabled by default.
+         * @return builder
+         */
+        public Builder virtualThreads(boolean value) {
+            checkState(!value || VirtualThreadPool.isSupported(), "Virtual threads require Java 21 or newer");
+            server.virtualThreads = value;
+            return this;
+        }
+
+        /**
+         * @param value Enables the adaptive concurrency limit. The number of concurrently processed requests is adjusted at
+         *              runtime to the observed latency - the limit grows while the latency stays near its no-load minimum
+         *              and shrinks when the requests start to queue up. Requests exceeding the limit are rejected with
+         *              a SOAP fault and the HTTP 503 status before their body is read. The limit is bounded by maxThreads.
+         *              Disabled by default.
+         * @return builder
+         */
+        public Builder adaptiveConcurrencyLimit(boolean value) {
+            server.adaptiveConcurrencyLimit = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the minimum size in bytes of a response that is compressed if the client accepts the gzip or
+         *              deflate Content-Encoding. Compressed cached responses (e.g. of the AutoResponder) are kept with
+         *              the cached response. A negative value disables the compression of responses, compressed requests
+         *              are always accepted. 1024 by default.
+         * @return builder
+         */
+        public Builder compressionThresholdInBytes(int value) {
+            server.compressionThresholdInBytes = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the maximum size in bytes of the decompressed body of a request sent with the gzip or deflate
+         *              Content-Encoding. Larger requests are rejected with a SOAP fault and the HTTP 413 status.
+         *              Has to be positive. 16 MB by default.
+         * @return builder
+         */
+        public Builder maxDecompressedSizeInBytes(int value) {
+            checkArgument(value > 0);
+            server.maxDecompressedSizeInBytes = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the size in bytes above which an attachment of a multipart (MTOM/XOP) request is streamed
+         *              to a file instead of being kept in memory. Has to be not negative. 64 KB by default.
+         * @return builder
+         */
+        public Builder attachmentCacheThresholdInBytes(int value) {
+            checkArgument(value >= 0);
+            server.attachmentCacheThresholdInBytes = value;
+            return this;
+        }
+
+        /**
+         * @param value Sets the directory in which the large attachments of multipart (MTOM/XOP) requests are cached
+         *              until the request completes. The temporary directory by default.
+         * @return builder
+         */
+        public Builder attachmentCacheDir(File value) {
+            checkNotNull(value);
+            server.attachmentCacheDir = value;
+            return this;
+        }
+
         /**
          * Builds populated SoapServer instance
          *
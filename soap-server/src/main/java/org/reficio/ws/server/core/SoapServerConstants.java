@@ -36,16 +36,40 @@ final class SoapServerConstants {
     public static final int THREAD_KEEP_ALIVE_TIME_IN_SECONDS = 60;
     public static final String KEYSTORE_TYPE = "JKS";
     public static final boolean REUSE_ADDRESS = true;
+    public static final boolean STREAMING = false;
+    public static final int ASYNC_TIMEOUT_IN_SECONDS = 30;
+    public static final boolean VIRTUAL_THREADS = false;
+    public static final int MAX_CONCURRENT_REQUESTS = 0;
+    public static final int MAX_QUEUED_REQUESTS = 0;
+    public static final int QUEUE_TIMEOUT_IN_MILLIS = 1000;
+    public static final boolean ADAPTIVE_CONCURRENCY_LIMIT = false;
+    public static final int INITIAL_CONCURRENCY_LIMIT = 20;
+    public static final int MAX_VIRTUAL_CONCURRENCY_LIMIT = 1000;
+    public static final String METRICS_CONTEXT_PATH = "";
+    public static final int COMPRESSION_THRESHOLD_IN_BYTES = 1024;
+    public static final int MAX_DECOMPRESSED_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    public static final int ATTACHMENT_CACHE_THRESHOLD_IN_BYTES = 64 * 1024;
 
     public static final String SPRING_CONTEXT_LOCATION = "classpath:soap-server.xml";
     public static final String SERVER_BEAN_NAME = "jettyServer";
     public static final String CONNECTOR_BEAN_NAME = "connector";
     public static final String SSL_CONNECTOR_BEAN_NAME = "sslConnector";
     public static final String ENDPOINT_BEAN_NAME = "endpoint";
+    public static final String ADMISSION_CONTROL_BEAN_NAME = "admissionControl";
+    public static final String METRICS_BEAN_NAME = "metrics";
 
     public static final String CORE_POOL_SIZE_PROP_KEY = "core.pool.size";
     public static final String MAX_POOL_SIZE_PROP_KEY = "max.pool.size";
     public static final String KEEP_ALIVE_PROP_KEY = "keep.alive.time";
+    public static final String STREAMING_PROP_KEY = "streaming";
+    public static final String ASYNC_TIMEOUT_PROP_KEY = "async.timeout";
+    public static final String QUEUE_TIMEOUT_PROP_KEY = "queue.timeout";
+    public static final String METRICS_JMX_NAME_PROP_KEY = "metrics.jmx.name";
+    public static final String METRICS_CONTEXT_PATH_PROP_KEY = "metrics.context.path";
+    public static final String COMPRESSION_THRESHOLD_PROP_KEY = "compression.threshold";
+    public static final String MAX_DECOMPRESSED_SIZE_PROP_KEY = "compression.max.decompressed.size";
+    public static final String ATTACHMENT_CACHE_DIR_PROP_KEY = "attachment.cache.dir";
+    public static final String ATTACHMENT_CACHE_THRESHOLD_PROP_KEY = "attachment.cache.threshold";
 
     public static final int SECONDS_TO_MILLIS_RATIO = 1000;
 
@@ -20,6 +20,7 @@ package org.reficio.ws.server.core;
 
 import org.reficio.ws.server.responder.RequestResponder;
 
+import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,6 +41,18 @@ public class SoapServerFactory {
     private Integer coreThreads;
     private Integer maxThreads;
     private Integer threadKeepAliveTimeInSeconds;
+    private Boolean streaming;
+    private Integer asyncTimeoutInSeconds;
+    private Boolean virtualThreads;
+    private Integer maxConcurrentRequests;
+    private Integer maxQueuedRequests;
+    private Integer queueTimeoutInMillis;
+    private Boolean adaptiveConcurrencyLimit;
+    private Integer compressionThresholdInBytes;
+    private Integer maxDecompressedSizeInBytes;
+    private Integer attachmentCacheThresholdInBytes;
+    private File attachmentCacheDir;
+    private String metricsContextPath;
 
     private URL keyStoreUrl;
     private String keyStoreType;
@@ -100,6 +113,66 @@ public class SoapServerFactory {
         this.reuseAddress = value;
     }
 
+    public void setStreaming(Boolean value) {
+        checkNotNull(value);
+        this.streaming = value;
+    }
+
+    public void setAsyncTimeoutInSeconds(Integer value) {
+        checkNotNull(value);
+        this.asyncTimeoutInSeconds = value;
+    }
+
+    public void setVirtualThreads(Boolean value) {
+        checkNotNull(value);
+        this.virtualThreads = value;
+    }
+
+    public void setMaxConcurrentRequests(Integer value) {
+        checkNotNull(value);
+        this.maxConcurrentRequests = value;
+    }
+
+    public void setMaxQueuedRequests(Integer value) {
+        checkNotNull(value);
+        this.maxQueuedRequests = value;
+    }
+
+    public void setQueueTimeoutInMillis(Integer value) {
+        checkNotNull(value);
+        this.queueTimeoutInMillis = value;
+    }
+
+    public void setAdaptiveConcurrencyLimit(Boolean value) {
+        checkNotNull(value);
+        this.adaptiveConcurrencyLimit = value;
+    }
+
+    public void setCompressionThresholdInBytes(Integer value) {
+        checkNotNull(value);
+        this.compressionThresholdInBytes = value;
+    }
+
+    public void setMaxDecompressedSizeInBytes(Integer value) {
+        checkNotNull(value);
+        this.maxDecompressedSizeInBytes = value;
+    }
+
+    public void setAttachmentCacheThresholdInBytes(Integer value) {
+        checkNotNull(value);
+        this.attachmentCacheThresholdInBytes = value;
+    }
+
+    public void setAttachmentCacheDir(File value) {
+        checkNotNull(value);
+        this.attachmentCacheDir = value;
+    }
+
+    public void setMetricsContextPath(String value) {
+        checkNotNull(value);
+        this.metricsContextPath = value;
+    }
+
     public void setResponders(Map<String, RequestResponder> responders) {
         checkNotNull(responders);
         this.responders = new HashMap<String, RequestResponder>(responders);
@@ -155,6 +228,42 @@ public class SoapServerFactory {
         if (reuseAddress != null) {
             builder.reuseAddress(reuseAddress);
         }
+        if (streaming != null) {
+            builder.streaming(streaming);
+        }
+        if (asyncTimeoutInSeconds != null) {
+            builder.asyncTimeoutInSeconds(asyncTimeoutInSeconds);
+        }
+        if (virtualThreads != null) {
+            builder.virtualThreads(virtualThreads);
+        }
+        if (maxConcurrentRequests != null) {
+            builder.maxConcurrentRequests(maxConcurrentRequests);
+        }
+        if (maxQueuedRequests != null) {
+            builder.maxQueuedRequests(maxQueuedRequests);
+        }
+        if (queueTimeoutInMillis != null) {
+            builder.queueTimeoutInMillis(queueTimeoutInMillis);
+        }
+        if (adaptiveConcurrencyLimit != null) {
+            builder.adaptiveConcurrencyLimit(adaptiveConcurrencyLimit);
+        }
+        if (compressionThresholdInBytes != null) {
+            builder.compressionThresholdInBytes(compressionThresholdInBytes);
+        }
+        if (maxDecompressedSizeInBytes != null) {
+            builder.maxDecompressedSizeInBytes(maxDecompressedSizeInBytes);
+        }
+        if (attachmentCacheThresholdInBytes != null) {
+            builder.attachmentCacheThresholdInBytes(attachmentCacheThresholdInBytes);
+        }
+        if (attachmentCacheDir != null) {
+            builder.attachmentCacheDir(attachmentCacheDir);
+        }
+        if (metricsContextPath != null) {
+            builder.metricsContextPath(metricsContextPath);
+        }
     }
 
     private void configureKeyStore(SoapServer.Builder builder) {
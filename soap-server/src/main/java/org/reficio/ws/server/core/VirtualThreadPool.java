@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.core;
+
+import org.mortbay.component.AbstractLifeCycle;
+import org.mortbay.io.nio.SelectChannelEndPoint;
+import org.mortbay.thread.ThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that handles every connection dispatch on a new virtual thread, so that the number
+ * of concurrently processed requests is not limited by the size of a pool.
+ * The long-running connector loops (acceptors, selectors) are not request work and would pin the carrier threads,
+ * so they are run on platform threads.
+ * Virtual threads are available since Java 21 - as the library is compiled for older versions they are
+ * created reflectively.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private ExecutorService virtualExecutor;
+    private ExecutorService platformExecutor;
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM, Java 21 or newer is required");
+        }
+        virtualExecutor = (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        platformExecutor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        virtualExecutor.shutdown();
+        platformExecutor.shutdown();
+    }
+
+    @Override
+    public boolean dispatch(final Runnable job) {
+        ExecutorService executor = job instanceof SelectChannelEndPoint ? virtualExecutor : platformExecutor;
+        try {
+            executor.execute(() -> {
+                activeThreads.incrementAndGet();
+                try {
+                    job.run();
+                } finally {
+                    activeThreads.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        virtualExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        platformExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+        return activeThreads.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrently processed requests to a limit adjusted to the observed latency (gradient style).
+ * The latency of the processed requests is averaged in windows. After every window the limit is multiplied by the
+ * gradient - the ratio of the no-load latency (the minimum of the recent windows, with a tolerance) to the latency
+ * of the window, at most 1 - and a headroom of the square root of the limit is added. So the limit grows while the
+ * latency stays near the no-load minimum and it shrinks as soon as requests start to queue up in the responders.
+ * The change is smoothed and the limit grows only if it has been used, requests exceeding it are rejected right away.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class AdaptiveLimit {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    /**
+     * Number of windows after which the no-load latency is probed again, it might have changed
+     */
+    private static final int PROBE_WINDOWS = 100;
+
+    /**
+     * Ratio by which the latency may grow before the limit is reduced
+     */
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder windowNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private volatile double limit;
+    private volatile int maxLimit;
+
+    // updated only by the thread closing a window
+    private long noLoadNanos = Long.MAX_VALUE;
+    private long probeNanos = Long.MAX_VALUE;
+    private int windows;
+
+    AdaptiveLimit(int initialLimit, int maxLimit) {
+        if (initialLimit <= 0) {
+            throw new IllegalArgumentException("initialLimit has to be positive");
+        }
+        setMaxLimit(maxLimit);
+        this.limit = Math.min(initialLimit, maxLimit);
+    }
+
+    /**
+     * @return true if the request has been admitted and has to release the limit afterwards, false if it has been rejected
+     */
+    boolean acquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the limit without a latency sample, e.g. if the request failed or has been suspended
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Releases the limit sampling the latency of the request
+     *
+     * @param startNanos System.nanoTime() when the request has been admitted
+     * @param endNanos   System.nanoTime() when the request has been processed
+     */
+    void release(long startNanos, long endNanos) {
+        inFlight.decrementAndGet();
+        windowNanos.add(endNanos - startNanos);
+        windowSamples.increment();
+        long start = windowStart.get();
+        if (endNanos - start >= WINDOW_NANOS && windowSamples.sum() >= MIN_WINDOW_SAMPLES
+                && windowStart.compareAndSet(start, endNanos)) {
+            update();
+        }
+    }
+
+    private synchronized void update() {
+        long samples = windowSamples.sumThenReset();
+        long nanos = windowNanos.sumThenReset();
+        int used = windowMaxInFlight.getAndSet(inFlight.get());
+        if (samples == 0) {
+            return;
+        }
+        long latency = Math.max(1, nanos / samples);
+        if (++windows == PROBE_WINDOWS) {
+            windows = 0;
+            noLoadNanos = probeNanos;
+            probeNanos = Long.MAX_VALUE;
+        }
+        probeNanos = Math.min(probeNanos, latency);
+        noLoadNanos = Math.min(noLoadNanos, latency);
+
+        double current = limit;
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * noLoadNanos / latency));
+        double estimated = current * gradient + Math.sqrt(current);
+        if (estimated > current && used < current / 2) {
+            // the limit has not been reached, there is no evidence that a higher one would not increase the latency
+            estimated = current;
+        }
+        double next = current * (1 - SMOOTHING) + estimated * SMOOTHING;
+        limit = Math.max(1, Math.min(maxLimit, next));
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @param maxLimit upper bound of the limit, e.g. the number of threads processing the requests
+     */
+    void setMaxLimit(int maxLimit) {
+        if (maxLimit <= 0) {
+            throw new IllegalArgumentException("maxLimit has to be positive");
+        }
+        this.maxLimit = maxLimit;
+        if (limit > maxLimit) {
+            limit = maxLimit;
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.routing.Route;
+import org.reficio.ws.server.routing.RoutingTable;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filter that sheds load before the body of the request is read. A request has to be admitted by the global limit,
+ * by the adaptive limit and by the limit of its context path (if any). Requests exceeding the limits are rejected with a pre-rendered
+ * SOAP Server fault and the HTTP 503 status - so are the queued requests that have not got a slot within the queue timeout.
+ * Limits and rejections are kept per context path pattern of the registered responders - all requests routed
+ * to a pattern share its limit. A suspended asynchronous request does not occupy a slot, it is not limited again
+ * when it is dispatched for the second time.
+ * Finally the request has to enter the bulkhead of its responder (if any), requests exceeding the bulkhead are
+ * rejected with the fault of the bulkhead. A request processed by the dedicated executor of a bulkhead keeps its slot
+ * of the bulkhead until the response has been produced, even though it is suspended.
+ * The adaptive limit is adjusted to the latency of the admitted requests, see AdaptiveLimit. Only the requests that
+ * have been processed within the limit are sampled - not the rejected, failed or suspended ones.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class AdmissionControlFilter implements Filter {
+
+    private final static Log log = LogFactory.getLog(AdmissionControlFilter.class);
+
+    private static final String ADMITTED_ATTRIBUTE = AdmissionControlFilter.class.getName() + ".admitted";
+
+    private static final FaultResponse OVERLOADED = FaultResponse.server(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Server is overloaded, the request has been rejected");
+
+    private final ConcurrentMap<String, AdmissionLimit> limits = new ConcurrentHashMap<String, AdmissionLimit>();
+    private final ConcurrentMap<String, AtomicLong> rejections = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong totalRejections = new AtomicLong();
+    private volatile AdmissionLimit globalLimit;
+    private volatile AdaptiveLimit adaptiveLimit;
+    private volatile long queueTimeoutInMillis = AdmissionLimit.DEFAULT_QUEUE_TIMEOUT_IN_MILLIS;
+    private GenericContextDomEndpoint endpoint;
+
+    public void setEndpoint(GenericContextDomEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Sets the maximum time a queued request waits for a slot of the limits set afterwards
+     */
+    public void setQueueTimeoutInMillis(long queueTimeoutInMillis) {
+        if (queueTimeoutInMillis <= 0) {
+            throw new IllegalArgumentException("queueTimeoutInMillis has to be positive");
+        }
+        this.queueTimeoutInMillis = queueTimeoutInMillis;
+    }
+
+    /**
+     * Sets the limit of all requests
+     *
+     * @param maxConcurrentRequests maximum number of concurrently processed requests, 0 removes the limit
+     * @param maxQueuedRequests     maximum number of requests waiting for a slot
+     */
+    public void setGlobalLimit(int maxConcurrentRequests, int maxQueuedRequests) {
+        globalLimit = maxConcurrentRequests > 0 ? new AdmissionLimit(maxConcurrentRequests, maxQueuedRequests, queueTimeoutInMillis) : null;
+    }
+
+    /**
+     * Enables the limit of all requests that is adjusted at runtime to the observed latency
+     *
+     * @param initialLimit initial maximum number of concurrently processed requests, 0 disables the limit
+     * @param maxLimit     upper bound of the limit
+     */
+    public void setAdaptiveLimit(int initialLimit, int maxLimit) {
+        adaptiveLimit = initialLimit > 0 ? new AdaptiveLimit(initialLimit, maxLimit) : null;
+    }
+
+    /**
+     * Changes the upper bound of the adaptive limit (if enabled), e.g. when the thread pool has been resized
+     */
+    public void setAdaptiveMaxLimit(int maxLimit) {
+        AdaptiveLimit adaptive = adaptiveLimit;
+        if (adaptive != null) {
+            adaptive.setMaxLimit(maxLimit);
+        }
+    }
+
+    /**
+     * @return current value of the adaptive limit, 0 if it is not enabled
+     */
+    public int getAdaptiveLimit() {
+        AdaptiveLimit adaptive = adaptiveLimit;
+        return adaptive != null ? adaptive.getLimit() : 0;
+    }
+
+    /**
+     * Sets the limit of the requests routed to the context path pattern
+     *
+     * @param contextPath           context path pattern to limit
+     * @param maxConcurrentRequests maximum number of concurrently processed requests
+     * @param maxQueuedRequests     maximum number of requests waiting for a slot
+     */
+    public void setLimit(String contextPath, int maxConcurrentRequests, int maxQueuedRequests) {
+        limits.put(RoutingTable.normalize(contextPath), new AdmissionLimit(maxConcurrentRequests, maxQueuedRequests, queueTimeoutInMillis));
+    }
+
+    public void removeLimit(String contextPath) {
+        limits.remove(RoutingTable.normalize(contextPath));
+    }
+
+    /**
+     * @return number of requests routed to the context path pattern that have been rejected
+     */
+    public long getRejectedRequestCount(String contextPath) {
+        AtomicLong counter = rejections.get(RoutingTable.normalize(contextPath));
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * @return number of all rejected requests
+     */
+    public long getRejectedRequestCount() {
+        return totalRejections.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        AdmissionLimit global = globalLimit;
+        AdaptiveLimit adaptive = adaptiveLimit;
+        Route<ResponderRegistration> route = endpoint.resolveRoute(request);
+        AdmissionLimit local = route != null && !limits.isEmpty() ? limits.get(route.getPattern()) : null;
+        Bulkhead bulkhead = route != null ? route.getValue().getBulkhead() : null;
+        if ((global == null && adaptive == null && local == null && bulkhead == null)
+                || request.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!acquire(global)) {
+            reject(request, response, OVERLOADED);
+            return;
+        }
+        try {
+            if (adaptive != null && !adaptive.acquire()) {
+                reject(request, response, OVERLOADED);
+                return;
+            }
+            long start = System.nanoTime();
+            boolean processed = false;
+            try {
+                request.setAttribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+                processed = enter(local, bulkhead, request, response, chain);
+            } finally {
+                if (adaptive != null) {
+                    if (processed) {
+                        adaptive.release(start, System.nanoTime());
+                    } else {
+                        adaptive.release();
+                    }
+                }
+            }
+        } finally {
+            release(global);
+        }
+    }
+
+    /**
+     * Passes the request to the chain within the limit of its context path
+     *
+     * @return true if the request has been processed, false if it has been rejected
+     */
+    private boolean enter(AdmissionLimit local, Bulkhead bulkhead, HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!acquire(local)) {
+            reject(request, response, OVERLOADED);
+            return false;
+        }
+        try {
+            return enter(bulkhead, request, response, chain);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Passes the request to the chain within the bulkhead. The slot of the bulkhead is released afterwards,
+     * unless it has been handed over to the dedicated executor of the bulkhead.
+     *
+     * @return true if the request has been processed, false if it has been rejected
+     */
+    private boolean enter(Bulkhead bulkhead, HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (bulkhead == null) {
+            chain.doFilter(request, response);
+            return true;
+        }
+        boolean admitted;
+        try {
+            admitted = bulkhead.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(ex);
+        }
+        if (!admitted) {
+            reject(request, response, bulkhead.getRejectionFault());
+            return false;
+        }
+        request.setAttribute(Bulkhead.PERMIT_ATTRIBUTE, bulkhead);
+        try {
+            chain.doFilter(request, response);
+            return true;
+        } finally {
+            if (request.getAttribute(Bulkhead.PERMIT_ATTRIBUTE) == bulkhead) {
+                request.removeAttribute(Bulkhead.PERMIT_ATTRIBUTE);
+                bulkhead.release();
+            }
+        }
+    }
+
+    private static boolean acquire(AdmissionLimit limit) throws ServletException {
+        try {
+            return limit == null || limit.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(ex);
+        }
+    }
+
+    private static void release(AdmissionLimit limit) {
+        if (limit != null) {
+            limit.release();
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, FaultResponse fault) throws IOException {
+        totalRejections.incrementAndGet();
+        Route<ResponderRegistration> route = endpoint.resolveRoute(request);
+        if (route != null) {
+            rejections.computeIfAbsent(route.getPattern(), path -> new AtomicLong()).incrementAndGet();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Request to [%s] rejected, server is overloaded", request.getRequestURI()));
+        }
+        fault.write(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrently processed requests. If the limit is reached up to maxQueuedRequests
+ * requests wait for a slot, all other requests are rejected right away. A queued request that has not got a slot
+ * within the queue timeout is rejected as well. The slots are granted in the order of arrival - a new request does not
+ * take a released slot ahead of the queued ones.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class AdmissionLimit {
+
+    static final long DEFAULT_QUEUE_TIMEOUT_IN_MILLIS = 1000;
+
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final long queueTimeoutInMillis;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    AdmissionLimit(int maxConcurrentRequests, int maxQueuedRequests) {
+        this(maxConcurrentRequests, maxQueuedRequests, DEFAULT_QUEUE_TIMEOUT_IN_MILLIS);
+    }
+
+    AdmissionLimit(int maxConcurrentRequests, int maxQueuedRequests, long queueTimeoutInMillis) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests has to be positive");
+        }
+        if (maxQueuedRequests < 0) {
+            throw new IllegalArgumentException("maxQueuedRequests cannot be negative");
+        }
+        if (queueTimeoutInMillis <= 0) {
+            throw new IllegalArgumentException("queueTimeoutInMillis has to be positive");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.queueTimeoutInMillis = queueTimeoutInMillis;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    /**
+     * @return true if the request has been admitted and has to release the limit afterwards, false if it has been rejected
+     */
+    boolean acquire() throws InterruptedException {
+        // unlike tryAcquire() the timed variant honours the fairness - it does not barge ahead of the queued requests
+        if (permits.tryAcquire(0, TimeUnit.SECONDS)) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueuedRequests) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutInMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    long getQueueTimeoutInMillis() {
+        return queueTimeoutInMillis;
+    }
+
+    int getActiveRequests() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    int getQueuedRequests() {
+        return queued.get();
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.responder.FaultSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.EndpointInvocationChain;
+import org.springframework.ws.soap.SoapVersion;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.xml.transform.Source;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * State of a request that may be answered asynchronously, kept as an attribute of the request.
+ * The request is dispatched at most twice: the first dispatch starts the asynchronous response, the request is then
+ * suspended and dispatched again when the response has completed or when the timeout has elapsed.
+ * As the body of the request may be read only once, it is recorded in the first dispatch and replayed in the second one.
+ * The response may read the body on another thread while it is drained before the suspension - the bytes drained
+ * in the meantime are served from the record.
+ * The message context and the invocation chain of the first dispatch are kept, so that the completed response is passed
+ * through the endpoint interceptors that have handled the request.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class AsyncDispatch {
+
+    static final String REQUEST_ATTRIBUTE = AsyncDispatch.class.getName();
+
+    private final long timeoutInMillis;
+    private final RecordedBody body = new RecordedBody();
+    private InputStream source;
+    private CompletableFuture<Source> future;
+    private SoapVersion version;
+    private MessageContext messageContext;
+    private EndpointInvocationChain invocationChain;
+    private Continuation continuation;
+    private boolean completed;
+    private boolean finished;
+
+    AsyncDispatch(long timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    /**
+     * @return dispatch of the request that is currently processed, null if asynchronous responses are not supported
+     */
+    static AsyncDispatch current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (AsyncDispatch) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * @return request whose body is recorded in the first dispatch and replayed in the next one
+     */
+    HttpServletRequest wrap(HttpServletRequest request) throws IOException {
+        final InputStream input;
+        if (source == null) {
+            source = request.getInputStream();
+            input = new RecordingInputStream();
+        } else {
+            input = new ByteArrayInputStream(body.toByteArray());
+        }
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return input.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return input.read(b, off, len);
+                    }
+                };
+            }
+        };
+    }
+
+    synchronized SoapVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Binds the invocation of the first dispatch, the completed response is passed through its interceptors
+     */
+    synchronized void bind(MessageContext messageContext, EndpointInvocationChain invocationChain) {
+        this.messageContext = messageContext;
+        this.invocationChain = invocationChain;
+    }
+
+    synchronized MessageContext getMessageContext() {
+        return messageContext;
+    }
+
+    synchronized EndpointInvocationChain getInvocationChain() {
+        return invocationChain;
+    }
+
+    synchronized boolean isStarted() {
+        return future != null;
+    }
+
+    /**
+     * @return true if the response has been started but has not been returned yet, so the request should be suspended
+     */
+    synchronized boolean isPending() {
+        return future != null && !finished;
+    }
+
+    /**
+     * @param response future of the response
+     * @param version  SOAP version of the request, used to render the fault if the response times out
+     */
+    void start(CompletableFuture<Source> response, SoapVersion version) {
+        synchronized (this) {
+            this.future = response;
+            this.version = version;
+        }
+        response.whenComplete((source, throwable) -> complete());
+    }
+
+    private void complete() {
+        Continuation toResume;
+        synchronized (this) {
+            completed = true;
+            toResume = continuation;
+        }
+        if (toResume != null) {
+            toResume.resume();
+        }
+    }
+
+    /**
+     * Suspends the request until the response completes or the timeout elapses. Depending on the connector it either
+     * blocks or throws a RetryRequest that has to be propagated to the container, which dispatches the request again later.
+     */
+    void suspend(HttpServletRequest request) throws IOException {
+        drain();
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            continuation = ContinuationSupport.getContinuation(request, this);
+            continuation.suspend(timeoutInMillis);
+        }
+    }
+
+    /**
+     * @return the response of the future. If it has not completed in time the future is cancelled and a server fault
+     *         is returned
+     */
+    Source getResult() {
+        CompletableFuture<Source> response;
+        SoapVersion soapVersion;
+        synchronized (this) {
+            finished = true;
+            response = future;
+            soapVersion = version;
+        }
+        if (!response.isDone()) {
+            response.cancel(true);
+            return FaultSource.server(soapVersion, String.format("Response has not been produced within [%d] ms", timeoutInMillis));
+        }
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoapServerException(e);
+        } catch (CancellationException e) {
+            throw new SoapServerException("Response has been cancelled", e);
+        } catch (ExecutionException e) {
+            // unchecked exceptions are rethrown as is, so that they are resolved like the ones of synchronous responders
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SoapServerException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the part of the body that was not read in the first dispatch, so that it may be replayed
+     */
+    private void drain() throws IOException {
+        byte[] buffer = new byte[4096];
+        synchronized (body) {
+            for (int read = source.read(buffer); read != -1; read = source.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Records all bytes read from the source, closing the stream is ignored as it may be still drained.
+     * Bytes recorded by the drain are read from the record.
+     */
+    private final class RecordingInputStream extends InputStream {
+
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            synchronized (body) {
+                int read = position < body.size() ? body.get(position) : source.read();
+                if (read != -1) {
+                    if (position == body.size()) {
+                        body.write(read);
+                    }
+                    position++;
+                }
+                return read;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (body) {
+                int read = position < body.size() ? body.copy(position, b, off, len) : source.read(b, off, len);
+                if (read > 0) {
+                    if (position == body.size()) {
+                        body.write(b, off, read);
+                    }
+                    position += read;
+                }
+                return read;
+            }
+        }
+    }
+
+    private static final class RecordedBody extends ByteArrayOutputStream {
+
+        int get(int position) {
+            return buf[position] & 0xff;
+        }
+
+        /**
+         * Copies the recorded bytes starting at the position
+         */
+        int copy(int position, byte[] b, int off, int len) {
+            int copied = Math.min(len, count - position);
+            System.arraycopy(buf, position, b, off, copied);
+            return copied;
+        }
+    }
+
+}
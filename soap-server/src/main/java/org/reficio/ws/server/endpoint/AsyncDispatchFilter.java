@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.responder.FaultSource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.server.EndpointInvocationChain;
+import org.springframework.ws.transport.TransportOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.transform.Source;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Filter that suspends requests handled by an AsyncRequestResponder (or by the dedicated executor of a bulkhead)
+ * until their response completes, so that no server thread is blocked in the meantime. It uses Jetty continuations -
+ * with the select channel connectors the request is dispatched again when the response is ready (or when the timeout
+ * elapses). The completed response is then written directly, the request is not passed to the MessageDispatcher again
+ * (so its body is not parsed twice) - only a response that completed exceptionally is dispatched again, so that the
+ * exception is resolved to a fault by the exception resolvers. Before it is written the response is passed through
+ * the endpoint interceptors of the first dispatch, as the MessageDispatcher would do it.
+ * Requests of all other responders are passed through untouched.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class AsyncDispatchFilter implements Filter {
+
+    private final static Log log = LogFactory.getLog(AsyncDispatchFilter.class);
+
+    private GenericContextDomEndpoint endpoint;
+    private long timeoutInMillis;
+
+    public void setEndpoint(GenericContextDomEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void setTimeoutInMillis(long timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        AsyncDispatch dispatch = (AsyncDispatch) request.getAttribute(AsyncDispatch.REQUEST_ATTRIBUTE);
+        if (dispatch == null) {
+            if (!endpoint.isAsyncRequest(request)) {
+                chain.doFilter(request, response);
+                return;
+            }
+            dispatch = new AsyncDispatch(timeoutInMillis);
+            request.setAttribute(AsyncDispatch.REQUEST_ATTRIBUTE, dispatch);
+        } else if (dispatch.isStarted()) {
+            // dispatched again by the container after the suspension
+            writeResult(dispatch, request, response, chain);
+            return;
+        }
+        chain.doFilter(dispatch.wrap(request), response);
+        if (dispatch.isPending()) {
+            // nothing has been written - the response is produced in the next dispatch
+            response.reset();
+            dispatch.suspend(request);
+            // the connector does not support retries, the request has been blocked until the response completed
+            writeResult(dispatch, request, response, chain);
+        }
+    }
+
+    /**
+     * Writes the result of the dispatch with the status the MessageDispatcher would set: 500 for a fault, 202 if there
+     * is no response and 200 otherwise. The request is exposed (RequestContextHolder) while the result is written.
+     * The endpoint interceptors handle the response (or the fault) before it is written and complete afterwards.
+     */
+    private void writeResult(AsyncDispatch dispatch, HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+        Source result;
+        try {
+            result = dispatch.getResult();
+        } catch (RuntimeException ex) {
+            chain.doFilter(dispatch.wrap(request), response);
+            return;
+        }
+        if (result == null) {
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            return;
+        }
+        response.setStatus(result instanceof FaultSource ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : HttpServletResponse.SC_OK);
+        GenericSoapMessage message = new GenericSoapMessage(result, dispatch.getVersion().getContentType());
+        MessageContext messageContext = dispatch.getMessageContext();
+        EndpointInvocationChain invocationChain = dispatch.getInvocationChain();
+        ServletRequestAttributes attributes = new ServletRequestAttributes(request);
+        RequestContextHolder.setRequestAttributes(attributes);
+        Exception failure = null;
+        try {
+            if (invocationChain != null) {
+                messageContext.setResponse(message);
+                handleResponse(messageContext, invocationChain);
+            }
+            message.writeTo(new ResponseOutputStream(response));
+        } catch (IOException ex) {
+            failure = ex;
+            throw ex;
+        } catch (Exception ex) {
+            failure = ex;
+            throw new ServletException(ex);
+        } finally {
+            if (invocationChain != null) {
+                afterCompletion(messageContext, invocationChain, failure);
+            }
+            RequestContextHolder.resetRequestAttributes();
+            attributes.requestCompleted();
+        }
+    }
+
+    /**
+     * Applies the handleResponse (or handleFault) of the interceptors in reverse order, until one of them returns false
+     */
+    private static void handleResponse(MessageContext messageContext, EndpointInvocationChain invocationChain) throws Exception {
+        EndpointInterceptor[] interceptors = invocationChain.getInterceptors();
+        if (interceptors == null) {
+            return;
+        }
+        boolean fault = ((GenericSoapMessage) messageContext.getResponse()).hasFault();
+        boolean resume = true;
+        for (int i = interceptors.length - 1; resume && i >= 0; i--) {
+            if (fault) {
+                resume = interceptors[i].handleFault(messageContext, invocationChain.getEndpoint());
+            } else {
+                resume = interceptors[i].handleResponse(messageContext, invocationChain.getEndpoint());
+            }
+        }
+    }
+
+    private static void afterCompletion(MessageContext messageContext, EndpointInvocationChain invocationChain, Exception ex) {
+        EndpointInterceptor[] interceptors = invocationChain.getInterceptors();
+        if (interceptors == null) {
+            return;
+        }
+        for (int i = interceptors.length - 1; i >= 0; i--) {
+            try {
+                interceptors[i].afterCompletion(messageContext, invocationChain.getEndpoint(), ex);
+            } catch (Exception completionEx) {
+                log.error("Endpoint interceptor afterCompletion threw exception", completionEx);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static final class ResponseOutputStream extends TransportOutputStream {
+
+        private final HttpServletResponse response;
+
+        ResponseOutputStream(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            response.addHeader(name, value);
+        }
+
+        @Override
+        protected OutputStream createOutputStream() throws IOException {
+            return response.getOutputStream();
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.metrics.BulkheadMetricsMBean;
+import org.reficio.ws.server.responder.AsyncRequestResponder;
+import org.reficio.ws.server.responder.RequestResponder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.transform.Source;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Isolation policy of the requests sent to one context path, so that a slow responder degrades alone instead of
+ * exhausting the threads shared by all responders of the server. There are two kinds of bulkheads:
+ * <ul>
+ * <li>concurrency limit - the requests are processed by the server threads, at most maxConcurrentRequests at a time.
+ * Up to maxQueuedRequests requests wait for a slot (blocking their server threads), at most queueTimeoutInMillis.</li>
+ * <li>dedicated executor - the responder is invoked by a dedicated pool of threads. The request is suspended in the
+ * meantime, so that no server thread is blocked. Up to maxQueuedRequests requests wait in the queue of the pool.</li>
+ * </ul>
+ * Requests exceeding the bulkhead are rejected before their body is read, with a pre-rendered SOAP Server fault
+ * naming the context path and the HTTP 503 status. A bulkhead isolates exactly one context path (pattern), it is kept
+ * when the responder is replaced and shut down when the responder is unregistered.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class Bulkhead implements BulkheadMetricsMBean {
+
+    /**
+     * Request attribute holding the bulkhead whose slot is occupied by the request and has to be released
+     */
+    static final String PERMIT_ATTRIBUTE = Bulkhead.class.getName() + ".permit";
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final AdmissionLimit limit;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejections = new LongAdder();
+    private final AtomicBoolean bound = new AtomicBoolean();
+    private volatile String contextPath;
+    private volatile FaultResponse rejectionFault;
+
+    private Bulkhead(int maxConcurrentRequests, int maxQueuedRequests, long queueTimeoutInMillis, boolean dedicatedExecutor) {
+        checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests has to be positive");
+        checkArgument(maxQueuedRequests >= 0, "maxQueuedRequests cannot be negative");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        if (dedicatedExecutor) {
+            // the queue of the pool is bounded by the limit, the requests are admitted without waiting
+            this.limit = new AdmissionLimit(maxConcurrentRequests + maxQueuedRequests, 0);
+            this.executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new BulkheadThreadFactory());
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.limit = new AdmissionLimit(maxConcurrentRequests, maxQueuedRequests, queueTimeoutInMillis);
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @param maxConcurrentRequests maximum number of concurrently processed requests. Has to be positive.
+     * @param maxQueuedRequests     maximum number of requests waiting for a slot. Has to be not negative.
+     * @return bulkhead limiting the number of requests processed by the server threads
+     */
+    public static Bulkhead concurrencyLimit(int maxConcurrentRequests, int maxQueuedRequests) {
+        return concurrencyLimit(maxConcurrentRequests, maxQueuedRequests, AdmissionLimit.DEFAULT_QUEUE_TIMEOUT_IN_MILLIS);
+    }
+
+    /**
+     * @param maxConcurrentRequests maximum number of concurrently processed requests. Has to be positive.
+     * @param maxQueuedRequests     maximum number of requests waiting for a slot. Has to be not negative.
+     * @param queueTimeoutInMillis  maximum time a request waits for a slot. Has to be positive.
+     * @return bulkhead limiting the number of requests processed by the server threads
+     */
+    public static Bulkhead concurrencyLimit(int maxConcurrentRequests, int maxQueuedRequests, long queueTimeoutInMillis) {
+        checkArgument(queueTimeoutInMillis > 0, "queueTimeoutInMillis has to be positive");
+        return new Bulkhead(maxConcurrentRequests, maxQueuedRequests, queueTimeoutInMillis, false);
+    }
+
+    /**
+     * @param threads           number of threads of the dedicated pool. Has to be positive.
+     * @param maxQueuedRequests maximum number of requests waiting for a thread of the pool. Has to be not negative.
+     * @return bulkhead processing the requests by a dedicated pool of threads
+     */
+    public static Bulkhead dedicatedExecutor(int threads, int maxQueuedRequests) {
+        return new Bulkhead(threads, maxQueuedRequests, AdmissionLimit.DEFAULT_QUEUE_TIMEOUT_IN_MILLIS, true);
+    }
+
+    public boolean isDedicatedExecutor() {
+        return executor != null;
+    }
+
+    /**
+     * Binds the bulkhead to the context path (pattern) it isolates
+     */
+    void bind(String contextPath) {
+        checkState(bound.compareAndSet(false, true), "Bulkhead is already bound to a context path [%s]", this.contextPath);
+        this.contextPath = contextPath;
+        this.rejectionFault = FaultResponse.server(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                String.format("Service under [%s] is overloaded, the request has been rejected", contextPath));
+    }
+
+    void unbind() {
+        contextPath = null;
+        rejectionFault = null;
+        bound.set(false);
+    }
+
+    /**
+     * @return true if the request has been admitted and has to release the slot afterwards, false if it has been rejected
+     */
+    boolean acquire() throws InterruptedException {
+        if (limit.acquire()) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    void release() {
+        limit.release();
+    }
+
+    FaultResponse getRejectionFault() {
+        return rejectionFault;
+    }
+
+    /**
+     * Invokes the responder by the dedicated pool. If the request occupies a slot of the bulkhead the slot is handed
+     * over to the pool and released when the response has been produced. The request is exposed to the pool thread
+     * (RequestContextHolder) while the responder is invoked - by fresh attributes, since the ones of the server thread
+     * are completed as soon as the request gets suspended.
+     *
+     * @return future of the response
+     */
+    CompletableFuture<Source> submit(HttpServletRequest request, final RequestResponder responder, final SoapMessage message) {
+        final boolean permitted = request.getAttribute(PERMIT_ATTRIBUTE) == this;
+        if (permitted) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+        }
+        final CompletableFuture<Source> response = new CompletableFuture<Source>();
+        try {
+            executor.execute(() -> respond(request, responder, message, response, permitted));
+        } catch (RejectedExecutionException ex) {
+            if (permitted) {
+                release();
+            }
+            response.completeExceptionally(new SoapServerException(
+                    String.format("Bulkhead of [%s] has been shut down", contextPath), ex));
+        }
+        return response;
+    }
+
+    private void respond(HttpServletRequest request, RequestResponder responder, SoapMessage message,
+                         CompletableFuture<Source> response, boolean permitted) {
+        CompletableFuture<Source> result;
+        ServletRequestAttributes attributes = new ServletRequestAttributes(request);
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            if (responder instanceof AsyncRequestResponder) {
+                result = ((AsyncRequestResponder) responder).respondAsync(message);
+            } else {
+                result = CompletableFuture.completedFuture(responder.respond(message));
+            }
+        } catch (Throwable ex) {
+            result = new CompletableFuture<Source>();
+            result.completeExceptionally(ex);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+            attributes.requestCompleted();
+        }
+        result.whenComplete((source, throwable) -> {
+            if (permitted) {
+                release();
+            }
+            if (throwable != null) {
+                response.completeExceptionally(throwable);
+            } else {
+                response.complete(source);
+            }
+        });
+    }
+
+    /**
+     * Stops the dedicated pool once the queued requests have been processed
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @Override
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    @Override
+    public int getActiveRequests() {
+        return executor != null ? executor.getActiveCount() : limit.getActiveRequests();
+    }
+
+    @Override
+    public int getQueuedRequests() {
+        return executor != null ? executor.getQueue().size() : limit.getQueuedRequests();
+    }
+
+    @Override
+    public long getRejectedRequestCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public double getUtilization() {
+        return (double) getActiveRequests() / maxConcurrentRequests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bulkhead[%s maxConcurrentRequests=%d maxQueuedRequests=%d]",
+                isDedicatedExecutor() ? "dedicatedExecutor" : "concurrencyLimit", maxConcurrentRequests, maxQueuedRequests);
+    }
+
+    private final class BulkheadThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, String.format("soap-bulkhead[%s]-%d", contextPath, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.reficio.ws.server.protocol.ContentEncoding;
+import org.reficio.ws.server.responder.RawSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Response compressed with the content coding negotiated with the client, kept as an attribute of the request.
+ * The content is compressed only if its size reaches the threshold - if the size is not declared by the Content-Length
+ * header the content is buffered until the threshold is reached. Content that has been encoded by the writer
+ * (the Content-Encoding header is set), e.g. a pre-compressed RawSource, is passed through as is.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class CompressedResponse extends HttpServletResponseWrapper {
+
+    static final String REQUEST_ATTRIBUTE = CompressedResponse.class.getName();
+
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    private static final String VARY_HEADER = "Vary";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    private final ContentEncoding encoding;
+    private final int thresholdInBytes;
+    private long contentLength = -1;
+    private boolean encoded;
+    private CompressingOutputStream output;
+    private PrintWriter writer;
+
+    CompressedResponse(HttpServletResponse response, ContentEncoding encoding, int thresholdInBytes) {
+        super(response);
+        this.encoding = encoding;
+        this.thresholdInBytes = thresholdInBytes;
+    }
+
+    /**
+     * @return compressed response of the request that is currently processed, null if the response is not compressed
+     */
+    static CompressedResponse current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (CompressedResponse) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    ContentEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the pre-compressed form of the source (computed once per source), null if the source should not be compressed
+     */
+    byte[] getEncoded(RawSource source) {
+        long length = source.getContentLength();
+        if (length < 0 || length < thresholdInBytes) {
+            return null;
+        }
+        return source.getEncoded(encoding);
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        contentLength = len;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!intercept(name, value)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!intercept(name, value)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!intercept(name, String.valueOf(value))) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!intercept(name, String.valueOf(value))) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private boolean intercept(String name, String value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            contentLength = Long.parseLong(value.trim());
+            return true;
+        }
+        if (CONTENT_ENCODING_HEADER.equalsIgnoreCase(name)) {
+            encoded = true;
+        }
+        return false;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (output == null) {
+            output = new CompressingOutputStream();
+        }
+        return output;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        // the headers cannot be committed before it is decided whether the content is compressed
+        if (output == null || output.isDecided()) {
+            if (output != null) {
+                output.flush();
+            }
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contentLength = -1;
+        encoded = false;
+        output = null;
+        writer = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (output != null && !output.isDecided()) {
+            output.buffer.reset();
+        } else {
+            super.resetBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered content and the trailer of the compressed content
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (output != null) {
+            output.finish();
+        }
+    }
+
+    private final class CompressingOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+        private boolean finished;
+
+        boolean isDecided() {
+            return target != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (encoded || contentLength >= 0) {
+                    decide(!encoded && contentLength >= thresholdInBytes);
+                } else if (buffer.size() + len >= thresholdInBytes) {
+                    decide(true);
+                } else {
+                    buffer.write(b, off, len);
+                    return;
+                }
+            }
+            target.write(b, off, len);
+        }
+
+        private void decide(boolean compress) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            response.addHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+            if (compress) {
+                response.setHeader(CONTENT_ENCODING_HEADER, encoding.getName());
+                target = encoding.encode(response.getOutputStream());
+            } else {
+                long length = contentLength >= 0 ? contentLength : buffer.size();
+                if (contentLength >= 0 || finished) {
+                    response.setHeader(CONTENT_LENGTH_HEADER, String.valueOf(length));
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer.reset();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (target == null) {
+                // the content is shorter than the threshold
+                decide(false);
+            }
+            if (target instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) target).finish();
+            }
+            target.flush();
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.protocol.ContentEncoding;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Filter that transparently decompresses requests sent with the gzip or deflate Content-Encoding and compresses
+ * responses with the coding negotiated via the Accept-Encoding header. Only responses whose size reaches the
+ * threshold are compressed, a negative threshold disables the compression of responses. Requests sent with an
+ * unsupported Content-Encoding are answered with a SOAP Client fault and the HTTP 415 status. The decompressed body
+ * of a request is limited to maxDecompressedSizeInBytes, so that a small compressed request cannot inflate without
+ * bounds - reading beyond the limit fails and the request is answered with a SOAP Client fault and the HTTP 413 status.
+ * The filter precedes the async-dispatch filter, so the body of an asynchronous request is recorded decompressed and
+ * the response written by the async-dispatch filter after the suspension is compressed as well.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class CompressionFilter implements Filter {
+
+    private final static Log log = LogFactory.getLog(CompressionFilter.class);
+
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    private static final FaultResponse UNSUPPORTED_ENCODING = FaultResponse.client(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+            "The content encoding of the request is not supported");
+
+    public static final int DEFAULT_MAX_DECOMPRESSED_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
+    private static final FaultResponse TOO_LARGE = FaultResponse.client(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+            "The decompressed request is too large");
+
+    private int thresholdInBytes = -1;
+    private long maxDecompressedSizeInBytes = DEFAULT_MAX_DECOMPRESSED_SIZE_IN_BYTES;
+
+    public void setThresholdInBytes(int thresholdInBytes) {
+        this.thresholdInBytes = thresholdInBytes;
+    }
+
+    public void setMaxDecompressedSizeInBytes(long maxDecompressedSizeInBytes) {
+        if (maxDecompressedSizeInBytes <= 0) {
+            throw new IllegalArgumentException("maxDecompressedSizeInBytes has to be positive");
+        }
+        this.maxDecompressedSizeInBytes = maxDecompressedSizeInBytes;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        ContentEncoding requestEncoding;
+        try {
+            requestEncoding = ContentEncoding.forName(request.getHeader(CONTENT_ENCODING_HEADER));
+        } catch (IllegalArgumentException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug(ex.getMessage());
+            }
+            UNSUPPORTED_ENCODING.write(request, response);
+            return;
+        }
+        if (requestEncoding == null) {
+            compress(request, response, chain);
+            return;
+        }
+        DecodedRequest decoded = new DecodedRequest(request, requestEncoding, maxDecompressedSizeInBytes);
+        try {
+            compress(decoded, response, chain);
+        } catch (IOException | ServletException | RuntimeException ex) {
+            // the overflow may surface wrapped by the layer that was reading the body
+            if (!decoded.isTooLarge()) {
+                throw ex;
+            }
+        }
+        if (decoded.isTooLarge()) {
+            rejectTooLarge(request, response);
+        }
+    }
+
+    private void compress(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+        ContentEncoding responseEncoding = thresholdInBytes >= 0 ? ContentEncoding.negotiate(request.getHeader(ACCEPT_ENCODING_HEADER)) : null;
+        if (responseEncoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CompressedResponse compressed = new CompressedResponse(response, responseEncoding, thresholdInBytes);
+        request.setAttribute(CompressedResponse.REQUEST_ATTRIBUTE, compressed);
+        try {
+            chain.doFilter(request, compressed);
+            compressed.finish();
+        } finally {
+            request.removeAttribute(CompressedResponse.REQUEST_ATTRIBUTE);
+        }
+    }
+
+    private void rejectTooLarge(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Request to [%s] exceeds [%d] bytes once decompressed, it has been rejected",
+                    request.getRequestURI(), maxDecompressedSizeInBytes));
+        }
+        if (response.isCommitted()) {
+            return;
+        }
+        response.reset();
+        TOO_LARGE.write(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Request whose body is decoded while it is read, the headers describing the encoded body are hidden.
+     * Reading more than maxSizeInBytes decoded bytes fails.
+     */
+    private static final class DecodedRequest extends HttpServletRequestWrapper {
+
+        private final ContentEncoding encoding;
+        private final long maxSizeInBytes;
+        private ServletInputStream input;
+        private volatile boolean tooLarge;
+
+        DecodedRequest(HttpServletRequest request, ContentEncoding encoding, long maxSizeInBytes) {
+            super(request);
+            this.encoding = encoding;
+            this.maxSizeInBytes = maxSizeInBytes;
+        }
+
+        /**
+         * @return true if the decoded body exceeds the limit
+         */
+        boolean isTooLarge() {
+            return tooLarge;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                final InputStream decoded = new LimitedInputStream(encoding.decode(super.getInputStream()));
+                input = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return decoded.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return decoded.read(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        decoded.close();
+                    }
+                };
+            }
+            return input;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String charset = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset != null ? charset : "ISO-8859-1"));
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration getHeaders(String name) {
+            return isHidden(name) ? Collections.enumeration(Collections.emptyList()) : super.getHeaders(name);
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            return isHidden(name) ? -1 : super.getIntHeader(name);
+        }
+
+        @Override
+        public Enumeration getHeaderNames() {
+            List<Object> names = new ArrayList<Object>();
+            for (Enumeration all = super.getHeaderNames(); all.hasMoreElements(); ) {
+                Object name = all.nextElement();
+                if (!isHidden(String.valueOf(name))) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+
+        private static boolean isHidden(String name) {
+            return CONTENT_ENCODING_HEADER.equalsIgnoreCase(name) || CONTENT_LENGTH_HEADER.equalsIgnoreCase(name);
+        }
+
+        /**
+         * Counts the decoded bytes and fails as soon as they exceed the limit
+         */
+        private final class LimitedInputStream extends FilterInputStream {
+
+            private long count;
+
+            LimitedInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read != -1) {
+                    count(1);
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    count(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                count(skipped);
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            private void count(long bytes) throws IOException {
+                count += bytes;
+                if (count > maxSizeInBytes) {
+                    tooLarge = true;
+                    throw new IOException(String.format("Decompressed request exceeds [%d] bytes", maxSizeInBytes));
+                }
+            }
+        }
+    }
+
+}
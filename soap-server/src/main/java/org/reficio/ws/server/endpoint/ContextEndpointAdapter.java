@@ -18,8 +18,14 @@
  */
 package org.reficio.ws.server.endpoint;
 
+import org.reficio.ws.server.metrics.RequestPhase;
+import org.reficio.ws.server.metrics.RequestPhaseEvent;
+import org.reficio.ws.server.metrics.RequestTracing;
+import org.reficio.ws.server.responder.FaultSource;
+import org.reficio.ws.server.responder.RawSource;
 import org.springframework.ws.context.MessageContext;
 import org.springframework.ws.server.endpoint.adapter.PayloadEndpointAdapter;
+import org.springframework.ws.soap.SoapMessage;
 
 import javax.xml.transform.Source;
 
@@ -28,6 +34,8 @@ import javax.xml.transform.Source;
  * It is implemented in such a way that expects the ContextPayloadEndpoint which expects the context of the message in the
  * invoke method. This adapter provides this message context to the endpoint. It also sets the reply in the context by populating
  * the GenericSoapMessage - which contains the whole SOAP message (envelope = header + body).
+ * The reply is sent with the content type of the SOAP version of the request. No reply is set if the request has been
+ * suspended waiting for an asynchronous response. The invocation of the endpoint is traced as the respond phase.
  *
  * @author Tom Bujok
  * @since 1.0.0
@@ -37,9 +45,37 @@ public class ContextEndpointAdapter extends PayloadEndpointAdapter {
     @Override
     public void invoke(MessageContext messageContext, Object endpoint) {
         ContextPayloadEndpoint payloadEndpoint = (ContextPayloadEndpoint) endpoint;
-        Source responseSource = payloadEndpoint.invoke(messageContext);
-        GenericSoapMessage message = new GenericSoapMessage(responseSource);
+        Source responseSource = invoke(payloadEndpoint, messageContext);
+        AsyncDispatch dispatch = AsyncDispatch.current();
+        if (responseSource == null && dispatch != null && dispatch.isPending()) {
+            // the response is set when the request is dispatched again
+            return;
+        }
+        String contentType = ((SoapMessage) messageContext.getRequest()).getVersion().getContentType();
+        GenericSoapMessage message = new GenericSoapMessage(responseSource, contentType);
         messageContext.setResponse(message);
     }
 
+    private Source invoke(ContextPayloadEndpoint payloadEndpoint, MessageContext messageContext) {
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.RESPOND);
+        Source responseSource = null;
+        try {
+            responseSource = payloadEndpoint.invoke(messageContext);
+            return responseSource;
+        } finally {
+            if (event != null) {
+                event.finish(getContentLength(responseSource));
+            }
+        }
+    }
+
+    private static long getContentLength(Source source) {
+        if (source instanceof RawSource) {
+            return ((RawSource) source).getContentLength();
+        } else if (source instanceof FaultSource) {
+            return ((FaultSource) source).getContentLength();
+        }
+        return -1;
+    }
+
 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mortbay.jetty.RetryRequest;
+import org.reficio.ws.server.protocol.RequestAttachments;
+import org.reficio.ws.server.routing.Route;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Filter that resolves the responder of the request before the body of the request is read.
+ * The resolved responder is bound to the request and used by the GenericContextDomEndpoint. The request is counted
+ * as in flight by the responder until the filter completes, so that a replaced responder may be drained. A suspended
+ * asynchronous request stays in flight until it is dispatched again and completed, afterwards the attachments of the
+ * request are released. Requests to context paths
+ * without a responder are answered right away with a pre-rendered SOAP Client fault and the HTTP 404 status - the
+ * SOAP message is not built. If such a request expects a 100-continue the body is not awaited at all and the
+ * connection is closed after the fault, so that the client does not send it.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ContextPathFilter implements Filter {
+
+    private final static Log log = LogFactory.getLog(ContextPathFilter.class);
+
+    private static final String EXPECT_HEADER = "Expect";
+    private static final String CONTINUE_EXPECTATION = "100-continue";
+    private static final String CONNECTION_HEADER = "Connection";
+    private static final String CLOSE_CONNECTION = "close";
+
+    private static final FaultResponse NOT_FOUND = FaultResponse.client(HttpServletResponse.SC_NOT_FOUND,
+            "There is no service under the requested context path");
+
+    private GenericContextDomEndpoint endpoint;
+
+    public void setEndpoint(GenericContextDomEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        Route<ResponderRegistration> route = endpoint.enterRoute(request);
+        if (route != null) {
+            boolean suspended = false;
+            try {
+                chain.doFilter(request, servletResponse);
+            } catch (RetryRequest retry) {
+                // still in flight, it is completed when the request is dispatched again
+                suspended = true;
+                throw retry;
+            } finally {
+                if (!suspended) {
+                    route.getValue().exit();
+                    RequestAttachments.release(request);
+                }
+            }
+            return;
+        }
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("There is no service under the requested context path [%s]", request.getRequestURI()));
+        }
+        if (expectsContinue(request)) {
+            response.setHeader(CONNECTION_HEADER, CLOSE_CONNECTION);
+        }
+        NOT_FOUND.write(request, response);
+    }
+
+    private static boolean expectsContinue(HttpServletRequest request) {
+        String expect = request.getHeader(EXPECT_HEADER);
+        return expect != null && expect.trim().equalsIgnoreCase(CONTINUE_EXPECTATION);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+}
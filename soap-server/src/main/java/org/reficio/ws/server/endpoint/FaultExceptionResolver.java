@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.OperationNotFoundException;
+import org.reficio.ws.server.responder.FaultSource;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.EndpointExceptionResolver;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.SoapVersion;
+import org.springframework.ws.soap.server.endpoint.SoapFaultAnnotationExceptionResolver;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+/**
+ * Resolves exceptions thrown while the request is processed to a fault rendered from the cached fault template
+ * (see FaultSource) - the fault response is not built through SAAJ. It replaces the default resolvers of Spring-WS:
+ * exceptions annotated with @SoapFault are delegated to the SoapFaultAnnotationExceptionResolver, so that the fault
+ * code and reason they declare are kept. OperationNotFoundException is answered with a client fault, all other
+ * exceptions with a server fault carrying the message of the exception (as the SimpleSoapExceptionResolver would do).
+ * The stack trace is logged only on the debug level.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class FaultExceptionResolver implements EndpointExceptionResolver {
+
+    private final static Log log = LogFactory.getLog(FaultExceptionResolver.class);
+
+    private final SoapFaultAnnotationExceptionResolver annotationResolver = new SoapFaultAnnotationExceptionResolver();
+
+    @Override
+    public boolean resolveException(MessageContext messageContext, Object endpoint, Exception ex) {
+        if (ex.getClass().isAnnotationPresent(SoapFault.class)) {
+            return annotationResolver.resolveException(messageContext, endpoint, ex);
+        }
+        boolean client = ex instanceof OperationNotFoundException;
+        if (log.isDebugEnabled()) {
+            log.debug("Resolving exception to a SOAP fault", ex);
+        } else if (!client) {
+            log.warn("Resolving exception to a SOAP fault: " + ex);
+        }
+        SoapVersion version = getVersion(messageContext);
+        FaultSource fault = client ? FaultSource.client(version, ex.getMessage()) : FaultSource.server(version, ex.getMessage());
+        messageContext.setResponse(new GenericSoapMessage(fault, version.getContentType()));
+        return true;
+    }
+
+    private static SoapVersion getVersion(MessageContext messageContext) {
+        if (messageContext.getRequest() instanceof SoapMessage) {
+            return ((SoapMessage) messageContext.getRequest()).getVersion();
+        }
+        return SoapVersion.SOAP_11;
+    }
+
+}
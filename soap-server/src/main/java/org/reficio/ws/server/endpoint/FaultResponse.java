@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.reficio.ws.server.responder.FaultSource;
+import org.springframework.ws.soap.SoapVersion;
+import org.springframework.ws.transport.TransportConstants;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Pre-rendered SOAP fault that may be written directly to the HTTP response, without parsing the request
+ * and without building the fault from an exception. The envelope is rendered once for SOAP 1.1 and SOAP 1.2
+ * (see FaultSource), the version is chosen according to the content type of the request.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class FaultResponse {
+
+    private final int status;
+    private final String reason;
+    private final FaultSource soap11;
+    private final FaultSource soap12;
+
+    private FaultResponse(int status, String reason, FaultSource soap11, FaultSource soap12) {
+        this.status = status;
+        this.reason = reason;
+        this.soap11 = soap11;
+        this.soap12 = soap12;
+    }
+
+    /**
+     * @param status HTTP status of the response
+     * @param reason human readable reason of the fault
+     * @return fault with the Server (SOAP 1.1) / Receiver (SOAP 1.2) code
+     */
+    public static FaultResponse server(int status, String reason) {
+        return new FaultResponse(status, reason, FaultSource.server(SoapVersion.SOAP_11, reason), FaultSource.server(SoapVersion.SOAP_12, reason));
+    }
+
+    /**
+     * @param status HTTP status of the response
+     * @param reason human readable reason of the fault
+     * @return fault with the Client (SOAP 1.1) / Sender (SOAP 1.2) code
+     */
+    public static FaultResponse client(int status, String reason) {
+        return new FaultResponse(status, reason, FaultSource.client(SoapVersion.SOAP_11, reason), FaultSource.client(SoapVersion.SOAP_12, reason));
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @param version SOAP version of the fault
+     * @return encoded fault envelope, it must not be modified
+     */
+    public byte[] getEnvelope(SoapVersion version) {
+        return getSource(version).getEnvelope();
+    }
+
+    /**
+     * @param version SOAP version of the fault
+     * @return pre-rendered fault, it may be returned as the response to any number of requests
+     */
+    public FaultSource getSource(SoapVersion version) {
+        return version == SoapVersion.SOAP_12 ? soap12 : soap11;
+    }
+
+    /**
+     * Writes the fault to the response, in the SOAP version of the request
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SoapVersion version = getSoapVersion(request);
+        byte[] envelope = getEnvelope(version);
+        response.setStatus(status);
+        response.setContentType(version.getContentType() + "; charset=UTF-8");
+        response.setContentLength(envelope.length);
+        OutputStream out = response.getOutputStream();
+        out.write(envelope);
+        out.flush();
+    }
+
+    private static SoapVersion getSoapVersion(HttpServletRequest request) {
+        String contentType = request.getHeader(TransportConstants.HEADER_CONTENT_TYPE);
+        if (contentType != null && contentType.contains(SoapVersion.SOAP_12.getContentType())) {
+            return SoapVersion.SOAP_12;
+        }
+        return SoapVersion.SOAP_11;
+    }
+
+}
@@ -22,7 +22,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.reficio.ws.server.ServiceRegistrationException;
 import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.protocol.SoapOperationRouter;
+import org.reficio.ws.server.protocol.SoapRequestPreview;
+import org.reficio.ws.server.responder.AbstractResponder;
+import org.reficio.ws.server.responder.AsyncRequestResponder;
+import org.reficio.ws.server.responder.DelegatingResponder;
+import org.reficio.ws.server.responder.FaultSource;
 import org.reficio.ws.server.responder.RequestResponder;
+import org.reficio.ws.server.routing.Route;
+import org.reficio.ws.server.routing.RoutingTable;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -31,55 +39,175 @@ import org.springframework.ws.soap.SoapMessage;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.transform.Source;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Implementation of the ContextPayloadEndpoint and AbstractDomPayloadEndpoint. It handles all SOAP requests.
  * It checks the context path of the request and then gets the responder registered under that context path.
  * If an responder exists it is invoked passing the message context to it, if it does not exist an exception
- * is thrown.
+ * is thrown. Requests to unknown context paths are normally rejected by the ContextPathFilter before the body is read,
+ * the responder resolved by the filter is bound to the request and reused here.
  * It also contains the API to register, unregister responders and get all responders registered in this endpoint.
+ * As a SoapOperationRouter it routes the preview of a request to an operation of the responder registered under
+ * the requested context path, before the SOAP message is built.
+ * Responders isolated by a bulkhead with a dedicated executor are invoked by the pool of the bulkhead, the request
+ * is suspended in the meantime as if the responder was asynchronous.
  *
  * @author Tom Bujok
  * @since 1.0.0
  */
-public class GenericContextDomEndpoint implements ContextPayloadEndpoint, InitializingBean {
+public class GenericContextDomEndpoint implements ContextPayloadEndpoint, SoapOperationRouter, InitializingBean {
 
     private final static Log log = LogFactory.getLog(GenericContextDomEndpoint.class);
 
     /**
-     * Map containing all registered context paths and request responders
+     * Request attribute holding the route resolved for the request
      */
-    private final ConcurrentHashMap<String, RequestResponder> services;
+    static final String ROUTE_ATTRIBUTE = GenericContextDomEndpoint.class.getName() + ".route";
+
+    /**
+     * Request attribute set when the request has been registered as in flight by the responder of its route
+     */
+    private static final String ENTERED_ATTRIBUTE = GenericContextDomEndpoint.class.getName() + ".entered";
+
+    /**
+     * Routing table containing all registered context path patterns and request responders
+     */
+    private final RoutingTable<ResponderRegistration> services;
 
     public GenericContextDomEndpoint() {
-        this.services = new ConcurrentHashMap<String, RequestResponder>();
+        this.services = new RoutingTable<ResponderRegistration>();
     }
 
     /**
      * Implementation of the invoke message that gets the MessageContext. It enables the responders to the the whole
      * SOAP envelope (and not only the request element);
-     * The responders are invoked with that context. If there's no responder an exception is thrown.
+     * The responders are invoked with that context. If there's no responder, or if the request has been rejected
+     * by the pre-dispatch, a fault is returned.
      */
     @Override
     public Source invoke(MessageContext messageContext) {
-        RequestResponder requestResponder = getRequestResponderBySessionRequestContextPath();
+        final HttpServletRequest request = getHttpServletRequest();
+        Route<ResponderRegistration> route = resolveRoute(request);
+        final RequestResponder requestResponder = route != null ? route.getValue().getResponder() : null;
+        SoapMessage msg = (SoapMessage) messageContext.getRequest();
         if (noResponderForRequestFound(requestResponder)) {
-            handleNoResponderFault();
+            return handleNoResponderFault(request, msg);
+        }
+        SoapRequestPreview preview = SoapRequestPreview.current();
+        if (preview != null && preview.getFault() != null) {
+            return FaultSource.client(msg.getVersion(), preview.getFault());
+        }
+        final Bulkhead bulkhead = route.getValue().getBulkhead();
+        if (bulkhead != null && bulkhead.isDedicatedExecutor()) {
+            return respondAsync(requestResponder, message -> bulkhead.submit(request, requestResponder, message), msg);
+        }
+        if (requestResponder instanceof AsyncRequestResponder) {
+            return respondAsync(requestResponder, ((AsyncRequestResponder) requestResponder)::respondAsync, msg);
         }
-        SoapMessage msg = (SoapMessage) messageContext.getRequest();
         Source response = requestResponder.respond(msg);
         return response;
     }
 
-    private RequestResponder getRequestResponderBySessionRequestContextPath() {
-        HttpServletRequest htpServletRequest = getHttpServletRequest();
-        return getRequestResponderByRequestContextPath(htpServletRequest.getRequestURI());
+    /**
+     * Starts the asynchronous response in the first dispatch of the request. If it has not completed right away null
+     * is returned and the request is suspended. In the next dispatch the completed response is returned.
+     * If the request cannot be suspended the responder is invoked synchronously.
+     */
+    private Source respondAsync(RequestResponder responder, Function<SoapMessage, CompletableFuture<Source>> start, SoapMessage msg) {
+        AsyncDispatch dispatch = AsyncDispatch.current();
+        if (dispatch == null) {
+            return responder.respond(msg);
+        }
+        if (!dispatch.isStarted()) {
+            CompletableFuture<Source> response = start.apply(msg);
+            dispatch.start(response, msg.getVersion());
+            if (!response.isDone()) {
+                return null;
+            }
+        }
+        return dispatch.getResult();
+    }
+
+    /**
+     * Routes the preview of the request using the matcher of the responder registered under the requested context path.
+     * Only responders extending the AbstractResponder may be routed, for all others the preview is returned as is.
+     * Decorated responders are routed by the responder they decorate.
+     */
+    @Override
+    public SoapRequestPreview route(SoapRequestPreview preview) {
+        RequestResponder requestResponder = resolveRequestResponder(getHttpServletRequest());
+        while (requestResponder instanceof DelegatingResponder) {
+            requestResponder = ((DelegatingResponder) requestResponder).getDelegate();
+        }
+        if (requestResponder instanceof AbstractResponder) {
+            return ((AbstractResponder) requestResponder).getSoapOperationMatcher().route(preview);
+        }
+        return preview;
+    }
+
+    /**
+     * Resolves the route matching the context path of the request. The route is bound to the request,
+     * so that the request is served by the same responder in all phases, and it is resolved only once.
+     *
+     * @return route of the request, null if there is no responder under the requested context path
+     */
+    @SuppressWarnings("unchecked")
+    Route<ResponderRegistration> resolveRoute(HttpServletRequest request) {
+        Route<ResponderRegistration> route = (Route<ResponderRegistration>) request.getAttribute(ROUTE_ATTRIBUTE);
+        if (route == null) {
+            route = services.lookup(request.getRequestURI());
+            if (route != null) {
+                request.setAttribute(ROUTE_ATTRIBUTE, route);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Resolves the route of the request and registers the request as in flight by its responder. If the responder
+     * has been replaced or unregistered in the meantime the request is routed again. Has no effect if the request
+     * has already entered its route (when an asynchronous request is dispatched again).
+     *
+     * @return entered route, null if there is no responder under the requested context path
+     */
+    Route<ResponderRegistration> enterRoute(HttpServletRequest request) {
+        while (true) {
+            Route<ResponderRegistration> route = resolveRoute(request);
+            if (route == null || request.getAttribute(ENTERED_ATTRIBUTE) != null) {
+                return route;
+            }
+            if (route.getValue().enter()) {
+                request.setAttribute(ENTERED_ATTRIBUTE, Boolean.TRUE);
+                return route;
+            }
+            request.removeAttribute(ROUTE_ATTRIBUTE);
+        }
+    }
+
+    /**
+     * @return true if the request may be answered asynchronously - its responder is an AsyncRequestResponder or
+     *         it is isolated by a bulkhead with a dedicated executor
+     */
+    boolean isAsyncRequest(HttpServletRequest request) {
+        Route<ResponderRegistration> route = resolveRoute(request);
+        if (route == null) {
+            return false;
+        }
+        Bulkhead bulkhead = route.getValue().getBulkhead();
+        return route.getValue().getResponder() instanceof AsyncRequestResponder
+                || (bulkhead != null && bulkhead.isDedicatedExecutor());
     }
 
-    private RequestResponder getRequestResponderByRequestContextPath(String contextPath) {
-        return services.get(contextPath);
+    /**
+     * @return responder of the request, null if there is no responder under the requested context path
+     */
+    RequestResponder resolveRequestResponder(HttpServletRequest request) {
+        Route<ResponderRegistration> route = resolveRoute(request);
+        return route != null ? route.getValue().getResponder() : null;
     }
 
     private boolean noResponderForRequestFound(RequestResponder responder) {
@@ -89,49 +217,123 @@ public class GenericContextDomEndpoint implements ContextPayloadEndpoint, Initia
         return false;
     }
 
-    private Source handleNoResponderFault() {
-        String msg = String.format("There is no service under the requested context path [%s]", getRequestContextPath());
-        throw new SoapServerException(msg);
+    private Source handleNoResponderFault(HttpServletRequest request, SoapMessage message) {
+        String msg = String.format("There is no service under the requested context path [%s]", request.getRequestURI());
+        return FaultSource.client(message.getVersion(), msg);
     }
 
     private HttpServletRequest getHttpServletRequest() {
         return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
     }
 
-    private String getRequestContextPath() {
-        return getHttpServletRequest().getRequestURI();
+    /**
+     * Enables to register a responder under the specified context path. The context path may be a pattern containing
+     * wildcards, see RoutingTable for the syntax and the precedence of the patterns.
+     *
+     * @param contextPath to be used by the responder
+     * @param responder   request responder
+     * @throws ServiceRegistrationException thrown if error occurs, for example path is already taken
+     */
+    public void registerRequestResponder(String contextPath, RequestResponder responder) throws ServiceRegistrationException {
+        registerRequestResponder(contextPath, responder, null);
     }
 
     /**
-     * Enables to register a responder under the specified context path
+     * Enables to register a responder under the specified context path, its requests are isolated by the bulkhead.
      *
      * @param contextPath to be used by the responder
      * @param responder   request responder
+     * @param bulkhead    bulkhead isolating the requests of the responder, null if they should not be isolated.
+     *                    It cannot isolate any other context path.
      * @throws ServiceRegistrationException thrown if error occurs, for example path is already taken
      */
-    public void registerRequestResponder(String contextPath, RequestResponder responder) throws ServiceRegistrationException {
-        if (services.putIfAbsent(contextPath, responder) != null) {
+    public synchronized void registerRequestResponder(String contextPath, RequestResponder responder, Bulkhead bulkhead) throws ServiceRegistrationException {
+        if (bulkhead != null) {
+            bulkhead.bind(RoutingTable.normalize(contextPath));
+        }
+        if (services.register(contextPath, new ResponderRegistration(responder, bulkhead)) == null) {
+            if (bulkhead != null) {
+                bulkhead.unbind();
+            }
             throw new ServiceRegistrationException(String.format("Specified context path [%s] is already taken", contextPath));
         }
     }
 
     /**
-     * Unregisters the responder from the specified context path
+     * @param contextPath context path of a request, as returned by HttpServletRequest.getRequestURI()
+     * @return true if a responder is registered under a pattern matching the context path
+     */
+    public boolean hasRequestResponder(String contextPath) {
+        return services.lookup(contextPath) != null;
+    }
+
+    /**
+     * Unregisters the responder from the specified context path. The requests in flight are completed by the responder,
+     * new requests are not routed to it. The bulkhead of the responder is shut down afterwards.
      *
      * @param contextPath context path from which the responder should be removed
      * @throws ServiceRegistrationException thrown if error occurs, for example no service under the specified path
+     * @see #drainRequestResponder(String)
      */
     public void unregisterRequestResponder(String contextPath) throws ServiceRegistrationException {
-        if (services.remove(contextPath) == null) {
+        drainRequestResponder(contextPath);
+    }
+
+    /**
+     * Unregisters the responder from the specified context path, like unregisterRequestResponder, and returns the future
+     * of its requests in flight.
+     *
+     * @param contextPath context path from which the responder should be removed
+     * @return future completed with the unregistered responder when all its requests in flight have completed
+     * @throws ServiceRegistrationException thrown if error occurs, for example no service under the specified path
+     */
+    public synchronized CompletableFuture<RequestResponder> drainRequestResponder(String contextPath) throws ServiceRegistrationException {
+        Route<ResponderRegistration> route = services.unregister(contextPath);
+        if (route == null) {
+            throw new ServiceRegistrationException(String.format("There was no service under the specified context path [%s]", contextPath));
+        }
+        CompletableFuture<RequestResponder> drained = route.getValue().drain();
+        final Bulkhead bulkhead = route.getValue().getBulkhead();
+        if (bulkhead != null) {
+            drained.whenComplete((responder, throwable) -> bulkhead.shutdown());
+        }
+        return drained;
+    }
+
+    /**
+     * Atomically replaces the responder registered under the specified context path - every request is processed
+     * either by the old or by the new responder. The requests in flight are completed by the old responder, new
+     * requests are routed to the new one. The new responder is isolated by the bulkhead of the replaced one.
+     *
+     * @param contextPath context path of the replaced responder
+     * @param responder   new request responder
+     * @return future completed with the replaced responder when all its requests in flight have completed
+     * @throws ServiceRegistrationException thrown if error occurs, for example no service under the specified path
+     */
+    public synchronized CompletableFuture<RequestResponder> replaceRequestResponder(String contextPath, RequestResponder responder) throws ServiceRegistrationException {
+        Route<ResponderRegistration> current = services.get(contextPath);
+        Bulkhead bulkhead = current != null ? current.getValue().getBulkhead() : null;
+        Route<ResponderRegistration> route = services.replace(contextPath, new ResponderRegistration(responder, bulkhead));
+        if (route == null) {
             throw new ServiceRegistrationException(String.format("There was no service under the specified context path [%s]", contextPath));
         }
+        return route.getValue().drain();
+    }
+
+    /**
+     * @param contextPath context path (pattern) of a registered responder
+     * @return number of requests in flight processed by the responder, 0 if there is no responder
+     */
+    public long getInFlightRequestCount(String contextPath) {
+        Route<ResponderRegistration> route = services.get(contextPath);
+        return route != null ? route.getValue().getInFlightCount() : 0;
     }
 
     /**
-     * @return Returns an enumeration of the taken context paths
+     * @return Returns an enumeration of the taken context paths (patterns in the normalized form)
      */
     public Enumeration<String> getRegisteredContextPaths() {
-        return services.keys();
+        return Collections.enumeration(services.getPatterns());
     }
 
     @Override
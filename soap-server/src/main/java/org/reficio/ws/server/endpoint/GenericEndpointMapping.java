@@ -19,10 +19,15 @@
 package org.reficio.ws.server.endpoint;
 
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.server.EndpointInvocationChain;
 import org.springframework.ws.server.endpoint.mapping.AbstractEndpointMapping;
 
 /**
- * Endpoint mapping that always invokes the generic endpoint
+ * Endpoint mapping that always invokes the generic endpoint.
+ * The invocation of a request that may be answered asynchronously is bound to its AsyncDispatch, so that the response
+ * is passed through the interceptors when it completes (see the AsyncDispatchFilter). The interceptors handle such
+ * a request only once and they do not complete while the request is suspended.
  *
  * @author Tom Bujok
  * @since 1.0.0
@@ -39,6 +44,23 @@ public class GenericEndpointMapping extends AbstractEndpointMapping {
         return genericEndpoint;
     }
 
+    @Override
+    protected EndpointInvocationChain createEndpointInvocationChain(MessageContext messageContext, Object endpoint, EndpointInterceptor[] interceptors) {
+        AsyncDispatch dispatch = AsyncDispatch.current();
+        if (interceptors == null || dispatch == null) {
+            return super.createEndpointInvocationChain(messageContext, endpoint, interceptors);
+        }
+        EndpointInterceptor[] asyncInterceptors = new EndpointInterceptor[interceptors.length];
+        for (int i = 0; i < interceptors.length; i++) {
+            asyncInterceptors[i] = new AsyncDispatchInterceptor(interceptors[i]);
+        }
+        EndpointInvocationChain invocationChain = super.createEndpointInvocationChain(messageContext, endpoint, asyncInterceptors);
+        if (!dispatch.isStarted()) {
+            dispatch.bind(messageContext, invocationChain);
+        }
+        return invocationChain;
+    }
+
     public ContextPayloadEndpoint getGenericEndpoint() {
         return genericEndpoint;
     }
@@ -46,4 +68,42 @@ public class GenericEndpointMapping extends AbstractEndpointMapping {
     public void setGenericEndpoint(ContextPayloadEndpoint genericEndpoint) {
         this.genericEndpoint = genericEndpoint;
     }
+
+    /**
+     * Interceptor of an asynchronous request: the request is not handled again when a response that completed
+     * exceptionally is dispatched again and the interceptor does not complete when the request is suspended.
+     */
+    private static final class AsyncDispatchInterceptor implements EndpointInterceptor {
+
+        private final EndpointInterceptor delegate;
+
+        AsyncDispatchInterceptor(EndpointInterceptor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean handleRequest(MessageContext messageContext, Object endpoint) throws Exception {
+            AsyncDispatch dispatch = AsyncDispatch.current();
+            return (dispatch != null && dispatch.isStarted()) || delegate.handleRequest(messageContext, endpoint);
+        }
+
+        @Override
+        public boolean handleResponse(MessageContext messageContext, Object endpoint) throws Exception {
+            return delegate.handleResponse(messageContext, endpoint);
+        }
+
+        @Override
+        public boolean handleFault(MessageContext messageContext, Object endpoint) throws Exception {
+            return delegate.handleFault(messageContext, endpoint);
+        }
+
+        @Override
+        public void afterCompletion(MessageContext messageContext, Object endpoint, Exception ex) throws Exception {
+            AsyncDispatch dispatch = AsyncDispatch.current();
+            if (dispatch == null || !dispatch.isPending()) {
+                delegate.afterCompletion(messageContext, endpoint, ex);
+            }
+        }
+    }
+
 }
@@ -20,31 +20,53 @@ package org.reficio.ws.server.endpoint;
 
 import org.reficio.ws.common.XmlUtils;
 import org.reficio.ws.server.SoapServerException;
-import org.springframework.ws.WebServiceMessage;
+import org.reficio.ws.server.metrics.RequestPhase;
+import org.reficio.ws.server.metrics.RequestPhaseEvent;
+import org.reficio.ws.server.metrics.RequestTracing;
+import org.reficio.ws.server.protocol.ContentEncoding;
+import org.reficio.ws.server.responder.FaultSource;
+import org.reficio.ws.server.responder.RawSource;
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.transport.TransportConstants;
+import org.springframework.ws.transport.TransportOutputStream;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 
 /**
  * Implementation of a generic WebServiceMessage that contains the whole envelope in the source (envelope = header + body).
+ * A RawSource is written to the output as is, every other source is transformed to a string first. If the response
+ * is compressed, the pre-compressed form of a RawSource (computed once per source) is written instead.
+ * A FaultSource is written as is too and the message reports a fault, so that the fault status is set.
+ * The writing of the message is traced as the serialize phase of the request.
  *
  * @author Tom Bujok
  * @since 1.0.0
  */
-public class GenericSoapMessage implements WebServiceMessage {
+public class GenericSoapMessage implements FaultAwareWebServiceMessage {
+
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
 
     /**
      * Source containing the whole SOAP envelope (envelope = header + body).
      */
     private final Source source;
 
+    /**
+     * Content type of the message without the charset, null if it should not be set
+     */
+    private final String contentType;
+
     public GenericSoapMessage(Source source) {
+        this(source, null);
+    }
+
+    public GenericSoapMessage(Source source, String contentType) {
         this.source = source;
+        this.contentType = contentType;
     }
 
     @Override
@@ -59,11 +81,95 @@ public class GenericSoapMessage implements WebServiceMessage {
 
     @Override
     public void writeTo(OutputStream outputStream) throws IOException {
-        Writer writer = new OutputStreamWriter(outputStream, Charset.forName("UTF-8"));
-        String message = XmlUtils.sourceToXmlString(source);
-        writer.write(message);
-        writer.flush();
-        writer.close();
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.SERIALIZE);
+        long size = -1;
+        try {
+            if (source instanceof RawSource) {
+                size = writeRaw((RawSource) source, outputStream);
+            } else if (source instanceof FaultSource) {
+                size = writeFault((FaultSource) source, outputStream);
+            } else {
+                size = writeTransformed(outputStream);
+            }
+        } finally {
+            if (event != null) {
+                event.finish(size);
+            }
+        }
+    }
+
+    private long writeTransformed(OutputStream outputStream) throws IOException {
+        addHeaders(outputStream, Charset.forName("UTF-8"), -1);
+        byte[] message = XmlUtils.sourceToXmlString(source).getBytes(Charset.forName("UTF-8"));
+        try {
+            outputStream.write(message);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+        return message.length;
+    }
+
+    private long writeRaw(RawSource raw, OutputStream outputStream) throws IOException {
+        CompressedResponse compressed = outputStream instanceof TransportOutputStream ? CompressedResponse.current() : null;
+        byte[] encoded = compressed != null ? compressed.getEncoded(raw) : null;
+        if (encoded != null) {
+            return writeEncoded(raw, encoded, compressed.getEncoding(), (TransportOutputStream) outputStream);
+        }
+        addHeaders(outputStream, raw.getCharset(), raw.getContentLength());
+        try {
+            raw.writeTo(outputStream);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+        return raw.getContentLength();
+    }
+
+    private long writeEncoded(RawSource raw, byte[] encoded, ContentEncoding encoding, TransportOutputStream outputStream) throws IOException {
+        addHeaders(outputStream, raw.getCharset(), encoded.length);
+        outputStream.addHeader(CONTENT_ENCODING_HEADER, encoding.getName());
+        try {
+            outputStream.write(encoded);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+        return encoded.length;
+    }
+
+    private long writeFault(FaultSource fault, OutputStream outputStream) throws IOException {
+        addHeaders(outputStream, fault.getCharset(), fault.getContentLength());
+        try {
+            fault.writeTo(outputStream);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+        return fault.getContentLength();
+    }
+
+    @Override
+    public boolean hasFault() {
+        return source instanceof FaultSource;
+    }
+
+    @Override
+    public String getFaultReason() {
+        return hasFault() ? ((FaultSource) source).getReason() : null;
+    }
+
+    private void addHeaders(OutputStream outputStream, Charset charset, long contentLength) throws IOException {
+        if (!(outputStream instanceof TransportOutputStream)) {
+            return;
+        }
+        TransportOutputStream transportOutputStream = (TransportOutputStream) outputStream;
+        if (contentType != null) {
+            transportOutputStream.addHeader(TransportConstants.HEADER_CONTENT_TYPE, contentType + "; charset=" + charset.name());
+        }
+        if (contentLength >= 0) {
+            transportOutputStream.addHeader(TransportConstants.HEADER_CONTENT_LENGTH, String.valueOf(contentLength));
+        }
     }
 
 }
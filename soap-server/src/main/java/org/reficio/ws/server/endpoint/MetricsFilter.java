@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.mortbay.jetty.RetryRequest;
+import org.reficio.ws.server.metrics.RequestOutcome;
+import org.reficio.ws.server.metrics.RequestRecord;
+import org.reficio.ws.server.metrics.ServerMetrics;
+import org.reficio.ws.server.routing.Route;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Filter that records the metrics of the requests sent to the context paths of the registered responders.
+ * The requests are recorded per context path pattern under which the responder is registered.
+ * A request answered with an HTTP error status is recorded as a fault, a request that failed with an exception
+ * as an error. A suspended asynchronous request is recorded when it completes.
+ * If the snapshot path is set, a GET request sent to it is answered with a text/plain snapshot of the metrics.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class MetricsFilter implements Filter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GenericContextDomEndpoint endpoint;
+    private ServerMetrics metrics;
+    private String snapshotPath;
+
+    public void setEndpoint(GenericContextDomEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param snapshotPath context path under which the text snapshot of the metrics is available, null or empty disables it
+     */
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath != null && !snapshotPath.isEmpty() ? snapshotPath : null;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        String contextPath = request.getRequestURI();
+        if (snapshotPath != null && snapshotPath.equals(contextPath) && "GET".equals(request.getMethod())) {
+            writeSnapshot(response);
+            return;
+        }
+        RequestRecord record = (RequestRecord) request.getAttribute(RequestRecord.REQUEST_ATTRIBUTE);
+        if (record == null) {
+            Route<ResponderRegistration> route = endpoint.resolveRoute(request);
+            if (route == null) {
+                chain.doFilter(request, response);
+                return;
+            }
+            record = metrics.begin(route.getPattern());
+            request.setAttribute(RequestRecord.REQUEST_ATTRIBUTE, record);
+        }
+        StatusCapturingResponse capturingResponse = new StatusCapturingResponse(response);
+        RequestOutcome outcome = RequestOutcome.ERROR;
+        try {
+            chain.doFilter(request, capturingResponse);
+            outcome = capturingResponse.status >= HttpServletResponse.SC_BAD_REQUEST ? RequestOutcome.FAULT : RequestOutcome.SUCCESS;
+        } catch (RetryRequest suspended) {
+            // recorded when the request is dispatched again
+            outcome = null;
+            throw suspended;
+        } finally {
+            if (outcome != null) {
+                record.complete(outcome);
+            }
+        }
+    }
+
+    private void writeSnapshot(HttpServletResponse response) throws IOException {
+        byte[] snapshot = metrics.getSnapshot().getBytes(UTF_8);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; charset=UTF-8");
+        response.setContentLength(snapshot.length);
+        OutputStream out = response.getOutputStream();
+        out.write(snapshot);
+        out.flush();
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static final class StatusCapturingResponse extends HttpServletResponseWrapper {
+
+        private int status = SC_OK;
+
+        private StatusCapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            status = sc;
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            status = sc;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            status = sc;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void reset() {
+            status = SC_OK;
+            super.reset();
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.reficio.ws.server.responder.RequestResponder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responder registered in the endpoint, together with the number of requests it is processing and the bulkhead
+ * isolating its requests (if any).
+ * Once the responder is replaced or unregistered it is drained - it does not accept new requests and the drain
+ * future is completed (with the responder) when the last request in flight has completed.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class ResponderRegistration {
+
+    /**
+     * The highest bit of the state marks the draining, the rest is the number of requests in flight
+     */
+    private static final long DRAINING = Long.MIN_VALUE;
+
+    private final RequestResponder responder;
+    private final Bulkhead bulkhead;
+    private final AtomicLong state = new AtomicLong();
+    private final CompletableFuture<RequestResponder> drained = new CompletableFuture<RequestResponder>();
+
+    ResponderRegistration(RequestResponder responder, Bulkhead bulkhead) {
+        this.responder = responder;
+        this.bulkhead = bulkhead;
+    }
+
+    RequestResponder getResponder() {
+        return responder;
+    }
+
+    /**
+     * @return bulkhead isolating the requests of the responder, null if they are not isolated
+     */
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Registers a request in flight
+     *
+     * @return false if the responder is draining, the request has to be routed again
+     */
+    boolean enter() {
+        while (true) {
+            long current = state.get();
+            if (current < 0) {
+                return false;
+            }
+            if (state.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unregisters a request in flight, has to be invoked exactly once for every successful enter
+     */
+    void exit() {
+        if (state.decrementAndGet() == DRAINING) {
+            drained.complete(responder);
+        }
+    }
+
+    /**
+     * Stops accepting new requests
+     *
+     * @return future completed when all requests in flight have completed
+     */
+    CompletableFuture<RequestResponder> drain() {
+        while (true) {
+            long current = state.get();
+            if (current < 0 || state.compareAndSet(current, current | DRAINING)) {
+                break;
+            }
+        }
+        if (state.get() == DRAINING) {
+            drained.complete(responder);
+        }
+        return drained;
+    }
+
+    long getInFlightCount() {
+        return state.get() & ~DRAINING;
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.matcher;
+
+import javax.wsdl.BindingOperation;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash index of binding operations used by the SoapOperationMatcher.
+ * It is populated once when the matcher is constructed and only read afterwards.
+ * A key that maps to more than one distinct operation is considered ambiguous and resolves to null,
+ * which mirrors the "unique result" semantics of the AggregatingVisitor.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class BindingOperationIndex<K> {
+
+    private final Map<K, BindingOperation> operations = new HashMap<K, BindingOperation>();
+    private final Map<K, Set<BindingOperation>> ambiguities = new HashMap<K, Set<BindingOperation>>();
+
+    /**
+     * Indexes the operation under the specified key
+     *
+     * @param key       key under which the operation is matched
+     * @param operation operation to index
+     */
+    void add(K key, BindingOperation operation) {
+        Set<BindingOperation> ambiguous = ambiguities.get(key);
+        if (ambiguous != null) {
+            ambiguous.add(operation);
+            return;
+        }
+        BindingOperation existing = operations.get(key);
+        if (existing == null) {
+            operations.put(key, operation);
+        } else if (existing != operation) {
+            operations.remove(key);
+            ambiguous = new HashSet<BindingOperation>();
+            ambiguous.add(existing);
+            ambiguous.add(operation);
+            ambiguities.put(key, ambiguous);
+        }
+    }
+
+    /**
+     * @param key key to look up
+     * @return the operation indexed under the key, null if there is none or the key is ambiguous
+     */
+    BindingOperation get(K key) {
+        return operations.get(key);
+    }
+
+    /**
+     * @return keys that could not be resolved to a unique operation
+     */
+    Set<K> getAmbiguousKeys() {
+        return Collections.unmodifiableSet(ambiguities.keySet());
+    }
+
+    /**
+     * @return number of keys resolving to a unique operation
+     */
+    int size() {
+        return operations.size();
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.matcher;
+
+import javax.wsdl.BindingOperation;
+
+/**
+ * Binding operation matched to a SOAP request together with the mechanism that matched it, or the reason why
+ * the request cannot be matched to any operation (see notFound).
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class OperationMatch {
+
+    private final BindingOperation operation;
+    private final MatchStrategy strategy;
+    private final String failure;
+
+    public OperationMatch(BindingOperation operation, MatchStrategy strategy) {
+        this(operation, strategy, null);
+    }
+
+    private OperationMatch(BindingOperation operation, MatchStrategy strategy, String failure) {
+        this.operation = operation;
+        this.strategy = strategy;
+        this.failure = failure;
+    }
+
+    /**
+     * @param failure reason why the request cannot be matched to any operation
+     * @return outcome of a request that cannot be matched, without an operation and a strategy
+     */
+    public static OperationMatch notFound(String failure) {
+        return new OperationMatch(null, null, failure);
+    }
+
+    public boolean isNotFound() {
+        return failure != null;
+    }
+
+    /**
+     * @return reason why the request cannot be matched to any operation, null if it has been matched
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    public BindingOperation getOperation() {
+        return operation;
+    }
+
+    public MatchStrategy getStrategy() {
+        return strategy;
+    }
+
+}
@@ -19,20 +19,30 @@
 package org.reficio.ws.server.matcher;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.reficio.ws.builder.core.SoapUtils;
 import org.reficio.ws.common.XmlUtils;
 import org.reficio.ws.legacy.SoapLegacyFacade;
 import org.reficio.ws.server.OperationNotFoundException;
+import org.reficio.ws.server.protocol.SoapRequestPreview;
 import org.springframework.ws.soap.SoapMessage;
 import org.w3c.dom.Node;
 
 import javax.wsdl.Binding;
 import javax.wsdl.BindingOperation;
+import javax.wsdl.Message;
 import javax.wsdl.OperationType;
 import javax.wsdl.Part;
 import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -44,6 +54,16 @@ import java.util.Set;
  * - RCP bindings are matched using single top-level tag with the name of the invoked operation
  * - Document bindings are matched by input types and then by input names
  * <p/>
+ * All mechanisms are backed by hash indexes that are built once, when the matcher is constructed,
+ * so matching a request is a constant-time lookup that does not depend on the number of operations in the binding.
+ * Keys that cannot be resolved to a unique operation are reported (logged) when the indexes are built.
+ * <p/>
+ * A request may also be matched using a SoapRequestPreview (SOAPAction and the first child of the SOAP Body)
+ * before the SOAP message is built - see getInvokedOperation(SoapRequestPreview).
+ * <p/>
+ * The tryMatch and route methods report requests that cannot be matched as a typed outcome instead of throwing
+ * an OperationNotFoundException, so that the faults are cheap to return.
+ * <p/>
  * Thanks to Spring SOAPAction in both SOAP versions is treated transparently.
  * <p/>
  * Resources about SOAP-Action mystery in SOAP 1.1:
@@ -57,12 +77,53 @@ import java.util.Set;
  */
 public class SoapOperationMatcher {
 
+    private final static Log log = LogFactory.getLog(SoapOperationMatcher.class);
+
+    private static final char SIGNATURE_SEPARATOR = ' ';
+
     protected final Binding binding;
     protected final boolean rpc;
 
+    /**
+     * normalized SOAPAction -> operation
+     */
+    private final BindingOperationIndex<String> soapActionIndex;
+    /**
+     * local name of the rpc root element (operation name) -> operation
+     */
+    private final BindingOperationIndex<String> rootNameIndex;
+    /**
+     * sorted signature of the input element QNames -> operation
+     */
+    private final BindingOperationIndex<String> inputTypesIndex;
+    /**
+     * sorted signature of the input part names -> operation
+     */
+    private final BindingOperationIndex<String> inputNamesIndex;
+    /**
+     * QName of the single input element (or pseudo input name) -> operation, used to match a request preview
+     */
+    private final BindingOperationIndex<String> rootElementIndex;
+    /**
+     * All QNames of input elements and all input part names, used to reject a request preview
+     */
+    private final Set<String> inputElements;
+    private final Set<String> inputPartNames;
+    private final Set<BindingOperation> operations;
+
+    @SuppressWarnings("unchecked")
     public SoapOperationMatcher(Binding binding) {
         this.binding = binding;
         this.rpc = SoapLegacyFacade.isRpc(binding);
+        this.soapActionIndex = indexBySoapAction();
+        this.rootNameIndex = indexByRootName();
+        this.inputTypesIndex = indexByInputTypes();
+        this.inputNamesIndex = indexByInputNames();
+        this.inputElements = new HashSet<String>();
+        this.inputPartNames = new HashSet<String>();
+        this.rootElementIndex = indexByRootElement();
+        this.operations = Collections.unmodifiableSet(new HashSet<BindingOperation>((List<BindingOperation>) binding.getBindingOperations()));
+        reportAmbiguities();
     }
 
     /**
@@ -94,140 +155,353 @@ public class SoapOperationMatcher {
      *          if operation not found in the binding
      */
     public BindingOperation getInvokedOperation(SoapMessage message) throws OperationNotFoundException {
+        return match(message).getOperation();
+    }
+
+    /**
+     * Matches the SoapMessage to an binding operation, the same way as the getInvokedOperation method does
+     *
+     * @param message message passed by the SOAP client
+     * @return the BindingOperation matched to the message together with the mechanism that matched it
+     * @throws org.reficio.ws.server.OperationNotFoundException
+     *          if operation not found in the binding
+     */
+    public OperationMatch match(SoapMessage message) throws OperationNotFoundException {
+        OperationMatch match = tryMatch(message);
+        if (match.isNotFound()) {
+            throw new OperationNotFoundException(match.getFailure());
+        }
+        return match;
+    }
+
+    /**
+     * Matches the SoapMessage to an binding operation, the same way as the match method does
+     *
+     * @param message message passed by the SOAP client
+     * @return the BindingOperation matched to the message together with the mechanism that matched it,
+     *         or the not found outcome if the operation cannot be found in the binding
+     * @throws org.reficio.ws.server.OperationNotFoundException
+     *          only if the payload of the message cannot be read
+     */
+    public OperationMatch tryMatch(SoapMessage message) throws OperationNotFoundException {
         // SOAP action mapping - cheapest and fastest as no request analysis is required
-        BindingOperation invokedOperation = getOperationBySoapAction(message);
+        BindingOperation invokedOperation = getOperationBySoapAction(message.getSoapAction());
         if (invokedOperation != null) {
-            return invokedOperation;
+            return new OperationMatch(invokedOperation, MatchStrategy.SOAP_ACTION);
         }
-        Set<Node> rootNodes = XmlUtils.getRootNodes((DOMSource) message.getPayloadSource());
+        List<Node> rootNodes = getRootNodes(message);
         if (isRpc()) {
             // rpc-type requests always contain single top-level tag with invoked operation
-            invokedOperation = getOperationByRootQName(rootNodes);
+            if (rootNodes.size() != 1) {
+                return OperationMatch.notFound("No unique top-level node containing the operation name in the rpc request.");
+            }
+            invokedOperation = getOperationByRootQName(rootNodes.get(0));
             if (invokedOperation != null) {
-                return invokedOperation;
+                return new OperationMatch(invokedOperation, MatchStrategy.ROOT_ELEMENT);
             }
         } else {
             // match by types of input arguments - if two operation defined with the same argument types
             //  unable to distinguish
             invokedOperation = getOperationByInputTypes(rootNodes);
             if (invokedOperation != null) {
-                return invokedOperation;
+                return new OperationMatch(invokedOperation, MatchStrategy.INPUT_TYPES);
             }
             // malformed services - rare but possible - if two operation defined with the same argument names
             //  unable to distinguish
             invokedOperation = getOperationByInputNames(rootNodes);
             if (invokedOperation != null) {
-                return invokedOperation;
+                return new OperationMatch(invokedOperation, MatchStrategy.INPUT_NAMES);
             }
         }
-        throw new OperationNotFoundException("Cannot match a SOAP operation to the given SOAP request");
+        return OperationMatch.notFound("Cannot match a SOAP operation to the given SOAP request");
+    }
+
+    /**
+     * Matches the preview of a request (read before the SOAP message was built) to a binding operation.
+     * <p/>
+     * Tries to match using the following mechanisms:
+     * - SOAP Action mapping
+     * - RCP bindings are matched using the name of the first child of the SOAP Body
+     * - Document bindings are matched using the QName of the first child of the SOAP Body, provided that
+     * it is the single input element of exactly one operation
+     * <p/>
+     *
+     * @param preview preview of the message passed by the SOAP client
+     * @return the BindingOperation matched to the preview or null if the whole message is required to match it
+     * @throws org.reficio.ws.server.OperationNotFoundException
+     *          if the message certainly cannot be matched to an operation from the binding
+     */
+    public BindingOperation getInvokedOperation(SoapRequestPreview preview) throws OperationNotFoundException {
+        SoapRequestPreview routed = route(preview);
+        if (routed.getFault() != null) {
+            throw new OperationNotFoundException(routed.getFault());
+        }
+        return routed.getOperation();
     }
 
+    /**
+     * Matches the preview of a request to a binding operation, the same way as the getInvokedOperation method does
+     *
+     * @param preview preview of the message passed by the SOAP client
+     * @return copy of the preview holding the matched operation, or holding the fault if the message certainly cannot be
+     *         matched to an operation from the binding. The preview is returned as is if the whole message is required.
+     */
+    public SoapRequestPreview route(SoapRequestPreview preview) {
+        BindingOperation invokedOperation = getOperationBySoapAction(preview.getSoapAction());
+        if (invokedOperation != null) {
+            return preview.withOperation(invokedOperation);
+        }
+        QName root = preview.getRootElement();
+        if (root == null) {
+            return preview;
+        }
+        if (isRpc()) {
+            invokedOperation = rootNameIndex.get(root.getLocalPart());
+            if (invokedOperation == null && rootNameIndex.getAmbiguousKeys().contains(root.getLocalPart()) == false) {
+                return preview.withFault(String.format("Cannot match a SOAP operation to the rpc request element [%s]", root));
+            }
+            return invokedOperation != null ? preview.withOperation(invokedOperation) : preview;
+        }
+        String rootType = root.toString();
+        invokedOperation = rootElementIndex.get(rootType);
+        if (invokedOperation == null && !inputElements.contains(rootType) && !inputPartNames.contains(root.getLocalPart())) {
+            return preview.withFault(String.format("Cannot match a SOAP operation to the request element [%s]", root));
+        }
+        return invokedOperation != null ? preview.withOperation(invokedOperation) : preview;
+    }
 
-    private BindingOperation getOperationBySoapAction(SoapMessage message) {
-        final String soapActionToMatch = SoapUtils.normalizeSoapAction(message.getSoapAction());
-        // optimization - if no soap action skip the visitor
+    /**
+     * @param operation binding operation
+     * @return true if the operation belongs to the binding of this matcher
+     */
+    public boolean contains(BindingOperation operation) {
+        return operations.contains(operation);
+    }
+
+    private BindingOperation getOperationBySoapAction(String soapAction) {
+        String soapActionToMatch = SoapUtils.normalizeSoapAction(soapAction);
+        // optimization - if no soap action skip the lookup
         if (StringUtils.isBlank(soapActionToMatch)) {
             return null;
         }
-        AggregatingVisitor<BindingOperation> visitor = new AggregatingVisitor<BindingOperation>() {
-            @Override
-            public void visit(BindingOperation operation) {
-                String soapAction = SoapUtils.normalizeSoapAction(SoapUtils.getSOAPActionUri(operation));
-                if (soapAction.equals(soapActionToMatch)) {
-                    addResult(operation);
-                }
+        return soapActionIndex.get(soapActionToMatch);
+    }
+
+    private BindingOperation getOperationByRootQName(Node rootNode) {
+        // rpc-style -> operation name is always encoded in the request
+        QName root = XmlUtils.nodeToQName(rootNode);
+        return rootNameIndex.get(root.getLocalPart());
+    }
+
+    private BindingOperation getOperationByInputTypes(List<Node> rootNodes) {
+        List<String> receivedTypes = new ArrayList<String>(rootNodes.size());
+        for (Node node : rootNodes) {
+            receivedTypes.add(XmlUtils.nodeToQName(node).toString());
+        }
+        return inputTypesIndex.get(signature(receivedTypes));
+    }
+
+    private BindingOperation getOperationByInputNames(List<Node> rootNodes) {
+        List<String> receivedNames = new ArrayList<String>(rootNodes.size());
+        for (Node node : rootNodes) {
+            receivedNames.add(node.getLocalName());
+        }
+        return inputNamesIndex.get(signature(receivedNames));
+    }
+
+    private static List<Node> getRootNodes(SoapMessage message) throws OperationNotFoundException {
+        List<Node> nodes = new ArrayList<Node>(1);
+        for (Node node = getPayloadNode(message); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                nodes.add(node);
             }
-        };
-        visitOperation(visitor);
-        return visitor.getUniqueResult();
+        }
+        return nodes;
     }
 
-    private BindingOperation getOperationByRootQName(Set<Node> rootNodes) throws OperationNotFoundException {
-        // check if only one root node exists
-        if (rootNodes.isEmpty() || rootNodes.size() > 1) {
-            throw new OperationNotFoundException("No unique top-level node containing the operation name in the rpc request.");
+    /**
+     * SAAJ messages provide a DOM payload, other (streaming) messages expose only the first payload element
+     * so the whole body has to be transformed to DOM
+     */
+    private static Node getPayloadNode(SoapMessage message) throws OperationNotFoundException {
+        Source payload = message.getPayloadSource();
+        if (payload == null) {
+            return null;
+        }
+        if (payload instanceof DOMSource) {
+            return ((DOMSource) payload).getNode();
+        }
+        try {
+            DOMResult result = new DOMResult();
+            TransformerFactory.newInstance().newTransformer().transform(message.getSoapBody().getSource(), result);
+            Node body = result.getNode().getFirstChild();
+            return body != null ? body.getFirstChild() : null;
+        } catch (TransformerException ex) {
+            throw new OperationNotFoundException("Cannot read the payload of the SOAP request", ex);
         }
-        QName root = XmlUtils.nodeToQName(rootNodes.iterator().next());
-        return matchElementNameToOperationName(root);
     }
 
     /**
-     * rpc-style -> operation name is always encoded in the request
+     * Builds an order-independent signature of a set of values, duplicates are ignored
      */
-    private BindingOperation matchElementNameToOperationName(final QName elementName) {
-        AggregatingVisitor<BindingOperation> visitor = new AggregatingVisitor<BindingOperation>() {
+    private static String signature(List<String> values) {
+        if (values.size() == 1) {
+            return String.valueOf(values.get(0));
+        }
+        Collections.sort(values);
+        StringBuilder signature = new StringBuilder();
+        String previous = null;
+        for (String value : values) {
+            if (value.equals(previous)) {
+                continue;
+            }
+            if (previous != null) {
+                signature.append(SIGNATURE_SEPARATOR);
+            }
+            signature.append(value);
+            previous = value;
+        }
+        return signature.toString();
+    }
+
+    // ----------------------------------------------------------------
+    // INDEXES
+    // ----------------------------------------------------------------
+
+    private BindingOperationIndex<String> indexBySoapAction() {
+        final BindingOperationIndex<String> index = new BindingOperationIndex<String>();
+        visitOperation(new BindingOperationVisitor() {
             @Override
             public void visit(BindingOperation operation) {
-                if (operation.getOperation().getName().equals(elementName.getLocalPart())) {
-                    addResult(operation);
+                String soapAction = SoapUtils.normalizeSoapAction(SoapUtils.getSOAPActionUri(operation));
+                if (StringUtils.isNotBlank(soapAction)) {
+                    index.add(soapAction, operation);
                 }
             }
-        };
-        visitOperation(visitor);
-        return visitor.getUniqueResult();
+        });
+        return index;
+    }
+
+    private BindingOperationIndex<String> indexByRootName() {
+        final BindingOperationIndex<String> index = new BindingOperationIndex<String>();
+        visitOperation(new BindingOperationVisitor() {
+            @Override
+            public void visit(BindingOperation operation) {
+                index.add(operation.getOperation().getName(), operation);
+            }
+        });
+        return index;
     }
 
     /**
-     * Last matching mechanism ->
      * When a non ws-compliant document-literal service specifies wsdl:part using the type instead of the element tag
+     * the operation may only be matched by the input names.
      * Resources:
      * http://stackoverflow.com/questions/1172118/what-is-the-difference-between-type-and-element-in-wsdl
      * http://www.xfront.com/ElementVersusType.html
      * http://www.xfront.com/GlobalVersusLocal.html !!!
-     *
-     * @param rootNodes root nodes of the request
-     * @return operation matched
      */
     @SuppressWarnings("unchecked")
-    private BindingOperation getOperationByInputTypes(final Set<Node> rootNodes) {
-        AggregatingVisitor<BindingOperation> visitor = new AggregatingVisitor<BindingOperation>() {
+    private BindingOperationIndex<String> indexByInputTypes() {
+        final BindingOperationIndex<String> index = new BindingOperationIndex<String>();
+        visitOperation(new BindingOperationVisitor() {
             @Override
             public void visit(BindingOperation operation) {
-                Collection<Part> expectedParts = operation.getOperation().getInput().getMessage().getParts().values();
-                Set<QName> expectedTypes = new HashSet<QName>();
+                Message input = operation.getOperation().getInput().getMessage();
+                Collection<Part> expectedParts = input.getParts().values();
+                List<String> expectedTypes = new ArrayList<String>();
                 for (Part part : expectedParts) {
-                    expectedTypes.add(part.getElementName());
-                }
-                Set<QName> receivedTypes = XmlUtils.getNodeTypes(rootNodes);
-                if (expectedTypes.equals(receivedTypes)) {
-                    addResult(operation);
-                } else if (expectedParts.isEmpty() && receivedTypes.size() == 1) {
-                    // check the case when pseudo input name was sent when no input was expected and got one element
-                    QName receivedType = receivedTypes.toArray(new QName[receivedTypes.size()])[0];
-                    String namespaceUri = operation.getOperation().getInput().getMessage().getQName().getNamespaceURI();
-                    String name = operation.getOperation().getName();
-                    QName pseudoInputName = new QName(namespaceUri, name);
-                    if (pseudoInputName.equals(receivedType)) {
-                        addResult(operation);
+                    if (part.getElementName() == null) {
+                        // type-based part - the request can never match the types of this operation
+                        return;
                     }
+                    expectedTypes.add(part.getElementName().toString());
+                }
+                index.add(signature(expectedTypes), operation);
+                if (expectedParts.isEmpty()) {
+                    // the case when pseudo input name is sent when no input was expected
+                    QName pseudoInputName = new QName(input.getQName().getNamespaceURI(), operation.getOperation().getName());
+                    index.add(pseudoInputName.toString(), operation);
                 }
             }
-        };
-        visitOperation(visitor);
-        return visitor.getUniqueResult();
+        });
+        return index;
     }
 
     /**
      * document style service -> there is not encoded operation name - matching based on the input style
-     *
-     * @param rootNodes root nodes of the request
-     * @return operation matched
      */
     @SuppressWarnings("unchecked")
-    private BindingOperation getOperationByInputNames(final Set<Node> rootNodes) {
-        AggregatingVisitor<BindingOperation> visitor = new AggregatingVisitor<BindingOperation>() {
+    private BindingOperationIndex<String> indexByInputNames() {
+        final BindingOperationIndex<String> index = new BindingOperationIndex<String>();
+        visitOperation(new BindingOperationVisitor() {
             @Override
             public void visit(BindingOperation operation) {
                 Set<String> expectedNames = operation.getOperation().getInput().getMessage().getParts().keySet();
-                Set<String> receivedNames = XmlUtils.getNodeNames(rootNodes);
-                if (receivedNames.equals(expectedNames)) {
-                    addResult(operation);
+                index.add(signature(new ArrayList<String>(expectedNames)), operation);
+            }
+        });
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BindingOperationIndex<String> indexByRootElement() {
+        final BindingOperationIndex<String> index = new BindingOperationIndex<String>();
+        visitOperation(new BindingOperationVisitor() {
+            @Override
+            public void visit(BindingOperation operation) {
+                Message input = operation.getOperation().getInput().getMessage();
+                Collection<Part> parts = input.getParts().values();
+                for (Part part : parts) {
+                    inputPartNames.add(part.getName());
+                    if (part.getElementName() != null) {
+                        inputElements.add(part.getElementName().toString());
+                    }
+                }
+                if (parts.isEmpty()) {
+                    String pseudoInputName = new QName(input.getQName().getNamespaceURI(), operation.getOperation().getName()).toString();
+                    inputElements.add(pseudoInputName);
+                    index.add(pseudoInputName, operation);
+                } else if (parts.size() == 1) {
+                    QName element = parts.iterator().next().getElementName();
+                    if (element != null) {
+                        index.add(element.toString(), operation);
+                    }
+                }
+            }
+        });
+        // an element that is also a part of a multi-part input does not identify the single-part operation
+        visitOperation(new BindingOperationVisitor() {
+            @Override
+            public void visit(BindingOperation operation) {
+                Collection<Part> parts = operation.getOperation().getInput().getMessage().getParts().values();
+                if (parts.size() > 1) {
+                    for (Part part : parts) {
+                        if (part.getElementName() != null && index.get(part.getElementName().toString()) != null) {
+                            index.add(part.getElementName().toString(), operation);
+                        }
+                    }
                 }
             }
-        };
-        visitOperation(visitor);
-        return visitor.getUniqueResult();
+        });
+        return index;
+    }
+
+    private void reportAmbiguities() {
+        reportAmbiguities("SOAPAction", soapActionIndex);
+        if (isRpc()) {
+            reportAmbiguities("operation name", rootNameIndex);
+        } else {
+            reportAmbiguities("input types", inputTypesIndex);
+            reportAmbiguities("input names", inputNamesIndex);
+        }
+    }
+
+    private void reportAmbiguities(String strategy, BindingOperationIndex<String> index) {
+        for (String key : index.getAmbiguousKeys()) {
+            log.warn(String.format("Binding [%s] - %s [%s] does not identify a unique operation and will not be used for matching",
+                    binding.getQName(), strategy, key));
+        }
     }
 
     @SuppressWarnings("unchecked")
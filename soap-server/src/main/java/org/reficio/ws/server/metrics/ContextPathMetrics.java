@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import org.reficio.ws.server.matcher.MatchStrategy;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the requests sent to a context path, of the operations they invoked and of the strategies
+ * that matched the operations.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class ContextPathMetrics implements ContextPathMetricsMBean {
+
+    private final String contextPath;
+    private final RequestStatistics statistics = new RequestStatistics();
+    private final ConcurrentMap<String, RequestStatistics> operations = new ConcurrentHashMap<String, RequestStatistics>();
+    private final ConcurrentMap<MatchStrategy, LongAdder> strategies = new ConcurrentHashMap<MatchStrategy, LongAdder>();
+
+    ContextPathMetrics(String contextPath) {
+        this.contextPath = contextPath;
+    }
+
+    void begin() {
+        statistics.begin();
+    }
+
+    RequestStatistics beginOperation(String operation, MatchStrategy strategy) {
+        if (strategy != null) {
+            strategies.computeIfAbsent(strategy, key -> new LongAdder()).increment();
+        }
+        RequestStatistics operationStatistics = operations.computeIfAbsent(operation, name -> new RequestStatistics());
+        operationStatistics.begin();
+        return operationStatistics;
+    }
+
+    void end(long nanos, RequestOutcome outcome, RequestStatistics operationStatistics) {
+        statistics.end(nanos, outcome);
+        if (operationStatistics != null) {
+            operationStatistics.end(nanos, outcome);
+        }
+    }
+
+    /**
+     * @return statistics of the operation or null if it has not been invoked
+     */
+    public RequestStatistics getOperationStatistics(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return number of requests matched by the strategy
+     */
+    public long getMatchCount(MatchStrategy strategy) {
+        LongAdder counter = strategies.get(strategy);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return statistics.getRequestCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return statistics.getErrorCount();
+    }
+
+    @Override
+    public long getFaultCount() {
+        return statistics.getFaultCount();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return statistics.getInFlightCount();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return statistics.getLatency().snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP90() {
+        return statistics.getLatency().snapshot().getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return statistics.getLatency().snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatencyP999() {
+        return statistics.getLatency().snapshot().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder builder = new StringBuilder();
+        appendStatistics(builder, "path " + contextPath, statistics);
+        for (Map.Entry<String, RequestStatistics> operation : new TreeMap<String, RequestStatistics>(operations).entrySet()) {
+            appendStatistics(builder, "  operation " + operation.getKey(), operation.getValue());
+        }
+        for (MatchStrategy strategy : MatchStrategy.values()) {
+            long count = getMatchCount(strategy);
+            if (count > 0) {
+                builder.append("  strategy ").append(strategy).append(" matches=").append(count).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendStatistics(StringBuilder builder, String name, RequestStatistics statistics) {
+        LatencyHistogram.Snapshot latency = statistics.getLatency().snapshot();
+        builder.append(String.format("%s requests=%d inFlight=%d errors=%d faults=%d p50=%dus p90=%dus p99=%dus p999=%dus%n",
+                name, statistics.getRequestCount(), statistics.getInFlightCount(), statistics.getErrorCount(),
+                statistics.getFaultCount(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+                latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9)));
+    }
+
+}
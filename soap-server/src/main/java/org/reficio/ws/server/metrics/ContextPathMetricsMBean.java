@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+/**
+ * JMX view of the metrics of a context path, latencies are reported in microseconds
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public interface ContextPathMetricsMBean {
+
+    String getContextPath();
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getFaultCount();
+
+    int getInFlightCount();
+
+    long getLatencyP50();
+
+    long getLatencyP90();
+
+    long getLatencyP99();
+
+    long getLatencyP999();
+
+    /**
+     * @return text snapshot of the metrics of the context path, its operations and match strategies
+     */
+    String getSnapshot();
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (microsecond resolution, relative error below 7%).
+ * Every power of two is split into 16 linear sub-buckets, values up to 2^40 microseconds are distinguished.
+ * Recording is a single atomic increment, so it may be used on the request path.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos duration to record in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(0, nanos / 1000)));
+    }
+
+    /**
+     * @return consistent copy of the histogram that may be queried for percentiles
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (1L << magnitude) | ((long) subBucket << (magnitude - SUB_BUCKET_BITS));
+        return lowest + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.counts = counts;
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * @param percentile percentile in the range (0, 100]
+         * @return the highest value in microseconds of the bucket containing the percentile, 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return highestValue(counts.length - 1);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+/**
+ * Phases of the processing of a request that are traced by the flight recorder.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public enum RequestPhase {
+
+    /**
+     * Detection of the SOAP version of the request
+     */
+    PROTOCOL,
+
+    /**
+     * Building of the SOAP message from the request
+     */
+    PARSE,
+
+    /**
+     * Matching of the request to an operation of the binding, including the pre-dispatch
+     */
+    MATCH,
+
+    /**
+     * Invocation of the responder
+     */
+    RESPOND,
+
+    /**
+     * Serialization of the response
+     */
+    SERIALIZE
+
+}
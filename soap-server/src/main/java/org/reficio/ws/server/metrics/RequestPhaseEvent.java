@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Flight recorder event emitted for a phase of the processing of a request.<br/>
+ * Instances are obtained through the RequestTracing only - this class may be loaded only if the flight recorder
+ * is available.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+@Name("org.reficio.ws.server.RequestPhase")
+@Label("SOAP Request Phase")
+@Category({"SOAP", "Server"})
+@Description("Phase of the processing of a SOAP request")
+public final class RequestPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Context Path")
+    String contextPath;
+
+    @Label("Operation")
+    @Description("Operation invoked by the request, null if it has not been matched yet")
+    String operation;
+
+    @Label("Payload Size")
+    @Description("Size of the request, or of the response in the respond and serialize phases, -1 if unknown")
+    @DataAmount
+    long payloadSize;
+
+    private RequestPhaseEvent() {
+    }
+
+    static RequestPhaseEvent start(RequestPhase phase) {
+        RequestPhaseEvent event = new RequestPhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.phase = phase.name();
+        event.payloadSize = -1;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+            event.contextPath = request.getRequestURI();
+            event.payloadSize = request.getContentLength();
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the phase, the event is committed if it exceeds the threshold of the recording
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            operation = RequestTracing.currentOperation();
+            commit();
+        }
+    }
+
+    /**
+     * Ends the phase that has produced a payload of the specified size (-1 if unknown)
+     */
+    public void finish(long producedPayloadSize) {
+        payloadSize = producedPayloadSize;
+        finish();
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import org.reficio.ws.server.matcher.MatchStrategy;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Metrics of a single request, kept as an attribute of the request while it is processed.
+ * The operation is reported by the responder as soon as it has been matched.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RequestRecord {
+
+    public static final String REQUEST_ATTRIBUTE = RequestRecord.class.getName();
+
+    private final ContextPathMetrics metrics;
+    private final long startNanos;
+    private RequestStatistics operation;
+
+    RequestRecord(ContextPathMetrics metrics) {
+        this.metrics = metrics;
+        this.startNanos = System.nanoTime();
+        metrics.begin();
+    }
+
+    /**
+     * @return record of the request that is currently processed, null if it is not recorded
+     */
+    public static RequestRecord current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (RequestRecord) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Reports the operation invoked by the request and the strategy that matched it
+     */
+    public synchronized void operationMatched(String operationName, MatchStrategy strategy) {
+        if (operation == null) {
+            operation = metrics.beginOperation(operationName, strategy);
+        }
+    }
+
+    /**
+     * Records the request, has to be invoked exactly once
+     */
+    public synchronized void complete(RequestOutcome outcome) {
+        metrics.end(System.nanoTime() - startNanos, outcome, operation);
+    }
+
+}
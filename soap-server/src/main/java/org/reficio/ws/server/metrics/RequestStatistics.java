@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the requests sent to a context path or to an operation
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RequestStatistics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder faults = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end(long nanos, RequestOutcome outcome) {
+        inFlight.decrementAndGet();
+        requests.increment();
+        if (outcome == RequestOutcome.FAULT) {
+            faults.increment();
+        } else if (outcome == RequestOutcome.ERROR) {
+            errors.increment();
+        }
+        latency.record(nanos);
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests that failed with an error not reported as a SOAP fault
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * @return number of requests answered with a SOAP fault
+     */
+    public long getFaultCount() {
+        return faults.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import org.reficio.ws.common.FlightRecorderSupport;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Traces the phases of the processing of requests with flight recorder events.<br/>
+ * The tracing is a no-op if the flight recorder is not available or if the events are not enabled in any recording,
+ * so that it may stay in place in production and be switched on by starting a recording, for example:
+ * <pre>
+ *     jcmd &lt;pid&gt; JFR.start name=soap settings=profile
+ * </pre>
+ * Typical usage:
+ * <pre>
+ *     RequestPhaseEvent event = RequestTracing.begin(RequestPhase.PARSE);
+ *     try {
+ *         ...
+ *     } finally {
+ *         if (event != null) {
+ *             event.finish();
+ *         }
+ *     }
+ * </pre>
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RequestTracing {
+
+    private static final String OPERATION_ATTRIBUTE = RequestTracing.class.getName() + ".operation";
+
+    private RequestTracing() {
+    }
+
+    /**
+     * Begins the phase of the request that is currently processed
+     *
+     * @return event of the phase, null if the phase is not traced
+     */
+    public static RequestPhaseEvent begin(RequestPhase phase) {
+        // the event class may be loaded only if the flight recorder is available
+        return FlightRecorderSupport.isAvailable() ? RequestPhaseEvent.start(phase) : null;
+    }
+
+    /**
+     * Reports the operation invoked by the request that is currently processed, it is reported by the events of
+     * the phases that end afterwards
+     */
+    public static void operationMatched(String operationName) {
+        if (!FlightRecorderSupport.isAvailable()) {
+            return;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(OPERATION_ATTRIBUTE, operationName, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    static String currentOperation() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (String) attributes.getAttribute(OPERATION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+}
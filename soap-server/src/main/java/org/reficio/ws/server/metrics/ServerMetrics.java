@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of all context paths of a SoapServer. If a JMX name is set the metrics are registered in the
+ * platform MBean server - the server metrics under [domain]:type=ServerMetrics,name=[name] and the metrics of every
+ * context path under [domain]:type=ContextPathMetrics,name=[name],path=[contextPath]. The utilization of the bulkheads
+ * isolating the context paths is registered under [domain]:type=BulkheadMetrics,name=[name],path=[contextPath].
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    public static final String JMX_DOMAIN = "org.reficio.ws.server";
+
+    private final static Log log = LogFactory.getLog(ServerMetrics.class);
+
+    private final ConcurrentMap<String, ContextPathMetrics> paths = new ConcurrentHashMap<String, ContextPathMetrics>();
+    private final ConcurrentMap<String, BulkheadMetricsMBean> bulkheads = new ConcurrentHashMap<String, BulkheadMetricsMBean>();
+    private String jmxName;
+
+    public void setJmxName(String jmxName) {
+        this.jmxName = jmxName;
+    }
+
+    /**
+     * Starts recording a request sent to the context path
+     *
+     * @return record that has to be completed when the request has been processed
+     */
+    public RequestRecord begin(String contextPath) {
+        ContextPathMetrics metrics = paths.get(contextPath);
+        if (metrics == null) {
+            ContextPathMetrics created = new ContextPathMetrics(contextPath);
+            metrics = paths.putIfAbsent(contextPath, created);
+            if (metrics == null) {
+                metrics = created;
+                register(contextPathName(contextPath), created);
+            }
+        }
+        return new RequestRecord(metrics);
+    }
+
+    /**
+     * @return metrics of the context path or null if no request has been sent to it
+     */
+    public ContextPathMetrics getContextPathMetrics(String contextPath) {
+        return paths.get(contextPath);
+    }
+
+    /**
+     * Reports the utilization of the bulkhead isolating its context path
+     */
+    public void registerBulkhead(BulkheadMetricsMBean bulkhead) {
+        bulkheads.put(bulkhead.getContextPath(), bulkhead);
+        try {
+            register(bulkheadName(bulkhead.getContextPath()), new StandardMBean(bulkhead, BulkheadMetricsMBean.class));
+        } catch (NotCompliantMBeanException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    public void unregisterBulkhead(String contextPath) {
+        if (bulkheads.remove(contextPath) != null) {
+            unregister(bulkheadName(contextPath));
+        }
+    }
+
+    /**
+     * @return metrics of the bulkhead isolating the context path or null if it is not isolated
+     */
+    public BulkheadMetricsMBean getBulkheadMetrics(String contextPath) {
+        return bulkheads.get(contextPath);
+    }
+
+    @Override
+    public String[] getContextPaths() {
+        return new TreeMap<String, ContextPathMetrics>(paths).keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, ContextPathMetrics> path : new TreeMap<String, ContextPathMetrics>(paths).entrySet()) {
+            builder.append(path.getValue().getSnapshot());
+        }
+        for (BulkheadMetricsMBean bulkhead : new TreeMap<String, BulkheadMetricsMBean>(bulkheads).values()) {
+            builder.append(String.format("bulkhead %s active=%d/%d queued=%d/%d rejected=%d utilization=%.0f%%%n",
+                    bulkhead.getContextPath(), bulkhead.getActiveRequests(), bulkhead.getMaxConcurrentRequests(),
+                    bulkhead.getQueuedRequests(), bulkhead.getMaxQueuedRequests(), bulkhead.getRejectedRequestCount(),
+                    bulkhead.getUtilization() * 100));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Registers the server metrics in JMX
+     */
+    public void start() {
+        register(serverName(), this);
+    }
+
+    /**
+     * Unregisters the server metrics, the metrics of all context paths and of all bulkheads from JMX
+     */
+    public void stop() {
+        unregister(serverName());
+        for (String contextPath : paths.keySet()) {
+            unregister(contextPathName(contextPath));
+        }
+        for (String contextPath : bulkheads.keySet()) {
+            unregister(bulkheadName(contextPath));
+        }
+    }
+
+    private ObjectName serverName() {
+        if (jmxName == null) {
+            return null;
+        }
+        return objectName(String.format("%s:type=ServerMetrics,name=%s", JMX_DOMAIN, ObjectName.quote(jmxName)));
+    }
+
+    private ObjectName contextPathName(String contextPath) {
+        if (jmxName == null) {
+            return null;
+        }
+        return objectName(String.format("%s:type=ContextPathMetrics,name=%s,path=%s", JMX_DOMAIN,
+                ObjectName.quote(jmxName), ObjectName.quote(contextPath)));
+    }
+
+    private ObjectName bulkheadName(String contextPath) {
+        if (jmxName == null) {
+            return null;
+        }
+        return objectName(String.format("%s:type=BulkheadMetrics,name=%s,path=%s", JMX_DOMAIN,
+                ObjectName.quote(jmxName), ObjectName.quote(contextPath)));
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (JMException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private static void register(ObjectName name, Object mbean) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        } catch (JMException ex) {
+            log.warn(String.format("Cannot register metrics [%s] in JMX", name), ex);
+        }
+    }
+
+    private static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            log.warn(String.format("Cannot unregister metrics [%s] from JMX", name), ex);
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Canonical hash of the payload of a SOAP request - the content of the SOAP Body. Two payloads have the same hash
+ * if they carry the same infoset, regardless of the namespace prefixes, of the order of the attributes and of the
+ * whitespace between the elements. The adjacent text of an element is hashed as a whole (also if it is split by
+ * comments or CDATA sections) and, unless it is whitespace only, exactly as it is. The QName values of xsi:type
+ * are resolved to their namespaces, other QName-typed content is not known without the schema and is hashed as it
+ * is. The SOAP headers are not taken into account.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class CanonicalPayload {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BODY = "Body";
+    private static final String TYPE = "type";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private CanonicalPayload() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * @param envelope encoded SOAP envelope
+     * @return hex-encoded SHA-256 hash of the canonical form of the payload
+     * @throws IllegalArgumentException if the envelope is not well-formed
+     */
+    public static String hash(byte[] envelope) {
+        MessageDigest digest = createDigest();
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(envelope));
+            int depth = 0;
+            int bodyDepth = -1;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (bodyDepth < 0) {
+                        if (depth == 2 && BODY.equals(reader.getLocalName())) {
+                            bodyDepth = depth;
+                        }
+                        continue;
+                    }
+                    updateText(digest, text);
+                    update(digest, '<', reader.getNamespaceURI() + "}" + reader.getLocalName());
+                    updateAttributes(digest, reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (bodyDepth > 0) {
+                        updateText(digest, text);
+                    }
+                    if (bodyDepth > 0 && depth > bodyDepth) {
+                        update(digest, '>', "");
+                    } else if (depth == bodyDepth) {
+                        break;
+                    }
+                    depth--;
+                } else if (bodyDepth > 0 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE)) {
+                    // comments and processing instructions do not split the text
+                    text.append(reader.getText());
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IllegalArgumentException("SOAP envelope is not well-formed", ex);
+        } finally {
+            close(reader);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void updateAttributes(MessageDigest digest, XMLStreamReader reader) {
+        if (reader.getAttributeCount() == 0) {
+            return;
+        }
+        Map<String, String> attributes = new TreeMap<String, String>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespace)) {
+                continue;
+            }
+            String localName = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            if (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespace) && TYPE.equals(localName)) {
+                value = resolveQName(reader, value);
+            }
+            attributes.put((namespace != null ? namespace : "") + "}" + localName, value);
+        }
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            update(digest, '@', attribute.getKey());
+            update(digest, '=', attribute.getValue());
+        }
+    }
+
+    /**
+     * @return QName value in the {namespace}local form, the value itself if its prefix is not bound
+     */
+    private static String resolveQName(XMLStreamReader reader, String value) {
+        String qname = value.trim();
+        int colon = qname.indexOf(':');
+        String prefix = colon > 0 ? qname.substring(0, colon) : XMLConstants.DEFAULT_NS_PREFIX;
+        String namespace = reader.getNamespaceContext().getNamespaceURI(prefix);
+        if (namespace == null || (colon > 0 && namespace.isEmpty())) {
+            return value;
+        }
+        return "{" + namespace + "}" + qname.substring(colon + 1);
+    }
+
+    private static void updateText(MessageDigest digest, StringBuilder text) {
+        if (text.length() == 0) {
+            return;
+        }
+        // whitespace only text is the indentation between the elements
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                update(digest, '#', text.toString());
+                break;
+            }
+        }
+        text.setLength(0);
+    }
+
+    private static void update(MessageDigest digest, char type, String value) {
+        // every token is typed and terminated, so that different token sequences cannot be concatenated to the same input
+        digest.update((byte) type);
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ex) {
+                // ignore
+            }
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP content coding supported by the server (see the Content-Encoding and Accept-Encoding headers).
+ * The deflate coding is the zlib format, as specified by HTTP/1.1.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip", "x-gzip") {
+        @Override
+        public InputStream decode(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+    },
+
+    DEFLATE("deflate") {
+        @Override
+        public InputStream decode(InputStream input) throws IOException {
+            return new InflaterInputStream(input);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream output) throws IOException {
+            return new DeflaterOutputStream(output);
+        }
+    };
+
+    /**
+     * Name of the coding that leaves the content as is
+     */
+    public static final String IDENTITY = "identity";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String name;
+    private final String[] aliases;
+
+    ContentEncoding(String name, String... aliases) {
+        this.name = name;
+        this.aliases = aliases;
+    }
+
+    /**
+     * @return name of the coding used in the HTTP headers
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param input encoded content
+     * @return stream of the decoded content
+     */
+    public abstract InputStream decode(InputStream input) throws IOException;
+
+    /**
+     * @param output stream the encoded content is written to, it is closed when the returned stream is closed
+     * @return stream encoding the content written to it
+     */
+    public abstract OutputStream encode(OutputStream output) throws IOException;
+
+    /**
+     * @return encoded content
+     */
+    public byte[] encode(byte[] content, int offset, int length) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try {
+            OutputStream output = encode(buffer);
+            output.write(content, offset, length);
+            output.close();
+        } catch (IOException e) {
+            // not thrown by the in-memory streams
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param value value of the Content-Encoding header
+     * @return coding of the given name, null if the content is not encoded (null or identity value)
+     * @throws IllegalArgumentException if the coding is not supported
+     */
+    public static ContentEncoding forName(String value) {
+        if (value == null) {
+            return null;
+        }
+        String name = value.trim();
+        if (name.isEmpty() || name.equalsIgnoreCase(IDENTITY)) {
+            return null;
+        }
+        for (ContentEncoding encoding : values()) {
+            if (encoding.matches(name)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported content encoding [%s]", value));
+    }
+
+    /**
+     * Chooses the coding of the response according to the quality values of the Accept-Encoding header. If the qualities
+     * are equal gzip is preferred.
+     *
+     * @param acceptEncoding value of the Accept-Encoding header
+     * @return preferred coding accepted by the client, null if the client does not accept any supported coding
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        ContentEncoding preferred = null;
+        float preferredQuality = 0;
+        float wildcardQuality = -1;
+        float[] qualities = new float[values().length];
+        Arrays.fill(qualities, -1);
+        for (String token : acceptEncoding.split(",")) {
+            String[] params = token.split(";");
+            String name = params[0].trim();
+            float quality = getQuality(params);
+            if (name.equals("*")) {
+                wildcardQuality = quality;
+                continue;
+            }
+            for (ContentEncoding encoding : values()) {
+                if (encoding.matches(name)) {
+                    qualities[encoding.ordinal()] = quality;
+                }
+            }
+        }
+        for (ContentEncoding encoding : values()) {
+            float quality = qualities[encoding.ordinal()] >= 0 ? qualities[encoding.ordinal()] : wildcardQuality;
+            if (quality > preferredQuality) {
+                preferred = encoding;
+                preferredQuality = quality;
+            }
+        }
+        return preferred;
+    }
+
+    private static float getQuality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private boolean matches(String value) {
+        if (name.equalsIgnoreCase(value)) {
+            return true;
+        }
+        for (String alias : aliases) {
+            if (alias.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -18,21 +18,43 @@
  */
 package org.reficio.ws.server.protocol;
 
+import org.reficio.ws.server.metrics.RequestPhase;
+import org.reficio.ws.server.metrics.RequestPhaseEvent;
+import org.reficio.ws.server.metrics.RequestTracing;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.soap.SoapMessageFactory;
 import org.springframework.ws.soap.SoapVersion;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
 import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
 import org.springframework.ws.transport.TransportInputStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * SOAP message factory that enables the exposition of a SOAP endpoint using both SOAP 1.1 and SOAP 1.2 versions.
  * It uses the SoapProtocolChooser to check which version of SOAP is used.
+ * <p/>
+ * If a SoapOperationRouter is set the request is pre-dispatched before the SOAP message is built:
+ * the beginning of the envelope is read with StAX (up to the first child of the SOAP Body) and routed to
+ * a binding operation. The outcome is bound to the request as a SoapRequestPreview. Requests that certainly
+ * cannot be routed are not built at all - an empty message is returned and the endpoint answers with the fault
+ * held by the preview.
+ * <p/>
+ * By default SAAJ is used to build the SOAP messages. In the streaming mode Axiom is used instead - the envelope is
+ * read with StAX, SOAP headers are built lazily and the payload is not cached, so that it may be read as a stream
+ * (only once) without building the whole tree in memory.
+ * <p/>
+ * Multipart requests (MTOM/XOP packages or SOAP with attachments) are always built with Axiom: the MIME parts are
+ * parsed lazily, attachments larger than the cache threshold are streamed to files in the cache directory instead
+ * of being kept in memory and XOP includes are not expanded to base64. Responders read the attachments on demand
+ * through the SoapMessage. The attachments are released when the request has completed (see RequestAttachments).
+ * <p/>
+ * The protocol detection, the pre-dispatch and the building of the message are traced as phases of the request.
  *
  * @author Tom Bujok
  * @since 1.0.0
@@ -40,34 +62,67 @@ import java.io.InputStream;
 public class GenericSoapMessageFactory implements SoapMessageFactory, InitializingBean {
 
     private static final String REQUEST_CONTEXT_ATTRIBUTE = "GenericSoapMessageFactory";
+    private static final int DEFAULT_PRE_DISPATCH_LIMIT = 64 * 1024;
+    private static final int DEFAULT_ATTACHMENT_CACHE_THRESHOLD = 64 * 1024;
 
     /**
      * Factory for SOAP 1.1 messages
      */
-    private final SaajSoapMessageFactory soap11;
+    private SoapMessageFactory soap11;
     /**
      * Factory for SOAP 1.2 messages
      */
-    private final SaajSoapMessageFactory soap12;
+    private SoapMessageFactory soap12;
+    /**
+     * Factory for multipart SOAP 1.1 messages
+     */
+    private SoapMessageFactory multipart11;
+    /**
+     * Factory for multipart SOAP 1.2 messages
+     */
+    private SoapMessageFactory multipart12;
+    /**
+     * Specifies if messages are built using StAX (Axiom) instead of SAAJ
+     */
+    private boolean streaming;
     /**
      * Chooses the version of SOAP protocol
      */
     private SoapProtocolChooser soapProtocolChooser;
+    /**
+     * Reads the beginning of the envelope before the SOAP message is built
+     */
+    private final SoapEnvelopeSniffer sniffer;
+    /**
+     * Routes the request to an operation before the SOAP message is built, pre-dispatch is disabled if null
+     */
+    private SoapOperationRouter operationRouter;
+    /**
+     * Maximal number of bytes read during the pre-dispatch
+     */
+    private int preDispatchLimit = DEFAULT_PRE_DISPATCH_LIMIT;
+    /**
+     * Directory in which large attachments are cached, the temporary directory if null
+     */
+    private File attachmentCacheDir;
+    /**
+     * Size in bytes above which an attachment is cached in a file
+     */
+    private int attachmentCacheThreshold = DEFAULT_ATTACHMENT_CACHE_THRESHOLD;
 
     public GenericSoapMessageFactory() {
-        this.soap11 = new SaajSoapMessageFactory();
-        this.soap12 = new SaajSoapMessageFactory();
         this.soapProtocolChooser = new SimpleSoapProtocolChooser();
+        this.sniffer = new SoapEnvelopeSniffer();
     }
 
-    private void setMessageFactoryForRequestContext(SaajSoapMessageFactory factory) {
+    private void setMessageFactoryForRequestContext(SoapMessageFactory factory) {
         RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
         attributes.setAttribute(REQUEST_CONTEXT_ATTRIBUTE, factory, RequestAttributes.SCOPE_REQUEST);
     }
 
-    private SaajSoapMessageFactory getMessageFactoryForRequestContext() {
+    private SoapMessageFactory getMessageFactoryForRequestContext() {
         RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
-        return (SaajSoapMessageFactory) attributes.getAttribute(REQUEST_CONTEXT_ATTRIBUTE,
+        return (SoapMessageFactory) attributes.getAttribute(REQUEST_CONTEXT_ATTRIBUTE,
                 RequestAttributes.SCOPE_REQUEST);
     }
 
@@ -79,15 +134,55 @@ public class GenericSoapMessageFactory implements SoapMessageFactory, Initializi
         this.soapProtocolChooser = soapProtocolChooser;
     }
 
-    private void configureFactory(SaajSoapMessageFactory factory, SoapVersion version) {
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setOperationRouter(SoapOperationRouter operationRouter) {
+        this.operationRouter = operationRouter;
+    }
+
+    public void setPreDispatchLimit(int preDispatchLimit) {
+        this.preDispatchLimit = preDispatchLimit;
+    }
+
+    public void setAttachmentCacheDir(File attachmentCacheDir) {
+        this.attachmentCacheDir = attachmentCacheDir;
+    }
+
+    public void setAttachmentCacheThreshold(int attachmentCacheThreshold) {
+        this.attachmentCacheThreshold = attachmentCacheThreshold;
+    }
+
+    private SoapMessageFactory createMultipartFactory(SoapVersion version) {
+        File cacheDir = attachmentCacheDir != null ? attachmentCacheDir : new File(System.getProperty("java.io.tmpdir"));
+        return new MultipartSoapMessageFactory(version, !streaming, cacheDir, attachmentCacheThreshold);
+    }
+
+    private SoapMessageFactory createFactory(SoapVersion version) throws Exception {
+        if (streaming) {
+            AxiomSoapMessageFactory factory = new AxiomSoapMessageFactory();
+            factory.setPayloadCaching(false);
+            factory.setSoapVersion(version);
+            factory.afterPropertiesSet();
+            return factory;
+        }
+        SaajSoapMessageFactory factory = new SaajSoapMessageFactory();
         factory.setSoapVersion(version);
         factory.afterPropertiesSet();
+        return factory;
     }
 
     @Override
-    public void afterPropertiesSet() {
-        configureFactory(soap11, SoapVersion.SOAP_11);
-        configureFactory(soap12, SoapVersion.SOAP_12);
+    public void afterPropertiesSet() throws Exception {
+        soap11 = createFactory(SoapVersion.SOAP_11);
+        soap12 = createFactory(SoapVersion.SOAP_12);
+        multipart11 = createMultipartFactory(SoapVersion.SOAP_11);
+        multipart12 = createMultipartFactory(SoapVersion.SOAP_12);
     }
 
     @Override
@@ -100,12 +195,64 @@ public class GenericSoapMessageFactory implements SoapMessageFactory, Initializi
         setMessageFactoryForRequestContext(soap11);
         if (inputStream instanceof TransportInputStream) {
             TransportInputStream transportInputStream = (TransportInputStream) inputStream;
-            if (soapProtocolChooser.useSoap12(transportInputStream)) {
+            boolean soap12Used = useSoap12(transportInputStream);
+            if (soap12Used) {
                 setMessageFactoryForRequestContext(soap12);
             }
+            if (sniffer.isMultipart(transportInputStream)) {
+                return parse(soap12Used ? multipart12 : multipart11, inputStream);
+            }
+            if (operationRouter != null && sniffer.canSniff(transportInputStream)) {
+                inputStream = preDispatch(transportInputStream);
+                SoapRequestPreview preview = SoapRequestPreview.current();
+                if (preview != null && preview.getFault() != null) {
+                    return getMessageFactoryForRequestContext().createWebServiceMessage();
+                }
+            }
+        }
+        return parse(getMessageFactoryForRequestContext(), inputStream);
+    }
+
+    private SoapMessage parse(SoapMessageFactory mf, InputStream inputStream) throws IOException {
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.PARSE);
+        try {
+            return mf.createWebServiceMessage(inputStream);
+        } finally {
+            if (event != null) {
+                event.finish();
+            }
+        }
+    }
+
+    private boolean useSoap12(TransportInputStream transportInputStream) throws IOException {
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.PROTOCOL);
+        try {
+            return soapProtocolChooser.useSoap12(transportInputStream);
+        } finally {
+            if (event != null) {
+                event.finish();
+            }
+        }
+    }
+
+    private TransportInputStream preDispatch(TransportInputStream transportInputStream) throws IOException {
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.MATCH);
+        try {
+            ReplayableTransportInputStream replayable = new ReplayableTransportInputStream(transportInputStream, preDispatchLimit);
+            SoapRequestPreview preview = sniffer.sniff(replayable, replayable.peek());
+            if (preview != null) {
+                SoapRequestPreview routed = operationRouter.route(preview);
+                SoapRequestPreview.bind(routed);
+                if (routed.getOperation() != null) {
+                    RequestTracing.operationMatched(routed.getOperation().getName());
+                }
+            }
+            return replayable;
+        } finally {
+            if (event != null) {
+                event.finish();
+            }
         }
-        SaajSoapMessageFactory mf = getMessageFactoryForRequestContext();
-        return mf.createWebServiceMessage(inputStream);
     }
 
 }
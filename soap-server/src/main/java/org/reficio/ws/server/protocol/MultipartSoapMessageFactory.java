@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.apache.axiom.attachments.Attachments;
+import org.apache.axiom.attachments.lifecycle.LifecycleManager;
+import org.apache.axiom.attachments.lifecycle.impl.LifecycleManagerImpl;
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.soap.SOAPMessage;
+import org.apache.axiom.soap.SOAPModelBuilder;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.SoapMessageFactory;
+import org.springframework.ws.soap.SoapVersion;
+import org.springframework.ws.soap.axiom.AxiomSoapMessage;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageCreationException;
+import org.springframework.ws.transport.TransportInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds multipart SOAP messages (MTOM/XOP packages or SOAP with attachments) of one SOAP version with Axiom.
+ * It works as the Spring-WS AxiomSoapMessageFactory does, but it keeps hold of the Axiom attachments of every message
+ * and registers them in the RequestAttachments, so that only the MIME parts that have actually been parsed are purged
+ * when the request has completed.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+class MultipartSoapMessageFactory implements SoapMessageFactory {
+
+    private static final String SOAP_ACTION_HEADER_NAME = "soapaction";
+    private static final String CONTENT_TYPE_HEADER_NAME = "content-type";
+    private static final String CONTENT_TYPE_ACTION_PARAMETER = "action=";
+
+    private final SoapVersion version;
+    private final SOAPFactory soapFactory;
+    private final LifecycleManager lifecycleManager = new LifecycleManagerImpl();
+    private final boolean payloadCaching;
+    private final File attachmentCacheDir;
+    private final int attachmentCacheThreshold;
+
+    MultipartSoapMessageFactory(SoapVersion version, boolean payloadCaching, File attachmentCacheDir, int attachmentCacheThreshold) {
+        this.version = checkNotNull(version, "version cannot be null");
+        this.soapFactory = version == SoapVersion.SOAP_12 ? OMAbstractFactory.getSOAP12Factory() : OMAbstractFactory.getSOAP11Factory();
+        this.payloadCaching = payloadCaching;
+        this.attachmentCacheDir = checkNotNull(attachmentCacheDir, "attachmentCacheDir cannot be null");
+        this.attachmentCacheThreshold = attachmentCacheThreshold;
+    }
+
+    @Override
+    public void setSoapVersion(SoapVersion version) {
+        // ignore this, the version is fixed when the factory is created
+    }
+
+    @Override
+    public SoapMessage createWebServiceMessage() {
+        return new AxiomSoapMessage(soapFactory, payloadCaching, false);
+    }
+
+    @Override
+    public SoapMessage createWebServiceMessage(InputStream inputStream) throws IOException {
+        checkArgument(inputStream instanceof TransportInputStream, "Multipart messages require a TransportInputStream");
+        TransportInputStream transportInputStream = (TransportInputStream) inputStream;
+        String contentType = getHeader(transportInputStream, CONTENT_TYPE_HEADER_NAME);
+        String soapAction = getSoapAction(transportInputStream, contentType);
+        try {
+            Attachments attachments = new Attachments(lifecycleManager, inputStream, contentType, true,
+                    attachmentCacheDir.getAbsolutePath(), Integer.toString(attachmentCacheThreshold));
+            RequestAttachments.register(attachments);
+            // handles both MTOM/XOP and SOAP with attachments, reading the charset of the root part
+            SOAPModelBuilder builder = OMXMLBuilderFactory.createSOAPModelBuilder(soapFactory.getMetaFactory(), attachments);
+            SOAPEnvelope envelope = builder.getSOAPEnvelope();
+            String envelopeNamespace = envelope.getNamespace().getNamespaceURI();
+            if (!version.getEnvelopeNamespaceUri().equals(envelopeNamespace)) {
+                throw new AxiomSoapMessageCreationException("Could not create message: envelope namespace "
+                        + envelopeNamespace + " does not match " + version);
+            }
+            return new AxiomSoapMessage((SOAPMessage) builder.getDocument(), attachments, soapAction, payloadCaching, false);
+        } catch (OMException ex) {
+            throw new AxiomSoapMessageCreationException("Could not create message: " + ex.getMessage(), ex);
+        }
+    }
+
+    private String getSoapAction(TransportInputStream transportInputStream, String contentType) throws IOException {
+        String soapAction = getHeader(transportInputStream, SOAP_ACTION_HEADER_NAME);
+        if (soapAction != null) {
+            return soapAction;
+        }
+        String action = getParameter(contentType, CONTENT_TYPE_ACTION_PARAMETER);
+        return action != null ? action : "";
+    }
+
+    private String getParameter(String contentType, String parameterPrefix) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase().startsWith(parameterPrefix)) {
+                    return parameter.substring(parameterPrefix.length()).replace("\"", "");
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getHeader(TransportInputStream transportInputStream, String name) throws IOException {
+        for (Iterator<String> headerNames = transportInputStream.getHeaderNames(); headerNames.hasNext(); ) {
+            String headerName = headerNames.next();
+            if (headerName.equalsIgnoreCase(name)) {
+                Iterator<String> headerValues = transportInputStream.getHeaders(headerName);
+                if (headerValues.hasNext()) {
+                    return headerValues.next();
+                }
+            }
+        }
+        return null;
+    }
+
+}
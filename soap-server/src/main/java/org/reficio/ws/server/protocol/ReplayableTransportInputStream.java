@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.springframework.ws.transport.TransportInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Transport input stream that enables to peek at the beginning of the wrapped stream.
+ * Bytes read through the peek stream are recorded (up to the specified limit) and replayed
+ * before the rest of the wrapped stream, so that the consumer of this stream gets the whole content.
+ * Transport headers are delegated to the wrapped stream.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+class ReplayableTransportInputStream extends TransportInputStream {
+
+    private final TransportInputStream source;
+    private final int limit;
+    private byte[] buffer;
+    private int count;
+
+    ReplayableTransportInputStream(TransportInputStream source, int limit) {
+        this.source = source;
+        this.limit = limit;
+        this.buffer = new byte[Math.min(limit, 8192)];
+    }
+
+    /**
+     * @return stream reading from the wrapped stream that records the read bytes, it ends when the limit is reached
+     */
+    InputStream peek() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int read = read(single, 0, 1);
+                return read < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int remaining = limit - count;
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = source.read(bytes, offset, Math.min(length, remaining));
+                if (read > 0) {
+                    record(bytes, offset, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    private void record(byte[] bytes, int offset, int length) {
+        if (count + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(limit, Math.max(buffer.length * 2, count + length)));
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    protected InputStream createInputStream() throws IOException {
+        return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, count), source);
+    }
+
+    @Override
+    public Iterator<String> getHeaderNames() throws IOException {
+        return source.getHeaderNames();
+    }
+
+    @Override
+    public Iterator<String> getHeaders(String name) throws IOException {
+        return source.getHeaders(name);
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.apache.axiom.attachments.Attachments;
+import org.apache.axiom.attachments.lifecycle.DataHandlerExt;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.activation.DataHandler;
+import javax.servlet.ServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Attachments of the multipart requests, kept as an attribute of the request.
+ * Axiom keeps large attachments in files until they are purged - the attachments of every multipart message built
+ * for the request are purged when the request has completed. Only the MIME parts that have already been parsed are
+ * purged, the parts that nobody has read are left unread in the request stream instead of being parsed and cached. A request answered asynchronously is completed after its
+ * last dispatch, so the attachments may be read by the asynchronous responder in the meantime.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RequestAttachments {
+
+    private final static Log log = LogFactory.getLog(RequestAttachments.class);
+
+    private static final String REQUEST_ATTRIBUTE = RequestAttachments.class.getName();
+
+    private RequestAttachments() {
+    }
+
+    /**
+     * Registers the attachments of the multipart message built for the request that is currently processed
+     */
+    @SuppressWarnings("unchecked")
+    static void register(Attachments attachments) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        List<Attachments> registered = (List<Attachments>) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (registered == null) {
+            registered = new ArrayList<Attachments>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, registered, RequestAttributes.SCOPE_REQUEST);
+        }
+        registered.add(attachments);
+    }
+
+    /**
+     * Purges the attachments of the multipart messages built for the completed request
+     *
+     * @param request completed request
+     */
+    @SuppressWarnings("unchecked")
+    public static void release(ServletRequest request) {
+        List<Attachments> registered = (List<Attachments>) request.getAttribute(REQUEST_ATTRIBUTE);
+        if (registered == null) {
+            return;
+        }
+        request.removeAttribute(REQUEST_ATTRIBUTE);
+        for (Attachments attachments : registered) {
+            // the content IDs of the parsed parts only, the remaining parts are not read from the stream
+            for (Object contentId : attachments.getContentIDList()) {
+                DataHandler dataHandler = attachments.getDataHandler((String) contentId);
+                if (dataHandler instanceof DataHandlerExt) {
+                    try {
+                        ((DataHandlerExt) dataHandler).purgeDataSource();
+                    } catch (IOException ex) {
+                        log.warn("Cannot purge the attachment of the request: " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+}
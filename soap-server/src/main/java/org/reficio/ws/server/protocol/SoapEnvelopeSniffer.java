@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.springframework.ws.transport.TransportInputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Reads the preview of a SOAP request directly from the transport using StAX.
+ * Only the SOAP Envelope is read up to the first child of the SOAP Body, the rest of the message is not touched.
+ * The SOAPAction is taken from the SOAPAction header (SOAP 1.1) or from the action parameter of the content-type (SOAP 1.2).
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+class SoapEnvelopeSniffer {
+
+    private static final String SOAP_11_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String SOAP_12_NAMESPACE = "http://www.w3.org/2003/05/soap-envelope";
+    private static final String ENVELOPE = "Envelope";
+    private static final String BODY = "Body";
+
+    private static final String SOAP_ACTION_HEADER_NAME = "soapaction";
+    private static final String CONTENT_TYPE_HEADER_NAME = "content-type";
+    private static final String CONTENT_TYPE_MULTIPART = "multipart/";
+    private static final String CONTENT_TYPE_ACTION_PARAMETER = "action=";
+
+    private final XMLInputFactory inputFactory;
+
+    SoapEnvelopeSniffer() {
+        this.inputFactory = XMLInputFactory.newInstance();
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * @param transportInputStream input stream from the SOAP client
+     * @return true if the transport carries a plain SOAP envelope (multipart messages are not previewed)
+     * @throws IOException in case an error occurs
+     */
+    boolean canSniff(TransportInputStream transportInputStream) throws IOException {
+        return isMultipart(transportInputStream) == false;
+    }
+
+    /**
+     * @param transportInputStream input stream from the SOAP client
+     * @return true if the transport carries a multipart message (e.g. an MTOM/XOP package)
+     * @throws IOException in case an error occurs
+     */
+    boolean isMultipart(TransportInputStream transportInputStream) throws IOException {
+        String contentType = getHeader(transportInputStream, CONTENT_TYPE_HEADER_NAME);
+        return contentType != null && contentType.toLowerCase().contains(CONTENT_TYPE_MULTIPART);
+    }
+
+    /**
+     * @param transportInputStream input stream from the SOAP client providing the headers
+     * @param envelope             stream from which the envelope is read
+     * @return preview of the request or null if the request is not a well-formed SOAP envelope (within the read range)
+     * @throws IOException in case an error occurs
+     */
+    SoapRequestPreview sniff(TransportInputStream transportInputStream, InputStream envelope) throws IOException {
+        String soapAction = getSoapAction(transportInputStream);
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(envelope);
+            if (!nextElementIs(reader, ENVELOPE) || !nextElementIs(reader, BODY)) {
+                return null;
+            }
+            return new SoapRequestPreview(soapAction, firstChildOfBody(reader));
+        } catch (XMLStreamException ex) {
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Skips the siblings (and their content) of the current element until an element with the given local name
+     * in one of the SOAP namespaces is found
+     */
+    private boolean nextElementIs(XMLStreamReader reader, String localName) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (isSoapElement(reader, localName)) {
+                    return true;
+                }
+                skipElement(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private QName firstChildOfBody(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return reader.getName();
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private boolean isSoapElement(XMLStreamReader reader, String localName) {
+        String namespace = reader.getNamespaceURI();
+        return localName.equals(reader.getLocalName())
+                && (SOAP_11_NAMESPACE.equals(namespace) || SOAP_12_NAMESPACE.equals(namespace));
+    }
+
+    private String getSoapAction(TransportInputStream transportInputStream) throws IOException {
+        String soapAction = getHeader(transportInputStream, SOAP_ACTION_HEADER_NAME);
+        if (soapAction != null) {
+            return soapAction;
+        }
+        String contentType = getHeader(transportInputStream, CONTENT_TYPE_HEADER_NAME);
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase().startsWith(CONTENT_TYPE_ACTION_PARAMETER)) {
+                    return parameter.substring(CONTENT_TYPE_ACTION_PARAMETER.length());
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getHeader(TransportInputStream transportInputStream, String name) throws IOException {
+        for (Iterator<String> headerNames = transportInputStream.getHeaderNames(); headerNames.hasNext(); ) {
+            String headerName = headerNames.next();
+            if (headerName.equalsIgnoreCase(name)) {
+                Iterator<String> headerValues = transportInputStream.getHeaders(headerName);
+                if (headerValues.hasNext()) {
+                    return headerValues.next();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ex) {
+                // ignore - the underlying stream is replayed anyway
+            }
+        }
+    }
+
+}
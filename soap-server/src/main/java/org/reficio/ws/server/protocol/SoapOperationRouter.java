@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+/**
+ * Describes the functionality of routing a SOAP request to a binding operation before the SOAP message is built
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public interface SoapOperationRouter {
+
+    /**
+     * Routes the preview without throwing, so that a request that cannot be routed does not pay for an exception
+     *
+     * @param preview preview of the SOAP request read from the transport
+     * @return copy of the preview holding the operation matched to the request, or holding the fault if the request
+     *         certainly cannot be matched to any operation. The preview is returned as is if the operation cannot be
+     *         resolved using the preview only.
+     */
+    SoapRequestPreview route(SoapRequestPreview preview);
+
+}
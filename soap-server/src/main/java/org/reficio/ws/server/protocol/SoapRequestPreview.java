@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.wsdl.BindingOperation;
+import javax.xml.namespace.QName;
+
+/**
+ * Preview of a SOAP request that was read from the transport before the SOAP message was built.
+ * It contains the SOAPAction and the QName of the first child of the SOAP Body, which is enough
+ * to route the request to a binding operation in most cases. If the operation was resolved
+ * during the pre-dispatch it is also held by the preview. If the request certainly cannot be matched to any
+ * operation the preview holds the reason of the fault instead, so that the fault is returned without building the message.
+ * <p/>
+ * The preview is bound to the current request, so that it may be used by the responders.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class SoapRequestPreview {
+
+    private static final String REQUEST_CONTEXT_ATTRIBUTE = SoapRequestPreview.class.getName();
+
+    private final String soapAction;
+    private final QName rootElement;
+    private final BindingOperation operation;
+    private final String fault;
+
+    public SoapRequestPreview(String soapAction, QName rootElement) {
+        this(soapAction, rootElement, null, null);
+    }
+
+    private SoapRequestPreview(String soapAction, QName rootElement, BindingOperation operation, String fault) {
+        this.soapAction = soapAction;
+        this.rootElement = rootElement;
+        this.operation = operation;
+        this.fault = fault;
+    }
+
+    /**
+     * @return SOAPAction sent by the client, may be null
+     */
+    public String getSoapAction() {
+        return soapAction;
+    }
+
+    /**
+     * @return QName of the first child of the SOAP Body, null if the Body is empty
+     */
+    public QName getRootElement() {
+        return rootElement;
+    }
+
+    /**
+     * @return binding operation resolved during the pre-dispatch, null if not resolved
+     */
+    public BindingOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param operation resolved binding operation
+     * @return a copy of this preview holding the resolved operation
+     */
+    public SoapRequestPreview withOperation(BindingOperation operation) {
+        return new SoapRequestPreview(soapAction, rootElement, operation, null);
+    }
+
+    /**
+     * @return reason why the request cannot be matched to any operation, null if it may be matched
+     */
+    public String getFault() {
+        return fault;
+    }
+
+    /**
+     * @param fault reason why the request cannot be matched to any operation
+     * @return a copy of this preview holding the reason of the fault
+     */
+    public SoapRequestPreview withFault(String fault) {
+        return new SoapRequestPreview(soapAction, rootElement, null, fault);
+    }
+
+    /**
+     * @return preview of the request that is currently processed, null if there is none
+     */
+    public static SoapRequestPreview current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return (SoapRequestPreview) attributes.getAttribute(REQUEST_CONTEXT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    static void bind(SoapRequestPreview preview) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(REQUEST_CONTEXT_ATTRIBUTE, preview, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    public String toString() {
+        return String.format("soapAction=[%s] rootElement=[%s] operation=[%s] fault=[%s]", soapAction, rootElement,
+                operation != null ? operation.getName() : null, fault);
+    }
+
+}
@@ -22,8 +22,14 @@ import org.reficio.ws.builder.SoapBuilder;
 import org.reficio.ws.builder.SoapOperation;
 import org.reficio.ws.builder.core.SoapUtils;
 import org.reficio.ws.server.OperationNotFoundException;
-import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.matcher.MatchStrategy;
+import org.reficio.ws.server.matcher.OperationMatch;
 import org.reficio.ws.server.matcher.SoapOperationMatcher;
+import org.reficio.ws.server.metrics.RequestPhase;
+import org.reficio.ws.server.metrics.RequestPhaseEvent;
+import org.reficio.ws.server.metrics.RequestRecord;
+import org.reficio.ws.server.metrics.RequestTracing;
+import org.reficio.ws.server.protocol.SoapRequestPreview;
 import org.springframework.ws.soap.SoapMessage;
 
 import javax.wsdl.Binding;
@@ -49,6 +55,10 @@ public abstract class AbstractResponder implements RequestResponder {
         return builder;
     }
 
+    public SoapOperationMatcher getSoapOperationMatcher() {
+        return soapOperationMatcher;
+    }
+
     /**
      * Constructs a responder for the specified binding of the builder
      *
@@ -64,6 +74,8 @@ public abstract class AbstractResponder implements RequestResponder {
      * Implementation of the RequestResponder bare method.
      * It matches the SoapMessage to the binding operation and invokes the
      * abstract respond method that contains OperationWrapper as an argument.
+     * If the operation was already resolved during the pre-dispatch the message is not matched again.
+     * A message that cannot be matched to an operation is answered with a client fault.
      *
      * @param message SOAP message passed by the client
      * @return response in the XML source format containing the whole SOAP envelope
@@ -71,15 +83,51 @@ public abstract class AbstractResponder implements RequestResponder {
     @Override
     public Source respond(SoapMessage message) {
         try {
-            BindingOperation invokedOperation = soapOperationMatcher.getInvokedOperation(message);
+            BindingOperation invokedOperation = getPreDispatchedOperation();
+            MatchStrategy strategy = MatchStrategy.PRE_DISPATCH;
+            if (invokedOperation == null) {
+                OperationMatch match = match(message);
+                if (match.isNotFound()) {
+                    return FaultSource.client(message.getVersion(), match.getFailure());
+                }
+                invokedOperation = match.getOperation();
+                strategy = match.getStrategy();
+            }
+            RequestRecord record = RequestRecord.current();
+            if (record != null) {
+                record.operationMatched(invokedOperation.getName(), strategy);
+            }
             if (soapOperationMatcher.isRequestResponseOperation(invokedOperation)) {
                 SoapOperation operation = SoapUtils.createOperation(builder, binding, invokedOperation, message.getSoapAction());
                 return respond(operation, message);
             }
             return null;
         } catch (OperationNotFoundException e) {
-            throw new SoapServerException(e);
+            return FaultSource.client(message.getVersion(), e.getMessage());
+        }
+    }
+
+    private OperationMatch match(SoapMessage message) throws OperationNotFoundException {
+        RequestPhaseEvent event = RequestTracing.begin(RequestPhase.MATCH);
+        try {
+            OperationMatch match = soapOperationMatcher.tryMatch(message);
+            if (!match.isNotFound()) {
+                RequestTracing.operationMatched(match.getOperation().getName());
+            }
+            return match;
+        } finally {
+            if (event != null) {
+                event.finish();
+            }
+        }
+    }
+
+    private BindingOperation getPreDispatchedOperation() {
+        SoapRequestPreview preview = SoapRequestPreview.current();
+        if (preview != null && preview.getOperation() != null && soapOperationMatcher.contains(preview.getOperation())) {
+            return preview.getOperation();
         }
+        return null;
     }
 
     /**
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.reficio.ws.server.SoapServerException;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Interface describing the functionality of an asynchronous SOAP Request Responder.
+ * The response is returned as a future, so that the responder does not block a server thread while
+ * e.g. waiting for a backend. The request is suspended until the future completes or until the async
+ * timeout of the server elapses - in the latter case a SOAP fault is returned and the future is cancelled.
+ * If the future completes exceptionally the exception is returned as a SOAP fault.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public interface AsyncRequestResponder extends RequestResponder {
+
+    /**
+     * Returns a future of the response to a SOAP message. It should not block.
+     * The message may be read only till the returned future completes.
+     *
+     * @param message SOAP message passed by the client
+     * @return future of the response in the XML source format containing the whole SOAP envelope
+     */
+    CompletableFuture<Source> respondAsync(SoapMessage message);
+
+    /**
+     * Blocking variant of the respondAsync method, used only if the request cannot be suspended
+     *
+     * @param message SOAP message passed by the client
+     * @return response in the XML source format containing the whole SOAP envelope
+     */
+    @Override
+    default Source respond(SoapMessage message) {
+        try {
+            return respondAsync(message).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoapServerException(e);
+        } catch (ExecutionException e) {
+            throw new SoapServerException(e.getCause());
+        }
+    }
+
+}
@@ -21,24 +21,45 @@ package org.reficio.ws.server.responder;
 import org.reficio.ws.SoapContext;
 import org.reficio.ws.builder.SoapBuilder;
 import org.reficio.ws.builder.SoapOperation;
-import org.reficio.ws.common.XmlUtils;
-import org.reficio.ws.server.SoapServerException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.ws.soap.SoapMessage;
 
 import javax.xml.transform.Source;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Convenience class to create SOAP mock services.
  * It replies with an sample response to all requests send to this responder.
  * SoapContext passed in the constructor may be used to fine-tune the generation
  * of the sample responses.
+ * The generation is deterministic for a given operation and context, so the rendered responses are cached
+ * per operation as UTF-8 bytes, together with their compressed forms. The cache is bounded (least recently used responses are evicted), may be
+ * invalidated explicitly and may be disabled by passing a cache size of 0.
+ * A response that cannot be generated is answered with a server fault.
  *
  * @author Tom Bujok
  * @since 1.0.0
  */
 public class AutoResponder extends AbstractResponder {
 
+    /**
+     * Default maximum number of operations whose responses are cached
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final static Log log = LogFactory.getLog(AutoResponder.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final SoapContext context;
+    private final int cacheSize;
+    private final Map<String, RawSource> cache;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
 
     /**
      * Constructs an auto responder for the specified binding of the builder
@@ -46,8 +67,7 @@ public class AutoResponder extends AbstractResponder {
      * @param builder     Soap builder used to construct messages
      */
     public AutoResponder(SoapBuilder builder) {
-        super(builder);
-        this.context = SoapContext.builder().exampleContent(true).build();
+        this(builder, SoapContext.builder().exampleContent(true).build());
     }
 
     /**
@@ -58,17 +78,110 @@ public class AutoResponder extends AbstractResponder {
      * @param context     Contect that is passed to the builder to fine-tune the content of the generated responses
      */
     public AutoResponder(SoapBuilder builder, SoapContext context) {
+        this(builder, context, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs an auto responder for the specified binding of the builder, fine-tuning the content of the generated messages
+     * by passing the SoapContext and limiting the number of cached responses
+     *
+     * @param builder     Soap builder used to construct messages
+     * @param context     Contect that is passed to the builder to fine-tune the content of the generated responses
+     * @param cacheSize   Maximum number of operations whose responses are cached, 0 disables the cache
+     */
+    public AutoResponder(SoapBuilder builder, SoapContext context, int cacheSize) {
         super(builder);
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
         this.context = context;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<String, RawSource>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RawSource> eldest) {
+                return size() > AutoResponder.this.cacheSize;
+            }
+        };
     }
 
     @Override
     public Source respond(SoapOperation invokedOperation, SoapMessage message) {
         try {
-            String response = getBuilder().buildOutputMessage(invokedOperation, context);
-            return XmlUtils.xmlStringToSource(response);
+            return getResponse(invokedOperation);
         } catch (Exception e) {
-            throw new SoapServerException(e);
+            if (log.isDebugEnabled()) {
+                log.debug("Cannot generate the response of operation " + invokedOperation.getOperationName(), e);
+            }
+            return FaultSource.server(message.getVersion(), e.getMessage());
+        }
+    }
+
+    private RawSource getResponse(SoapOperation operation) {
+        String key = getCacheKey(operation);
+        RawSource response;
+        synchronized (cache) {
+            response = cache.get(key);
+        }
+        if (response != null) {
+            cacheHits.incrementAndGet();
+            return response;
+        }
+        cacheMisses.incrementAndGet();
+        // rendered outside of the lock - concurrent misses of the same operation produce identical responses
+        response = RawSource.of(getBuilder().buildOutputMessage(operation, context).getBytes(UTF_8));
+        if (cacheSize > 0) {
+            synchronized (cache) {
+                cache.put(key, response);
+            }
+        }
+        return response;
+    }
+
+    private static String getCacheKey(SoapOperation operation) {
+        // name, input name and output name identify the operation in the binding, also an overloaded one
+        return operation.getOperationName() + "/" + operation.getOperationInputName() + "/" + operation.getOperationOutputName();
+    }
+
+    /**
+     * Removes all cached responses, they will be rendered again on the next request
+     */
+    public void invalidate() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Removes the cached response of the specified operation, it will be rendered again on the next request
+     *
+     * @param operation operation whose response should be removed from the cache
+     */
+    public void invalidate(SoapOperation operation) {
+        synchronized (cache) {
+            cache.remove(getCacheKey(operation));
+        }
+    }
+
+    /**
+     * @return number of responses served from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return number of responses that had to be rendered
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return number of currently cached responses
+     */
+    public int getCachedResponseCount() {
+        synchronized (cache) {
+            return cache.size();
         }
     }
 
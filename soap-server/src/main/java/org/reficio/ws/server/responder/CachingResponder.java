@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.protocol.CanonicalPayload;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Decorator that caches the responses of the decorated responder.
+ * A response is cached under the requested path, the invoked operation and the hash of the canonical form of the
+ * payload (see CanonicalPayload), so requests differing only in the whitespace, the namespace prefixes or the order
+ * of the attributes share the cached response. Only the operations the cache has been enabled for are cached,
+ * requests of the other operations (and the faults and one-way responses) are always passed to the decorated
+ * responder.
+ * The responses are kept as encoded RawSources in a LRU map bounded by the total size of the responses, optionally
+ * expiring after the time-to-live. The compressed forms of a cached response are kept with the RawSource, so a
+ * cached response is not serialized nor compressed again. They count towards the size of the response as well - as
+ * they are computed after the response has been returned, they are charged the next time the cache sees the entry
+ * (when it is hit again or when the cached bytes are read), evicting the eldest responses if needed.
+ * The request is encoded to compute the key, so the payload of the message has to be readable more than once
+ * (it is not in the streaming mode).
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class CachingResponder implements DelegatingResponder {
+
+    private final static Log log = LogFactory.getLog(CachingResponder.class);
+
+    public static final long DEFAULT_MAX_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
+    private final RequestResponder delegate;
+    private final Set<String> operations;
+    private final long maxSizeInBytes;
+    private final long ttlInNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long sizeInBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private CachingResponder(Builder builder) {
+        this.delegate = builder.delegate;
+        this.operations = builder.operations != null ? new HashSet<String>(builder.operations) : null;
+        this.maxSizeInBytes = builder.maxSizeInBytes;
+        this.ttlInNanos = builder.ttlInNanos;
+    }
+
+    /**
+     * @param delegate responder whose responses are cached
+     */
+    public static Builder builder(RequestResponder delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public RequestResponder getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Source respond(SoapMessage message) {
+        String operation = DelegatingResponders.getOperation(delegate, message);
+        if (operation == null || (operations != null && !operations.contains(operation))) {
+            return delegate.respond(message);
+        }
+        String key = createKey(operation, message);
+        if (key == null) {
+            return delegate.respond(message);
+        }
+        RawSource cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        // the response is computed outside of the lock, concurrent misses of the same key call the delegate each
+        Source response = delegate.respond(message);
+        if (response == null || response instanceof FaultSource) {
+            return response;
+        }
+        try {
+            RawSource raw = DelegatingResponders.isReusable(response) ? (RawSource) response
+                    : RawSource.of(DelegatingResponders.encodeResponse(response));
+            put(key, raw);
+            return raw;
+        } catch (IOException ex) {
+            log.warn("Cannot cache the response: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Cannot cache the response: " + ex.getMessage());
+        }
+        return response;
+    }
+
+    private String createKey(String operation, SoapMessage message) {
+        try {
+            String hash = CanonicalPayload.hash(DelegatingResponders.encode(message));
+            return DelegatingResponders.getRequestedPath() + "|" + operation + "#" + hash;
+        } catch (IOException ex) {
+            log.debug("Cannot compute the cache key: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.debug("Cannot compute the cache key: " + ex.getMessage());
+        }
+        return null;
+    }
+
+    private synchronized RawSource get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            remove(key, entry);
+            return null;
+        }
+        chargeEncoded(entry);
+        evict();
+        return entry.response;
+    }
+
+    private synchronized void put(String key, RawSource response) {
+        long size = response.getContentLength() + key.length();
+        if (size > maxSizeInBytes) {
+            return;
+        }
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            sizeInBytes -= previous.getSize();
+        }
+        long expiresAt = ttlInNanos > 0 ? System.nanoTime() + ttlInNanos : 0;
+        Entry entry = new Entry(response, size, expiresAt);
+        entries.put(key, entry);
+        sizeInBytes += size;
+        // a reusable response may have been compressed already
+        chargeEncoded(entry);
+        evict();
+    }
+
+    /**
+     * Charges the compressed forms computed since the entry has been seen last to the size of the entry
+     */
+    private void chargeEncoded(Entry entry) {
+        long encodedSize = entry.response.getEncodedLength();
+        sizeInBytes += encodedSize - entry.encodedSize;
+        entry.encodedSize = encodedSize;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (sizeInBytes > maxSizeInBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            sizeInBytes -= evicted.getSize();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        sizeInBytes -= entry.getSize();
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Removes all the cached responses
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of responses removed from the cache because it has run out of space or they have expired
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int getCachedResponseCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return estimated size of the cached responses, their compressed forms and their keys
+     */
+    public synchronized long getCachedBytes() {
+        for (Entry entry : entries.values()) {
+            chargeEncoded(entry);
+        }
+        evict();
+        return sizeInBytes;
+    }
+
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingResponder[%s, operations=%s, maxSizeInBytes=%d]",
+                delegate, operations != null ? operations : "*", maxSizeInBytes);
+    }
+
+    private static final class Entry {
+        private final RawSource response;
+        private final long size;
+        private final long expiresAt;
+        private long encodedSize;
+
+        private Entry(RawSource response, long size, long expiresAt) {
+            this.response = response;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+
+        private long getSize() {
+            return size + encodedSize;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+
+    public static class Builder {
+        private final RequestResponder delegate;
+        private Set<String> operations;
+        private boolean allOperations;
+        private long maxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+        private long ttlInNanos;
+
+        private Builder(RequestResponder delegate) {
+            this.delegate = checkNotNull(delegate, "delegate cannot be null");
+        }
+
+        /**
+         * @param names names of the operations whose responses are cached
+         */
+        public Builder operations(String... names) {
+            checkNotNull(names);
+            if (operations == null) {
+                operations = new HashSet<String>();
+            }
+            operations.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * Caches the responses of all the operations
+         */
+        public Builder allOperations() {
+            allOperations = true;
+            return this;
+        }
+
+        /**
+         * @param value maximum total size of the cached responses, has to be positive
+         */
+        public Builder maxSizeInBytes(long value) {
+            checkArgument(value > 0);
+            maxSizeInBytes = value;
+            return this;
+        }
+
+        /**
+         * @param value time after which a cached response expires, 0 if it never expires
+         */
+        public Builder ttl(long value, TimeUnit unit) {
+            checkArgument(value >= 0);
+            checkNotNull(unit);
+            ttlInNanos = unit.toNanos(value);
+            return this;
+        }
+
+        public CachingResponder build() {
+            checkState(allOperations ^ operations != null, "either the operations or all operations have to be cached");
+            if (allOperations) {
+                operations = null;
+            }
+            return new CachingResponder(this);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.io.IOUtils;
+import org.reficio.ws.common.XmlUtils;
+import org.reficio.ws.server.OperationNotFoundException;
+import org.reficio.ws.server.matcher.OperationMatch;
+import org.reficio.ws.server.protocol.SoapRequestPreview;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Helper methods shared by the responders decorating other responders
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+final class DelegatingResponders {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] EMPTY = new byte[0];
+
+    private DelegatingResponders() {
+    }
+
+    /**
+     * @return the innermost responder decorated by the responder
+     */
+    static RequestResponder unwrap(RequestResponder responder) {
+        while (responder instanceof DelegatingResponder) {
+            responder = ((DelegatingResponder) responder).getDelegate();
+        }
+        return responder;
+    }
+
+    /**
+     * Resolves the operation invoked by the message - it is taken from the pre-dispatch if it has been routed, otherwise
+     * the message is matched by the innermost responder (if it is an AbstractResponder)
+     *
+     * @return name of the invoked operation, null if it cannot be resolved
+     */
+    static String getOperation(RequestResponder delegate, SoapMessage message) {
+        SoapRequestPreview preview = SoapRequestPreview.current();
+        if (preview != null && preview.getOperation() != null) {
+            return preview.getOperation().getName();
+        }
+        RequestResponder responder = unwrap(delegate);
+        if (responder instanceof AbstractResponder) {
+            try {
+                OperationMatch match = ((AbstractResponder) responder).getSoapOperationMatcher().tryMatch(message);
+                return match.isNotFound() ? null : match.getOperation().getName();
+            } catch (OperationNotFoundException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return URI requested by the request that is currently processed, null if it is not known
+     */
+    static String getRequestedPath() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest().getRequestURI();
+        }
+        return null;
+    }
+
+    /**
+     * @return UTF-8 encoded response envelope, empty for one-way operations. A response that may be read only once
+     *         is consumed.
+     */
+    static byte[] encodeResponse(Source response) throws IOException {
+        if (response == null) {
+            return EMPTY;
+        } else if (response instanceof FaultSource) {
+            return ((FaultSource) response).getEnvelope();
+        } else if (response instanceof RawSource) {
+            RawSource raw = (RawSource) response;
+            byte[] bytes = IOUtils.toByteArray(raw.getInputStream());
+            return UTF_8.equals(raw.getCharset()) ? bytes : new String(bytes, raw.getCharset()).getBytes(UTF_8);
+        }
+        return XmlUtils.sourceToXmlString(response).getBytes(UTF_8);
+    }
+
+    /**
+     * @return true if the response may be written again as it is - a UTF-8 RawSource backed by bytes, other sources
+     *         may be read only once
+     */
+    static boolean isReusable(Source response) {
+        return response instanceof RawSource && ((RawSource) response).getContentLength() >= 0
+                && UTF_8.equals(((RawSource) response).getCharset());
+    }
+
+    /**
+     * @return the whole encoded envelope of the message
+     */
+    static byte[] encode(SoapMessage message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        message.writeTo(buffer);
+        return buffer.toByteArray();
+    }
+
+}
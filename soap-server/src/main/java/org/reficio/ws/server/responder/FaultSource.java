@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.springframework.ws.soap.SoapVersion;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Typed fault outcome of a request - a SOAP fault rendered from the cached fault template of its SOAP version.
+ * A responder (or the server) may return it instead of throwing an exception, so that a fault does not pay for
+ * the stack trace and for the resolution of the exception. The server writes it directly to the HTTP response
+ * as a fault (with the HTTP 500 status).
+ * It is still a regular StreamSource containing the whole envelope, so it may be processed as any other Source.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class FaultSource extends StreamSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SOAP_11_TEMPLATE = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soapenv:Body><soapenv:Fault><faultcode>soapenv:%s</faultcode><faultstring xml:lang=\"en\">%s</faultstring>"
+            + "</soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+
+    private static final String SOAP_12_TEMPLATE = "<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\">"
+            + "<env:Body><env:Fault><env:Code><env:Value>env:%s</env:Value></env:Code>"
+            + "<env:Reason><env:Text xml:lang=\"en\">%s</env:Text></env:Reason></env:Fault></env:Body></env:Envelope>";
+
+    private final SoapVersion version;
+    private final String reason;
+    private final byte[] envelope;
+
+    private FaultSource(SoapVersion version, String reason, byte[] envelope) {
+        this.version = version;
+        this.reason = reason;
+        this.envelope = envelope;
+    }
+
+    private static FaultSource render(SoapVersion version, boolean client, String reason) {
+        checkNotNull(version, "version cannot be null");
+        String text = reason != null ? reason : "";
+        String escaped = escape(text);
+        String envelope;
+        if (version == SoapVersion.SOAP_12) {
+            envelope = String.format(SOAP_12_TEMPLATE, client ? "Sender" : "Receiver", escaped);
+        } else {
+            envelope = String.format(SOAP_11_TEMPLATE, client ? "Client" : "Server", escaped);
+        }
+        return new FaultSource(version, text, envelope.getBytes(UTF_8));
+    }
+
+    /**
+     * @param version SOAP version of the request
+     * @param reason  human readable reason of the fault
+     * @return fault caused by the client, with the Client (SOAP 1.1) / Sender (SOAP 1.2) code
+     */
+    public static FaultSource client(SoapVersion version, String reason) {
+        return render(version, true, reason);
+    }
+
+    /**
+     * @param version SOAP version of the request
+     * @param reason  human readable reason of the fault
+     * @return fault caused by the server, with the Server (SOAP 1.1) / Receiver (SOAP 1.2) code
+     */
+    public static FaultSource server(SoapVersion version, String reason) {
+        return render(version, false, reason);
+    }
+
+    /**
+     * @param version  SOAP version of the envelope
+     * @param reason   human readable reason of the fault
+     * @param envelope already rendered (e.g. recorded) UTF-8 encoded fault envelope, it must not be modified afterwards
+     * @return fault written as the given envelope
+     */
+    public static FaultSource of(SoapVersion version, String reason, byte[] envelope) {
+        checkNotNull(version, "version cannot be null");
+        checkNotNull(envelope, "envelope cannot be null");
+        return new FaultSource(version, reason != null ? reason : "", envelope);
+    }
+
+    public SoapVersion getVersion() {
+        return version;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Charset getCharset() {
+        return UTF_8;
+    }
+
+    /**
+     * @return size of the encoded envelope in bytes
+     */
+    public int getContentLength() {
+        return envelope.length;
+    }
+
+    /**
+     * @return UTF-8 encoded envelope, it must not be modified
+     */
+    public byte[] getEnvelope() {
+        return envelope;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(envelope);
+    }
+
+    /**
+     * Writes the encoded envelope to the output stream
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(envelope);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.reficio.ws.server.protocol.ContentEncoding;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Source containing an already encoded response (the whole SOAP envelope).
+ * The server writes it directly to the HTTP response, without any intermediate XML tree, setting the Content-Type
+ * and - if the size of the content is known - the Content-Length header.
+ * Responses backed by bytes or a ByteBuffer may be read many times (e.g. by the logging interceptors), responses
+ * backed by an InputStream may be read only once.
+ * The compressed forms of a response backed by bytes or a ByteBuffer are computed once and kept with the response,
+ * so a cached response is not compressed again for every request it is returned to.
+ * The content of a response backed by bytes (or by a buffer with an accessible array) is read and written straight
+ * from its array, without any copy.
+ * It is still a regular StreamSource, so it may be processed as any other Source.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RawSource extends StreamSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+    private final ByteBuffer content;
+    private final InputStream stream;
+    private final Charset charset;
+    private final AtomicReferenceArray<byte[]> encoded;
+
+    private RawSource(byte[] array, int offset, int length, ByteBuffer content, InputStream stream, Charset charset) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        this.content = content;
+        this.stream = stream;
+        this.charset = charset;
+        this.encoded = stream == null ? new AtomicReferenceArray<byte[]>(ContentEncoding.values().length) : null;
+    }
+
+    /**
+     * @param content UTF-8 encoded response, it must not be modified afterwards
+     */
+    public static RawSource of(byte[] content) {
+        return of(content, UTF_8);
+    }
+
+    /**
+     * @param content encoded response, it must not be modified afterwards
+     * @param charset charset used to encode the response
+     */
+    public static RawSource of(byte[] content, Charset charset) {
+        return new RawSource(checkNotNull(content), 0, content.length, null, null, checkNotNull(charset));
+    }
+
+    /**
+     * @param content UTF-8 encoded response between the position and the limit of the buffer, it must not be modified afterwards
+     */
+    public static RawSource of(ByteBuffer content) {
+        return of(content, UTF_8);
+    }
+
+    /**
+     * @param content encoded response between the position and the limit of the buffer, it must not be modified afterwards
+     * @param charset charset used to encode the response
+     */
+    public static RawSource of(ByteBuffer content, Charset charset) {
+        checkNotNull(content);
+        checkNotNull(charset);
+        if (content.hasArray()) {
+            return new RawSource(content.array(), content.arrayOffset() + content.position(), content.remaining(), null, null, charset);
+        }
+        // the buffer is read through its duplicates, its position is never changed
+        return new RawSource(null, 0, 0, content.asReadOnlyBuffer(), null, charset);
+    }
+
+    /**
+     * @param content UTF-8 encoded response, the stream is closed after it has been written
+     */
+    public static RawSource of(InputStream content) {
+        return of(content, UTF_8);
+    }
+
+    /**
+     * @param content encoded response, the stream is closed after it has been written
+     * @param charset charset used to encode the response
+     */
+    public static RawSource of(InputStream content, Charset charset) {
+        return new RawSource(null, 0, 0, null, checkNotNull(content), checkNotNull(charset));
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return size of the response in bytes or -1 if it is not known
+     */
+    public long getContentLength() {
+        if (array != null) {
+            return length;
+        }
+        return content != null ? content.remaining() : -1;
+    }
+
+    /**
+     * @param encoding content coding
+     * @return response encoded with the given coding, computed on the first call and kept afterwards,
+     *         null if the response is backed by an InputStream. It must not be modified.
+     */
+    public byte[] getEncoded(ContentEncoding encoding) {
+        checkNotNull(encoding);
+        if (stream != null) {
+            return null;
+        }
+        byte[] result = encoded.get(encoding.ordinal());
+        if (result == null) {
+            // concurrent first calls encode the response more than once, producing identical results
+            if (array != null) {
+                result = encoding.encode(array, offset, length);
+            } else {
+                byte[] bytes = copyContent();
+                result = encoding.encode(bytes, 0, bytes.length);
+            }
+            encoded.set(encoding.ordinal(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return total size of the encoded forms computed so far
+     */
+    long getEncodedLength() {
+        if (encoded == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            byte[] form = encoded.get(i);
+            length += form != null ? form.length : 0;
+        }
+        return length;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (array != null) {
+            return new ByteArrayInputStream(array, offset, length);
+        }
+        if (content != null) {
+            return new ByteArrayInputStream(copyContent());
+        }
+        return stream;
+    }
+
+    private byte[] copyContent() {
+        ByteBuffer copy = content.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the response to the output stream as is
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (array != null) {
+            outputStream.write(array, offset, length);
+        } else if (content != null) {
+            Channels.newChannel(outputStream).write(content.duplicate());
+        } else {
+            try {
+                byte[] buffer = new byte[8192];
+                for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                    outputStream.write(buffer, 0, read);
+                }
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+}
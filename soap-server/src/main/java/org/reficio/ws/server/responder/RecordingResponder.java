@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decorator that records every request/response pair of the decorated responder in the TrafficLog - the requested
+ * path, the SOAPAction, the matched operation, the time the responder took and the encoded envelopes.
+ * The recorded traffic may be served afterwards by the ReplayResponder.
+ * The request is recorded before it is passed to the decorated responder, so the payload of the message has to be
+ * readable more than once (it is not in the streaming mode). Responses are recorded UTF-8 encoded, a response that
+ * may be read only once is returned as a RawSource of the recorded bytes. A failure of the recording is logged,
+ * it does not fail the request.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class RecordingResponder implements DelegatingResponder {
+
+    private final static Log log = LogFactory.getLog(RecordingResponder.class);
+
+    private final RequestResponder delegate;
+    private final TrafficLog trafficLog;
+
+    /**
+     * @param delegate   responder whose traffic is recorded
+     * @param trafficLog log the traffic is appended to, it is not closed by the responder
+     */
+    public RecordingResponder(RequestResponder delegate, TrafficLog trafficLog) {
+        this.delegate = checkNotNull(delegate, "delegate cannot be null");
+        this.trafficLog = checkNotNull(trafficLog, "trafficLog cannot be null");
+    }
+
+    @Override
+    public RequestResponder getDelegate() {
+        return delegate;
+    }
+
+    public TrafficLog getTrafficLog() {
+        return trafficLog;
+    }
+
+    @Override
+    public Source respond(SoapMessage message) {
+        long timestamp = System.currentTimeMillis();
+        byte[] request = encodeRequest(message);
+        long start = System.nanoTime();
+        Source response = delegate.respond(message);
+        long durationNanos = System.nanoTime() - start;
+        if (request == null) {
+            return response;
+        }
+        try {
+            byte[] encoded = DelegatingResponders.encodeResponse(response);
+            if (response != null && !(response instanceof FaultSource) && !DelegatingResponders.isReusable(response)) {
+                response = RawSource.of(encoded);
+            }
+            trafficLog.append(new TrafficRecord(timestamp, durationNanos, DelegatingResponders.getRequestedPath(), message.getSoapAction(),
+                    DelegatingResponders.getOperation(delegate, message), response instanceof FaultSource, request, encoded));
+        } catch (IOException ex) {
+            log.warn("Cannot record the response: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Cannot record the response: " + ex.getMessage());
+        }
+        return response;
+    }
+
+    private static byte[] encodeRequest(SoapMessage message) {
+        try {
+            return DelegatingResponders.encode(message);
+        } catch (IOException ex) {
+            log.warn("Cannot record the request: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Cannot record the request: " + ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecordingResponder[%s -> %s]", delegate, trafficLog);
+    }
+
+}
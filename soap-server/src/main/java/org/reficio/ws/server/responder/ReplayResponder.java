@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.builder.SoapBuilder;
+import org.reficio.ws.builder.SoapOperation;
+import org.reficio.ws.server.SoapServerException;
+import org.reficio.ws.server.protocol.CanonicalPayload;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Responder that serves the traffic recorded by the RecordingResponder, e.g. to stand in for an expensive backend
+ * in performance tests. The recorded responses are indexed in memory by the operation and by the canonical hash of the
+ * request payload (see CanonicalPayload), so a request is answered with the recorded response of an equal request
+ * without generating anything. Requests recorded without the operation are matched by the payload only. If the same
+ * request has been recorded more than once the latest response is served. A request recorded with the operation is
+ * never served to another operation, even if the payloads are equal. A request that has not been recorded is
+ * answered with a client fault.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ReplayResponder extends AbstractResponder {
+
+    private final static Log log = LogFactory.getLog(ReplayResponder.class);
+
+    private final Map<String, Recorded> byOperation = new HashMap<String, Recorded>();
+    private final Map<String, Recorded> byPayload = new HashMap<String, Recorded>();
+
+    /**
+     * Constructs a replay responder serving the traffic recorded in the traffic log directory
+     *
+     * @param builder             Soap builder of the binding whose requests are replayed
+     * @param trafficLogDirectory directory of the traffic log
+     */
+    public ReplayResponder(SoapBuilder builder, File trafficLogDirectory) {
+        this(builder, TrafficLog.read(trafficLogDirectory));
+    }
+
+    /**
+     * Constructs a replay responder serving the recorded traffic
+     *
+     * @param builder Soap builder of the binding whose requests are replayed
+     * @param records recorded request/response pairs
+     */
+    public ReplayResponder(SoapBuilder builder, Iterable<TrafficRecord> records) {
+        super(builder);
+        checkNotNull(records, "records cannot be null");
+        for (TrafficRecord record : records) {
+            index(record);
+        }
+    }
+
+    private void index(TrafficRecord record) {
+        String hash;
+        try {
+            hash = CanonicalPayload.hash(record.getRequest());
+        } catch (IllegalArgumentException ex) {
+            log.warn(String.format("Recorded request is not a well-formed SOAP envelope, it is skipped [%s]", record));
+            return;
+        }
+        Recorded recorded = new Recorded(record);
+        if (record.getOperation() != null) {
+            byOperation.put(getKey(record.getOperation(), hash), recorded);
+        } else {
+            byPayload.put(hash, recorded);
+        }
+    }
+
+    private static String getKey(String operation, String hash) {
+        return operation + "#" + hash;
+    }
+
+    @Override
+    public Source respond(SoapOperation invokedOperation, SoapMessage message) {
+        String hash = CanonicalPayload.hash(encode(message));
+        Recorded recorded = byOperation.get(getKey(invokedOperation.getOperationName(), hash));
+        if (recorded == null) {
+            recorded = byPayload.get(hash);
+        }
+        if (recorded == null) {
+            return FaultSource.client(message.getVersion(), String.format("There is no recorded response to the request of operation [%s]",
+                    invokedOperation.getOperationName()));
+        }
+        return recorded.getSource(message);
+    }
+
+    private static byte[] encode(SoapMessage message) {
+        try {
+            return DelegatingResponders.encode(message);
+        } catch (IOException ex) {
+            throw new SoapServerException(ex);
+        }
+    }
+
+    /**
+     * @return number of distinct recorded requests that may be replayed
+     */
+    public int getRecordedRequestCount() {
+        return byOperation.size() + byPayload.size();
+    }
+
+    /**
+     * Recorded response, rendered to a source once
+     */
+    private static final class Recorded {
+        private final RawSource response;
+        private final byte[] fault;
+
+        Recorded(TrafficRecord record) {
+            this.response = record.isFault() ? null : RawSource.of(record.getResponse());
+            this.fault = record.isFault() ? record.getResponse() : null;
+        }
+
+        Source getSource(SoapMessage message) {
+            if (fault != null) {
+                return FaultSource.of(message.getVersion(), "Recorded fault", fault);
+            }
+            return response;
+        }
+    }
+
+}
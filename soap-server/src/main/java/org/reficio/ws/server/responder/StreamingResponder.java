@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.reficio.ws.common.XmlUtils;
+import org.reficio.ws.server.SoapServerException;
+import org.springframework.util.xml.StaxUtils;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import java.io.StringReader;
+
+/**
+ * Convenience class that implements the RequestResponder interface and hands the payload of the request
+ * (the content of the SOAP Body) to the responder as a StAX stream.
+ * <p/>
+ * It is intended to be used with the streaming mode of the SoapServer (see SoapServer.Builder.streaming) in which
+ * the payload is read directly from the transport, so that large requests may be processed in constant memory.
+ * In the streaming mode the payload may be read only once. In the default (SAAJ) mode the payload is
+ * serialized and read again, so this responder works in both modes.
+ * <p/>
+ * If the operation was resolved during the pre-dispatch it may be obtained using SoapRequestPreview.current().
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public abstract class StreamingResponder implements RequestResponder {
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    /**
+     * Implementation of the RequestResponder bare method.
+     * It opens a StAX reader on the payload of the message and invokes the abstract respond method.
+     *
+     * @param message SOAP message passed by the client
+     * @return response in the XML source format containing the whole SOAP envelope
+     */
+    @Override
+    public Source respond(SoapMessage message) {
+        XMLStreamReader payload = getPayloadReader(message.getPayloadSource());
+        try {
+            return respond(message, payload);
+        } finally {
+            close(payload);
+        }
+    }
+
+    /**
+     * Abstract method that should be implemented by overriding classes.
+     * This method is invoked whenever a request is send by the client.
+     *
+     * @param message SOAP message passed by the client, its payload should not be read again
+     * @param payload reader positioned at the beginning of the payload of the message, null if the SOAP Body is empty
+     * @return response in the XML source format containing the whole SOAP envelope
+     */
+    public abstract Source respond(SoapMessage message, XMLStreamReader payload);
+
+    private static XMLStreamReader getPayloadReader(Source payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            if (StaxUtils.isStaxSource(payload)) {
+                XMLStreamReader reader = StaxUtils.getXMLStreamReader(payload);
+                if (reader != null) {
+                    return reader;
+                }
+                return StaxUtils.createEventStreamReader(StaxUtils.getXMLEventReader(payload));
+            }
+            return inputFactory.createXMLStreamReader(new StringReader(XmlUtils.sourceToXmlString(payload)));
+        } catch (XMLStreamException ex) {
+            throw new SoapServerException("Cannot read the payload of the SOAP request", ex);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ex) {
+                // ignore
+            }
+        }
+    }
+
+}
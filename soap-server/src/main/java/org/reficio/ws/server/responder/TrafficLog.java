@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reficio.ws.server.SoapServerException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Append-only log of the recorded traffic, stored in memory-mapped segment files of a fixed size.
+ * A record is appended to the mapped segment without any system call. When a record does not fit in the current
+ * segment a new one is started, the oldest segments are deleted so that at most maxSegments segments are kept -
+ * the size of the log is bounded by segmentSize * maxSegments. A log opened in a directory that already contains
+ * segments continues after them.
+ * <p/>
+ * Only the current segment is mapped. A segment is unmapped explicitly as soon as it is complete - a mapping is
+ * otherwise released only when its buffer is garbage collected - so the oldest segments are deleted once no mapping
+ * of them is left.
+ * <p/>
+ * Every segment starts with a magic number, followed by the records - each of them prefixed by its length.
+ * The unused rest of a segment is zero-filled, so the records are read until a zero length is found.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class TrafficLog implements Closeable {
+
+    private final static Log log = LogFactory.getLog(TrafficLog.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final int MAGIC = 0x534f4150;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern SEGMENT_NAME = Pattern.compile("traffic-(\\d{10})\\.log");
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final LinkedList<File> segments = new LinkedList<File>();
+    private long sequence;
+    private MappedByteBuffer segment;
+    private long appendedRecords;
+    private boolean closed;
+
+    private TrafficLog(File directory, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Opens the log with the default segment size and number of segments
+     *
+     * @param directory directory of the segments, created if it does not exist
+     */
+    public static TrafficLog open(File directory) {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * @param directory   directory of the segments, created if it does not exist
+     * @param segmentSize size of a segment file in bytes, a record larger than the segment is not recorded
+     * @param maxSegments maximum number of segments kept, the oldest segments are deleted
+     */
+    public static TrafficLog open(File directory, int segmentSize, int maxSegments) {
+        checkNotNull(directory, "directory cannot be null");
+        checkArgument(segmentSize > 8, "segmentSize is too small");
+        checkArgument(maxSegments > 0, "maxSegments has to be positive");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new SoapServerException(String.format("Cannot create the traffic log directory [%s]", directory));
+        }
+        TrafficLog trafficLog = new TrafficLog(directory, segmentSize, maxSegments);
+        for (File file : listSegments(directory)) {
+            trafficLog.segments.add(file);
+            trafficLog.sequence = Math.max(trafficLog.sequence, getSequence(file));
+        }
+        return trafficLog;
+    }
+
+    /**
+     * Appends the record to the log
+     *
+     * @return true if the record has been appended, false if it is larger than a segment
+     */
+    public synchronized boolean append(TrafficRecord record) {
+        checkState(!closed, "Traffic log has been closed");
+        byte[][] strings = {encode(record.getContextPath()), encode(record.getSoapAction()), encode(record.getOperation())};
+        int length = 8 + 8 + 1 + 4 * strings.length + 4 + record.getRequest().length + 4 + record.getResponse().length;
+        for (byte[] string : strings) {
+            length += string != null ? string.length : 0;
+        }
+        if (4 + length + 4 > segmentSize - 4) {
+            log.warn(String.format("Record of %d bytes is larger than the segment of the traffic log, it is not recorded", length));
+            return false;
+        }
+        // the record is followed by at least a zero length marking the end of the segment
+        if (segment == null || segment.remaining() < 4 + length + 4) {
+            roll();
+        }
+        segment.putInt(length);
+        segment.putLong(record.getTimestamp());
+        segment.putLong(record.getDurationNanos());
+        segment.put((byte) (record.isFault() ? 1 : 0));
+        for (byte[] string : strings) {
+            putBytes(string);
+        }
+        putBytes(record.getRequest());
+        putBytes(record.getResponse());
+        appendedRecords++;
+        return true;
+    }
+
+    private void putBytes(byte[] bytes) {
+        if (bytes == null) {
+            segment.putInt(-1);
+        } else {
+            segment.putInt(bytes.length);
+            segment.put(bytes);
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value != null ? value.getBytes(UTF_8) : null;
+    }
+
+    private void roll() {
+        release();
+        File file = new File(directory, String.format("traffic-%010d.log", ++sequence));
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(segmentSize);
+                // the mapping stays valid after the channel has been closed
+                segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            throw new SoapServerException(String.format("Cannot create the traffic log segment [%s]", file), ex);
+        }
+        segment.putInt(MAGIC);
+        segments.add(file);
+        while (segments.size() > maxSegments) {
+            File oldest = segments.removeFirst();
+            if (!oldest.delete()) {
+                log.warn(String.format("Cannot delete the traffic log segment [%s]", oldest));
+            }
+        }
+    }
+
+    private void release() {
+        if (segment != null) {
+            segment.force();
+            MappedByteBuffer released = segment;
+            // the buffer must not be touched once unmapped
+            segment = null;
+            unmap(released);
+        }
+    }
+
+    /**
+     * Releases the mapping of the buffer without waiting for the garbage collector. The cleaner of a direct buffer is
+     * not a public API - it is reached reflectively, through Unsafe.invokeCleaner on Java 9+ and through
+     * DirectBuffer.cleaner() on Java 8. If neither is accessible the mapping is left to the garbage collector.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException ex) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception ex) {
+            log.warn("Cannot unmap a traffic log segment, it is released by the garbage collector", ex);
+        }
+    }
+
+    /**
+     * @return number of records appended since the log has been opened
+     */
+    public synchronized long getAppendedRecordCount() {
+        return appendedRecords;
+    }
+
+    /**
+     * @return segment files of the log, from the oldest one
+     */
+    public synchronized List<File> getSegments() {
+        return new ArrayList<File>(segments);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes the appended records to the storage
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            release();
+            closed = true;
+        }
+    }
+
+    /**
+     * Reads all records of the log stored in the directory, from the oldest one
+     *
+     * @param directory directory of the segments
+     * @return recorded request/response pairs
+     */
+    public static List<TrafficRecord> read(File directory) {
+        checkNotNull(directory, "directory cannot be null");
+        List<TrafficRecord> records = new ArrayList<TrafficRecord>();
+        for (File file : listSegments(directory)) {
+            readSegment(file, records);
+        }
+        return records;
+    }
+
+    private static void readSegment(File file, List<TrafficRecord> records) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            MappedByteBuffer buffer = null;
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+                    log.warn(String.format("File [%s] is not a traffic log segment, it is skipped", file));
+                    return;
+                }
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    records.add(readRecord(buffer));
+                }
+            } finally {
+                raf.close();
+                // the records are copied out of the mapping
+                if (buffer != null) {
+                    unmap(buffer);
+                }
+            }
+        } catch (IOException ex) {
+            throw new SoapServerException(String.format("Cannot read the traffic log segment [%s]", file), ex);
+        }
+    }
+
+    private static TrafficRecord readRecord(ByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        long durationNanos = buffer.getLong();
+        boolean fault = buffer.get() != 0;
+        String contextPath = decode(getBytes(buffer));
+        String soapAction = decode(getBytes(buffer));
+        String operation = decode(getBytes(buffer));
+        byte[] request = getBytes(buffer);
+        byte[] response = getBytes(buffer);
+        return new TrafficRecord(timestamp, durationNanos, contextPath, soapAction, operation, fault, request, response);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String decode(byte[] bytes) {
+        return bytes != null ? new String(bytes, UTF_8) : null;
+    }
+
+    private static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles();
+        List<File> result = new ArrayList<File>();
+        if (files == null) {
+            return result;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (SEGMENT_NAME.matcher(file.getName()).matches()) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private static long getSequence(File file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrafficLog[%s]", directory);
+    }
+
+}
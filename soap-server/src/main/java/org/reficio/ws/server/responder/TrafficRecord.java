@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+/**
+ * Request/response pair recorded by the RecordingResponder in the TrafficLog.
+ * The request contains the whole SOAP envelope, the response the whole encoded envelope (UTF-8) as it was returned,
+ * it is empty for one-way operations.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class TrafficRecord {
+
+    private final long timestamp;
+    private final long durationNanos;
+    private final String contextPath;
+    private final String soapAction;
+    private final String operation;
+    private final boolean fault;
+    private final byte[] request;
+    private final byte[] response;
+
+    TrafficRecord(long timestamp, long durationNanos, String contextPath, String soapAction, String operation,
+                  boolean fault, byte[] request, byte[] response) {
+        this.timestamp = timestamp;
+        this.durationNanos = durationNanos;
+        this.contextPath = contextPath;
+        this.soapAction = soapAction;
+        this.operation = operation;
+        this.fault = fault;
+        this.request = request;
+        this.response = response;
+    }
+
+    /**
+     * @return time at which the request was received, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return time in nanoseconds the responder took to produce the response
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return requested path, null if it was not known
+     */
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    /**
+     * @return SOAPAction of the request, null if not set
+     */
+    public String getSoapAction() {
+        return soapAction;
+    }
+
+    /**
+     * @return name of the matched operation, null if it was not known
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return true if the response is a SOAP fault
+     */
+    public boolean isFault() {
+        return fault;
+    }
+
+    /**
+     * @return encoded request envelope, it must not be modified
+     */
+    public byte[] getRequest() {
+        return request;
+    }
+
+    /**
+     * @return encoded response envelope, it must not be modified
+     */
+    public byte[] getResponse() {
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrafficRecord[path=%s, soapAction=%s, operation=%s, fault=%s, request=%dB, response=%dB]",
+                contextPath, soapAction, operation, fault, request.length, response.length);
+    }
+
+}
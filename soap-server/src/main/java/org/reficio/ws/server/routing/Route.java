@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.routing;
+
+/**
+ * Route registered in the RoutingTable - a context path pattern and the value registered under it.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class Route<T> {
+
+    private final String pattern;
+    private final T value;
+
+    Route(String pattern, T value) {
+        this.pattern = pattern;
+        this.value = value;
+    }
+
+    /**
+     * @return normalized context path pattern of the route
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+}
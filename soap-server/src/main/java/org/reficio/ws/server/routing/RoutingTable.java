@@ -0,0 +1,570 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Routing table that maps request paths to values registered under context path patterns.
+ * <p/>
+ * A pattern is a context path beginning with a slash, whose segments are either literals or wildcards:
+ * <ul>
+ * <li>literal segment - matches the same segment of the path, for example /tenant/billing</li>
+ * <li>* - matches exactly one segment of any content, for example /tenant/&#42;/billing</li>
+ * <li>** - may be the last segment only, matches the rest of the path, also an empty one (the pattern /static/&#42;&#42;
+ * matches /static, /static/a and /static/a/b)</li>
+ * </ul>
+ * Paths and patterns are normalized - empty segments are ignored (so trailing and double slashes do not matter),
+ * and a path ends at the first '?', ';' or '#' character (query strings and path parameters are ignored).
+ * <p/>
+ * Precedence: the path is matched segment by segment from the left. At every segment a literal takes precedence over
+ * the * wildcard, which takes precedence over the ** wildcard - the route that is more specific in the leftmost
+ * differing segment wins. If no more specific route matches the rest of the path, the deepest matching ** route is
+ * used, for example for the routes /a/&#42;&#42;, /a/b/&#42;&#42; and /a/&#42;/c the path /a/b/c is routed to
+ * /a/b/&#42;&#42; and the path /a/x/c to /a/&#42;/c.
+ * <p/>
+ * The routes are kept in a compressed path trie - chains of literal segments are kept in a single node and the literal
+ * children of a node are kept in an open addressing hash table keyed by their first segment. The cost of a lookup
+ * depends on the length of the path (and the number of wildcards) only, not on the number of routes, and lookups do
+ * not allocate any objects. Lookups are lock-free and may be executed concurrently with the modifications, that are
+ * serialized.
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public final class RoutingTable<T> {
+
+    static final String WILDCARD = "*";
+    static final String PREFIX_WILDCARD = "**";
+
+    private static final char SEPARATOR = '/';
+
+    private final Node<T> root = new Node<T>("");
+    private final Map<String, Route<T>> routes = new TreeMap<String, Route<T>>();
+
+    /**
+     * Registers the value under the pattern
+     *
+     * @return registered route, null if the pattern has already been taken
+     */
+    public synchronized Route<T> register(String pattern, T value) {
+        checkNotNull(value, "value cannot be null");
+        String[] segments = parse(pattern);
+        String normalized = join(segments, 0, segments.length);
+        if (routes.containsKey(normalized)) {
+            return null;
+        }
+        Route<T> route = new Route<T>(normalized, value);
+        Node<T> node = insert(segments);
+        if (isPrefix(segments)) {
+            node.prefixRoute = route;
+        } else {
+            node.route = route;
+        }
+        routes.put(normalized, route);
+        return route;
+    }
+
+    /**
+     * Unregisters the route registered under the pattern
+     *
+     * @return unregistered route, null if there was no route under the pattern
+     */
+    public synchronized Route<T> unregister(String pattern) {
+        String[] segments = parse(pattern);
+        Route<T> route = routes.remove(join(segments, 0, segments.length));
+        if (route == null) {
+            return null;
+        }
+        List<Node<T>> path = new ArrayList<Node<T>>();
+        Node<T> node = find(segments, path);
+        if (isPrefix(segments)) {
+            node.prefixRoute = null;
+        } else {
+            node.route = null;
+        }
+        prune(path);
+        return route;
+    }
+
+    /**
+     * Replaces the value registered under the pattern. The route is replaced atomically - every lookup returns
+     * either the old or the new route.
+     *
+     * @return replaced route, null if there was no route under the pattern (nothing is registered then)
+     */
+    public synchronized Route<T> replace(String pattern, T value) {
+        checkNotNull(value, "value cannot be null");
+        String[] segments = parse(pattern);
+        String normalized = join(segments, 0, segments.length);
+        Route<T> replaced = routes.get(normalized);
+        if (replaced == null) {
+            return null;
+        }
+        Route<T> route = new Route<T>(normalized, value);
+        Node<T> node = find(segments, new ArrayList<Node<T>>());
+        if (isPrefix(segments)) {
+            node.prefixRoute = route;
+        } else {
+            node.route = route;
+        }
+        routes.put(normalized, route);
+        return replaced;
+    }
+
+    /**
+     * @return route registered under the pattern (and not matched by the pattern), null if there is none
+     */
+    public synchronized Route<T> get(String pattern) {
+        String[] segments = parse(pattern);
+        return routes.get(join(segments, 0, segments.length));
+    }
+
+    /**
+     * @return normalized patterns of all registered routes, in the lexicographical order
+     */
+    public synchronized List<String> getPatterns() {
+        return new ArrayList<String>(routes.keySet());
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /**
+     * @param path path of a request, as returned by HttpServletRequest.getRequestURI()
+     * @return route matching the path, null if there is none
+     */
+    public Route<T> lookup(String path) {
+        int end = pathEnd(path);
+        return match(root, path, skipSeparators(path, 0, end), end);
+    }
+
+    /**
+     * @return pattern in the normalized form, as returned by Route.getPattern()
+     */
+    public static String normalize(String pattern) {
+        String[] segments = parse(pattern);
+        return join(segments, 0, segments.length);
+    }
+
+    // -----------------------------------------------
+    // LOOKUP
+    // -----------------------------------------------
+    private static <T> Route<T> match(Node<T> node, String path, int pos, int end) {
+        if (pos >= end) {
+            Route<T> route = node.route;
+            return route != null ? route : node.prefixRoute;
+        }
+        int segmentEnd = segmentEnd(path, pos, end);
+        ChildTable<T> children = node.children;
+        if (children != null) {
+            Node<T> child = children.get(path, pos, segmentEnd, hash(path, pos, segmentEnd));
+            if (child != null) {
+                int next = matchLabel(child.label, path, pos, end);
+                if (next >= 0) {
+                    Route<T> route = match(child, path, next, end);
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+        }
+        Node<T> wildcard = node.wildcard;
+        if (wildcard != null) {
+            Route<T> route = match(wildcard, path, skipSeparators(path, segmentEnd, end), end);
+            if (route != null) {
+                return route;
+            }
+        }
+        return node.prefixRoute;
+    }
+
+    /**
+     * @return position in the path after the label (and the following separators), -1 if the label does not match
+     */
+    private static int matchLabel(String label, String path, int pos, int end) {
+        int labelPos = 0;
+        int labelLength = label.length();
+        while (true) {
+            int labelSegmentEnd = label.indexOf(SEPARATOR, labelPos);
+            if (labelSegmentEnd < 0) {
+                labelSegmentEnd = labelLength;
+            }
+            int segmentEnd = segmentEnd(path, pos, end);
+            int length = labelSegmentEnd - labelPos;
+            if (segmentEnd - pos != length || !label.regionMatches(labelPos, path, pos, length)) {
+                return -1;
+            }
+            pos = skipSeparators(path, segmentEnd, end);
+            labelPos = labelSegmentEnd + 1;
+            if (labelPos > labelLength) {
+                return pos;
+            }
+            if (pos >= end) {
+                return -1;
+            }
+        }
+    }
+
+    private static int pathEnd(String path) {
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == '?' || c == ';' || c == '#') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int segmentEnd(String path, int pos, int end) {
+        while (pos < end && path.charAt(pos) != SEPARATOR) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipSeparators(String path, int pos, int end) {
+        while (pos < end && path.charAt(pos) == SEPARATOR) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int hash(String value, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // -----------------------------------------------
+    // MODIFICATIONS
+    // -----------------------------------------------
+    private static String[] parse(String pattern) {
+        checkNotNull(pattern, "pattern cannot be null");
+        checkArgument(pattern.startsWith("/"), "pattern has to begin with a slash");
+        List<String> segments = new ArrayList<String>();
+        int end = pathEnd(pattern);
+        checkArgument(end == pattern.length(), "pattern cannot contain a query string or path parameters [%s]", pattern);
+        for (int pos = skipSeparators(pattern, 0, end); pos < end; ) {
+            int segmentEnd = segmentEnd(pattern, pos, end);
+            String segment = pattern.substring(pos, segmentEnd);
+            checkArgument(segment.indexOf('*') < 0 || isWildcard(segment),
+                    "wildcard has to be a whole segment of the pattern [%s]", pattern);
+            segments.add(segment);
+            pos = skipSeparators(pattern, segmentEnd, end);
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            checkArgument(!PREFIX_WILDCARD.equals(segments.get(i)), "%s may be the last segment of the pattern only [%s]",
+                    PREFIX_WILDCARD, pattern);
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private static boolean isWildcard(String segment) {
+        return WILDCARD.equals(segment) || PREFIX_WILDCARD.equals(segment);
+    }
+
+    private static boolean isPrefix(String[] segments) {
+        return segments.length > 0 && PREFIX_WILDCARD.equals(segments[segments.length - 1]);
+    }
+
+    private static String join(String[] segments, int from, int to) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            builder.append(SEPARATOR).append(segments[i]);
+        }
+        return builder.length() == 0 ? "/" : builder.toString();
+    }
+
+    private static String label(String[] segments, int from, int to) {
+        return join(segments, from, to).substring(1);
+    }
+
+    private Node<T> insert(String[] segments) {
+        Node<T> node = root;
+        int length = isPrefix(segments) ? segments.length - 1 : segments.length;
+        int i = 0;
+        while (i < length) {
+            if (WILDCARD.equals(segments[i])) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<T>("");
+                }
+                node = node.wildcard;
+                i++;
+                continue;
+            }
+            int literalEnd = i;
+            while (literalEnd < length && !WILDCARD.equals(segments[literalEnd])) {
+                literalEnd++;
+            }
+            Node<T> child = node.getChild(segments[i]);
+            if (child == null) {
+                child = new Node<T>(label(segments, i, literalEnd));
+                node.putChild(child);
+                node = child;
+                i = literalEnd;
+                continue;
+            }
+            String[] labelSegments = child.getLabelSegments();
+            int common = 1;
+            while (common < labelSegments.length && i + common < literalEnd && labelSegments[common].equals(segments[i + common])) {
+                common++;
+            }
+            if (common < labelSegments.length) {
+                child = split(node, child, labelSegments, common);
+            }
+            node = child;
+            i += common;
+        }
+        return node;
+    }
+
+    /**
+     * Splits the label of the child after the specified number of segments. The child is replaced atomically,
+     * lookups executed concurrently see either the old or the new structure.
+     *
+     * @return node holding the first part of the label
+     */
+    private static <T> Node<T> split(Node<T> parent, Node<T> child, String[] labelSegments, int count) {
+        Node<T> tail = new Node<T>(label(labelSegments, count, labelSegments.length));
+        tail.route = child.route;
+        tail.prefixRoute = child.prefixRoute;
+        tail.wildcard = child.wildcard;
+        tail.children = child.children;
+        Node<T> head = new Node<T>(label(labelSegments, 0, count));
+        head.putChild(tail);
+        parent.replaceChild(child, head);
+        return head;
+    }
+
+    /**
+     * Finds the node holding the routes of the pattern, collecting the nodes on the path from the root
+     */
+    private Node<T> find(String[] segments, List<Node<T>> path) {
+        Node<T> node = root;
+        path.add(node);
+        int length = isPrefix(segments) ? segments.length - 1 : segments.length;
+        int i = 0;
+        while (i < length) {
+            if (WILDCARD.equals(segments[i])) {
+                node = node.wildcard;
+                i++;
+            } else {
+                node = node.getChild(segments[i]);
+                i += node.getLabelSegments().length;
+            }
+            path.add(node);
+        }
+        return node;
+    }
+
+    /**
+     * Removes the empty nodes from the end of the path
+     */
+    private static <T> void prune(List<Node<T>> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node<T> node = path.get(i);
+            if (!node.isEmpty()) {
+                return;
+            }
+            Node<T> parent = path.get(i - 1);
+            if (parent.wildcard == node) {
+                parent.wildcard = null;
+            } else {
+                parent.removeChild(node);
+            }
+        }
+    }
+
+    // -----------------------------------------------
+    // TRIE
+    // -----------------------------------------------
+    private static final class Node<T> {
+
+        /**
+         * One or more literal segments separated with slashes, empty for the root and the wildcard nodes
+         */
+        final String label;
+        final int hash;
+        volatile Route<T> route;
+        volatile Route<T> prefixRoute;
+        volatile Node<T> wildcard;
+        volatile ChildTable<T> children;
+
+        Node(String label) {
+            this.label = label;
+            int firstSegmentEnd = label.indexOf(SEPARATOR);
+            this.hash = hash(label, 0, firstSegmentEnd < 0 ? label.length() : firstSegmentEnd);
+        }
+
+        String[] getLabelSegments() {
+            return label.split(String.valueOf(SEPARATOR));
+        }
+
+        boolean isEmpty() {
+            return route == null && prefixRoute == null && wildcard == null && (children == null || children.size == 0);
+        }
+
+        Node<T> getChild(String segment) {
+            ChildTable<T> table = children;
+            return table != null ? table.get(segment, 0, segment.length(), hash(segment, 0, segment.length())) : null;
+        }
+
+        void putChild(Node<T> child) {
+            ChildTable<T> table = children;
+            if (table == null) {
+                children = table = new ChildTable<T>(ChildTable.INITIAL_CAPACITY);
+            }
+            if (!table.put(child)) {
+                int capacity = (table.size + 1) * 2 > table.capacity() ? table.capacity() * 2 : table.capacity();
+                ChildTable<T> resized = table.copy(capacity);
+                resized.put(child);
+                children = resized;
+            }
+        }
+
+        void replaceChild(Node<T> child, Node<T> replacement) {
+            children.replace(child, replacement);
+        }
+
+        void removeChild(Node<T> child) {
+            ChildTable<T> table = children;
+            if (!table.remove(child)) {
+                children = table.copy(table.capacity());
+            }
+        }
+
+    }
+
+    /**
+     * Open addressing (linear probing) hash table of the literal children, keyed by the first segment of the label.
+     * Slots are written with volatile semantics. Removed nodes are replaced with a tombstone, so that the probe
+     * sequences of concurrent lookups are never broken, the tombstones are dropped when the table is copied.
+     */
+    private static final class ChildTable<T> {
+
+        static final int INITIAL_CAPACITY = 4;
+
+        @SuppressWarnings("rawtypes")
+        private static final Node TOMBSTONE = new Node("");
+
+        final AtomicReferenceArray<Node<T>> slots;
+        final int mask;
+        int size;
+        int tombstones;
+
+        ChildTable(int capacity) {
+            this.slots = new AtomicReferenceArray<Node<T>>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+
+        Node<T> get(String path, int from, int to, int hash) {
+            int length = to - from;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                Node<T> node = slots.get(i);
+                if (node == null) {
+                    return null;
+                }
+                if (node == TOMBSTONE) {
+                    continue;
+                }
+                String label = node.label;
+                if (node.hash == hash && label.regionMatches(0, path, from, length)
+                        && (label.length() == length || label.charAt(length) == SEPARATOR)) {
+                    return node;
+                }
+            }
+        }
+
+        /**
+         * @return false if the table has to be resized first
+         */
+        boolean put(Node<T> node) {
+            if ((size + tombstones + 1) * 4 > capacity() * 3) {
+                return false;
+            }
+            int i = node.hash & mask;
+            Node<T> slot;
+            while ((slot = slots.get(i)) != null && slot != TOMBSTONE) {
+                i = (i + 1) & mask;
+            }
+            if (slot == TOMBSTONE) {
+                tombstones--;
+            }
+            slots.set(i, node);
+            size++;
+            return true;
+        }
+
+        /**
+         * @return false if the table has to be copied, as it contains too many tombstones
+         */
+        @SuppressWarnings("unchecked")
+        boolean remove(Node<T> node) {
+            for (int i = node.hash & mask; ; i = (i + 1) & mask) {
+                if (slots.get(i) == node) {
+                    slots.set(i, (Node<T>) TOMBSTONE);
+                    size--;
+                    tombstones++;
+                    return tombstones <= size;
+                }
+            }
+        }
+
+        void replace(Node<T> node, Node<T> replacement) {
+            for (int i = node.hash & mask; ; i = (i + 1) & mask) {
+                if (slots.get(i) == node) {
+                    slots.set(i, replacement);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return copy of the table with the specified capacity, without the tombstones
+         */
+        ChildTable<T> copy(int capacity) {
+            ChildTable<T> table = new ChildTable<T>(capacity);
+            for (int i = 0; i < slots.length(); i++) {
+                Node<T> node = slots.get(i);
+                if (node != null && node != TOMBSTONE) {
+                    table.put(node);
+                }
+            }
+            return table;
+        }
+
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reficio.ws.common.FlightRecorderSupport;
+import org.reficio.ws.common.XmlUtils;
+import org.reficio.ws.server.core.SoapServer;
+import org.reficio.ws.server.metrics.RequestPhase;
+import org.reficio.ws.server.responder.AsyncRequestResponder;
+import org.reficio.ws.server.responder.AutoResponder;
+import org.springframework.ws.soap.SoapMessage;
+
+import javax.xml.transform.Source;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.reficio.ws.server.SoapServerRequestTest.CONTEXT_PATH;
+import static org.reficio.ws.server.SoapServerRequestTest.envelope;
+import static org.reficio.ws.server.SoapServerRequestTest.getDocumentBuilder;
+import static org.reficio.ws.server.SoapServerRequestTest.post;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class RequestTracingTest {
+
+    private static final String PHASE_EVENT = "org.reficio.ws.server.RequestPhase";
+    private static final String GENERATION_EVENT = "org.reficio.ws.MessageGeneration";
+
+    private SoapServer server;
+    private int port;
+
+    @Before
+    public void setup() {
+        assumeTrue(FlightRecorderSupport.isAvailable());
+        port = SimpleServerTest.getFreePort();
+        server = SoapServer.builder().httpPort(port).build();
+        server.start();
+        server.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+    }
+
+    @After
+    public void teardown() {
+        if (server != null) {
+            server.stop();
+            server.destroy();
+        }
+    }
+
+    @Test
+    public void recordsPhaseEvents() throws Exception {
+        Recording recording = new Recording();
+        recording.enable(PHASE_EVENT).withThreshold(Duration.ZERO);
+        recording.enable(GENERATION_EVENT).withThreshold(Duration.ZERO);
+        recording.start();
+        try {
+            assertEquals(200, post(port, CONTEXT_PATH, "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            Map<String, RecordedEvent> phases = new HashMap<String, RecordedEvent>();
+            List<RecordedEvent> events = null;
+            // the serialize phase ends after the response has been sent
+            for (int i = 0; i < 100 && !phases.containsKey(RequestPhase.SERIALIZE.name()); i++) {
+                events = dump(recording);
+                for (RecordedEvent event : events) {
+                    if (event.getEventType().getName().equals(PHASE_EVENT)) {
+                        phases.put(event.getString("phase"), event);
+                    }
+                }
+                Thread.sleep(10);
+            }
+            for (RequestPhase phase : RequestPhase.values()) {
+                RecordedEvent event = phases.get(phase.name());
+                assertNotNull(phase.name(), event);
+                assertEquals(CONTEXT_PATH, event.getString("contextPath"));
+            }
+            assertEquals("First", phases.get(RequestPhase.RESPOND.name()).getString("operation"));
+            assertTrue(phases.get(RequestPhase.SERIALIZE.name()).getLong("payloadSize") > 0);
+            assertTrue(phases.get(RequestPhase.PARSE.name()).getLong("payloadSize") > 0);
+
+            boolean generated = false;
+            for (RecordedEvent event : events) {
+                generated |= event.getEventType().getName().equals(GENERATION_EVENT)
+                        && "First".equals(event.getString("operation")) && "output".equals(event.getString("message"));
+            }
+            assertTrue(generated);
+        } finally {
+            recording.close();
+        }
+    }
+
+    @Test
+    public void parsesAsynchronousRequestOnce() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final String response = envelope("<m:response>async</m:response>");
+        server.registerRequestResponder("/async", new AsyncRequestResponder() {
+            @Override
+            public CompletableFuture<Source> respondAsync(SoapMessage message) {
+                final CompletableFuture<Source> future = new CompletableFuture<Source>();
+                executor.schedule(() -> future.complete(XmlUtils.xmlStringToSource(response)), 200, TimeUnit.MILLISECONDS);
+                return future;
+            }
+        });
+        Recording recording = new Recording();
+        recording.enable(PHASE_EVENT).withThreshold(Duration.ZERO);
+        recording.start();
+        try {
+            assertEquals(200, post(port, "/async", null, envelope("<m:first>value</m:first>")).getResponseCode());
+            Map<String, Integer> phases = new HashMap<String, Integer>();
+            // the serialize phase ends after the response has been sent
+            for (int i = 0; i < 100 && !phases.containsKey(RequestPhase.SERIALIZE.name()); i++) {
+                phases.clear();
+                for (RecordedEvent event : dump(recording)) {
+                    if (event.getEventType().getName().equals(PHASE_EVENT) && "/async".equals(event.getString("contextPath"))) {
+                        String phase = event.getString("phase");
+                        phases.put(phase, phases.containsKey(phase) ? phases.get(phase) + 1 : 1);
+                    }
+                }
+                Thread.sleep(10);
+            }
+            // the completed response is written directly, the request is not dispatched to the MessageDispatcher again
+            assertEquals(Integer.valueOf(1), phases.get(RequestPhase.PARSE.name()));
+            assertEquals(Integer.valueOf(1), phases.get(RequestPhase.RESPOND.name()));
+            assertEquals(Integer.valueOf(1), phases.get(RequestPhase.SERIALIZE.name()));
+        } finally {
+            recording.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<RecordedEvent> dump(Recording recording) throws IOException {
+        File file = File.createTempFile("soap-server", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            return RecordingFile.readAllEvents(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -92,6 +92,26 @@ public class SimpleServerTest {
         assertTrue(isPortAvailable(port));
     }
 
+    @Test
+    public void resizeThreadPoolBoundsConcurrencyLimit() {
+        SoapServer server = SoapServer.builder()
+                .httpPort(getFreePort())
+                .coreThreads(8)
+                .maxThreads(16)
+                .adaptiveConcurrencyLimit(true)
+                .build();
+        try {
+            server.start();
+            assertEquals(16, server.getConcurrencyLimit());
+            server.resizeThreadPool(4, 6);
+            assertEquals(6, server.getConcurrencyLimit());
+            server.resizeThreadPool(32, 64);
+        } finally {
+            server.stop();
+            server.destroy();
+        }
+    }
+
     @Test
     public void startStopDestroy() {
         SoapServer server = getServer();
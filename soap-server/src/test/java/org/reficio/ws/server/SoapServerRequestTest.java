@@ -0,0 +1,862 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reficio.ws.builder.SoapBuilder;
+import org.reficio.ws.builder.core.MtomMessage;
+import org.reficio.ws.builder.core.Wsdl;
+import org.reficio.ws.common.ResourceUtils;
+import org.reficio.ws.server.core.SoapServer;
+import org.reficio.ws.server.endpoint.Bulkhead;
+import org.reficio.ws.server.matcher.MatchStrategy;
+import org.reficio.ws.server.metrics.BulkheadMetricsMBean;
+import org.reficio.ws.server.metrics.ContextPathMetrics;
+import org.reficio.ws.server.metrics.RequestRecord;
+import org.reficio.ws.server.metrics.ServerMetrics;
+import org.reficio.ws.common.XmlUtils;
+import org.reficio.ws.server.responder.AsyncRequestResponder;
+import org.reficio.ws.server.responder.AutoResponder;
+import org.reficio.ws.server.responder.CachingResponder;
+import org.reficio.ws.server.responder.RawSource;
+import org.reficio.ws.server.responder.RecordingResponder;
+import org.reficio.ws.server.responder.ReplayResponder;
+import org.reficio.ws.server.responder.RequestResponder;
+import org.reficio.ws.server.responder.StreamingResponder;
+import org.reficio.ws.server.responder.TrafficLog;
+import org.reficio.ws.server.responder.TrafficRecord;
+import org.springframework.ws.server.endpoint.interceptor.PayloadLoggingInterceptor;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.server.endpoint.annotation.FaultCode;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.management.ObjectName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class SoapServerRequestTest {
+
+    static final String NS = "http://reficio.org/matcher";
+    static final String CONTEXT_PATH = "/document";
+
+    private SoapServer server;
+    private int port;
+
+    @Before
+    public void setup() {
+        port = SimpleServerTest.getFreePort();
+        server = SoapServer.builder().httpPort(port).build();
+        server.start();
+        server.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+    }
+
+    @After
+    public void teardown() {
+        server.stop();
+        server.destroy();
+    }
+
+    static SoapBuilder getDocumentBuilder() {
+        URL wsdlUrl = ResourceUtils.getResourceWithAbsolutePackagePath("wsdl", "matcher.wsdl");
+        return Wsdl.parse(wsdlUrl).binding().namespaceURI(NS).localPart("DocumentBinding").find();
+    }
+
+    static String envelope(String body) {
+        return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:m=\"" + NS + "\">"
+                + "<soapenv:Header/><soapenv:Body>" + body + "</soapenv:Body></soapenv:Envelope>";
+    }
+
+    static HttpURLConnection post(int port, String contextPath, String soapAction, String message) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + contextPath).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        if (soapAction != null) {
+            connection.setRequestProperty("SOAPAction", soapAction);
+        }
+        OutputStream out = connection.getOutputStream();
+        out.write(message.getBytes("UTF-8"));
+        out.close();
+        return connection;
+    }
+
+    static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        try {
+            return in != null ? IOUtils.toString(in, "UTF-8") : "";
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Test
+    public void servesCachedAutoResponses() throws IOException {
+        String alternativePath = "/cached";
+        AutoResponder responder = new AutoResponder(getDocumentBuilder());
+        server.registerRequestResponder(alternativePath, responder);
+
+        HttpURLConnection connection = post(port, alternativePath, "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        String rendered = read(connection);
+        connection = post(port, alternativePath, "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(rendered, read(connection));
+        assertEquals(1, responder.getCacheMisses());
+        assertEquals(1, responder.getCacheHits());
+        assertEquals(1, responder.getCachedResponseCount());
+
+        responder.invalidate();
+        connection = post(port, alternativePath, "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(rendered, read(connection));
+        assertEquals(2, responder.getCacheMisses());
+    }
+
+    @Test
+    public void writesRawResponses() throws IOException {
+        final byte[] response = envelope("<m:response>raw</m:response>").getBytes("UTF-8");
+        server.registerRequestResponder("/raw", new RequestResponder() {
+            @Override
+            public Source respond(SoapMessage message) {
+                return RawSource.of(ByteBuffer.wrap(response));
+            }
+        });
+        HttpURLConnection connection = post(port, "/raw", null, envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/xml; charset=UTF-8", connection.getContentType());
+        assertEquals(response.length, connection.getContentLength());
+        assertEquals(new String(response, "UTF-8"), read(connection));
+    }
+
+    @Test
+    public void respondsAsynchronously() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final String response = envelope("<m:response>async</m:response>");
+        server.registerRequestResponder("/async", new AsyncRequestResponder() {
+            @Override
+            public CompletableFuture<Source> respondAsync(SoapMessage message) {
+                final CompletableFuture<Source> future = new CompletableFuture<Source>();
+                executor.schedule(() -> future.complete(XmlUtils.xmlStringToSource(response)), 200, TimeUnit.MILLISECONDS);
+                return future;
+            }
+        });
+        try {
+            HttpURLConnection connection = post(port, "/async", null, envelope("<m:first>value</m:first>"));
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(read(connection).contains("async"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void passesAsynchronousResponsesThroughEndpointInterceptors() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final String response = envelope("<m:response>intercepted</m:response>");
+        server.registerRequestResponder("/async", new AsyncRequestResponder() {
+            @Override
+            public CompletableFuture<Source> respondAsync(SoapMessage message) {
+                final CompletableFuture<Source> future = new CompletableFuture<Source>();
+                executor.schedule(() -> future.complete(XmlUtils.xmlStringToSource(response)), 200, TimeUnit.MILLISECONDS);
+                return future;
+            }
+        });
+        // the payload logging interceptor is configured in the soap-servlet.xml
+        Logger logger = Logger.getLogger(PayloadLoggingInterceptor.class);
+        Level level = logger.getLevel();
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                messages.add(event.getRenderedMessage());
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        };
+        logger.addAppender(appender);
+        logger.setLevel(Level.DEBUG);
+        try {
+            HttpURLConnection connection = post(port, "/async", null, envelope("<m:first>value</m:first>"));
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(read(connection).contains("intercepted"));
+        } finally {
+            logger.setLevel(level);
+            logger.removeAppender(appender);
+            executor.shutdownNow();
+        }
+        // the request is dispatched twice, but it is handled by the interceptor only once
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).startsWith("Request:"));
+        assertTrue(messages.get(1).startsWith("Response:"));
+        assertTrue(messages.get(1).contains("intercepted"));
+    }
+
+    @Test
+    public void returnsFaultWhenAsynchronousResponseTimesOut() throws IOException {
+        int timeoutPort = SimpleServerTest.getFreePort();
+        SoapServer timeoutServer = SoapServer.builder().httpPort(timeoutPort).asyncTimeoutInSeconds(1).build();
+        timeoutServer.start();
+        try {
+            final CompletableFuture<Source> future = new CompletableFuture<Source>();
+            timeoutServer.registerRequestResponder("/async", new AsyncRequestResponder() {
+                @Override
+                public CompletableFuture<Source> respondAsync(SoapMessage message) {
+                    return future;
+                }
+            });
+            HttpURLConnection connection = post(timeoutPort, "/async", null, envelope("<m:first>value</m:first>"));
+            assertEquals(500, connection.getResponseCode());
+            String response = read(connection);
+            assertTrue(response.contains("Server</faultcode>"));
+            assertTrue(response.contains("Response has not been produced within [1000] ms"));
+            assertTrue(future.isCancelled());
+        } finally {
+            timeoutServer.stop();
+            timeoutServer.destroy();
+        }
+    }
+
+    @Test
+    public void respondsOnVirtualThreads() throws IOException {
+        assumeTrue(isVirtualThreadSupported());
+        int virtualPort = SimpleServerTest.getFreePort();
+        SoapServer virtualServer = SoapServer.builder().httpPort(virtualPort).virtualThreads(true).build();
+        virtualServer.start();
+        try {
+            virtualServer.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+            HttpURLConnection connection = post(virtualPort, CONTEXT_PATH, "urn:first", envelope("<m:first>value</m:first>"));
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            virtualServer.stop();
+            virtualServer.destroy();
+        }
+    }
+
+    static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    @Test
+    public void rejectsRequestsExceedingLimit() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        server.registerRequestResponder("/limited", new AutoResponder(getDocumentBuilder()) {
+            @Override
+            public Source respond(SoapMessage message) {
+                processing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.respond(message);
+            }
+        });
+        server.setRequestLimit("/limited", 1, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> first = executor.submit(() -> post(port, "/limited", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertTrue(processing.await(10, TimeUnit.SECONDS));
+
+            HttpURLConnection rejected = post(port, "/limited", "urn:first", envelope("<m:first>value</m:first>"));
+            assertEquals(503, rejected.getResponseCode());
+            assertTrue(read(rejected).contains("faultstring"));
+            assertEquals(1, server.getRejectedRequestCount("/limited"));
+
+            release.countDown();
+            assertEquals(200, first.get().intValue());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void isolatesSlowResponderInBulkhead() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        server.registerRequestResponder("/slow", new AutoResponder(getDocumentBuilder()) {
+            @Override
+            public Source respond(SoapMessage message) {
+                thread.set(Thread.currentThread().getName());
+                processing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.respond(message);
+            }
+        }, Bulkhead.dedicatedExecutor(1, 0));
+        server.registerRequestResponder("/fast", new AutoResponder(getDocumentBuilder()));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> first = executor.submit(() -> post(port, "/slow", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertTrue(processing.await(10, TimeUnit.SECONDS));
+            assertTrue(thread.get().startsWith("soap-bulkhead[/slow]"));
+
+            HttpURLConnection rejected = post(port, "/slow", "urn:first", envelope("<m:first>value</m:first>"));
+            assertEquals(503, rejected.getResponseCode());
+            assertTrue(read(rejected).contains("Service under [/slow] is overloaded"));
+            assertEquals(200, post(port, "/fast", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+
+            BulkheadMetricsMBean bulkhead = server.getMetrics().getBulkheadMetrics("/slow");
+            assertEquals(1, bulkhead.getActiveRequests());
+            assertEquals(1, bulkhead.getRejectedRequestCount());
+            assertEquals(1.0, bulkhead.getUtilization(), 0.0);
+            assertTrue(server.getMetrics().getSnapshot().contains("bulkhead /slow active=1/1 queued=0/0 rejected=1"));
+
+            release.countDown();
+            assertEquals(200, first.get().intValue());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        server.unregisterRequestResponder("/slow");
+        assertNull(server.getMetrics().getBulkheadMetrics("/slow"));
+    }
+
+    @Test
+    public void exposesRequestToResponderInBulkhead() throws Exception {
+        final AtomicReference<RequestRecord> record = new AtomicReference<RequestRecord>();
+        CachingResponder responder = CachingResponder.builder(new AutoResponder(getDocumentBuilder()) {
+            @Override
+            public Source respond(SoapMessage message) {
+                record.set(RequestRecord.current());
+                return super.respond(message);
+            }
+        }).operations("First").build();
+        server.registerRequestResponder("/isolated/a", responder, Bulkhead.dedicatedExecutor(1, 0));
+        server.registerRequestResponder("/isolated/b", responder, Bulkhead.dedicatedExecutor(1, 0));
+
+        assertEquals(200, post(port, "/isolated/a", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+        assertNotNull(record.get());
+        // the cache is keyed by the requested path, the same payload sent to another path is not a hit
+        assertEquals(200, post(port, "/isolated/b", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+        assertEquals(200, post(port, "/isolated/a", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+        assertEquals(1, responder.getCacheHits());
+        assertEquals(2, responder.getCacheMisses());
+        server.unregisterRequestResponder("/isolated/a");
+        server.unregisterRequestResponder("/isolated/b");
+    }
+
+    @Test
+    public void replacesResponderDrainingRequestsInFlight() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        AutoResponder old = new AutoResponder(getDocumentBuilder()) {
+            @Override
+            public Source respond(SoapMessage message) {
+                processing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.respond(message);
+            }
+        };
+        server.registerRequestResponder("/replaced", old);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> inFlight = executor.submit(() -> post(port, "/replaced", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertTrue(processing.await(10, TimeUnit.SECONDS));
+            assertEquals(1, server.getInFlightRequestCount("/replaced"));
+
+            CompletableFuture<RequestResponder> drained = server.replaceRequestResponder("/replaced", new AutoResponder(getDocumentBuilder()));
+            assertEquals(200, post(port, "/replaced", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertFalse(drained.isDone());
+
+            release.countDown();
+            assertEquals(200, inFlight.get().intValue());
+            assertSame(old, drained.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void unregistersResponderDrainingRequestsInFlight() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        AutoResponder old = new AutoResponder(getDocumentBuilder()) {
+            @Override
+            public Source respond(SoapMessage message) {
+                processing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.respond(message);
+            }
+        };
+        server.registerRequestResponder("/drained", old);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> inFlight = executor.submit(() -> post(port, "/drained", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertTrue(processing.await(10, TimeUnit.SECONDS));
+
+            CompletableFuture<RequestResponder> drained = server.drainRequestResponder("/drained");
+            assertEquals(404, post(port, "/drained", "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertFalse(drained.isDone());
+
+            release.countDown();
+            assertEquals(200, inFlight.get().intValue());
+            assertSame(old, drained.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void compressesResponsesAndDecompressesRequests() throws Exception {
+        int compressionPort = SimpleServerTest.getFreePort();
+        SoapServer compressionServer = SoapServer.builder().httpPort(compressionPort).compressionThresholdInBytes(0).build();
+        compressionServer.start();
+        try {
+            compressionServer.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+            byte[] request = gzip(envelope("<m:first>value</m:first>").getBytes("UTF-8"));
+            byte[] previous = null;
+            for (int i = 0; i < 2; i++) {
+                HttpURLConnection connection = postEncoded(compressionPort, request, "gzip", "deflate;q=0.5, gzip");
+                assertEquals(200, connection.getResponseCode());
+                assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+                byte[] body = IOUtils.toByteArray(connection.getInputStream());
+                assertEquals(body.length, connection.getContentLength());
+                String response = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(body)), "UTF-8");
+                assertTrue(response.contains("Envelope"));
+                if (previous != null) {
+                    // the compressed form of the cached response is reused
+                    assertTrue(Arrays.equals(previous, body));
+                }
+                previous = body;
+            }
+
+            HttpURLConnection connection = postEncoded(compressionPort, request, "br", null);
+            assertEquals(415, connection.getResponseCode());
+        } finally {
+            compressionServer.stop();
+            compressionServer.destroy();
+        }
+    }
+
+    @Test
+    public void chargesCompressedFormsToCachedResponses() throws Exception {
+        int compressionPort = SimpleServerTest.getFreePort();
+        SoapServer compressionServer = SoapServer.builder().httpPort(compressionPort).compressionThresholdInBytes(0).build();
+        compressionServer.start();
+        try {
+            CachingResponder responder = CachingResponder.builder(new AutoResponder(getDocumentBuilder()))
+                    .operations("First").build();
+            compressionServer.registerRequestResponder(CONTEXT_PATH, responder);
+            byte[] request = envelope("<m:first>value</m:first>").getBytes("UTF-8");
+            assertEquals(200, postEncoded(compressionPort, request, null, null).getResponseCode());
+            long plain = responder.getCachedBytes();
+            assertTrue(plain > 0);
+
+            HttpURLConnection connection = postEncoded(compressionPort, request, null, "gzip");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            byte[] body = IOUtils.toByteArray(connection.getInputStream());
+            assertEquals(plain + body.length, responder.getCachedBytes());
+            assertEquals(1, responder.getCachedResponseCount());
+        } finally {
+            compressionServer.stop();
+            compressionServer.destroy();
+        }
+    }
+
+    @Test
+    public void rejectsRequestsInflatingBeyondLimit() throws Exception {
+        int compressionPort = SimpleServerTest.getFreePort();
+        SoapServer compressionServer = SoapServer.builder().httpPort(compressionPort).maxDecompressedSizeInBytes(4096).build();
+        compressionServer.start();
+        try {
+            compressionServer.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+            char[] padding = new char[1024 * 1024];
+            Arrays.fill(padding, ' ');
+            byte[] request = gzip(envelope("<m:first>value</m:first>" + new String(padding)).getBytes("UTF-8"));
+            HttpURLConnection connection = postEncoded(compressionPort, request, "gzip", null);
+            assertEquals(413, connection.getResponseCode());
+            String response = IOUtils.toString(connection.getErrorStream(), "UTF-8");
+            assertTrue(response.contains("Client</faultcode>"));
+
+            connection = postEncoded(compressionPort, gzip(envelope("<m:first>value</m:first>").getBytes("UTF-8")), "gzip", null);
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            compressionServer.stop();
+            compressionServer.destroy();
+        }
+    }
+
+    @Test
+    public void doesNotCompressResponsesBelowThreshold() throws Exception {
+        byte[] request = envelope("<m:first>value</m:first>").getBytes("UTF-8");
+        HttpURLConnection connection = postEncoded(port, request, null, "gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Content-Encoding"));
+        assertTrue(read(connection).contains("Envelope"));
+    }
+
+    @Test
+    public void streamsMtomAttachments() throws Exception {
+        final byte[] data = new byte[256 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final AtomicReference<String> received = new AtomicReference<String>();
+        server.registerRequestResponder("/mtom", new RequestResponder() {
+            @Override
+            public Source respond(SoapMessage message) {
+                try {
+                    byte[] attachment = IOUtils.toByteArray(message.getAttachment("data@reficio.org").getInputStream());
+                    received.set(Arrays.equals(data, attachment) ? "equal" : "different");
+                } catch (IOException e) {
+                    received.set(e.getMessage());
+                }
+                return RawSource.of(envelope("<m:response>ok</m:response>").getBytes());
+            }
+        });
+        MtomMessage message = MtomMessage.builder()
+                .envelope(envelope("<m:first>" + MtomMessage.include("data@reficio.org") + "</m:first>"))
+                .attachment("data@reficio.org", "application/octet-stream", new ByteArrayInputStream(data))
+                .build();
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/mtom").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", message.getContentType());
+        connection.setRequestProperty("SOAPAction", "urn:first");
+        OutputStream out = connection.getOutputStream();
+        message.writeTo(out);
+        out.close();
+
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection).contains("ok"));
+        assertEquals("equal", received.get());
+    }
+
+    @Test
+    public void recordsAndReplaysTraffic() throws Exception {
+        File directory = Files.createTempDirectory("traffic").toFile();
+        TrafficLog trafficLog = TrafficLog.open(directory);
+        try {
+            server.registerRequestResponder("/recorded", new RecordingResponder(new AutoResponder(getDocumentBuilder()), trafficLog));
+            HttpURLConnection connection = post(port, "/recorded", "urn:first", envelope("<m:first>value</m:first>"));
+            assertEquals(200, connection.getResponseCode());
+            String recorded = read(connection);
+            assertEquals(500, post(port, "/recorded", null, envelope("<m:third>a</m:third><m:unknown/>")).getResponseCode());
+            trafficLog.close();
+
+            List<TrafficRecord> records = TrafficLog.read(directory);
+            assertEquals(2, records.size());
+            assertEquals("/recorded", records.get(0).getContextPath());
+            assertEquals("First", records.get(0).getOperation());
+            assertTrue(records.get(1).isFault());
+
+            server.registerRequestResponder("/replayed", new ReplayResponder(getDocumentBuilder(), directory));
+            // the same payload, differently formatted
+            connection = post(port, "/replayed", "urn:first", envelope("\n  <x:first xmlns:x=\"" + NS + "\">value</x:first>\n"));
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(recorded, read(connection));
+            connection = post(port, "/replayed", "urn:first", envelope("<m:first>other</m:first>"));
+            assertEquals(500, connection.getResponseCode());
+        } finally {
+            trafficLog.close();
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    @Test
+    public void cachesResponsesByCanonicalPayload() throws Exception {
+        CachingResponder responder = CachingResponder.builder(new AutoResponder(getDocumentBuilder()))
+                .operations("First").build();
+        server.registerRequestResponder("/cached", responder);
+        HttpURLConnection connection = post(port, "/cached", "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        String response = read(connection);
+        // the same payload, differently formatted
+        connection = post(port, "/cached", "urn:first", envelope("\n  <x:first xmlns:x=\"" + NS + "\">val<!-- split -->ue</x:first>\n"));
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(response, read(connection));
+        assertEquals(200, post(port, "/cached", "urn:first", envelope("<m:first>other</m:first>")).getResponseCode());
+        assertEquals(500, post(port, "/cached", null, envelope("<m:third>a</m:third><m:unknown/>")).getResponseCode());
+
+        assertEquals(1, responder.getCacheHits());
+        assertEquals(2, responder.getCacheMisses());
+        assertEquals(2, responder.getCachedResponseCount());
+        responder.invalidate();
+        assertEquals(0, responder.getCachedBytes());
+    }
+
+    private static HttpURLConnection postEncoded(int port, byte[] message, String contentEncoding, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + CONTEXT_PATH).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        connection.setRequestProperty("SOAPAction", "urn:first");
+        if (contentEncoding != null) {
+            connection.setRequestProperty("Content-Encoding", contentEncoding);
+        }
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        OutputStream out = connection.getOutputStream();
+        out.write(message);
+        out.close();
+        return connection;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+        gzip.write(content);
+        gzip.close();
+        return buffer.toByteArray();
+    }
+
+    @Test
+    public void recordsMetrics() throws Exception {
+        int metricsPort = SimpleServerTest.getFreePort();
+        SoapServer metricsServer = SoapServer.builder().httpPort(metricsPort).metricsContextPath("/metrics").build();
+        metricsServer.start();
+        try {
+            metricsServer.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+            assertEquals(200, post(metricsPort, CONTEXT_PATH, "urn:first", envelope("<m:first>value</m:first>")).getResponseCode());
+            assertEquals(200, post(metricsPort, CONTEXT_PATH, null, envelope("<m:third>a</m:third><m:first>b</m:first>")).getResponseCode());
+            assertEquals(500, post(metricsPort, CONTEXT_PATH, null, envelope("<m:third>a</m:third><m:unknown/>")).getResponseCode());
+            assertEquals(500, post(metricsPort, CONTEXT_PATH, null, envelope("<m:unknown/>")).getResponseCode());
+
+            ContextPathMetrics metrics = metricsServer.getMetrics().getContextPathMetrics(CONTEXT_PATH);
+            // the request is recorded after the response has been sent
+            for (int i = 0; i < 100 && metrics.getRequestCount() < 4; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, metrics.getRequestCount());
+            // unmatched requests are answered with a fault, not with an exception
+            assertEquals(2, metrics.getFaultCount());
+            assertEquals(0, metrics.getErrorCount());
+            assertEquals(0, metrics.getInFlightCount());
+            assertEquals(1, metrics.getOperationStatistics("First").getRequestCount());
+            assertEquals(1, metrics.getMatchCount(MatchStrategy.PRE_DISPATCH));
+            assertEquals(1, metrics.getMatchCount(MatchStrategy.INPUT_TYPES));
+
+            ObjectName name = new ObjectName(String.format("%s:type=ContextPathMetrics,name=%s,path=%s", ServerMetrics.JMX_DOMAIN,
+                    ObjectName.quote("http-" + metricsPort), ObjectName.quote(CONTEXT_PATH)));
+            assertEquals(4L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RequestCount"));
+
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + metricsPort + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            String snapshot = read(connection);
+            assertTrue(snapshot.contains("path /document requests=4"));
+            assertTrue(snapshot.contains("operation Third requests=1"));
+        } finally {
+            metricsServer.stop();
+            metricsServer.destroy();
+        }
+    }
+
+    @Test
+    public void respondsToRoutedRequest() throws IOException {
+        HttpURLConnection connection = post(port, CONTEXT_PATH, "urn:shared", envelope("<m:second>value</m:second>"));
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection).contains("response"));
+    }
+
+    @Test
+    public void respondsToMultiPartRequest() throws IOException {
+        HttpURLConnection connection = post(port, CONTEXT_PATH, null, envelope("<m:third>value</m:third><m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection).contains("response"));
+    }
+
+    @Test
+    public void rejectsUnroutableRequest() throws IOException {
+        HttpURLConnection connection = post(port, CONTEXT_PATH, null, envelope("<m:unknown/>"));
+        assertEquals(500, connection.getResponseCode());
+        String response = read(connection);
+        assertTrue(response.contains("<faultcode>soapenv:Client</faultcode>"));
+        assertTrue(response.contains("unknown"));
+    }
+
+    @Test
+    public void answersUnmatchedRequestWithClientFault() throws IOException {
+        HttpURLConnection connection = post(port, CONTEXT_PATH, null, envelope("<m:third>a</m:third><m:unknown/>"));
+        assertEquals(500, connection.getResponseCode());
+        assertTrue(read(connection).contains("<faultcode>soapenv:Client</faultcode>"));
+    }
+
+    @Test
+    public void resolvesAnnotatedFaultOfResponder() throws IOException {
+        RequestResponder rejecting = new RequestResponder() {
+            @Override
+            public Source respond(SoapMessage message) {
+                throw new RejectedOrderException();
+            }
+        };
+        server.registerRequestResponder("/rejecting", rejecting);
+        server.registerRequestResponder("/rejecting-isolated", rejecting, Bulkhead.dedicatedExecutor(1, 0));
+        for (String contextPath : Arrays.asList("/rejecting", "/rejecting-isolated")) {
+            HttpURLConnection connection = post(port, contextPath, "urn:first", envelope("<m:first>value</m:first>"));
+            assertEquals(500, connection.getResponseCode());
+            String response = read(connection);
+            assertTrue(response.contains("Client</faultcode>"));
+            assertTrue(response.contains("Order rejected"));
+        }
+    }
+
+    @SoapFault(faultCode = FaultCode.CLIENT, faultStringOrReason = "Order rejected")
+    private static class RejectedOrderException extends RuntimeException {
+    }
+
+    @Test
+    public void rejectsRequestToUnknownContextPath() throws IOException {
+        HttpURLConnection connection = post(port, "/unknown", "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(404, connection.getResponseCode());
+        assertTrue(read(connection).contains("<faultcode>soapenv:Client</faultcode>"));
+    }
+
+    @Test
+    public void routesRequestsToPatterns() throws IOException {
+        server.registerRequestResponder("/tenant/*/billing", new AutoResponder(getDocumentBuilder()));
+        HttpURLConnection connection = post(port, "/tenant/42/billing/?client=1", "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(200, connection.getResponseCode());
+        connection = post(port, "/tenant/42/invoices", "urn:first", envelope("<m:first>value</m:first>"));
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    @Test
+    public void refusesContinueExpectationOfUnknownContextPath() throws IOException {
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            // the body is never sent, the expectation has to be refused without waiting for it
+            out.write(("POST /unknown HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/xml; charset=UTF-8\r\n"
+                    + "Content-Length: 1000\r\nExpect: 100-continue\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+            String response = IOUtils.toString(socket.getInputStream(), "UTF-8");
+            assertTrue(response.startsWith("HTTP/1.1 417"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void streamingMode() throws IOException {
+        int streamingPort = SimpleServerTest.getFreePort();
+        SoapServer streamingServer = SoapServer.builder().httpPort(streamingPort).streaming(true).build();
+        streamingServer.start();
+        try {
+            streamingServer.registerRequestResponder(CONTEXT_PATH, new AutoResponder(getDocumentBuilder()));
+            streamingServer.registerRequestResponder("/count", new StreamingResponder() {
+                @Override
+                public Source respond(SoapMessage message, XMLStreamReader payload) {
+                    int elements = 0;
+                    try {
+                        while (payload.hasNext()) {
+                            if (payload.next() == XMLStreamConstants.START_ELEMENT) {
+                                elements++;
+                            }
+                        }
+                    } catch (XMLStreamException e) {
+                        throw new SoapServerException(e);
+                    }
+                    return XmlUtils.xmlStringToSource(envelope("<m:response>" + elements + "</m:response>"));
+                }
+            });
+
+            HttpURLConnection connection = post(streamingPort, CONTEXT_PATH, null, envelope("<m:third>a</m:third><m:first>b</m:first>"));
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(read(connection).contains("response"));
+
+            connection = post(streamingPort, "/count", null, envelope("<m:second><a/><b/><c/></m:second>"));
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(read(connection).contains(">4</"));
+        } finally {
+            streamingServer.stop();
+            streamingServer.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server;
+
+import org.reficio.ws.server.core.SoapServer;
+import org.reficio.ws.server.responder.AutoResponder;
+import org.springframework.ws.soap.SoapMessage;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.Source;
+
+import static org.reficio.ws.server.SoapServerRequestTest.envelope;
+import static org.reficio.ws.server.SoapServerRequestTest.getDocumentBuilder;
+import static org.reficio.ws.server.SoapServerRequestTest.post;
+import static org.reficio.ws.server.SoapServerRequestTest.read;
+
+/**
+ * Compares the platform thread pool with the virtual-thread mode for a responder that blocks on a slow backend.
+ * It is not a unit test - run it manually on Java 21 or newer:
+ * java -cp ... org.reficio.ws.server.ThreadModeBenchmark [clients] [backendLatencyMillis] [durationSeconds]
+ *
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long backendLatencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        run("platform", SoapServer.builder(), clients, backendLatencyMillis, durationSeconds);
+        run("virtual", SoapServer.builder().virtualThreads(true), clients, backendLatencyMillis, durationSeconds);
+    }
+
+    private static void run(String mode, SoapServer.Builder builder, int clients, final long backendLatencyMillis,
+                            int durationSeconds) throws Exception {
+        final int port = SimpleServerTest.getFreePort();
+        SoapServer server = builder.httpPort(port).build();
+        server.start();
+        try {
+            server.registerRequestResponder("/blocking", new AutoResponder(getDocumentBuilder()) {
+                @Override
+                public Source respond(SoapMessage message) {
+                    sleep(backendLatencyMillis);
+                    return super.respond(message);
+                }
+            });
+            // warm up
+            measure(port, clients, 5);
+            Result result = measure(port, clients, durationSeconds);
+            System.out.println(String.format("%-8s clients=%d backend=%dms requests=%d errors=%d throughput=%.1f req/s p50=%dms p99=%dms",
+                    mode, clients, backendLatencyMillis, result.latencies.length, result.errors,
+                    result.latencies.length / (double) durationSeconds, result.percentile(50), result.percentile(99)));
+        } finally {
+            server.stop();
+            server.destroy();
+        }
+    }
+
+    private static Result measure(final int port, int clients, int durationSeconds) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        final String request = envelope("<m:first>value</m:first>");
+        final List<long[]> latencies = new ArrayList<long[]>();
+        final int[] errors = new int[1];
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            new Thread(() -> {
+                long[] own = new long[1024];
+                int count = 0;
+                int failed = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpURLConnection connection = post(port, "/blocking", "urn:first", request);
+                        if (connection.getResponseCode() != 200) {
+                            failed++;
+                        }
+                        read(connection);
+                    } catch (IOException ex) {
+                        failed++;
+                        continue;
+                    }
+                    if (count == own.length) {
+                        own = Arrays.copyOf(own, count * 2);
+                    }
+                    own[count++] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                synchronized (latencies) {
+                    latencies.add(Arrays.copyOf(own, count));
+                    errors[0] += failed;
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return new Result(latencies, errors[0]);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Result {
+        private final long[] latencies;
+        private final int errors;
+
+        private Result(List<long[]> perClient, int errors) {
+            int size = 0;
+            for (long[] client : perClient) {
+                size += client.length;
+            }
+            this.latencies = new long[size];
+            int offset = 0;
+            for (long[] client : perClient) {
+                System.arraycopy(client, 0, latencies, offset, client.length);
+                offset += client.length;
+            }
+            Arrays.sort(latencies);
+            this.errors = errors;
+        }
+
+        private long percentile(int percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[Math.min(latencies.length - 1, (int) Math.ceil(percentile / 100.0 * latencies.length) - 1)];
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ElasticThreadPoolTest {
+
+    @Test
+    public void growsToMaximumBeforeQueueing() throws Exception {
+        ElasticThreadPool pool = new ElasticThreadPool(1, 3, 60, TimeUnit.SECONDS);
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(5);
+        Runnable task = () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        };
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(pool.dispatch(task));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(3, pool.getPoolSize());
+            assertEquals(2, pool.getQueue().size());
+
+            release.countDown();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            assertEquals(3, pool.getPoolSize());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reusesIdleThreads() throws Exception {
+        ElasticThreadPool pool = new ElasticThreadPool(1, 3, 60, TimeUnit.SECONDS);
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(pool.dispatch(() -> {
+                }));
+                // the thread is idle once the task has been completed
+                while (pool.getCompletedTaskCount() <= i) {
+                    Thread.sleep(1);
+                }
+            }
+            assertEquals(1, pool.getPoolSize());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void growsAfterResize() throws Exception {
+        ElasticThreadPool pool = new ElasticThreadPool(1, 1, 60, TimeUnit.SECONDS);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable task = () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            pool.setMaximumPoolSize(2);
+            assertTrue(pool.dispatch(task));
+            assertTrue(pool.dispatch(task));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(2, pool.getPoolSize());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+}
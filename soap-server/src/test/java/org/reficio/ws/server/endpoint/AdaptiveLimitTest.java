@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class AdaptiveLimitTest {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long NO_LOAD_LATENCY = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private long clock = System.nanoTime();
+
+    @Test
+    public void rejectsRequestsExceedingLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 10);
+        assertTrue(limit.acquire());
+        assertTrue(limit.acquire());
+        assertFalse(limit.acquire());
+        limit.release();
+        assertTrue(limit.acquire());
+        assertEquals(2, limit.getInFlight());
+    }
+
+    @Test
+    public void growsWhileLatencyStaysLowUpToMaximum() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 50);
+        for (int window = 0; window < 100; window++) {
+            saturate(limit, NO_LOAD_LATENCY);
+        }
+        assertEquals(50, limit.getLimit());
+        limit.setMaxLimit(30);
+        assertEquals(30, limit.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyGrows() {
+        AdaptiveLimit limit = new AdaptiveLimit(40, 50);
+        saturate(limit, NO_LOAD_LATENCY);
+        int loaded = limit.getLimit();
+        for (int window = 0; window < 40; window++) {
+            saturate(limit, NO_LOAD_LATENCY * 10);
+        }
+        assertTrue(limit.getLimit() < loaded / 4);
+    }
+
+    @Test
+    public void doesNotGrowIfNotUsed() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 100);
+        for (int window = 0; window < 20; window++) {
+            clock += WINDOW;
+            for (int request = 0; request < 20; request++) {
+                assertTrue(limit.acquire());
+                limit.release(clock, clock + NO_LOAD_LATENCY);
+            }
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    /**
+     * Admits as many requests as the limit allows and completes them with the latency in the next window
+     */
+    private void saturate(AdaptiveLimit limit, long latency) {
+        clock += WINDOW;
+        int admitted = 0;
+        while (limit.acquire()) {
+            admitted++;
+        }
+        for (int request = 0; request < Math.max(admitted, 10); request++) {
+            if (request >= admitted) {
+                assertTrue(limit.acquire());
+            }
+            limit.release(clock, clock + latency);
+        }
+    }
+
+}
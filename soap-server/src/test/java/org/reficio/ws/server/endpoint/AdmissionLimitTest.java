@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.endpoint;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class AdmissionLimitTest {
+
+    @Test
+    public void rejectsRequestsExceedingQueue() throws InterruptedException {
+        AdmissionLimit limit = new AdmissionLimit(1, 0);
+        assertTrue(limit.acquire());
+        assertFalse(limit.acquire());
+        limit.release();
+        assertTrue(limit.acquire());
+        assertEquals(1, limit.getActiveRequests());
+    }
+
+    @Test
+    public void rejectsQueuedRequestWhenTimeoutElapses() throws InterruptedException {
+        AdmissionLimit limit = new AdmissionLimit(1, 1, 100);
+        assertTrue(limit.acquire());
+        long start = System.nanoTime();
+        assertFalse(limit.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, limit.getQueuedRequests());
+        assertEquals(1, limit.getActiveRequests());
+    }
+
+    @Test
+    public void grantsReleasedSlotToQueuedRequest() throws Exception {
+        final AdmissionLimit limit = new AdmissionLimit(1, 1, TimeUnit.SECONDS.toMillis(10));
+        assertTrue(limit.acquire());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CompletableFuture<Thread> queuedThread = new CompletableFuture<Thread>();
+            Future<Boolean> queued = executor.submit(() -> {
+                queuedThread.complete(Thread.currentThread());
+                return limit.acquire();
+            });
+            Thread thread = queuedThread.get(10, TimeUnit.SECONDS);
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+            limit.release();
+            // a new request does not take the released slot ahead of the queued one, and the queue is full
+            assertFalse(limit.acquire());
+            assertTrue(queued.get(10, TimeUnit.SECONDS));
+            assertEquals(1, limit.getActiveRequests());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
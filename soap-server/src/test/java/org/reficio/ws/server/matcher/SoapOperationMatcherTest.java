@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.matcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reficio.ws.builder.core.Wsdl;
+import org.reficio.ws.common.ResourceUtils;
+import org.reficio.ws.server.OperationNotFoundException;
+import org.reficio.ws.server.protocol.SoapRequestPreview;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import javax.wsdl.Binding;
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class SoapOperationMatcherTest {
+
+    private static final String NS = "http://reficio.org/matcher";
+
+    private static SoapOperationMatcher documentMatcher;
+    private static SoapOperationMatcher rpcMatcher;
+    private static SaajSoapMessageFactory messageFactory;
+
+    @BeforeClass
+    public static void setup() {
+        URL wsdlUrl = ResourceUtils.getResourceWithAbsolutePackagePath("wsdl", "matcher.wsdl");
+        Wsdl wsdl = Wsdl.parse(wsdlUrl);
+        documentMatcher = new SoapOperationMatcher(getBinding(wsdl, "DocumentBinding"));
+        rpcMatcher = new SoapOperationMatcher(getBinding(wsdl, "RpcBinding"));
+        messageFactory = new SaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+    }
+
+    private static Binding getBinding(Wsdl wsdl, String localPart) {
+        return wsdl.binding().namespaceURI(NS).localPart(localPart).find().getBinding();
+    }
+
+    private static SoapMessage message(String soapAction, String body) throws Exception {
+        String envelope = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:m=\"" + NS + "\">"
+                + "<soapenv:Header/><soapenv:Body>" + body + "</soapenv:Body></soapenv:Envelope>";
+        SoapMessage message = messageFactory.createWebServiceMessage(new ByteArrayInputStream(envelope.getBytes("UTF-8")));
+        if (soapAction != null) {
+            message.setSoapAction(soapAction);
+        }
+        return message;
+    }
+
+    private static String match(SoapOperationMatcher matcher, SoapMessage message) {
+        return matcher.getInvokedOperation(message).getName();
+    }
+
+    @Test
+    public void matchBySoapAction() throws Exception {
+        assertEquals("First", match(documentMatcher, message("\"urn:first\"", "<m:second/>")));
+    }
+
+    @Test
+    public void ambiguousSoapActionFallsBackToInputTypes() throws Exception {
+        assertEquals("Second", match(documentMatcher, message("urn:shared", "<m:second/>")));
+    }
+
+    @Test
+    public void matchByInputTypesRegardlessOfOrder() throws Exception {
+        assertEquals("Third", match(documentMatcher, message(null, "<m:first/><m:third/>")));
+        assertEquals("Third", match(documentMatcher, message(null, "<m:third/><m:first/>")));
+    }
+
+    @Test
+    public void matchByInputNames() throws Exception {
+        assertEquals("Second", match(documentMatcher, message(null, "<second xmlns=\"urn:other\"/>")));
+    }
+
+    @Test
+    public void matchByPseudoInputName() throws Exception {
+        assertEquals("Empty", match(documentMatcher, message(null, "<m:Empty/>")));
+    }
+
+    @Test
+    public void matchRpcByRootName() throws Exception {
+        assertEquals("Reverse", match(rpcMatcher, message(null, "<m:Reverse><value>abc</value></m:Reverse>")));
+    }
+
+    @Test(expected = OperationNotFoundException.class)
+    public void rpcRequiresSingleRoot() throws Exception {
+        rpcMatcher.getInvokedOperation(message(null, "<m:Echo/><m:Reverse/>"));
+    }
+
+    @Test(expected = OperationNotFoundException.class)
+    public void unknownOperation() throws Exception {
+        documentMatcher.getInvokedOperation(message(null, "<m:unknown/>"));
+    }
+
+    private static SoapRequestPreview preview(String soapAction, String rootElement) {
+        return new SoapRequestPreview(soapAction, rootElement != null ? new QName(NS, rootElement) : null);
+    }
+
+    @Test
+    public void matchPreviewBySoapAction() {
+        assertEquals("First", documentMatcher.getInvokedOperation(preview("urn:first", null)).getName());
+    }
+
+    @Test
+    public void matchPreviewBySingleInputElement() {
+        assertEquals("Second", documentMatcher.getInvokedOperation(preview("urn:shared", "second")).getName());
+        assertEquals("Empty", documentMatcher.getInvokedOperation(preview(null, "Empty")).getName());
+    }
+
+    @Test
+    public void previewOfMultiPartInputRequiresWholeMessage() {
+        assertNull(documentMatcher.getInvokedOperation(preview(null, "first")));
+        assertNull(documentMatcher.getInvokedOperation(preview(null, "third")));
+    }
+
+    @Test
+    public void matchRpcPreviewByRootName() {
+        assertEquals("Echo", rpcMatcher.getInvokedOperation(preview(null, "Echo")).getName());
+    }
+
+    @Test(expected = OperationNotFoundException.class)
+    public void rejectUnknownPreview() {
+        documentMatcher.getInvokedOperation(preview(null, "unknown"));
+    }
+
+    @Test(expected = OperationNotFoundException.class)
+    public void rejectUnknownRpcPreview() {
+        rpcMatcher.getInvokedOperation(preview(null, "Unknown"));
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        for (long micros = 0; micros < 100000; micros++) {
+            int index = LatencyHistogram.index(micros);
+            assertTrue(LatencyHistogram.highestValue(index) >= micros);
+            assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < micros);
+        }
+    }
+
+    @Test
+    public void reportsPercentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertWithinError(5000, snapshot.getValueAtPercentile(50));
+        assertWithinError(9900, snapshot.getValueAtPercentile(99));
+        assertWithinError(9990, snapshot.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(99));
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(String.format("expected %d but was %d", expected, actual), Math.abs(actual - expected) <= expected / 16);
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class CanonicalPayloadTest {
+
+    private static String hash(String body) throws Exception {
+        return CanonicalPayload.hash(("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soapenv:Header><h>header</h></soapenv:Header><soapenv:Body>" + body + "</soapenv:Body></soapenv:Envelope>")
+                .getBytes("UTF-8"));
+    }
+
+    @Test
+    public void ignoresPrefixesAttributeOrderAndIndentation() throws Exception {
+        assertEquals(hash("<a:order xmlns:a=\"urn:a\" id=\"1\" kind=\"x\"><a:item>value</a:item></a:order>"),
+                hash("<b:order xmlns:b=\"urn:a\" kind=\"x\" id=\"1\">\n  <b:item>value</b:item>\n</b:order>"));
+    }
+
+    @Test
+    public void resolvesPrefixesOfXsiType() throws Exception {
+        String xsi = "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"";
+        assertEquals(hash("<order " + xsi + " xmlns:a=\"urn:a\" xsi:type=\"a:Special\"/>"),
+                hash("<order " + xsi + " xmlns:b=\"urn:a\" xsi:type=\"b:Special\"/>"));
+        assertNotEquals(hash("<order " + xsi + " xmlns:a=\"urn:a\" xsi:type=\"a:Special\"/>"),
+                hash("<order " + xsi + " xmlns:a=\"urn:b\" xsi:type=\"a:Special\"/>"));
+    }
+
+    @Test
+    public void hashesAdjacentTextAsWhole() throws Exception {
+        assertEquals(hash("<item>value</item>"), hash("<item>val<!-- split -->ue</item>"));
+        assertEquals(hash("<item>value</item>"), hash("<item>val<![CDATA[ue]]></item>"));
+        assertNotEquals(hash("<item>value</item>"), hash("<item>val<x/>ue</item>"));
+    }
+
+    @Test
+    public void keepsSignificantWhitespace() throws Exception {
+        assertNotEquals(hash("<item>a</item>"), hash("<item> a</item>"));
+        assertNotEquals(hash("<item>a</item>"), hash("<item>a </item>"));
+        assertEquals(hash("<item/>"), hash("<item>  </item>"));
+    }
+
+}
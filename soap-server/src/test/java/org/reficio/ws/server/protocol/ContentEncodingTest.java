@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ContentEncodingTest {
+
+    @Test
+    public void negotiatesPreferredEncoding() {
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("*"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+        assertNull(ContentEncoding.negotiate("identity"));
+        assertNull(ContentEncoding.negotiate("br, *;q=0"));
+        assertNull(ContentEncoding.negotiate(null));
+    }
+
+    @Test
+    public void resolvesEncodingByName() {
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.forName("x-gzip"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.forName(" Deflate "));
+        assertNull(ContentEncoding.forName("identity"));
+        assertNull(ContentEncoding.forName(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedEncoding() {
+        ContentEncoding.forName("br");
+    }
+
+    @Test
+    public void decodesEncodedContent() throws Exception {
+        byte[] content = "<soapenv:Envelope/>".getBytes("UTF-8");
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            byte[] encoded = encoding.encode(content, 0, content.length);
+            assertEquals("<soapenv:Envelope/>", IOUtils.toString(encoding.decode(new ByteArrayInputStream(encoded)), "UTF-8"));
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.protocol;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.reficio.ws.builder.core.MtomMessage;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.SoapVersion;
+import org.springframework.ws.transport.TransportInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class RequestAttachmentsTest {
+
+    private static final int ATTACHMENT_SIZE = 64 * 1024;
+
+    private File cacheDir;
+    private Request request;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("attachments").toFile();
+        request = new Request();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @After
+    public void teardown() {
+        RequestContextHolder.resetRequestAttributes();
+        FileUtils.deleteQuietly(cacheDir);
+    }
+
+    @Test
+    public void purgesOnlyParsedAttachments() throws Exception {
+        byte[] data = new byte[ATTACHMENT_SIZE];
+        Arrays.fill(data, (byte) 7);
+        MtomMessage mtom = MtomMessage.builder()
+                .envelope("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                        + MtomMessage.include("first@reficio.org") + MtomMessage.include("second@reficio.org")
+                        + "</soapenv:Body></soapenv:Envelope>")
+                .attachment("first@reficio.org", MtomMessage.BINARY_CONTENT_TYPE, new ByteArrayInputStream(data))
+                .attachment("second@reficio.org", MtomMessage.BINARY_CONTENT_TYPE, new ByteArrayInputStream(data))
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mtom.writeTo(out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        MultipartSoapMessageFactory factory = new MultipartSoapMessageFactory(SoapVersion.SOAP_11, true, cacheDir, 1024);
+        SoapMessage message = factory.createWebServiceMessage(new MultipartInputStream(in, mtom.getContentType()));
+        assertTrue(Arrays.equals(data, IOUtils.toByteArray(message.getAttachment("first@reficio.org").getInputStream())));
+        assertEquals(1, cacheDir.list().length);
+        int unread = in.available();
+
+        RequestAttachments.release(request);
+        assertEquals(0, cacheDir.list().length);
+        // the second attachment has not been read from the stream
+        assertEquals(unread, in.available());
+    }
+
+    private static class MultipartInputStream extends TransportInputStream {
+
+        private final InputStream in;
+        private final String contentType;
+
+        MultipartInputStream(InputStream in, String contentType) {
+            this.in = in;
+            this.contentType = contentType;
+        }
+
+        @Override
+        protected InputStream createInputStream() {
+            return in;
+        }
+
+        @Override
+        public Iterator<String> getHeaderNames() {
+            return Collections.singletonList("Content-Type").iterator();
+        }
+
+        @Override
+        public Iterator<String> getHeaders(String name) {
+            return Collections.singletonList(contentType).iterator();
+        }
+    }
+
+}
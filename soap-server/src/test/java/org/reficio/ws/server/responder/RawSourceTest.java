@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.reficio.ws.server.protocol.ContentEncoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class RawSourceTest {
+
+    private static final byte[] CONTENT = "<envelope/>".getBytes();
+
+    @Test
+    public void writesBytesWithoutCopy() throws IOException {
+        RawSource source = RawSource.of(CONTENT);
+        CapturingOutputStream out = new CapturingOutputStream();
+        source.writeTo(out);
+        assertSame(CONTENT, out.written);
+        assertEquals(0, out.offset);
+        assertEquals(CONTENT.length, out.length);
+        assertEquals(CONTENT.length, source.getContentLength());
+    }
+
+    @Test
+    public void writesArrayBackedBufferWithoutCopy() throws IOException {
+        byte[] array = new byte[CONTENT.length + 4];
+        System.arraycopy(CONTENT, 0, array, 2, CONTENT.length);
+        ByteBuffer buffer = ByteBuffer.wrap(array);
+        buffer.position(2).limit(2 + CONTENT.length);
+        RawSource source = RawSource.of(buffer);
+        CapturingOutputStream out = new CapturingOutputStream();
+        source.writeTo(out);
+        assertSame(array, out.written);
+        assertEquals(2, out.offset);
+        assertEquals(CONTENT.length, out.length);
+        assertArrayEquals(CONTENT, IOUtils.toByteArray(source.getInputStream()));
+    }
+
+    @Test
+    public void readsDirectBufferRepeatedly() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CONTENT.length);
+        buffer.put(CONTENT).flip();
+        RawSource source = RawSource.of(buffer);
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            source.writeTo(out);
+            assertArrayEquals(CONTENT, out.toByteArray());
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(source.getInputStream()));
+        }
+        assertEquals(0, buffer.position());
+        byte[] gzip = source.getEncoded(ContentEncoding.GZIP);
+        assertSame(gzip, source.getEncoded(ContentEncoding.GZIP));
+        assertArrayEquals(CONTENT, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+    }
+
+    private static final class CapturingOutputStream extends OutputStream {
+
+        private byte[] written;
+        private int offset;
+        private int length;
+
+        @Override
+        public void write(int b) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written = b;
+            offset = off;
+            length = len;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reficio.ws.builder.SoapBuilder;
+import org.reficio.ws.builder.SoapOperation;
+import org.reficio.ws.builder.core.Wsdl;
+import org.reficio.ws.common.ResourceUtils;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import javax.xml.transform.Source;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class ReplayResponderTest {
+
+    private static final String NS = "http://reficio.org/matcher";
+
+    private SoapBuilder builder;
+    private SaajSoapMessageFactory messageFactory;
+
+    @Before
+    public void setup() throws Exception {
+        URL wsdlUrl = ResourceUtils.getResourceWithAbsolutePackagePath("wsdl", "matcher.wsdl");
+        builder = Wsdl.parse(wsdlUrl).binding().namespaceURI(NS).localPart("DocumentBinding").find();
+        messageFactory = new SaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+    }
+
+    private static byte[] envelope(String body) throws Exception {
+        return ("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:m=\"" + NS + "\">"
+                + "<soapenv:Header/><soapenv:Body>" + body + "</soapenv:Body></soapenv:Envelope>").getBytes("UTF-8");
+    }
+
+    private static TrafficRecord record(String operation, byte[] request, String response) throws Exception {
+        return new TrafficRecord(0L, 0L, "/recorded", null, operation, false, request, envelope(response));
+    }
+
+    private Source respond(ReplayResponder responder, String operationName, byte[] request) throws Exception {
+        SoapOperation operation = builder.operation().name(operationName).find();
+        SoapMessage message = messageFactory.createWebServiceMessage(new ByteArrayInputStream(request));
+        return responder.respond(operation, message);
+    }
+
+    @Test
+    public void replaysResponseOfRecordedOperation() throws Exception {
+        byte[] request = envelope("<m:first>value</m:first>");
+        ReplayResponder responder = new ReplayResponder(builder, Arrays.asList(record("First", request, "<m:response/>")));
+        assertEquals(1, responder.getRecordedRequestCount());
+        assertTrue(respond(responder, "First", request) instanceof RawSource);
+    }
+
+    @Test
+    public void doesNotReplayResponseOfAnotherOperation() throws Exception {
+        byte[] request = envelope("<m:first>value</m:first>");
+        ReplayResponder responder = new ReplayResponder(builder, Arrays.asList(record("Second", request, "<m:response/>")));
+        assertTrue(respond(responder, "First", request) instanceof FaultSource);
+    }
+
+    @Test
+    public void replaysResponseRecordedWithoutOperation() throws Exception {
+        byte[] request = envelope("<m:first>value</m:first>");
+        ReplayResponder responder = new ReplayResponder(builder, Arrays.asList(record(null, request, "<m:response/>"),
+                record("First", envelope("<m:first>other</m:first>"), "<m:other/>")));
+        assertEquals(2, responder.getRecordedRequestCount());
+        Source source = respond(responder, "First", request);
+        assertTrue(source instanceof RawSource);
+        assertSame(source, respond(responder, "Second", request));
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.responder;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class TrafficLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TrafficRecord record(int i, int size) {
+        return new TrafficRecord(1000L + i, 10L * i, "/path", i % 2 == 0 ? null : "urn:action", "Operation" + i, i % 3 == 0,
+                new byte[size], ("response" + i).getBytes());
+    }
+
+    @Test
+    public void appendsAndReadsRecords() {
+        File directory = folder.getRoot();
+        TrafficLog log = TrafficLog.open(directory);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(log.append(record(i, 100)));
+        }
+        log.close();
+
+        List<TrafficRecord> records = TrafficLog.read(directory);
+        assertEquals(10, records.size());
+        TrafficRecord record = records.get(3);
+        assertEquals(1003L, record.getTimestamp());
+        assertEquals(30L, record.getDurationNanos());
+        assertEquals("/path", record.getContextPath());
+        assertEquals("urn:action", record.getSoapAction());
+        assertEquals("Operation3", record.getOperation());
+        assertTrue(record.isFault());
+        assertEquals(100, record.getRequest().length);
+        assertArrayEquals("response3".getBytes(), record.getResponse());
+        assertNull(records.get(2).getSoapAction());
+    }
+
+    @Test
+    public void rollsAndBoundsSegments() {
+        File directory = folder.getRoot();
+        TrafficLog log = TrafficLog.open(directory, 1024, 3);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(log.append(record(i, 300)));
+        }
+        // larger than a segment
+        assertFalse(log.append(record(20, 2048)));
+        log.close();
+
+        assertEquals(3, log.getSegments().size());
+        List<TrafficRecord> records = TrafficLog.read(directory);
+        // two records fit in a segment, only the last three segments are kept
+        assertEquals(6, records.size());
+        assertEquals("Operation19", records.get(records.size() - 1).getOperation());
+
+        TrafficLog reopened = TrafficLog.open(directory, 1024, 3);
+        reopened.append(record(21, 10));
+        reopened.close();
+        records = TrafficLog.read(directory);
+        assertEquals("Operation21", records.get(records.size() - 1).getOperation());
+    }
+
+    @Test
+    public void unmapsCompleteSegments() throws IOException {
+        File maps = new File("/proc/self/maps");
+        assumeTrue(maps.canRead());
+        File directory = folder.getRoot();
+        TrafficLog log = TrafficLog.open(directory, 1024, 2);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(log.append(record(i, 300)));
+        }
+        TrafficLog.read(directory);
+        // only the current segment is mapped, the deleted ones are not kept alive by a stale mapping
+        assertEquals(1, getMappedSegments(maps, directory).size());
+
+        log.close();
+        assertTrue(getMappedSegments(maps, directory).isEmpty());
+    }
+
+    private static List<String> getMappedSegments(File maps, File directory) throws IOException {
+        List<String> mapped = new ArrayList<String>();
+        for (String line : Files.readLines(maps, Charset.forName("UTF-8"))) {
+            if (line.contains(directory.getAbsolutePath())) {
+                mapped.add(line);
+            }
+        }
+        return mapped;
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012-2013 Reficio (TM) - Reestablish your software!. All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.ws.server.routing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Tom Bujok
+ * @since 1.0.0
+ */
+public class RoutingTableTest {
+
+    private static String route(RoutingTable<String> table, String path) {
+        Route<String> route = table.lookup(path);
+        return route != null ? route.getValue() : null;
+    }
+
+    @Test
+    public void normalizesPaths() {
+        RoutingTable<String> table = new RoutingTable<String>();
+        table.register("/service/", "service");
+        assertEquals("service", route(table, "/service"));
+        assertEquals("service", route(table, "/service/"));
+        assertEquals("service", route(table, "//service?wsdl"));
+        assertEquals("service", route(table, "/service;jsessionid=1"));
+        assertNull(route(table, "/services"));
+        assertNull(route(table, "/"));
+        assertNull(table.register("/service", "duplicate"));
+        assertEquals(Arrays.asList("/service"), table.getPatterns());
+    }
+
+    @Test
+    public void appliesPrecedence() {
+        RoutingTable<String> table = new RoutingTable<String>();
+        table.register("/a/**", "a-prefix");
+        table.register("/a/b/**", "ab-prefix");
+        table.register("/a/*/c", "a-any-c");
+        table.register("/a/b/c/d", "abcd");
+        table.register("/tenant/*/billing", "billing");
+        table.register("/tenant/main/billing", "main-billing");
+        assertEquals("a-prefix", route(table, "/a"));
+        assertEquals("ab-prefix", route(table, "/a/b/c"));
+        assertEquals("abcd", route(table, "/a/b/c/d"));
+        assertEquals("ab-prefix", route(table, "/a/b/c/e"));
+        assertEquals("a-any-c", route(table, "/a/x/c"));
+        assertEquals("a-prefix", route(table, "/a/x/d"));
+        assertEquals("billing", route(table, "/tenant/42/billing"));
+        assertEquals("main-billing", route(table, "/tenant/main/billing"));
+        assertNull(route(table, "/tenant/42"));
+        assertNull(route(table, "/tenant/42/billing/x"));
+    }
+
+    @Test
+    public void splitsAndPrunesCompressedNodes() {
+        RoutingTable<String> table = new RoutingTable<String>();
+        table.register("/a/b/c", "abc");
+        table.register("/a/b", "ab");
+        table.register("/a/x", "ax");
+        assertEquals("abc", route(table, "/a/b/c"));
+        assertEquals("ab", route(table, "/a/b"));
+        assertEquals("ax", route(table, "/a/x"));
+        assertNull(route(table, "/a"));
+
+        assertNotNull(table.unregister("/a/b/"));
+        assertNull(table.unregister("/a/b"));
+        assertNull(route(table, "/a/b"));
+        assertEquals("abc", route(table, "/a/b/c"));
+        table.unregister("/a/b/c");
+        table.unregister("/a/x");
+        assertNull(route(table, "/a/b/c"));
+        assertEquals(0, table.size());
+        table.register("/a/b/c", "abc");
+        assertEquals("abc", route(table, "/a/b/c"));
+    }
+
+    @Test
+    public void routesManyPaths() {
+        RoutingTable<String> table = new RoutingTable<String>();
+        for (int i = 0; i < 20000; i++) {
+            table.register("/tenant/" + i + "/billing", "tenant-" + i);
+        }
+        table.register("/tenant/*/billing", "any");
+        for (int i = 0; i < 20000; i++) {
+            assertEquals("tenant-" + i, route(table, "/tenant/" + i + "/billing"));
+        }
+        assertEquals("any", route(table, "/tenant/unknown/billing"));
+        for (int i = 0; i < 20000; i += 2) {
+            table.unregister("/tenant/" + i + "/billing");
+        }
+        assertEquals("any", route(table, "/tenant/0/billing"));
+        assertEquals("tenant-1", route(table, "/tenant/1/billing"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPartialWildcards() {
+        new RoutingTable<String>().register("/tenant*/billing", "billing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInnerPrefixWildcards() {
+        new RoutingTable<String>().register("/**/billing", "billing");
+    }
+
+}